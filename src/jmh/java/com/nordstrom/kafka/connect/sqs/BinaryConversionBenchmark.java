@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Binary record values through the sink and the source, per record:
+ * {@code sinkBytes} and {@code sourceBytes} convert {@code byte[]} values
+ * directly, while {@code sinkString} and {@code sourceString} are the string
+ * round trip binary topics needed before, with the base64 encoding done
+ * upstream of the sink and the decoding downstream of the source.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryConversionBenchmark {
+  private static final int BATCH = 10;
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/123456789012/benchmark";
+
+  @Param({ "100", "1024", "16384", "262144" })
+  public int payloadBytes;
+
+  private SqsSinkConverter converter;
+  private SqsSourceQueue bytesQueue;
+  private SqsSourceQueue stringQueue;
+  private List<byte[]> values;
+  private List<Message> messages;
+
+  @Setup
+  public void setup() {
+    final Map<String, String> props = new HashMap<>();
+    props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), URL);
+    props.put(SqsConnectorConfigKeys.TOPICS.getValue(), "benchmark");
+    props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+    converter = new SqsSinkConverter(new SqsSinkConnectorConfig(props));
+    stringQueue = new SqsSourceQueue(URL, "benchmark", new SqsSourceConnectorConfig(props), null, null, null);
+    props.put(SqsConnectorConfigKeys.SQS_MESSAGE_BODY_FORMAT.getValue(), "bytes");
+    bytesQueue = new SqsSourceQueue(URL, "benchmark", new SqsSourceConnectorConfig(props), null, null, null);
+
+    final Random random = new Random(0);
+    values = new ArrayList<>(BATCH);
+    messages = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; i++) {
+      final byte[] value = new byte[payloadBytes];
+      random.nextBytes(value);
+      values.add(value);
+      messages.add(new Message().withMessageId("message-" + i).withReceiptHandle("receipt-" + i)
+          .withBody(Base64.getEncoder().encodeToString(value)));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SqsSendEntry> sinkBytes() {
+    final List<SqsSendEntry> entries = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; i++) {
+      final SinkRecord record = new SinkRecord("benchmark", 0, null, null, Schema.BYTES_SCHEMA, values.get(i), i);
+      entries.add(converter.toEntry(record, URL, false));
+    }
+    return entries;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SqsSendEntry> sinkString() {
+    final List<SqsSendEntry> entries = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; i++) {
+      final String value = Base64.getEncoder().encodeToString(values.get(i));
+      final SinkRecord record = new SinkRecord("benchmark", 0, null, null, Schema.STRING_SCHEMA, value, i);
+      entries.add(converter.toEntry(record, URL, false));
+    }
+    return entries;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SourceRecord> sourceBytes() {
+    return bytesQueue.toRecords(messages);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<byte[]> sourceString() {
+    final List<SourceRecord> records = stringQueue.toRecords(messages);
+    final List<byte[]> decoded = new ArrayList<>(records.size());
+    for (final SourceRecord record : records) {
+      decoded.add(Base64.getDecoder().decode((String) record.value()));
+    }
+    return decoded;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU cost of {@link SqsPayloadCodec} per body, compressed by the sink and
+ * decompressed by the source, across codecs, payload sizes and content. The
+ * setup prints the compression ratio and the billed SQS requests per million
+ * messages sent in full batches, with and without compression, since SQS
+ * bills every 64 KB of a request as one request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+  private static final int BILLED_CHUNK_BYTES = 64 * 1024;
+  // The default of sqs.compression.max.decoded.bytes.
+  private static final int MAX_DECODED_BYTES = 4 * 1024 * 1024;
+
+  @Param({ "gzip", "zstd", "lz4" })
+  public String codecName;
+
+  /**
+   * {@code events}: JSON records; {@code repetitive}: the body the other benchmarks use;
+   * {@code random}: base64 random data.
+   */
+  @Param({ "events", "repetitive", "random" })
+  public String content;
+
+  @Param({ "1024", "16384", "262144" })
+  public int payloadBytes;
+
+  private SqsPayloadCodec codec;
+  private String body;
+  private String encoded;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    codec = SqsPayloadCodec.forValue(codecName);
+    if ("events".equals(content)) {
+      body = Payloads.events(payloadBytes, 0);
+    } else if ("random".equals(content)) {
+      body = Payloads.random(payloadBytes, 0);
+    } else {
+      body = Payloads.body(payloadBytes, 0);
+    }
+    encoded = codec.encode(body, 0);
+    final int sent = encoded != null ? encoded.length() : body.length();
+    System.out.println(String.format(Locale.ROOT,
+        "%n%s %s %d B: sent %d B (ratio %.2f), billed requests per 1M messages %d -> %d", codecName, content,
+        payloadBytes, sent, (double) payloadBytes / sent, billedPerMillion(payloadBytes), billedPerMillion(sent)));
+  }
+
+  /**
+   * @param bytes Size of every message.
+   * @return Requests billed for a million messages sent in batches of up to ten and 256 KB.
+   */
+  static long billedPerMillion(final int bytes) {
+    final int perBatch = Math.max(1, Math.min(SqsSendBatcher.MAX_BATCH_ENTRIES, 256 * 1024 / bytes));
+    final long billedPerBatch = ((long) perBatch * bytes + BILLED_CHUNK_BYTES - 1) / BILLED_CHUNK_BYTES;
+    return (1_000_000L + perBatch - 1) / perBatch * billedPerBatch;
+  }
+
+  @Benchmark
+  public String encode() {
+    return codec.encode(body, 0);
+  }
+
+  /**
+   * Bodies that do not compress are sent as they are, and so are not decoded.
+   */
+  @Benchmark
+  public String decode() {
+    return encoded != null ? codec.decode(encoded, MAX_DECODED_BYTES) : body;
+  }
+}
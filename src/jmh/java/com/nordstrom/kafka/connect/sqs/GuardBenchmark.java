@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link Guard} checks on the send and receive paths. {@code validUrl}
+ * is the full url parse that {@link SqsClient} now only does once per queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GuardBenchmark {
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/123456789012/benchmark";
+
+  @Param({ "100", "1024", "16384", "262144" })
+  public int payloadBytes;
+
+  private String body;
+  private int maxMessages;
+
+  @Setup
+  public void setup() {
+    body = Payloads.body(payloadBytes, 0);
+    maxMessages = 10;
+  }
+
+  @Benchmark
+  public void validUrl() {
+    Guard.verifyValidUrl(URL);
+  }
+
+  @Benchmark
+  public void notNullOrEmpty() {
+    Guard.verifyNotNullOrEmpty(body, "body");
+  }
+
+  @Benchmark
+  public void inRange() {
+    Guard.verifyInRange(maxMessages, 0, 10, "sqs.max.messages");
+  }
+}
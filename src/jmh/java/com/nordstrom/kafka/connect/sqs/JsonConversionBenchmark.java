@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.connect.source.SourceRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON order bodies to source records per message: {@code string} emits the
+ * body as it is, {@code struct} parses it with {@link SqsJsonParser} and a warm
+ * schema cache, {@code structUncached} infers every schema again, as a parser
+ * without a cache would, and {@code stringReparsed} adds the tree parse a
+ * downstream JSON converter does on a string value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonConversionBenchmark {
+  private static final int BATCH = 10;
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/123456789012/benchmark";
+
+  @Param({ "100", "1024", "16384", "262144" })
+  public int payloadBytes;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private SqsSourceConnectorConfig jsonConfig;
+  private SqsSourceQueue stringQueue;
+  private SqsSourceQueue jsonQueue;
+  private List<Message> messages;
+
+  @Setup
+  public void setup() {
+    final Map<String, String> props = new HashMap<>();
+    props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), URL);
+    props.put(SqsConnectorConfigKeys.TOPICS.getValue(), "benchmark");
+    props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+    stringQueue = new SqsSourceQueue(URL, "benchmark", new SqsSourceConnectorConfig(props), null, null, null);
+    props.put(SqsConnectorConfigKeys.SQS_MESSAGE_BODY_FORMAT.getValue(), "json");
+    jsonConfig = new SqsSourceConnectorConfig(props);
+    jsonQueue = new SqsSourceQueue(URL, "benchmark", jsonConfig, null,
+        new SqsJsonParser(jsonConfig.getJsonSchemaCacheSize()), null);
+
+    messages = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; i++) {
+      messages.add(new Message().withMessageId("message-" + i).withReceiptHandle("receipt-" + i)
+          .withBody(Payloads.order(payloadBytes, i)));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SourceRecord> string() {
+    return stringQueue.toRecords(messages);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<JsonNode> stringReparsed() throws IOException {
+    final List<JsonNode> trees = new ArrayList<>(BATCH);
+    for (final SourceRecord record : stringQueue.toRecords(messages)) {
+      trees.add(mapper.readTree((String) record.value()));
+    }
+    return trees;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SourceRecord> struct() {
+    return jsonQueue.toRecords(messages);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SourceRecord> structUncached() {
+    final List<SourceRecord> records = new ArrayList<>(BATCH);
+    for (final Message message : messages) {
+      records.add(new SqsSourceQueue(URL, "benchmark", jsonConfig, null, new SqsJsonParser(1), null).toRecord(message));
+    }
+    return records;
+  }
+}
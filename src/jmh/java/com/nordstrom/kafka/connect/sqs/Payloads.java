@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Message bodies for the benchmarks.
+ */
+final class Payloads {
+  private Payloads() {
+  }
+
+  /**
+   * Build a JSON-like ASCII body of exactly {@code bytes} bytes, unique per {@code seed}.
+   *
+   * @param bytes Body size in bytes.
+   * @param seed  Distinguishes bodies of the same size.
+   * @return The body.
+   */
+  static String body(final int bytes, final int seed) {
+    final String prefix = "{\"id\":" + seed + ",\"data\":\"";
+    final String suffix = "\"}";
+    final StringBuilder body = new StringBuilder(bytes).append(prefix);
+    for (int i = 0; body.length() < bytes - suffix.length(); i++) {
+      body.append((char) ('a' + (seed + i) % 26));
+    }
+    return body.append(suffix).toString();
+  }
+
+  /**
+   * Build a body of exactly {@code bytes} bytes of JSON event records with
+   * pseudo-random field values, which compresses about as well as typical
+   * application events do.
+   *
+   * @param bytes Body size in bytes.
+   * @param seed  Distinguishes bodies of the same size.
+   * @return The body.
+   */
+  static String events(final int bytes, final int seed) {
+    final String[] statuses = { "CREATED", "PAID", "SHIPPED", "CANCELLED" };
+    final Random random = new Random(seed);
+    final StringBuilder body = new StringBuilder(bytes + 256).append('[');
+    for (int i = 0; body.length() < bytes; i++) {
+      body.append("{\"id\":").append(seed * 100000L + i)
+          .append(",\"customer\":\"c-").append(random.nextInt(100000))
+          .append("\",\"status\":\"").append(statuses[random.nextInt(statuses.length)])
+          .append("\",\"amount\":").append(random.nextInt(100000) / 100.0)
+          .append(",\"sku\":\"").append(Long.toHexString(random.nextLong()))
+          .append("\",\"ts\":").append(1700000000000L + random.nextInt(1000000000)).append("},");
+    }
+    body.setLength(bytes - 1);
+    return body.append(']').toString();
+  }
+
+  /**
+   * Build a JSON object body of at least {@code bytes} bytes: an order with
+   * nested customer fields and an array of line items, of the same shape for
+   * every seed and size.
+   *
+   * @param bytes Minimum body size in bytes.
+   * @param seed  Distinguishes bodies of the same size.
+   * @return The body.
+   */
+  static String order(final int bytes, final int seed) {
+    final Random random = new Random(seed);
+    final StringBuilder body = new StringBuilder(bytes + 256).append("{\"order\":").append(seed)
+        .append(",\"customer\":{\"id\":\"c-").append(random.nextInt(100000))
+        .append("\",\"vip\":").append(random.nextBoolean())
+        .append("},\"coupon\":null,\"items\":[");
+    for (int i = 0; i == 0 || body.length() < bytes - 2; i++) {
+      body.append(i == 0 ? "" : ",").append("{\"sku\":\"").append(Long.toHexString(random.nextLong()))
+          .append("\",\"quantity\":").append(1 + random.nextInt(5))
+          .append(",\"price\":").append(random.nextInt(100000) / 100.0).append('}');
+    }
+    return body.append("]}").toString();
+  }
+
+  /**
+   * Build a body of exactly {@code bytes} bytes of base64 encoded random data,
+   * such as an encrypted payload, that does not compress.
+   *
+   * @param bytes Body size in bytes.
+   * @param seed  Distinguishes bodies of the same size.
+   * @return The body.
+   */
+  static String random(final int bytes, final int seed) {
+    final byte[] data = new byte[bytes];
+    new Random(seed).nextBytes(data);
+    return Base64.getEncoder().encodeToString(data).substring(0, bytes);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+
+/**
+ * The request builders of {@link SqsClient} and the batch packing in front of
+ * them, without any network I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBenchmark {
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/123456789012/benchmark";
+  private static final List<String> ATTRIBUTE_NAMES = Arrays.asList("tenant", "trace");
+
+  @Param({ "100", "1024", "16384", "262144" })
+  public int payloadBytes;
+
+  private String body;
+  private Map<String, MessageAttributeValue> attributes;
+  private List<SqsSendEntry> entries;
+
+  @Setup
+  public void setup() {
+    body = Payloads.body(payloadBytes, 0);
+    attributes = new HashMap<>();
+    attributes.put("tenant", new MessageAttributeValue().withDataType("String").withStringValue("tenant-0"));
+    attributes.put("trace", new MessageAttributeValue().withDataType("String").withStringValue("trace-0"));
+
+    entries = new ArrayList<>(SqsSendBatcher.MAX_BATCH_ENTRIES);
+    for (int i = 0; i < SqsSendBatcher.MAX_BATCH_ENTRIES; i++) {
+      final SinkRecord record = new SinkRecord("benchmark", 0, null, null, Schema.STRING_SCHEMA, body, i);
+      entries.add(new SqsSendEntry(record, URL, Payloads.body(payloadBytes, i), null, null, attributes));
+    }
+  }
+
+  @Benchmark
+  public ReceiveMessageRequest receiveRequest() {
+    return SqsClient.receiveRequest(URL, 10, 20, false, Collections.<String>emptyList(), 0);
+  }
+
+  @Benchmark
+  public ReceiveMessageRequest receiveRequestWithAttributes() {
+    return SqsClient.receiveRequest(URL, 10, 20, true, ATTRIBUTE_NAMES, 30);
+  }
+
+  @Benchmark
+  public SendMessageRequest sendRequest() {
+    return SqsClient.sendRequest(URL, body, "group", "benchmark-0-1234567", attributes);
+  }
+
+  @Benchmark
+  public SqsSendEntry sendEntry() {
+    return new SqsSendEntry(entries.get(0).getRecord(), URL, body, null, null, attributes);
+  }
+
+  /**
+   * Pack ten messages and build their SendMessageBatch requests, as the batcher does per put.
+   */
+  @Benchmark
+  public List<SendMessageBatchRequest> sendBatchRequests() {
+    final List<SqsSendEntry> oversize = new ArrayList<>(0);
+    final List<List<SqsSendEntry>> batches = SqsSendBatcher.pack(entries, false, oversize);
+    final List<SendMessageBatchRequest> requests = new ArrayList<>(batches.size());
+    for (final List<SqsSendEntry> batch : batches) {
+      final List<SendMessageBatchRequestEntry> requestEntries = new ArrayList<>(batch.size());
+      for (int i = 0; i < batch.size(); i++) {
+        requestEntries.add(batch.get(i).getEntry().withId(Integer.toString(i)));
+      }
+      requests.add(new SendMessageBatchRequest(URL, requestEntries));
+    }
+    return requests;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.header.ConnectHeaders;
+import org.apache.kafka.connect.header.Header;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+
+/**
+ * Sink record to SQS message conversion per record, for a FIFO queue and
+ * across payload sizes: {@code legacy} is the original path of
+ * {@code SqsSinkConnectorTask.put}, kept here as the baseline, and
+ * {@code lean} is {@link SqsSinkConverter}. Run with {@code -prof gc} to
+ * compare {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SinkConversionBenchmark {
+  private static final int BATCH = 100;
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/123456789012/benchmark.fifo";
+
+  @Param({ "false", "true" })
+  public boolean attributes;
+
+  @Param({ "100", "1024", "16384", "262144" })
+  public int payloadBytes;
+
+  private SqsSinkConnectorConfig config;
+  private SqsSinkConverter converter;
+  private List<SinkRecord> records;
+
+  @Setup
+  public void setup() {
+    final Map<String, String> props = new HashMap<>();
+    props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), URL);
+    props.put(SqsConnectorConfigKeys.TOPICS.getValue(), "benchmark");
+    props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+    props.put(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_ENABLED.getValue(), Boolean.toString(attributes));
+    props.put(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_INCLUDE_LIST.getValue(), "tenant,trace,source,region");
+    config = new SqsSinkConnectorConfig(props);
+    converter = new SqsSinkConverter(config);
+
+    records = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; i++) {
+      final ConnectHeaders headers = new ConnectHeaders();
+      headers.addString("tenant", "tenant-" + (i % 4));
+      headers.addString("trace", "trace-" + i);
+      headers.addString("source", "benchmark");
+      headers.addString("ignored", "not included");
+      records.add(new SinkRecord("benchmark", 3, Schema.STRING_SCHEMA, "key-" + (i % 16), Schema.STRING_SCHEMA,
+          Payloads.body(payloadBytes, i), 1234567L + i, null, null, headers));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SqsSendEntry> lean() {
+    final List<SqsSendEntry> entries = new ArrayList<>(records.size());
+    for (final SinkRecord record : records) {
+      entries.add(converter.toEntry(record, URL, true));
+    }
+    return entries;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SqsSendEntry> legacy() {
+    final List<SqsSendEntry> entries = new ArrayList<>(records.size());
+    for (final SinkRecord record : records) {
+      final String mid = MessageFormat.format("{0}-{1}-{2}", record.topic(), record.kafkaPartition().longValue(),
+          record.kafkaOffset());
+      final String key = Facility.isNotNull(record.key()) ? record.key().toString() : null;
+      final String gid = Facility.isNotNullNorEmpty(key) ? key : record.topic();
+      final String body = Facility.isNotNull(record.value()) ? record.value().toString() : "";
+      entries.add(new SqsSendEntry(record, URL, body, gid, mid, legacyMessageAttributes(record)));
+    }
+    return entries;
+  }
+
+  private Map<String, MessageAttributeValue> legacyMessageAttributes(final SinkRecord record) {
+    if (!config.getMessageAttributesEnabled()) {
+      return null;
+    }
+    final Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
+    List<String> attributesList = config.getMessageAttributesList();
+    boolean allNamesEnabled = attributesList.isEmpty();
+    for (Header header : record.headers()) {
+      if (allNamesEnabled || attributesList.contains(header.key())) {
+        if (header.schema().equals(Schema.STRING_SCHEMA)) {
+          messageAttributes.put(header.key(), new MessageAttributeValue()
+              .withDataType("String")
+              .withStringValue((String) header.value()));
+        }
+      }
+    }
+    return messageAttributes;
+  }
+}
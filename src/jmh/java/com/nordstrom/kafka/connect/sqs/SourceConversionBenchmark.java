@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.header.ConnectHeaders;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+
+/**
+ * Message to source record conversion per message, across attribute modes
+ * and payload sizes: {@code legacy} is the original per-message path of
+ * {@code SqsSourceConnectorTask.poll}, kept here as the baseline, and
+ * {@code lean} is {@link SqsSourceQueue}. Run with {@code -prof gc} to compare
+ * {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SourceConversionBenchmark {
+  private static final int BATCH = 10;
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/123456789012/benchmark";
+
+  // plain: no attributes; attributes: three attributes, two become headers; partition-key: also keyed by one.
+  @Param({ "plain", "attributes", "partition-key" })
+  public String mode;
+
+  @Param({ "100", "1024", "16384", "262144" })
+  public int payloadBytes;
+
+  private SqsSourceConnectorConfig config;
+  private SqsSourceQueue queue;
+  private List<Message> messages;
+
+  @Setup
+  public void setup() {
+    final boolean attributes = !"plain".equals(mode);
+    final Map<String, String> props = new HashMap<>();
+    props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), URL);
+    props.put(SqsConnectorConfigKeys.TOPICS.getValue(), "benchmark");
+    props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+    props.put(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_ENABLED.getValue(), Boolean.toString(attributes));
+    props.put(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTE_PARTITION_KEY.getValue(),
+        "partition-key".equals(mode) ? "tenant" : "");
+    config = new SqsSourceConnectorConfig(props);
+    queue = new SqsSourceQueue(URL, config.getTopics(), config, null, null, null);
+
+    messages = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; i++) {
+      final Message message = new Message().withMessageId("0f6a1b5e-7c1d-4a1e-9f43-" + (100000000000L + i))
+          .withReceiptHandle("AQEB" + i + "kN3vYx1QpZr8fW2uJmT0bX5sEoC7aLgHdKiV9nRqU4yMwB6cFzIeGtPjSlOhAvDx")
+          .withBody(Payloads.body(payloadBytes, i));
+      if (attributes) {
+        message.addMessageAttributesEntry("tenant",
+            new MessageAttributeValue().withDataType("String").withStringValue("tenant-" + i));
+        message.addMessageAttributesEntry("trace",
+            new MessageAttributeValue().withDataType("String").withStringValue("trace-" + i));
+        message.addMessageAttributesEntry("count",
+            new MessageAttributeValue().withDataType("Number").withStringValue(Integer.toString(i)));
+      }
+      messages.add(message);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SourceRecord> lean() {
+    return queue.toRecords(messages);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<SourceRecord> legacy() {
+    return messages.stream().map(message -> {
+      Map<String, String> sourcePartition = Collections.singletonMap(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(),
+          config.getQueueUrl());
+      Map<String, String> sourceOffset = new HashMap<>();
+      sourceOffset.put(SqsConnectorConfigKeys.SQS_MESSAGE_ID.getValue(), message.getMessageId());
+      sourceOffset.put(SqsConnectorConfigKeys.SQS_MESSAGE_RECEIPT_HANDLE.getValue(), message.getReceiptHandle());
+
+      final ConnectHeaders headers = new ConnectHeaders();
+      if (config.getMessageAttributesEnabled()) {
+        Map<String, MessageAttributeValue> attributes = message.getMessageAttributes();
+        for (String attributeKey : attributes.keySet()) {
+          MessageAttributeValue attrValue = attributes.get(attributeKey);
+          if (attrValue.getDataType().equals("String")) {
+            headers.add(attributeKey, new SchemaAndValue(Schema.STRING_SCHEMA, attrValue.getStringValue()));
+          }
+        }
+      }
+
+      return new SourceRecord(sourcePartition, sourceOffset, config.getTopics(), null, Schema.STRING_SCHEMA,
+          legacyPartitionKey(message), Schema.STRING_SCHEMA, message.getBody(), null, headers);
+    }).collect(Collectors.toList());
+  }
+
+  private String legacyPartitionKey(final Message message) {
+    if (!config.getMessageAttributesEnabled() || config.getMessageAttributePartitionKey().isEmpty()) {
+      return message.getMessageId();
+    }
+    for (String attributeKey : message.getMessageAttributes().keySet()) {
+      if (!Objects.equals(attributeKey, config.getMessageAttributePartitionKey())) {
+        continue;
+      }
+      MessageAttributeValue attrValue = message.getMessageAttributes().get(attributeKey);
+      if (!attrValue.getDataType().equals("String")) {
+        continue;
+      }
+      return attrValue.getStringValue();
+    }
+    return message.getMessageId();
+  }
+}
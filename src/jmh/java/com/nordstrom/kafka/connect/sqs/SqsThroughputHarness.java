@@ -0,0 +1,445 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.apache.kafka.connect.sink.SinkTaskContext;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.apache.kafka.connect.source.SourceTaskContext;
+import org.apache.kafka.connect.storage.OffsetStorageReader;
+
+/**
+ * Runs {@link SqsSinkConnectorTask} and {@link SqsSourceConnectorTask} end to
+ * end against {@link InMemorySqs}: a producer thread puts numbered records
+ * into the sink task while the source task polls them back out of the same
+ * queue, committing each record as the worker would. Like the worker, it
+ * redelivers the records of a put that failed, honors rewinds, pauses and
+ * timeouts requested through the sink task context, and waits for every
+ * record to be committed before closing the sink task. Reports sink and
+ * end-to-end throughput, send-to-poll latency percentiles, the number of
+ * duplicate, missing and, per key, out-of-order records, and the receives
+ * and polls made.
+ * <p>
+ * Options are {@code key=value} arguments:
+ * <ul>
+ * <li>{@code messages} (100000), {@code payload.bytes} (512), {@code put.size} (500),
+ * {@code partitions} (8), {@code keys} (64): records, body size, records per put,
+ * topic partitions and distinct record keys, i.e. FIFO message groups.</li>
+ * <li>{@code fifo} (false): use a FIFO queue.</li>
+ * <li>{@code sink.mode} (batch): {@code sync}, {@code batch} or {@code async} sends.</li>
+ * <li>{@code latency.ms} (0), {@code jitter.ms} (0), {@code calls.per.second} (0):
+ * injected SQS latency and throttling, see {@link InMemorySqs#configure}.</li>
+ * <li>{@code poll.overhead.ms} (0): pause after every poll that returns records,
+ * as the worker spends converting and sending a batch of records.</li>
+ * <li>{@code timeout.s} (60): give up waiting for missing records.</li>
+ * <li>Any {@code sqs.*} connector property, passed to both tasks, e.g.
+ * {@code sqs.receiver.threads=4}. With {@code sqs.message.body.format=bytes}
+ * the records carry {@code byte[]} values.</li>
+ * </ul>
+ */
+public final class SqsThroughputHarness {
+  private static final String TOPIC = "harness";
+  private static final long COMMIT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  // Pause before retrying a failed put or poll, as the worker would before restarting the task.
+  private static final long RETRY_BACKOFF_MS = 100;
+
+  private final AtomicLong putFailures = new AtomicLong();
+  private long pollFailures;
+
+  private final Map<String, String> options = new HashMap<>();
+  private final Map<String, String> connectorProps = new HashMap<>();
+
+  private SqsThroughputHarness(final String[] args) {
+    for (final String arg : args) {
+      final int eq = arg.indexOf('=');
+      if (eq < 1) {
+        throw new IllegalArgumentException("Expected key=value: " + arg);
+      }
+      final String key = arg.substring(0, eq);
+      (key.startsWith("sqs.") ? connectorProps : options).put(key, arg.substring(eq + 1));
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    new SqsThroughputHarness(args).run();
+    System.exit(0);
+  }
+
+  private long option(final String key, final long defaultValue) {
+    return options.containsKey(key) ? Long.parseLong(options.get(key)) : defaultValue;
+  }
+
+  private void run() throws Exception {
+    final int messages = (int) option("messages", 100000);
+    final int payloadBytes = (int) option("payload.bytes", 512);
+    final int putSize = (int) option("put.size", 500);
+    final int partitions = (int) option("partitions", 8);
+    final int keys = (int) option("keys", 64);
+    final boolean fifo = Boolean.parseBoolean(options.getOrDefault("fifo", "false"));
+    final String sinkMode = options.getOrDefault("sink.mode", "batch");
+    final long timeoutNanos = TimeUnit.SECONDS.toNanos(option("timeout.s", 60));
+    final long pollOverheadMs = option("poll.overhead.ms", 0);
+    final String url = InMemorySqs.queueUrl(fifo ? TOPIC + ".fifo" : TOPIC);
+    final boolean binary = "bytes".equals(connectorProps.get(SqsConnectorConfigKeys.SQS_MESSAGE_BODY_FORMAT.getValue()));
+
+    final InMemorySqs sqs = InMemorySqs.shared();
+    sqs.reset();
+    sqs.configure(option("latency.ms", 0), option("jitter.ms", 0), option("calls.per.second", 0));
+    SqsClientPool.setClientFactory(new InMemorySqsClientFactory());
+
+    final SqsSinkConnectorTask sink = new SqsSinkConnectorTask();
+    final HarnessSinkTaskContext sinkContext = new HarnessSinkTaskContext(partitions);
+    sink.initialize(sinkContext);
+    final Map<String, String> sinkProps = taskProps(url, "harness-sink");
+    sinkProps.put(SqsConnectorConfigKeys.SQS_SEND_BATCH_ENABLED.getValue(), Boolean.toString(!"sync".equals(sinkMode)));
+    sinkProps.put(SqsConnectorConfigKeys.SQS_SEND_ASYNC_ENABLED.getValue(), Boolean.toString("async".equals(sinkMode)));
+    sinkProps.putAll(connectorProps);
+    sink.start(sinkProps);
+
+    final SqsSourceConnectorTask source = new SqsSourceConnectorTask();
+    source.initialize(new HarnessSourceTaskContext());
+    final Map<String, String> sourceProps = taskProps(url, "harness-source");
+    sourceProps.putAll(connectorProps);
+    source.start(sourceProps);
+
+    System.out.printf("messages=%d payload.bytes=%d fifo=%s sink.mode=%s latency.ms=%d jitter.ms=%d "
+        + "calls.per.second=%d poll.overhead.ms=%d %s%n", messages, payloadBytes, fifo, sinkMode,
+        option("latency.ms", 0), option("jitter.ms", 0), option("calls.per.second", 0), pollOverheadMs,
+        connectorProps);
+
+    final String padding = Payloads.body(payloadBytes, 0);
+    final AtomicLong sinkNanos = new AtomicLong();
+    final AtomicReference<Throwable> sinkFailure = new AtomicReference<>();
+    final long start = System.nanoTime();
+    final Thread producer = new Thread(() -> {
+      try {
+        produce(sink, sinkContext, messages, putSize, partitions, keys, padding, binary, putFailures,
+            timeoutNanos);
+        sinkNanos.set(System.nanoTime() - start);
+      } catch (final Throwable e) {
+        sinkFailure.set(e);
+      }
+    }, "harness-producer");
+    producer.start();
+
+    final BitSet seen = new BitSet(messages);
+    final long[] latencies = new long[messages];
+    // Records of a key are one message group; the sink must keep them in order.
+    final int[] lastSeq = new int[keys];
+    Arrays.fill(lastSeq, -1);
+    int received = 0;
+    long duplicates = 0;
+    long outOfOrder = 0;
+    long polls = 0;
+    long lastCommit = System.nanoTime();
+    long now = lastCommit;
+    while (received < messages && now - start < timeoutNanos && sinkFailure.get() == null) {
+      final List<SourceRecord> records = poll(source);
+      now = System.nanoTime();
+      if (records != null && !records.isEmpty()) {
+        polls++;
+        if (pollOverheadMs > 0) {
+          Thread.sleep(pollOverheadMs);
+        }
+        for (final SourceRecord record : records) {
+          final String value = binary ? new String((byte[]) record.value(), StandardCharsets.UTF_8)
+              : (String) record.value();
+          final int first = value.indexOf(':');
+          final int seq = Integer.parseInt(value.substring(0, first));
+          if (seen.get(seq)) {
+            duplicates++;
+          } else {
+            seen.set(seq);
+            if (seq < lastSeq[seq % keys]) {
+              outOfOrder++;
+            }
+            lastSeq[seq % keys] = Math.max(lastSeq[seq % keys], seq);
+            latencies[received++] = now - Long.parseLong(value.substring(first + 1, value.indexOf(':', first + 1)));
+          }
+          source.commitRecord(record, null);
+        }
+      }
+      if (now - lastCommit >= COMMIT_INTERVAL_NANOS) {
+        source.commit();
+        lastCommit = now;
+      }
+    }
+    final long endToEndNanos = System.nanoTime() - start;
+    source.commit();
+    producer.join(TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+    source.stop();
+    sink.stop();
+
+    if (sinkFailure.get() != null) {
+      System.out.println("sink failed: " + sinkFailure.get());
+    }
+    final long[] sorted = Arrays.copyOf(latencies, received);
+    Arrays.sort(sorted);
+    System.out.printf("received=%d duplicates=%d missing=%d out-of-order=%d%n", received, duplicates,
+        messages - received, outOfOrder);
+    System.out.printf("sink: %.0f msgs/s in %.2f s%n", rate(messages, sinkNanos.get()), seconds(sinkNanos.get()));
+    System.out.printf("end-to-end: %.0f msgs/s in %.2f s%n", rate(received, endToEndNanos), seconds(endToEndNanos));
+    System.out.printf("latency ms: p50=%.1f p99=%.1f max=%.1f%n", millis(percentile(sorted, 0.50)),
+        millis(percentile(sorted, 0.99)), millis(percentile(sorted, 1.0)));
+    System.out.printf("sqs: sent=%d redelivered=%d throttled=%d, put failures=%d, rewinds=%d, poll failures=%d%n",
+        sqs.getSent(url), sqs.getRedelivered(url), sqs.getThrottled(), putFailures.get(), sinkContext.rewinds,
+        pollFailures);
+    System.out.printf("receives=%d empty=%d messages/receive=%.2f%n", sqs.getReceives(url), sqs.getEmptyReceives(url),
+        (double) received / Math.max(1, sqs.getReceives(url)));
+    System.out.printf("polls=%d records/poll=%.2f%n", polls, (double) received / Math.max(1, polls));
+  }
+
+  private Map<String, String> taskProps(final String url, final String name) {
+    final Map<String, String> props = new HashMap<>();
+    props.put(SqsConnectorConfigKeys.CONNECTOR_NAME.getValue(), name);
+    props.put(SqsConnectorConfigKeys.TASK_ID.getValue(), "0");
+    props.put(SqsConnectorConfigKeys.TOPICS.getValue(), TOPIC);
+    props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), url);
+    props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+    props.put(SqsConnectorConfigKeys.SQS_MAX_MESSAGES.getValue(), "10");
+    return props;
+  }
+
+  private List<SourceRecord> poll(final SqsSourceConnectorTask source) throws InterruptedException {
+    try {
+      return source.poll();
+    } catch (final RuntimeException e) {
+      if (pollFailures++ == 0) {
+        System.out.println("poll failed, retrying: " + e);
+      }
+      Thread.sleep(RETRY_BACKOFF_MS);
+      return null;
+    }
+  }
+
+  /**
+   * Put the records as a worker would, with a preCommit after every put. A
+   * put that fails is retried with the same records, rewound partitions are
+   * delivered again from the requested offset, and while the partitions are
+   * paused only empty puts are made. Each value starts with
+   * {@code <sequence>:<send time in nanos>:}, and is binary when the source
+   * reads {@code sqs.message.body.format=bytes}.
+   */
+  private static void produce(final SqsSinkConnectorTask sink, final HarnessSinkTaskContext context,
+      final int messages, final int putSize, final int partitions, final int keys, final String padding,
+      final boolean binary, final AtomicLong putFailures, final long timeoutNanos) throws InterruptedException {
+    // Every record put so far per partition, indexed by offset, for rewinds.
+    final List<List<SinkRecord>> partitionLogs = new ArrayList<>(partitions);
+    for (int partition = 0; partition < partitions; partition++) {
+      partitionLogs.add(new ArrayList<>(messages / partitions + 1));
+    }
+    final Deque<SinkRecord> redeliveries = new ArrayDeque<>();
+    final Map<TopicPartition, OffsetAndMetadata> currentOffsets = new HashMap<>();
+    final long deadline = System.nanoTime() + timeoutNanos;
+    int seq = 0;
+    while (System.nanoTime() - deadline < 0) {
+      for (final Map.Entry<TopicPartition, Long> rewind : context.takeOffsets().entrySet()) {
+        final int partition = rewind.getKey().partition();
+        final List<SinkRecord> partitionLog = partitionLogs.get(partition);
+        redeliveries.removeIf(record -> record.kafkaPartition() == partition);
+        redeliveries.addAll(partitionLog.subList((int) (long) rewind.getValue(), partitionLog.size()));
+        currentOffsets.put(rewind.getKey(), new OffsetAndMetadata(rewind.getValue()));
+      }
+      final List<SinkRecord> records = new ArrayList<>(putSize);
+      if (!context.paused) {
+        while (records.size() < putSize && !redeliveries.isEmpty()) {
+          records.add(redeliveries.poll());
+        }
+        for (; records.size() < putSize && seq < messages; seq++) {
+          final int partition = seq % partitions;
+          final String value = seq + ":" + System.nanoTime() + ":" + padding;
+          final List<SinkRecord> partitionLog = partitionLogs.get(partition);
+          final SinkRecord record = new SinkRecord(TOPIC, partition, Schema.STRING_SCHEMA, "key-" + (seq % keys),
+              binary ? Schema.BYTES_SCHEMA : Schema.STRING_SCHEMA,
+              binary ? value.getBytes(StandardCharsets.UTF_8) : value, partitionLog.size());
+          partitionLog.add(record);
+          records.add(record);
+        }
+      }
+      if (records.isEmpty() && seq == messages && redeliveries.isEmpty() && !context.paused
+          && committed(sink, currentOffsets)) {
+        break;
+      }
+      for (final SinkRecord record : records) {
+        currentOffsets.put(new TopicPartition(TOPIC, record.kafkaPartition()),
+            new OffsetAndMetadata(record.kafkaOffset() + 1));
+      }
+      while (true) {
+        try {
+          sink.put(records);
+          sink.preCommit(currentOffsets);
+          break;
+        } catch (final RuntimeException e) {
+          if (putFailures.getAndIncrement() == 0) {
+            System.out.println("put failed, retrying: " + e);
+          }
+          Thread.sleep(context.takeTimeout(RETRY_BACKOFF_MS));
+        }
+      }
+      if (records.isEmpty()) {
+        Thread.sleep(Math.min(context.takeTimeout(10), 10));
+      }
+    }
+    sink.close(currentOffsets.keySet());
+  }
+
+  /**
+   * @return true once the sink task would let the worker commit every record put so far.
+   */
+  private static boolean committed(final SqsSinkConnectorTask sink,
+      final Map<TopicPartition, OffsetAndMetadata> currentOffsets) {
+    final Map<TopicPartition, OffsetAndMetadata> committable = sink.preCommit(currentOffsets);
+    for (final Map.Entry<TopicPartition, OffsetAndMetadata> offset : currentOffsets.entrySet()) {
+      final OffsetAndMetadata done = committable.get(offset.getKey());
+      if (done == null || done.offset() < offset.getValue().offset()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long percentile(final long[] sorted, final double quantile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+  }
+
+  private static double rate(final long count, final long nanos) {
+    return nanos == 0 ? 0 : count * 1e9 / nanos;
+  }
+
+  private static double seconds(final long nanos) {
+    return nanos / 1e9;
+  }
+
+  private static double millis(final long nanos) {
+    return nanos / 1e6;
+  }
+
+  private static final class HarnessSinkTaskContext implements SinkTaskContext {
+    private final Set<TopicPartition> assignment = new HashSet<>();
+    private final Map<TopicPartition, Long> offsets = new HashMap<>();
+    private long timeoutMs = -1;
+    private boolean paused;
+    private long rewinds;
+
+    HarnessSinkTaskContext(final int partitions) {
+      for (int partition = 0; partition < partitions; partition++) {
+        assignment.add(new TopicPartition(TOPIC, partition));
+      }
+    }
+
+    @Override
+    public Map<String, String> configs() {
+      return new HashMap<>();
+    }
+
+    @Override
+    public void offset(final Map<TopicPartition, Long> offsets) {
+      this.offsets.putAll(offsets);
+    }
+
+    @Override
+    public void offset(final TopicPartition tp, final long offset) {
+      offsets.put(tp, offset);
+    }
+
+    Map<TopicPartition, Long> takeOffsets() {
+      if (offsets.isEmpty()) {
+        return Collections.emptyMap();
+      }
+      rewinds++;
+      final Map<TopicPartition, Long> taken = new HashMap<>(offsets);
+      offsets.clear();
+      return taken;
+    }
+
+    @Override
+    public void timeout(final long timeoutMs) {
+      this.timeoutMs = timeoutMs;
+    }
+
+    long takeTimeout(final long defaultMs) {
+      final long taken = timeoutMs < 0 ? defaultMs : timeoutMs;
+      timeoutMs = -1;
+      return taken;
+    }
+
+    @Override
+    public Set<TopicPartition> assignment() {
+      return assignment;
+    }
+
+    @Override
+    public void pause(final TopicPartition... partitions) {
+      paused = true;
+    }
+
+    @Override
+    public void resume(final TopicPartition... partitions) {
+      paused = false;
+    }
+
+    @Override
+    public void requestCommit() {
+    }
+  }
+
+  private static final class HarnessSourceTaskContext implements SourceTaskContext {
+    @Override
+    public Map<String, String> configs() {
+      return new HashMap<>();
+    }
+
+    @Override
+    public OffsetStorageReader offsetStorageReader() {
+      // Every task starts without committed offsets.
+      return new OffsetStorageReader() {
+        @Override
+        public <T> Map<String, Object> offset(final Map<String, T> partition) {
+          return null;
+        }
+
+        @Override
+        public <T> Map<Map<String, T>, Map<String, Object>> offsets(final Collection<Map<String, T>> partitions) {
+          return new HashMap<>();
+        }
+      };
+    }
+  }
+}
@@ -4,6 +4,7 @@ import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.STSAssumeRoleSessionCredentialsProvider;
 import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClientBuilder;
 import com.nordstrom.kafka.connect.sqs.SqsConnectorConfigKeys;
 import com.nordstrom.kafka.connect.utils.StringUtils;
@@ -11,9 +12,15 @@ import org.apache.kafka.common.Configurable;
 //import org.slf4j.Logger;
 //import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class AWSAssumeRoleCredentialsProvider implements AWSCredentialsProvider, Configurable {
+public class AWSAssumeRoleCredentialsProvider implements AWSCredentialsProvider, Configurable, Closeable {
   //NB: uncomment slf4j imports and field declaration to enable logging.
 //  private static final Logger log = LoggerFactory.getLogger(AWSAssumeRoleCredentialsProvider.class);
 
@@ -21,11 +28,23 @@ public class AWSAssumeRoleCredentialsProvider implements AWSCredentialsProvider,
   public static final String ROLE_ARN_CONFIG = "role.arn";
   public static final String SESSION_NAME_CONFIG = "session.name";
 
+  // Session providers shared by every connector in the worker that assumes the same role with the same
+  // settings. Each one owns a single STS client and caches its session credentials, refreshing them on
+  // the shared executor before they expire. A session is closed when the last provider using it is.
+  private static final Map<List<String>, Session> SESSIONS = new HashMap<>();
+  private static final ExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "sqs-sts-credentials-refresh");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   private String externalId;
   private String roleArn;
   private String sessionName;
   private String region;
   private String endpointUrl;
+  private volatile Session session;
+
   @Override
   public void configure(Map<String, ?> map) {
     externalId = getOptionalField(map, EXTERNAL_ID_CONFIG);
@@ -33,10 +52,43 @@ public class AWSAssumeRoleCredentialsProvider implements AWSCredentialsProvider,
     sessionName = getRequiredField(map, SESSION_NAME_CONFIG);
     region = getRequiredField(map, SqsConnectorConfigKeys.SQS_REGION.getValue());
     endpointUrl = getOptionalField(map, SqsConnectorConfigKeys.SQS_ENDPOINT_URL.getValue());
+    final List<String> key = Arrays.asList(roleArn, sessionName, externalId, region, endpointUrl);
+    synchronized (SESSIONS) {
+      close();
+      session = SESSIONS.computeIfAbsent(key, k -> newSession(k));
+      session.references++;
+    }
   }
 
+  /**
+   * Release the shared session. The last provider to release a session shuts
+   * down its STS client.
+   */
   @Override
-  public AWSCredentials getCredentials() {
+  public void close() {
+    synchronized (SESSIONS) {
+      if (session == null) {
+        return;
+      }
+      if (--session.references == 0) {
+        SESSIONS.remove(session.key);
+        session.provider.close();
+        session.stsClient.shutdown();
+      }
+      session = null;
+    }
+  }
+
+  /**
+   * @return The number of sessions open in the worker. For tests.
+   */
+  static int openSessions() {
+    synchronized (SESSIONS) {
+      return SESSIONS.size();
+    }
+  }
+
+  private Session newSession(final List<String> key) {
     AWSSecurityTokenServiceClientBuilder clientBuilder = null;
     if(StringUtils.isBlank(endpointUrl))
       clientBuilder = AWSSecurityTokenServiceClientBuilder.standard()
@@ -45,17 +97,31 @@ public class AWSAssumeRoleCredentialsProvider implements AWSCredentialsProvider,
       clientBuilder = AWSSecurityTokenServiceClientBuilder.standard()
               .withEndpointConfiguration(new EndpointConfiguration(endpointUrl, region));
 
-    AWSCredentialsProvider provider = new STSAssumeRoleSessionCredentialsProvider.Builder(roleArn, sessionName)
-        .withStsClient(clientBuilder.build())
+    final AWSSecurityTokenService stsClient = clientBuilder.build();
+    return new Session(key, stsClient, new STSAssumeRoleSessionCredentialsProvider.Builder(roleArn, sessionName)
+        .withStsClient(stsClient)
         .withExternalId(externalId)
-        .build();
+        .withAsyncRefreshExecutor(REFRESH_EXECUTOR)
+        .build());
+  }
 
-    return provider.getCredentials();
+  @Override
+  public AWSCredentials getCredentials() {
+    // Served from the session cache; only calls STS when the session is about to expire.
+    return session().getCredentials();
   }
 
   @Override
   public void refresh() {
-    //Nothing to do really, since we are assuming a role.
+    session().refresh();
+  }
+
+  private STSAssumeRoleSessionCredentialsProvider session() {
+    final Session current = session;
+    if (current == null) {
+      throw new IllegalStateException("The credentials provider is not configured or was closed");
+    }
+    return current.provider;
   }
 
   private String getOptionalField(final Map<String, ?> map, final String fieldName) {
@@ -95,4 +161,22 @@ public class AWSAssumeRoleCredentialsProvider implements AWSCredentialsProvider,
     }
   }
 
+  /**
+   * A session provider with the STS client it owns and the number of
+   * providers using it. Guarded by {@link #SESSIONS}.
+   */
+  private static final class Session {
+    private final List<String> key;
+    private final AWSSecurityTokenService stsClient;
+    private final STSAssumeRoleSessionCredentialsProvider provider;
+    private int references = 0;
+
+    private Session(final List<String> key, final AWSSecurityTokenService stsClient,
+        final STSAssumeRoleSessionCredentialsProvider provider) {
+      this.key = key;
+      this.stsClient = stsClient;
+      this.provider = provider;
+    }
+  }
+
 }
@@ -11,12 +11,11 @@ public class AWSUserCredentialsProvider implements AWSCredentialsProvider, Confi
     private static final String AWS_ACCESS_KEY_ID = "accessKeyId";
     private static final String AWS_SECRET_ACCESS_KEY = "secretKey";
 
-    private String awsAccessKeyId;
-    private String awsSecretKey;
+    private AWSCredentials credentials;
 
     @Override
     public AWSCredentials getCredentials() {
-        return new BasicAWSCredentials(awsAccessKeyId, awsSecretKey);
+        return credentials;
     }
 
     @Override
@@ -24,8 +23,8 @@ public class AWSUserCredentialsProvider implements AWSCredentialsProvider, Confi
 
     @Override
     public void configure(Map<String, ?> map) {
-        awsAccessKeyId = getRequiredField(map, AWS_ACCESS_KEY_ID);
-        awsSecretKey = getRequiredField(map, AWS_SECRET_ACCESS_KEY);
+        credentials = new BasicAWSCredentials(getRequiredField(map, AWS_ACCESS_KEY_ID),
+            getRequiredField(map, AWS_SECRET_ACCESS_KEY));
     }
 
     private String getRequiredField(final Map<String, ?> map, final String fieldName) {
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.RetriableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+/**
+ * Sends messages to a single SQS queue with the asynchronous SQS client,
+ * keeping a bounded number of requests in flight. Acknowledged records are
+ * reported to an {@link SqsOffsetTracker}. Messages that fail with a
+ * throttling or transient error are resent after a backoff, at a rate the
+ * {@link SqsSendRateLimiter} allows; messages that fail for good are handed
+ * to the errant record reporter if there is one, and otherwise the first of
+ * them is kept as the failure that the task surfaces on its next call. It is
+ * a {@link RetriableException} when the message only ran out of retries.
+ * <p>
+ * For a FIFO queue the requests in flight are lanes: messages are assigned
+ * to a lane by message group and each lane has a single request in flight,
+ * so messages of a group are sent in order while different groups are sent
+ * in parallel. A batch holds at most one message per group, and its failed
+ * messages are resent before the lane moves on. Once a message runs out of
+ * retries, the lanes stop sending until the task has rewound, so that no
+ * later message of its group is accepted ahead of it.
+ */
+public class SqsAsyncSender {
+  private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private final SqsClient client;
+  private final String url;
+  private final boolean fifo;
+  private final SqsSendRetry retry;
+  private final SqsSendRateLimiter limiter;
+  private final boolean batchEnabled;
+  private final SqsOffsetTracker tracker;
+  private final SqsQueueMetrics metrics;
+  private final Semaphore[] lanes;
+  private final int permitsPerLane;
+  private final AtomicReference<ConnectException> failure = new AtomicReference<>();
+
+  /**
+   * @param client      SQS client.
+   * @param url         SQS queue url.
+   * @param fifo        Whether the queue is a FIFO queue.
+   * @param maxInFlight Maximum number of requests awaiting a response; for a FIFO queue the number of lanes.
+   * @param batch       Whether to pack messages into SendMessageBatch requests.
+   * @param retry       Decides which failed messages are resent and when.
+   * @param limiter     Paces the requests to the queue.
+   * @param tracker     Notified of every acknowledged record.
+   * @param metrics     Records retried, throttled and failed messages.
+   */
+  public SqsAsyncSender(final SqsClient client, final String url, final boolean fifo, final int maxInFlight,
+      final boolean batch, final SqsSendRetry retry, final SqsSendRateLimiter limiter, final SqsOffsetTracker tracker,
+      final SqsQueueMetrics metrics) {
+    Guard.verifyNotNull(client, "client");
+    Guard.verifyValidUrl(url);
+    Guard.verifyInRange(maxInFlight, 1, Integer.MAX_VALUE, SqsConnectorConfigKeys.SQS_SEND_MAX_IN_FLIGHT.getValue());
+    this.client = client;
+    this.url = url;
+    this.fifo = fifo;
+    this.batchEnabled = batch;
+    this.retry = retry;
+    this.limiter = limiter;
+    this.tracker = tracker;
+    this.metrics = metrics;
+    this.lanes = new Semaphore[fifo ? maxInFlight : 1];
+    this.permitsPerLane = fifo ? 1 : maxInFlight;
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new Semaphore(permitsPerLane);
+    }
+  }
+
+  /**
+   * Start sending the messages, blocking only while the maximum number of
+   * requests is already in flight.
+   *
+   * @param entries Messages to send; their records must already be registered with the tracker.
+   * @throws InterruptedException if interrupted while waiting for a free slot.
+   */
+  public void send(final List<SqsSendEntry> entries) throws InterruptedException {
+    final List<List<SqsSendEntry>> laneEntries = byLane(entries);
+    if (batchEnabled) {
+      final List<SqsSendEntry> oversize = new ArrayList<>(0);
+      final List<List<List<SqsSendEntry>>> laneBatches = new ArrayList<>(lanes.length);
+      for (final List<SqsSendEntry> lane : laneEntries) {
+        laneBatches.add(SqsSendBatcher.pack(lane, fifo, oversize));
+      }
+      // Take turns between the lanes so that each gets a request in flight early.
+      for (int turn = 0, sent = -1; sent != 0; turn++) {
+        sent = 0;
+        for (int i = 0; i < lanes.length; i++) {
+          if (turn < laneBatches.get(i).size()) {
+            lanes[i].acquire();
+            if (halted(lanes[i])) {
+              continue;
+            }
+            limiter.acquire();
+            sendBatch(laneBatches.get(i).get(turn), lanes[i]);
+            sent++;
+          }
+        }
+      }
+      for (final SqsSendEntry entry : oversize) {
+        fail(entry, SqsSendRetry.ErrorKind.PERMANENT,
+            "message of " + entry.getPayloadSize() + " bytes exceeds the SQS limit", null);
+      }
+    } else {
+      for (int turn = 0, sent = -1; sent != 0; turn++) {
+        sent = 0;
+        for (int i = 0; i < lanes.length; i++) {
+          if (turn < laneEntries.get(i).size()) {
+            lanes[i].acquire();
+            if (halted(lanes[i])) {
+              continue;
+            }
+            limiter.acquire();
+            sendOne(laneEntries.get(i).get(turn), lanes[i]);
+            sent++;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * For a FIFO queue, whether sending stopped because a message failed for
+   * good. The messages that are not sent stay unacknowledged, so the rewind
+   * that follows the failure sends them again after the failed one.
+   *
+   * @param permit The permit just acquired, released if sending stopped.
+   */
+  private boolean halted(final Semaphore permit) {
+    if (!fifo || failure.get() == null) {
+      return false;
+    }
+    permit.release();
+    return true;
+  }
+
+  /**
+   * Split the messages by lane, keeping their order within each lane.
+   */
+  private List<List<SqsSendEntry>> byLane(final List<SqsSendEntry> entries) {
+    if (lanes.length == 1) {
+      return Collections.singletonList(entries);
+    }
+    final List<List<SqsSendEntry>> laneEntries = new ArrayList<>(lanes.length);
+    for (int i = 0; i < lanes.length; i++) {
+      laneEntries.add(new ArrayList<>(entries.size() / lanes.length + 1));
+    }
+    for (final SqsSendEntry entry : entries) {
+      laneEntries.get(Math.floorMod(entry.getGroupId().hashCode(), lanes.length)).add(entry);
+    }
+    return laneEntries;
+  }
+
+  /**
+   * Wait until every request has completed.
+   *
+   * @param timeoutMs Maximum time to wait.
+   * @return true if nothing is left in flight.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean awaitIdle(final long timeoutMs) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    for (final Semaphore lane : lanes) {
+      if (!lane.tryAcquire(permitsPerLane, deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+      lane.release(permitsPerLane);
+    }
+    return true;
+  }
+
+  /**
+   * @return The first message that could not be sent, or null.
+   */
+  public ConnectException getFailure() {
+    return failure.get();
+  }
+
+  /**
+   * Forget the failure once the records it covers are dealt with.
+   */
+  public void clearFailure() {
+    failure.set(null);
+  }
+
+  /**
+   * @return Milliseconds until the backoff of the last throttled request ends, 0 if it has.
+   */
+  public long throttledForMs() {
+    return limiter.throttledForMs();
+  }
+
+  /**
+   * Send a batch while holding one permit. Failed entries are resent under the
+   * same permit, so it is released only once every entry is settled.
+   */
+  private void sendBatch(final List<SqsSendEntry> batch, final Semaphore permit) {
+    final List<SendMessageBatchRequestEntry> requestEntries = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      final SqsSendEntry entry = batch.get(i);
+      if (entry.attempt() > 1) {
+        metrics.recordSendRetry();
+      }
+      requestEntries.add(entry.getEntry().withId(Integer.toString(i)));
+    }
+
+    try {
+      client.sendBatchAsync(url, requestEntries,
+          new AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult>() {
+            @Override
+            public void onError(final Exception e) {
+              final SqsSendRetry.ErrorKind kind = SqsSendRetry.classify(e);
+              if (kind == SqsSendRetry.ErrorKind.THROTTLED) {
+                throttled(batch.get(0));
+              }
+              final List<SqsSendEntry> retries = new ArrayList<>(batch.size());
+              for (final SqsSendEntry entry : batch) {
+                if (retry.canRetry(kind, entry)) {
+                  retries.add(entry);
+                } else {
+                  fail(entry, kind, "request failed", e);
+                }
+              }
+              settle(retries, permit);
+            }
+
+            @Override
+            public void onSuccess(final SendMessageBatchRequest request, final SendMessageBatchResult result) {
+              final List<SqsSendEntry> retries = new ArrayList<>(result.getFailed().size());
+              final BatchResultErrorEntry[] errors = new BatchResultErrorEntry[batch.size()];
+              boolean throttled = false;
+              for (final BatchResultErrorEntry error : result.getFailed()) {
+                errors[Integer.parseInt(error.getId())] = error;
+                throttled |= SqsSendRetry.classify(error) == SqsSendRetry.ErrorKind.THROTTLED;
+              }
+              if (throttled) {
+                throttled(batch.get(0));
+              } else {
+                limiter.onSuccess();
+              }
+              for (int i = 0; i < batch.size(); i++) {
+                final SqsSendEntry entry = batch.get(i);
+                final BatchResultErrorEntry error = errors[i];
+                if (error == null) {
+                  tracker.acknowledged(entry.getRecord());
+                } else if (retry.canRetry(SqsSendRetry.classify(error), entry)) {
+                  retries.add(entry);
+                } else {
+                  fail(entry, SqsSendRetry.classify(error), error.getCode() + ": " + error.getMessage(), null);
+                }
+              }
+              settle(retries, permit);
+            }
+          });
+    } catch (final RuntimeException e) {
+      for (final SqsSendEntry entry : batch) {
+        fail(entry, SqsSendRetry.classify(e), "request could not be submitted", e);
+      }
+      permit.release();
+    }
+  }
+
+  private void settle(final List<SqsSendEntry> retries, final Semaphore permit) {
+    if (retries.isEmpty()) {
+      permit.release();
+    } else {
+      final long delayMs = delayMs(retries.get(0));
+      log.debug(".send-batch-async:resending {} entries in {} ms, queue={}", retries.size(), delayMs, url);
+      resend(() -> sendBatch(retries, permit), delayMs, retries, permit);
+    }
+  }
+
+  /**
+   * @return The backoff before the next attempt, or the wait for the next request slot if longer.
+   */
+  private long delayMs(final SqsSendEntry entry) {
+    return Math.max(retry.backoffMs(entry.getAttempts()), TimeUnit.NANOSECONDS.toMillis(limiter.reserve()));
+  }
+
+  private void resend(final Runnable resend, final long delayMs, final List<SqsSendEntry> entries,
+      final Semaphore permit) {
+    try {
+      retry.schedule(resend, delayMs);
+    } catch (final RuntimeException e) {
+      // The task is stopping.
+      for (final SqsSendEntry entry : entries) {
+        fail(entry, SqsSendRetry.ErrorKind.TRANSIENT, "resend could not be scheduled", e);
+      }
+      permit.release();
+    }
+  }
+
+  private void throttled(final SqsSendEntry entry) {
+    metrics.recordSendThrottle();
+    limiter.onThrottle(retry.backoffMs(entry.getAttempts()));
+  }
+
+  /**
+   * Send a single message while holding one permit.
+   */
+  private void sendOne(final SqsSendEntry entry, final Semaphore permit) {
+    if (entry.attempt() > 1) {
+      metrics.recordSendRetry();
+    }
+    try {
+      client.sendAsync(url, entry.getEntry(), new AsyncHandler<SendMessageRequest, SendMessageResult>() {
+        @Override
+        public void onError(final Exception e) {
+          final SqsSendRetry.ErrorKind kind = SqsSendRetry.classify(e);
+          if (kind == SqsSendRetry.ErrorKind.THROTTLED) {
+            throttled(entry);
+          }
+          if (retry.canRetry(kind, entry)) {
+            resend(() -> sendOne(entry, permit), delayMs(entry), Collections.singletonList(entry), permit);
+          } else {
+            fail(entry, kind, "request failed", e);
+            permit.release();
+          }
+        }
+
+        @Override
+        public void onSuccess(final SendMessageRequest request, final SendMessageResult result) {
+          limiter.onSuccess();
+          tracker.acknowledged(entry.getRecord());
+          permit.release();
+        }
+      });
+    } catch (final RuntimeException e) {
+      fail(entry, SqsSendRetry.classify(e), "request could not be submitted", e);
+      permit.release();
+    }
+  }
+
+  /**
+   * Give up on a message. A permanent failure is reported as an errant record
+   * if possible, which counts as handled.
+   */
+  private void fail(final SqsSendEntry entry, final SqsSendRetry.ErrorKind kind, final String reason,
+      final Exception cause) {
+    final String message = String.format("Unable to send message %1$s-%2$s-%3$s to target url %4$s after %5$s attempts: %6$s",
+        entry.getRecord().topic(), entry.getRecord().kafkaPartition(), entry.getRecord().kafkaOffset(), url,
+        entry.getAttempts(), reason);
+    metrics.recordSendFailure();
+    if (kind == SqsSendRetry.ErrorKind.PERMANENT) {
+      final ConnectException e = new ConnectException(message, cause);
+      if (retry.report(entry.getRecord(), e)) {
+        log.warn("{}, reported as errant record", message);
+        tracker.acknowledged(entry.getRecord());
+        return;
+      }
+      log.error(message, cause);
+      failure.compareAndSet(null, e);
+    } else {
+      log.warn(message, cause);
+      failure.compareAndSet(null, new RetriableException(message, cause));
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+
+/**
+ * Samples the backlog of the connector's queues with
+ * {@code GetQueueAttributes}, publishes it per queue, and sizes the receivers
+ * of every task to it: one receiver per {@code sqs.backlog.messages.per.receiver}
+ * visible messages of the task's queues, between {@code sqs.receiver.threads}
+ * and {@code sqs.backlog.max.receiver.threads}. When the size of a task grows,
+ * or shrinks to half or less, the monitor asks for a task reconfiguration, at
+ * most once per {@code sqs.backlog.reconfigure.min.interval.ms}, since the
+ * worker restarts the tasks to apply it. Tasks configured before the first
+ * sample get the minimum, and are resized right after it.
+ */
+public class SqsBacklogMonitor implements AutoCloseable {
+  private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private static final List<String> ATTRIBUTE_NAMES = Arrays.asList(
+      QueueAttributeName.ApproximateNumberOfMessages.toString(),
+      QueueAttributeName.ApproximateNumberOfMessagesNotVisible.toString(),
+      QueueAttributeName.ApproximateNumberOfMessagesDelayed.toString());
+
+  private final SqsClient client;
+  private final Map<String, Backlog> backlogs = new LinkedHashMap<>();
+  private final int minReceivers;
+  private final int maxReceivers;
+  private final long messagesPerReceiver;
+  private final long minReconfigureIntervalNanos;
+  private final Runnable reconfigure;
+  private final Sensor reconfigurations;
+  private final Sensor sampleErrors;
+  private final ScheduledExecutorService scheduler;
+
+  // The task assignments of the last task configuration, the receivers each task was given, and when either
+  // they were given or a reconfiguration was last requested.
+  private List<List<String>> assignments;
+  private int[] applied;
+  private long lastReconfigureNanos;
+  // Whether a sample was taken, and whether the last assignment was made before it.
+  private boolean sampled;
+  private boolean assignedUnsampled;
+
+  /**
+   * @param client      SQS client.
+   * @param queueUrls   Queues of the connector.
+   * @param config      Connector configuration.
+   * @param metrics     Connector metrics registry.
+   * @param reconfigure Requests a task reconfiguration from the worker.
+   * @param threadName  Name of the sampling thread.
+   */
+  public SqsBacklogMonitor(final SqsClient client, final List<String> queueUrls,
+      final SqsSourceConnectorConfig config, final SqsMetrics metrics, final Runnable reconfigure,
+      final String threadName) {
+    Guard.verifyNotNull(client, "client");
+    Guard.verifyNotNull(reconfigure, "reconfigure");
+    this.client = client;
+    this.minReceivers = config.getReceiverThreads();
+    this.maxReceivers = Math.max(minReceivers, config.getBacklogMaxReceiverThreads());
+    this.messagesPerReceiver = config.getBacklogMessagesPerReceiver();
+    this.minReconfigureIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getBacklogReconfigureMinIntervalMs());
+    this.reconfigure = reconfigure;
+
+    for (final String url : queueUrls) {
+      final Backlog backlog = new Backlog();
+      backlogs.put(url, backlog);
+      final SqsMetrics queueMetrics = metrics.tagged("queue", SqsMetrics.queueName(url));
+      queueMetrics.gauge("approximate-messages", "The approximate number of messages available for retrieval.",
+          (metricConfig, now) -> backlog.visible);
+      queueMetrics.gauge("approximate-messages-not-visible",
+          "The approximate number of messages received but not yet deleted.", (metricConfig, now) -> backlog.notVisible);
+      queueMetrics.gauge("approximate-messages-delayed", "The approximate number of messages not yet available.",
+          (metricConfig, now) -> backlog.delayed);
+    }
+    reconfigurations = metrics.countSensor("task-reconfigurations", "task reconfigurations requested for the backlog.");
+    sampleErrors = metrics.countSensor("backlog-sample-errors", "queue attribute requests that failed.");
+
+    // Sample right away, but off the caller's thread: the requests must not hold up the connector's start.
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, threadName);
+      thread.setDaemon(true);
+      return thread;
+    });
+    final long periodMs = config.getBacklogMonitorIntervalMs();
+    scheduler.scheduleWithFixedDelay(this::run, 0, periodMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Record the queues of each task, and size their receivers to the latest
+   * backlog.
+   *
+   * @param assignments The queues of every task, in task order.
+   * @return The number of receivers of every task.
+   */
+  public synchronized int[] assign(final List<List<String>> assignments) {
+    this.assignments = assignments;
+    this.applied = receivers(assignments);
+    this.lastReconfigureNanos = System.nanoTime();
+    this.assignedUnsampled = !sampled;
+    log.info(".assign:receivers={}", Arrays.toString(applied));
+    return applied.clone();
+  }
+
+  private void run() {
+    try {
+      sample();
+      synchronized (this) {
+        sampled = true;
+      }
+      if (shouldReconfigure()) {
+        reconfigurations.record();
+        reconfigure.run();
+      }
+    } catch (final RuntimeException e) {
+      // Never let an exception cancel the schedule.
+      log.warn(".run:failed", e);
+    }
+  }
+
+  private void sample() {
+    for (final Map.Entry<String, Backlog> entry : backlogs.entrySet()) {
+      final Map<String, String> attributes;
+      try {
+        attributes = client.getQueueAttributes(entry.getKey(), ATTRIBUTE_NAMES);
+      } catch (final RuntimeException e) {
+        // The last sample stands until the next one succeeds.
+        sampleErrors.record();
+        log.warn(".sample:failed, queue={}, error={}", entry.getKey(), e.toString());
+        continue;
+      }
+      final Backlog backlog = entry.getValue();
+      backlog.visible = count(attributes, QueueAttributeName.ApproximateNumberOfMessages);
+      backlog.notVisible = count(attributes, QueueAttributeName.ApproximateNumberOfMessagesNotVisible);
+      backlog.delayed = count(attributes, QueueAttributeName.ApproximateNumberOfMessagesDelayed);
+      log.debug(".sample:queue={}, visible={}, not-visible={}, delayed={}", entry.getKey(), backlog.visible,
+          backlog.notVisible, backlog.delayed);
+    }
+  }
+
+  private static long count(final Map<String, String> attributes, final QueueAttributeName name) {
+    final String value = attributes.get(name.toString());
+    return value == null ? 0 : Long.parseLong(value);
+  }
+
+  private synchronized boolean shouldReconfigure() {
+    // Tasks configured before the first sample are resized as soon as it is in.
+    final boolean unsampled = assignedUnsampled;
+    assignedUnsampled = false;
+    if (assignments == null
+        || !unsampled && System.nanoTime() - lastReconfigureNanos < minReconfigureIntervalNanos) {
+      return false;
+    }
+    final int[] wanted = receivers(assignments);
+    for (int i = 0; i < wanted.length; i++) {
+      // Halving before shrinking keeps a backlog that hovers around a threshold from restarting the tasks.
+      if (wanted[i] > applied[i] || wanted[i] <= applied[i] / 2 && wanted[i] < applied[i]) {
+        log.info(".reconfigure:task={}, receivers={}, wanted={}", i, applied[i], wanted[i]);
+        // Until the worker asks for the task configurations again, do not ask for more than one reconfiguration.
+        lastReconfigureNanos = System.nanoTime();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A queue shared by several tasks counts for each of them in proportion.
+   */
+  private int[] receivers(final List<List<String>> assignments) {
+    final Map<String, Integer> sharers = new HashMap<>();
+    for (final List<String> queues : assignments) {
+      for (final String url : queues) {
+        sharers.merge(url, 1, Integer::sum);
+      }
+    }
+    final int[] receivers = new int[assignments.size()];
+    for (int i = 0; i < receivers.length; i++) {
+      double visible = 0;
+      for (final String url : assignments.get(i)) {
+        final Backlog backlog = backlogs.get(url);
+        visible += backlog == null ? 0 : (double) backlog.visible / sharers.get(url);
+      }
+      final long wanted = (long) Math.ceil(visible / messagesPerReceiver);
+      receivers[i] = (int) Math.max(minReceivers, Math.min(maxReceivers, wanted));
+    }
+    return receivers;
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  private static final class Backlog {
+    volatile long visible;
+    volatile long notVisible;
+    volatile long delayed;
+  }
+}
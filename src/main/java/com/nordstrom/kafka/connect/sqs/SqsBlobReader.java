@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.connect.errors.RetriableException;
+
+/**
+ * Reads message bodies back from an {@link SqsBlobStore} for the source
+ * connector. Blobs are streamed in chunks, and the most recently read ones
+ * are kept in a cache bounded by {@code sqs.blob.cache.max.bytes}, so that a
+ * redelivered message does not fetch its blob again. Thread-safe.
+ */
+public class SqsBlobReader {
+  private static final int CHUNK_SIZE = 16 * 1024;
+
+  private final SqsBlobStore store;
+  private final long cacheMaxBytes;
+  // Blob keys to bodies, least recently read first.
+  private final LinkedHashMap<String, String> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private long cacheBytes = 0;
+
+  /**
+   * @param store         The blob store.
+   * @param cacheMaxBytes Maximum total size of the cached bodies; 0 disables the cache.
+   */
+  public SqsBlobReader(final SqsBlobStore store, final long cacheMaxBytes) {
+    this.store = store;
+    this.cacheMaxBytes = cacheMaxBytes;
+  }
+
+  /**
+   * @param key      Blob key, the body of the pointer message.
+   * @param sizeHint Expected size of the blob in bytes, or 0 if unknown.
+   * @return The message body.
+   * @throws RetriableException If the blob could not be read; the message is redelivered once its visibility times out.
+   */
+  public String read(final String key, final int sizeHint) {
+    if (cacheMaxBytes > 0) {
+      synchronized (cache) {
+        final String body = cache.get(key);
+        if (body != null) {
+          return body;
+        }
+      }
+    }
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream(sizeHint > 0 ? sizeHint : CHUNK_SIZE);
+    final byte[] chunk = new byte[CHUNK_SIZE];
+    try (InputStream in = store.get(key)) {
+      int n;
+      while ((n = in.read(chunk)) != -1) {
+        buffer.write(chunk, 0, n);
+      }
+    } catch (final IOException e) {
+      throw new RetriableException("Failed to read blob " + key, e);
+    }
+    final String body = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+
+    if (cacheMaxBytes > 0 && buffer.size() <= cacheMaxBytes) {
+      synchronized (cache) {
+        // Sized as the evictions below size it, since decoding can change the size of invalid UTF-8.
+        final String previous = cache.put(key, body);
+        cacheBytes += SqsSendEntry.utf8Length(body) - SqsSendEntry.utf8Length(previous);
+        final Iterator<Map.Entry<String, String>> eldest = cache.entrySet().iterator();
+        while (cacheBytes > cacheMaxBytes && eldest.hasNext()) {
+          cacheBytes -= SqsSendEntry.utf8Length(eldest.next().getValue());
+          eldest.remove();
+        }
+      }
+    }
+    return body;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+
+/**
+ * Holds the bodies of messages too large for SQS, configured with
+ * {@code sqs.blob.store.class}. The sink connector writes such a body under a
+ * key and sends the key instead, marked with the {@link #ATTRIBUTE} message
+ * attribute; the source connector reads the body back. Implementations need a
+ * public no-argument constructor and must be thread-safe.
+ */
+public interface SqsBlobStore extends Closeable {
+  /**
+   * Message attribute marking a body as a blob key; its value is the size of the blob in bytes.
+   */
+  String ATTRIBUTE = "sqs-payload-blob";
+
+  /**
+   * Called once, before any other method.
+   *
+   * @param config              Connector configuration.
+   * @param credentialsProvider Credentials of the connector's SQS client.
+   */
+  void configure(SqsConnectorConfig config, AWSCredentialsProvider credentialsProvider);
+
+  /**
+   * Write a blob, replacing any blob with the same key.
+   *
+   * @param key     Blob key.
+   * @param payload Blob content.
+   * @throws IOException If the blob could not be written.
+   */
+  void put(String key, byte[] payload) throws IOException;
+
+  /**
+   * @param key Blob key.
+   * @return A stream of the blob content, which the caller closes.
+   * @throws IOException If the blob could not be opened.
+   */
+  InputStream get(String key) throws IOException;
+
+  @Override
+  default void close() {
+  }
+}
@@ -16,8 +16,12 @@
 
 package com.nordstrom.kafka.connect.sqs;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.services.sqs.model.*;
@@ -26,8 +30,12 @@ import org.apache.kafka.connect.errors.ConnectException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClientBuilder;
 import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
 
 import com.nordstrom.kafka.connect.utils.StringUtils;
@@ -37,10 +45,37 @@ public class SqsClient {
   private final Logger log = LoggerFactory.getLogger(this.getClass());
 
   private final String AWS_FIFO_SUFFIX = ".fifo";
+  private static final int LIST_QUEUES_MAX_RESULTS = 1000;
+  // Message attributes the sink connector marks encoded bodies with.
+  private static final List<String> CONNECTOR_ATTRIBUTE_NAMES = Arrays.asList(SqsPayloadCodec.ATTRIBUTE,
+      SqsBlobStore.ATTRIBUTE);
 
+  // Short control-plane calls (send, delete, visibility, attributes) and long-poll receives use separate
+  // transports, so deletes on the commit path never queue behind parked receives.
   private final AmazonSQS client;
+  private final AmazonSQS receiveClient;
+  private final SqsTransportSettings controlTransport;
+  private final AwsClientBuilder.EndpointConfiguration endpointConfiguration;
+  private final String region;
+  private final AWSCredentialsProvider credentialsProvider;
+  private volatile AmazonSQSAsync asyncClient;
+  private final SqsClientFactory factory;
+  private final SqsConnectorConfig config;
+  // Instrumented views share the AWS clients of the root client they were derived from.
+  private final SqsClient root;
+  private final SqsMetrics metrics;
+  // Queue urls already validated; parsing a url on every call is measurable at high call rates.
+  private final Set<String> validUrls;
 
   public SqsClient(SqsConnectorConfig config) {
+    this(config, null);
+  }
+
+  /**
+   * @param config  Connector configuration.
+   * @param factory Creates the AWS clients in place of the AWS SDK builders, or null.
+   */
+  SqsClient(SqsConnectorConfig config, SqsClientFactory factory) {
     Map<String, Object> credentialProviderConfigs = config.originalsWithPrefix(
             SqsConnectorConfigKeys.CREDENTIALS_PROVIDER_CONFIG_PREFIX.getValue());
     credentialProviderConfigs.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), config.getRegion());
@@ -51,15 +86,193 @@ public class SqsClient {
       log.error("Problem initializing provider", e);
     }
 
-    final AmazonSQSClientBuilder builder = AmazonSQSClientBuilder.standard();
-    if(StringUtils.isBlank(config.getEndpointUrl())) {
-      builder.setRegion(config.getRegion());
+    region = config.getRegion();
+    endpointConfiguration = StringUtils.isBlank(config.getEndpointUrl()) ? null
+        : new EndpointConfiguration(config.getEndpointUrl(), config.getRegion());
+    credentialsProvider = provider;
+    controlTransport = config.getControlTransport();
+    this.factory = factory;
+    this.config = config;
+    if (factory == null) {
+      client = configure(AmazonSQSClientBuilder.standard(), controlTransport).build();
+      receiveClient = configure(AmazonSQSClientBuilder.standard(), config.getReceiveTransport()).build();
+    } else {
+      log.info(".ctor:client-factory={}", factory.getClass().getName());
+      client = factory.createClient(config, controlTransport);
+      receiveClient = factory.createClient(config, config.getReceiveTransport());
+    }
+    log.debug(".ctor:control-transport=[{}], receive-transport=[{}]", controlTransport, config.getReceiveTransport());
+    root = this;
+    metrics = null;
+    validUrls = ConcurrentHashMap.newKeySet();
+  }
+
+  private SqsClient(final SqsClient root, final SqsMetrics metrics) {
+    this.client = root.client;
+    this.receiveClient = root.receiveClient;
+    this.controlTransport = root.controlTransport;
+    this.endpointConfiguration = root.endpointConfiguration;
+    this.region = root.region;
+    this.credentialsProvider = root.credentialsProvider;
+    this.factory = root.factory;
+    this.config = root.config;
+    this.root = root;
+    this.metrics = metrics;
+    this.validUrls = root.validUrls;
+  }
+
+  /**
+   * Derive a view of this client that records the latency and outcome of
+   * every call, per queue, in a task's metrics registry. The view shares the
+   * connections of this client and must not be shut down.
+   *
+   * @param metrics Task metrics registry.
+   * @return The instrumented view.
+   */
+  public SqsClient withMetrics(final SqsMetrics metrics) {
+    return new SqsClient(root, metrics);
+  }
+
+  /**
+   * @return The credentials provider of the AWS clients, or null if it could not be initialized.
+   */
+  public AWSCredentialsProvider getCredentialsProvider() {
+    return credentialsProvider;
+  }
+
+  private void verifyValidUrl(final String url) {
+    if (url == null || !validUrls.contains(url)) {
+      Guard.verifyValidUrl(url);
+      validUrls.add(url);
+    }
+  }
+
+  private SqsQueueMetrics queueMetrics(final String url) {
+    return metrics == null ? null : metrics.queue(url);
+  }
+
+  private void recordCall(final String url, final String api, final long startNanos, final boolean ok) {
+    if (metrics != null) {
+      metrics.queue(url).recordCall(api, startNanos, ok);
+    }
+  }
+
+  private <T extends AwsClientBuilder<T, ?>> T configure(final T builder, final SqsTransportSettings transport) {
+    builder.setClientConfiguration(transport.toClientConfiguration());
+    if (endpointConfiguration == null) {
+      builder.setRegion(region);
     } else {
-      builder.setEndpointConfiguration(new EndpointConfiguration(config.getEndpointUrl(), config.getRegion()));
+      builder.setEndpointConfiguration(endpointConfiguration);
+    }
+    builder.setCredentials(credentialsProvider);
+    return builder;
+  }
+
+  /**
+   * The asynchronous client is only built when a task first sends asynchronously.
+   *
+   * @return The asynchronous SQS client.
+   */
+  private AmazonSQSAsync getAsyncClient() {
+    if (root != this) {
+      return root.getAsyncClient();
+    }
+    AmazonSQSAsync result = asyncClient;
+    if (result == null) {
+      synchronized (this) {
+        result = asyncClient;
+        if (result == null) {
+          asyncClient = result = factory == null
+              ? configure(AmazonSQSAsyncClientBuilder.standard(), controlTransport).build()
+              : factory.createAsyncClient(config, controlTransport);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Open a connection, and resolve credentials, ahead of the first real call.
+   * Failures, such as a principal without sqs:GetQueueAttributes, are ignored:
+   * the connection is established either way.
+   *
+   * @param url     SQS queue url.
+   * @param receive Whether to also open a connection of the receive transport, which long-polls.
+   */
+  public void prewarm(final String url, final boolean receive) {
+    prewarm(client, url);
+    if (receive && receiveClient != client) {
+      prewarm(receiveClient, url);
+    }
+  }
+
+  private void prewarm(final AmazonSQS sqs, final String url) {
+    final long start = System.nanoTime();
+    try {
+      sqs.getQueueAttributes(new GetQueueAttributesRequest(url).withAttributeNames(QueueAttributeName.QueueArn));
+      recordCall(url, SqsQueueMetrics.GET_QUEUE_ATTRIBUTES, start, true);
+    } catch (final RuntimeException e) {
+      recordCall(url, SqsQueueMetrics.GET_QUEUE_ATTRIBUTES, start, false);
+      log.debug(".prewarm:queue={}, error={}", url, e.toString());
     }
+    log.debug(".prewarm:queue={}, ms={}", url, (System.nanoTime() - start) / 1000000L);
+  }
 
-    builder.setCredentials(provider);
-    client = builder.build();
+  /**
+   * List the queues whose name starts with a prefix, following every page of results.
+   *
+   * @param prefix Queue name prefix.
+   * @return The urls of the matching queues.
+   */
+  public List<String> listQueues(final String prefix) {
+    Guard.verifyNotNullOrEmpty(prefix, "prefix");
+    final List<String> urls = new ArrayList<>();
+    String nextToken = null;
+    do {
+      final ListQueuesResult result = client.listQueues(new ListQueuesRequest(prefix)
+          .withMaxResults(LIST_QUEUES_MAX_RESULTS)
+          .withNextToken(nextToken));
+      urls.addAll(result.getQueueUrls());
+      nextToken = result.getNextToken();
+    } while (nextToken != null);
+    log.debug(".list-queues:prefix={}, queues={}", prefix, urls.size());
+    return urls;
+  }
+
+  /**
+   * Look up the url of a queue by name.
+   *
+   * @param name Queue name.
+   * @return The queue url.
+   */
+  public String getQueueUrl(final String name) {
+    Guard.verifyNotNullOrEmpty(name, "name");
+    final String url = client.getQueueUrl(name).getQueueUrl();
+    log.debug(".get-queue-url:name={}, url={}", name, url);
+    return url;
+  }
+
+  /**
+   * Release the connections and threads held by the AWS SQS clients, and
+   * close the credentials provider if it can be closed. Has no effect on
+   * instrumented views.
+   */
+  public void shutdown() {
+    if (root != this) {
+      return;
+    }
+    client.shutdown();
+    receiveClient.shutdown();
+    if (asyncClient != null) {
+      asyncClient.shutdown();
+    }
+    if (credentialsProvider instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) credentialsProvider).close();
+      } catch (final Exception e) {
+        log.warn(".shutdown:failed to close credentials provider", e);
+      }
+    }
   }
 
   /**
@@ -69,15 +282,104 @@ public class SqsClient {
    * @param receiptHandle Message receipt handle of message to delete.
    */
   public void delete(final String url, final String receiptHandle) {
-    Guard.verifyValidUrl(url);
+    verifyValidUrl(url);
     Guard.verifyNotNullOrEmpty(receiptHandle, "receiptHandle");
 
     final DeleteMessageRequest request = new DeleteMessageRequest(url, receiptHandle);
-    final DeleteMessageResult result = client.deleteMessage(request);
+    final long start = System.nanoTime();
+    final DeleteMessageResult result;
+    try {
+      result = client.deleteMessage(request);
+    } catch (final RuntimeException e) {
+      recordCall(url, SqsQueueMetrics.DELETE_MESSAGE, start, false);
+      throw e;
+    }
+    recordCall(url, SqsQueueMetrics.DELETE_MESSAGE, start, true);
 
     log.debug(".delete:receipt-handle={}, rc={}", receiptHandle, result.getSdkHttpMetadata().getHttpStatusCode());
   }
 
+  /**
+   * Delete up to ten messages from the SQS queue in a single request.
+   *
+   * @param url     SQS queue url.
+   * @param entries Receipt handles to delete, each with an id unique within the request.
+   * @return Result listing the successful and failed entries.
+   */
+  public DeleteMessageBatchResult deleteBatch(final String url, final List<DeleteMessageBatchRequestEntry> entries) {
+    verifyValidUrl(url);
+    Guard.verifyInRange(entries.size(), 1, 10, "entries");
+
+    final DeleteMessageBatchRequest request = new DeleteMessageBatchRequest(url, entries);
+    final long start = System.nanoTime();
+    final DeleteMessageBatchResult result;
+    try {
+      result = client.deleteMessageBatch(request);
+    } catch (final RuntimeException e) {
+      recordCall(url, SqsQueueMetrics.DELETE_MESSAGE_BATCH, start, false);
+      throw e;
+    }
+    recordCall(url, SqsQueueMetrics.DELETE_MESSAGE_BATCH, start, true);
+
+    log.debug(".delete-batch:queue={}, ok={}, failed={}", url, result.getSuccessful().size(),
+        result.getFailed().size());
+
+    return result;
+  }
+
+  /**
+   * Change the visibility timeout of up to ten received messages in a single request.
+   *
+   * @param url     SQS queue url.
+   * @param entries Receipt handles and their new timeouts, each with an id unique within the request.
+   * @return Result listing the successful and failed entries.
+   */
+  public ChangeMessageVisibilityBatchResult changeVisibilityBatch(final String url,
+      final List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+    verifyValidUrl(url);
+    Guard.verifyInRange(entries.size(), 1, 10, "entries");
+
+    final ChangeMessageVisibilityBatchRequest request = new ChangeMessageVisibilityBatchRequest(url, entries);
+    final long start = System.nanoTime();
+    final ChangeMessageVisibilityBatchResult result;
+    try {
+      result = client.changeMessageVisibilityBatch(request);
+    } catch (final RuntimeException e) {
+      recordCall(url, SqsQueueMetrics.CHANGE_MESSAGE_VISIBILITY_BATCH, start, false);
+      throw e;
+    }
+    recordCall(url, SqsQueueMetrics.CHANGE_MESSAGE_VISIBILITY_BATCH, start, true);
+
+    log.debug(".change-visibility-batch:queue={}, ok={}, failed={}", url, result.getSuccessful().size(),
+        result.getFailed().size());
+
+    return result;
+  }
+
+  /**
+   * Get attributes of a queue, such as its approximate number of messages.
+   *
+   * @param url            SQS queue url.
+   * @param attributeNames Names of the attributes to get.
+   * @return The attributes by name.
+   */
+  public Map<String, String> getQueueAttributes(final String url, final List<String> attributeNames) {
+    verifyValidUrl(url);
+
+    final long start = System.nanoTime();
+    final GetQueueAttributesResult result;
+    try {
+      result = client.getQueueAttributes(new GetQueueAttributesRequest(url).withAttributeNames(attributeNames));
+    } catch (final RuntimeException e) {
+      recordCall(url, SqsQueueMetrics.GET_QUEUE_ATTRIBUTES, start, false);
+      throw e;
+    }
+    recordCall(url, SqsQueueMetrics.GET_QUEUE_ATTRIBUTES, start, true);
+
+    log.debug(".get-queue-attributes:queue={}, attributes={}", url, result.getAttributes());
+    return result.getAttributes();
+  }
+
   /**
    * Receive messages from the SQS queue.
    *
@@ -89,9 +391,24 @@ public class SqsClient {
    * @return Collection of messages received.
    */
   public List<Message> receive(final String url, final int maxMessages, final int waitTimeSeconds, final Boolean messageAttributesEnabled, final List<String> messageAttributesList) {
+    return receive(url, maxMessages, waitTimeSeconds, messageAttributesEnabled, messageAttributesList, 0);
+  }
+
+  /**
+   * Receive messages from the SQS queue, hiding them for the given visibility timeout.
+   *
+   * @param url             SQS queue url.
+   * @param maxMessages     Maximum number of messages to receive for this call.
+   * @param waitTimeSeconds Time to wait, in seconds, for messages to arrive.
+   * @param messageAttributesEnabled Whether to collect message attributes.
+   * @param messageAttributesList Which message attributes to collect; if empty, all attributes are collected.
+   * @param visibilityTimeoutSeconds Visibility timeout of the received messages; if 0, the queue's default applies.
+   * @return Collection of messages received.
+   */
+  public List<Message> receive(final String url, final int maxMessages, final int waitTimeSeconds, final Boolean messageAttributesEnabled, final List<String> messageAttributesList, final int visibilityTimeoutSeconds) {
     log.debug(".receive:queue={}, max={}, wait={}", url, maxMessages, waitTimeSeconds);
 
-    Guard.verifyValidUrl(url);
+    verifyValidUrl(url);
     Guard.verifyNonNegative(waitTimeSeconds, "sqs.wait.time.seconds");
     Guard.verifyInRange(maxMessages, 0, 10, "sqs.max.messages");
     if (!isValidState()) {
@@ -101,19 +418,23 @@ public class SqsClient {
     //
     // Receive messages from queue
     //
-    ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(url)
-        .withMaxNumberOfMessages(maxMessages).withWaitTimeSeconds(waitTimeSeconds).withAttributeNames("");
-
-    if (messageAttributesEnabled) {
-      if (messageAttributesList.isEmpty()) {
-        receiveMessageRequest = receiveMessageRequest.withMessageAttributeNames("All");
-      } else {
-        receiveMessageRequest = receiveMessageRequest.withMessageAttributeNames(messageAttributesList);
-      }
-    }
+    final ReceiveMessageRequest receiveMessageRequest = receiveRequest(url, maxMessages, waitTimeSeconds,
+        messageAttributesEnabled, messageAttributesList, visibilityTimeoutSeconds);
 
-    final ReceiveMessageResult result = client.receiveMessage(receiveMessageRequest);
+    final long start = System.nanoTime();
+    final ReceiveMessageResult result;
+    try {
+      result = receiveClient.receiveMessage(receiveMessageRequest);
+    } catch (final RuntimeException e) {
+      recordCall(url, SqsQueueMetrics.RECEIVE_MESSAGE, start, false);
+      throw e;
+    }
     final List<Message> messages = result.getMessages();
+    final SqsQueueMetrics queueMetrics = queueMetrics(url);
+    if (queueMetrics != null) {
+      queueMetrics.recordCall(SqsQueueMetrics.RECEIVE_MESSAGE, start, true);
+      queueMetrics.recordReceive(messages);
+    }
 
     log.debug(".receive:{} messages, url={}, rc={}", messages.size(), url,
         result.getSdkHttpMetadata().getHttpStatusCode());
@@ -134,33 +455,217 @@ public class SqsClient {
   public String send(final String url, final String body, final String groupId, final String messageId, final Map<String, MessageAttributeValue> messageAttributes) {
     log.debug(".send: queue={}, gid={}, mid={}", url, groupId, messageId);
 
-    Guard.verifyValidUrl(url);
+    verifyValidUrl(url);
     // Guard.verifyNotNullOrEmpty( body, "message body" ) ;
     if (!isValidState()) {
       throw new IllegalStateException("AmazonSQS client is not initialized");
     }
     final boolean fifo = isFifo(url);
 
-    SendMessageRequest request = new SendMessageRequest(url, body);
-    if (messageAttributes != null) {
-      request.setMessageAttributes(messageAttributes);
-    }
-
     if (fifo) {
       Guard.verifyNotNullOrEmpty(groupId, "groupId");
       Guard.verifyNotNullOrEmpty(messageId, "messageId");
-      request.setMessageGroupId(groupId);
-      request.setMessageDeduplicationId(messageId);
     }
+    final SendMessageRequest request = sendRequest(url, body, fifo ? groupId : null, fifo ? messageId : null,
+        messageAttributes);
 
-    final SendMessageResult result = client.sendMessage(request);
+    final long start = System.nanoTime();
+    final SendMessageResult result;
+    try {
+      result = client.sendMessage(request);
+    } catch (final RuntimeException e) {
+      recordCall(url, SqsQueueMetrics.SEND_MESSAGE, start, false);
+      throw e;
+    }
+    final SqsQueueMetrics queueMetrics = queueMetrics(url);
+    if (queueMetrics != null) {
+      queueMetrics.recordCall(SqsQueueMetrics.SEND_MESSAGE, start, true);
+      queueMetrics.recordSent(1, SqsSendEntry.payloadSize(body, messageAttributes));
+    }
 
     log.debug(".send-message.OK: queue={}, result={}", url, result);
 
     return fifo ? result.getSequenceNumber() : result.getMessageId();
   }
 
-  private boolean isFifo(final String url) {
+  /**
+   * Send up to ten messages to an SQS queue in a single request.
+   *
+   * @param url     SQS queue url.
+   * @param entries The messages to send, each with an id unique within the request.
+   * @return Result listing the successful and failed entries.
+   */
+  public SendMessageBatchResult sendBatch(final String url, final List<SendMessageBatchRequestEntry> entries) {
+    log.debug(".send-batch: queue={}, entries={}", url, entries.size());
+
+    verifyValidUrl(url);
+    Guard.verifyInRange(entries.size(), 1, 10, "entries");
+    if (!isValidState()) {
+      throw new IllegalStateException("AmazonSQS client is not initialized");
+    }
+
+    final long start = System.nanoTime();
+    final SendMessageBatchResult result;
+    try {
+      result = client.sendMessageBatch(new SendMessageBatchRequest(url, entries));
+    } catch (final RuntimeException e) {
+      recordCall(url, SqsQueueMetrics.SEND_MESSAGE_BATCH, start, false);
+      throw e;
+    }
+    recordSentBatch(url, entries, result, start);
+
+    log.debug(".send-batch.OK: queue={}, ok={}, failed={}", url, result.getSuccessful().size(),
+        result.getFailed().size());
+
+    return result;
+  }
+
+  /**
+   * Send up to ten messages to an SQS queue without waiting for the response.
+   *
+   * @param url     SQS queue url.
+   * @param entries The messages to send, each with an id unique within the request.
+   * @param handler Notified on the SDK callback thread once the request completes.
+   */
+  public void sendBatchAsync(final String url, final List<SendMessageBatchRequestEntry> entries,
+      final AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> handler) {
+    log.debug(".send-batch-async: queue={}, entries={}", url, entries.size());
+
+    verifyValidUrl(url);
+    Guard.verifyInRange(entries.size(), 1, 10, "entries");
+
+    final AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> measured = metrics == null ? handler
+        : new AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult>() {
+          private final long start = System.nanoTime();
+
+          @Override
+          public void onError(final Exception e) {
+            recordCall(url, SqsQueueMetrics.SEND_MESSAGE_BATCH, start, false);
+            handler.onError(e);
+          }
+
+          @Override
+          public void onSuccess(final SendMessageBatchRequest request, final SendMessageBatchResult result) {
+            recordSentBatch(url, entries, result, start);
+            handler.onSuccess(request, result);
+          }
+        };
+    getAsyncClient().sendMessageBatchAsync(new SendMessageBatchRequest(url, entries), measured);
+  }
+
+  private void recordSentBatch(final String url, final List<SendMessageBatchRequestEntry> entries,
+      final SendMessageBatchResult result, final long startNanos) {
+    final SqsQueueMetrics queueMetrics = queueMetrics(url);
+    if (queueMetrics == null) {
+      return;
+    }
+    queueMetrics.recordCall(SqsQueueMetrics.SEND_MESSAGE_BATCH, startNanos, true);
+    long bytes = 0;
+    for (final SendMessageBatchRequestEntry entry : entries) {
+      bytes += SqsSendEntry.payloadSize(entry.getMessageBody(), entry.getMessageAttributes());
+    }
+    // Failed entries are few and resent later, where they are counted again.
+    queueMetrics.recordSent(result.getSuccessful().size(), bytes);
+  }
+
+  /**
+   * Send a single message to an SQS queue without waiting for the response.
+   *
+   * @param url     SQS queue url.
+   * @param entry   The message to send; group and deduplication ids are used for fifo queues only.
+   * @param handler Notified on the SDK callback thread once the request completes.
+   */
+  public void sendAsync(final String url, final SendMessageBatchRequestEntry entry,
+      final AsyncHandler<SendMessageRequest, SendMessageResult> handler) {
+    log.debug(".send-async: queue={}, gid={}, mid={}", url, entry.getMessageGroupId(),
+        entry.getMessageDeduplicationId());
+
+    verifyValidUrl(url);
+
+    final SendMessageRequest request = sendRequest(url, entry.getMessageBody(), entry.getMessageGroupId(),
+        entry.getMessageDeduplicationId(), entry.getMessageAttributes());
+    final AsyncHandler<SendMessageRequest, SendMessageResult> measured = metrics == null ? handler
+        : new AsyncHandler<SendMessageRequest, SendMessageResult>() {
+          private final long start = System.nanoTime();
+
+          @Override
+          public void onError(final Exception e) {
+            recordCall(url, SqsQueueMetrics.SEND_MESSAGE, start, false);
+            handler.onError(e);
+          }
+
+          @Override
+          public void onSuccess(final SendMessageRequest request, final SendMessageResult result) {
+            final SqsQueueMetrics queueMetrics = queueMetrics(url);
+            queueMetrics.recordCall(SqsQueueMetrics.SEND_MESSAGE, start, true);
+            queueMetrics.recordSent(1, SqsSendEntry.payloadSize(request.getMessageBody(),
+                request.getMessageAttributes()));
+            handler.onSuccess(request, result);
+          }
+        };
+    getAsyncClient().sendMessageAsync(request, measured);
+  }
+
+  /**
+   * Build a ReceiveMessage request.
+   *
+   * @param url             SQS queue url.
+   * @param maxMessages     Maximum number of messages to receive.
+   * @param waitTimeSeconds Time to wait, in seconds, for messages to arrive.
+   * @param messageAttributesEnabled Whether to collect message attributes.
+   * @param messageAttributesList Which message attributes to collect; if empty, all attributes are collected.
+   * @param visibilityTimeoutSeconds Visibility timeout of the received messages; if 0, the queue's default applies.
+   * @return The request.
+   */
+  static ReceiveMessageRequest receiveRequest(final String url, final int maxMessages, final int waitTimeSeconds,
+      final boolean messageAttributesEnabled, final List<String> messageAttributesList,
+      final int visibilityTimeoutSeconds) {
+    final ReceiveMessageRequest request = new ReceiveMessageRequest(url)
+        .withMaxNumberOfMessages(maxMessages).withWaitTimeSeconds(waitTimeSeconds)
+        .withMessageSystemAttributeNames(MessageSystemAttributeName.SentTimestamp);
+
+    if (visibilityTimeoutSeconds > 0) {
+      request.setVisibilityTimeout(visibilityTimeoutSeconds);
+    }
+
+    // The attributes the sink connector marks bodies with are always requested, so that they can be decoded.
+    if (!messageAttributesEnabled) {
+      request.withMessageAttributeNames(CONNECTOR_ATTRIBUTE_NAMES);
+    } else if (messageAttributesList.isEmpty()) {
+      request.withMessageAttributeNames("All");
+    } else {
+      request.withMessageAttributeNames(messageAttributesList);
+      for (final String name : CONNECTOR_ATTRIBUTE_NAMES) {
+        if (!messageAttributesList.contains(name)) {
+          request.withMessageAttributeNames(name);
+        }
+      }
+    }
+    return request;
+  }
+
+  /**
+   * Build a SendMessage request.
+   *
+   * @param url       SQS queue url.
+   * @param body      The message to send.
+   * @param groupId   Group identifier (fifo queues only, otherwise null).
+   * @param messageId Deduplication identifier (fifo queues only, otherwise null).
+   * @param messageAttributes The message attributes to send, or null.
+   * @return The request.
+   */
+  static SendMessageRequest sendRequest(final String url, final String body, final String groupId,
+      final String messageId, final Map<String, MessageAttributeValue> messageAttributes) {
+    final SendMessageRequest request = new SendMessageRequest(url, body)
+        .withMessageGroupId(groupId)
+        .withMessageDeduplicationId(messageId);
+    if (messageAttributes != null) {
+      request.setMessageAttributes(messageAttributes);
+    }
+    return request;
+  }
+
+  public boolean isFifo(final String url) {
     return url.endsWith(AWS_FIFO_SUFFIX);
   }
 
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+
+/**
+ * Creates the underlying SQS clients of an {@link SqsClient} in place of the
+ * AWS SDK builders. A seam for substituting SQS in tests and load tests, set
+ * with {@link SqsClientPool#setClientFactory(SqsClientFactory)}; connectors
+ * always use the AWS SDK.
+ */
+interface SqsClientFactory {
+  /**
+   * @param config    Connector configuration.
+   * @param transport Settings of the transport the client is used for.
+   * @return A synchronous client; it is shut down when the {@link SqsClient} is.
+   */
+  AmazonSQS createClient(SqsConnectorConfig config, SqsTransportSettings transport);
+
+  /**
+   * @param config    Connector configuration.
+   * @param transport Settings of the transport the client is used for.
+   * @return An asynchronous client; it is shut down when the {@link SqsClient} is.
+   */
+  AmazonSQSAsync createAsyncClient(SqsConnectorConfig config, SqsTransportSettings transport);
+}
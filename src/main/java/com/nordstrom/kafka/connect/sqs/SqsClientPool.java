@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Worker-wide registry of reference-counted SQS clients. Tasks and connectors
+ * with the same region, endpoint, credentials provider and transport settings
+ * share one client, and so one connection pool; the client is shut down when its last
+ * user releases it.
+ */
+public final class SqsClientPool {
+  private static final Logger log = LoggerFactory.getLogger(SqsClientPool.class);
+
+  private static final Map<List<Object>, Entry> CLIENTS = new HashMap<>();
+  private static final Map<SqsClient, Entry> ENTRIES = new IdentityHashMap<>();
+
+  private static SqsClientFactory clientFactory;
+  private static SqsMetrics metrics;
+  private static Sensor leaseTimeSensor;
+  private static int leases = 0;
+
+  private SqsClientPool() {
+  }
+
+  /**
+   * Lease the client for a configuration, creating it on first use.
+   *
+   * @param config Connector configuration.
+   * @return A lease on the shared client; hand it back with {@link #release(Lease)}.
+   */
+  public static synchronized Lease acquire(final SqsConnectorConfig config) {
+    initMetrics();
+    final List<Object> key = key(config);
+    Entry entry = CLIENTS.get(key);
+    final boolean created = entry == null;
+    if (created) {
+      final SqsClient client = new SqsClient(config, clientFactory);
+      entry = new Entry(key, client);
+      CLIENTS.put(key, entry);
+      ENTRIES.put(client, entry);
+      log.info(".acquire:created client, region={}, endpoint={}, pool-size={}", config.getRegion(),
+          config.getEndpointUrl(), CLIENTS.size());
+    }
+    entry.references++;
+    leases++;
+    return new Lease(entry.client, System.nanoTime(), created);
+  }
+
+  /**
+   * Return a leased client, shutting it down if this was its last user.
+   *
+   * @param lease The lease obtained from {@link #acquire(SqsConnectorConfig)}.
+   */
+  public static synchronized void release(final Lease lease) {
+    final Entry entry = ENTRIES.get(lease.client);
+    if (entry == null || lease.released) {
+      return;
+    }
+    lease.released = true;
+    leases--;
+    leaseTimeSensor.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lease.acquiredNanos));
+    if (--entry.references == 0) {
+      CLIENTS.remove(entry.key);
+      ENTRIES.remove(entry.client);
+      entry.client.shutdown();
+      log.info(".release:shut down client, pool-size={}", CLIENTS.size());
+    }
+  }
+
+  private static List<Object> key(final SqsConnectorConfig config) {
+    // Sorted, so that equal settings produce equal keys regardless of map order.
+    final Map<String, Object> credentials = new TreeMap<>(
+        config.originalsWithPrefix(SqsConnectorConfigKeys.CREDENTIALS_PROVIDER_CONFIG_PREFIX.getValue()));
+    return Arrays.<Object>asList(config.getRegion(), config.getEndpointUrl(), credentials,
+        config.getControlTransport(), config.getReceiveTransport(), clientFactory);
+  }
+
+  /**
+   * Have the clients created from now on use a factory instead of the AWS SDK
+   * builders. For tests and load tests only.
+   *
+   * @param factory The factory, or null for the AWS SDK.
+   */
+  static synchronized void setClientFactory(final SqsClientFactory factory) {
+    clientFactory = factory;
+  }
+
+  private static void initMetrics() {
+    if (metrics != null) {
+      return;
+    }
+    metrics = new SqsMetrics("client-pool", Collections.<String, String>emptyMap());
+    metrics.gauge("pool-size", "The number of distinct SQS clients shared in the worker.",
+        (config, now) -> poolSize());
+    metrics.gauge("active-leases", "The number of tasks and connectors holding an SQS client.",
+        (config, now) -> activeLeases());
+    leaseTimeSensor = metrics.avgMaxSensor("lease-time-ms", "time in milliseconds a client was leased for.");
+  }
+
+  private static synchronized int poolSize() {
+    return CLIENTS.size();
+  }
+
+  private static synchronized int activeLeases() {
+    return leases;
+  }
+
+  private static final class Entry {
+    private final List<Object> key;
+    private final SqsClient client;
+    private int references = 0;
+
+    private Entry(final List<Object> key, final SqsClient client) {
+      this.key = key;
+      this.client = client;
+    }
+  }
+
+  /**
+   * A client held by one task or connector.
+   */
+  public static final class Lease {
+    private final SqsClient client;
+    private final long acquiredNanos;
+    private final boolean created;
+    private boolean released = false;
+
+    private Lease(final SqsClient client, final long acquiredNanos, final boolean created) {
+      this.client = client;
+      this.acquiredNanos = acquiredNanos;
+      this.created = created;
+    }
+
+    public SqsClient getClient() {
+      return client;
+    }
+
+    /**
+     * Pre-warm a client this lease created, outside the registry lock, so that
+     * a slow endpoint does not hold up the other tasks of the worker. A shared
+     * client is already warm.
+     *
+     * @param urls    The queues the holder calls.
+     * @param receive Whether the holder receives from them.
+     */
+    public void prewarm(final List<String> urls, final boolean receive) {
+      if (!created) {
+        return;
+      }
+      for (final String url : urls) {
+        client.prewarm(url, receive);
+      }
+    }
+  }
+}
@@ -4,17 +4,23 @@ import com.amazonaws.auth.AWSCredentialsProvider;
 import org.apache.kafka.common.config.AbstractConfig;
 import org.apache.kafka.common.config.ConfigDef;
 import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.utils.Utils;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 abstract public class SqsConnectorConfig extends AbstractConfig {
     private final String queueUrl;
     private final String topics;
     private final String region;
     private final String endpointUrl;
+    private final String connectorName;
+    private final String taskId;
+    private final SqsTransportSettings controlTransport;
+    private final SqsTransportSettings receiveTransport;
 
     public SqsConnectorConfig(ConfigDef configDef, Map<?, ?> originals) {
         super(configDef, originals);
@@ -22,6 +28,90 @@ abstract public class SqsConnectorConfig extends AbstractConfig {
         topics = getString(SqsConnectorConfigKeys.TOPICS.getValue());
         region = getString(SqsConnectorConfigKeys.SQS_REGION.getValue());
         endpointUrl = getString(SqsConnectorConfigKeys.SQS_ENDPOINT_URL.getValue());
+        // Neither is part of the ConfigDef: the worker supplies the name and the connector assigns task ids.
+        connectorName = Objects.toString(originals().get(SqsConnectorConfigKeys.CONNECTOR_NAME.getValue()), "sqs");
+        taskId = Objects.toString(originals().get(SqsConnectorConfigKeys.TASK_ID.getValue()), "0");
+        controlTransport = new SqsTransportSettings(
+                getInt(SqsConnectorConfigKeys.SQS_CONTROL_MAX_CONNECTIONS.getValue()),
+                getInt(SqsConnectorConfigKeys.SQS_CONTROL_SOCKET_TIMEOUT_MS.getValue()),
+                getInt(SqsConnectorConfigKeys.SQS_CONTROL_DEADLINE_MS.getValue()));
+        // Only the source receives; the sink's client never uses its receive transport.
+        if (configDef.configKeys().containsKey(SqsConnectorConfigKeys.SQS_RECEIVE_MAX_CONNECTIONS.getValue())) {
+            receiveTransport = new SqsTransportSettings(
+                    getInt(SqsConnectorConfigKeys.SQS_RECEIVE_MAX_CONNECTIONS.getValue()),
+                    getInt(SqsConnectorConfigKeys.SQS_RECEIVE_SOCKET_TIMEOUT_MS.getValue()),
+                    getInt(SqsConnectorConfigKeys.SQS_RECEIVE_DEADLINE_MS.getValue()));
+        } else {
+            receiveTransport = controlTransport;
+        }
+    }
+
+    /**
+     * Define the settings of the transport used for short control-plane calls
+     * (send, delete, change visibility, queue attributes).
+     *
+     * @param configDef The connector's ConfigDef.
+     * @return The same ConfigDef.
+     */
+    protected static ConfigDef defineControlTransport(ConfigDef configDef) {
+        return configDef
+                .define(SqsConnectorConfigKeys.SQS_CONTROL_MAX_CONNECTIONS.getValue(), ConfigDef.Type.INT, 50,
+                        ConfigDef.Range.atLeast(1), ConfigDef.Importance.LOW,
+                        "Maximum number of pooled connections for control-plane calls (send, delete, change visibility, queue attributes). Default is 50.")
+                .define(SqsConnectorConfigKeys.SQS_CONTROL_SOCKET_TIMEOUT_MS.getValue(), ConfigDef.Type.INT, 5000,
+                        ConfigDef.Range.atLeast(0), ConfigDef.Importance.LOW,
+                        "Socket timeout (in milliseconds) for control-plane calls. Default is 5000.")
+                .define(SqsConnectorConfigKeys.SQS_CONTROL_DEADLINE_MS.getValue(), ConfigDef.Type.INT, 10000,
+                        ConfigDef.Range.atLeast(0), ConfigDef.Importance.LOW,
+                        "Maximum total time (in milliseconds) for a control-plane call, including retries. 0 disables the deadline. Default is 10000.");
+    }
+
+    /**
+     * Define the optional store for message bodies too large for SQS, shared by the sink and the source.
+     *
+     * @param configDef The connector's ConfigDef.
+     * @return The same ConfigDef.
+     */
+    protected static ConfigDef defineBlobStore(ConfigDef configDef) {
+        return configDef
+                .define(SqsConnectorConfigKeys.SQS_BLOB_STORE_CLASS.getValue(), ConfigDef.Type.CLASS, null,
+                        new BlobStoreValidator(), ConfigDef.Importance.LOW,
+                        "Class implementing com.nordstrom.kafka.connect.sqs.SqsBlobStore that holds message bodies too large for SQS, e.g. com.nordstrom.kafka.connect.sqs.SqsS3BlobStore. By default large bodies fail.")
+                .define(SqsConnectorConfigKeys.SQS_BLOB_STORE_PATH.getValue(), ConfigDef.Type.STRING, "",
+                        ConfigDef.Importance.LOW,
+                        "Directory of com.nordstrom.kafka.connect.sqs.SqsFileBlobStore.")
+                .define(SqsConnectorConfigKeys.SQS_BLOB_STORE_S3_BUCKET.getValue(), ConfigDef.Type.STRING, "",
+                        ConfigDef.Importance.LOW,
+                        "Bucket of com.nordstrom.kafka.connect.sqs.SqsS3BlobStore.")
+                .define(SqsConnectorConfigKeys.SQS_BLOB_STORE_S3_ENDPOINT_URL.getValue(), ConfigDef.Type.STRING, "",
+                        ConfigDef.Importance.LOW,
+                        "If specified, overrides the AWS region specific S3 endpoint of com.nordstrom.kafka.connect.sqs.SqsS3BlobStore.");
+    }
+
+    /**
+     * @param credentialsProvider Credentials of the connector's SQS client.
+     * @return A new, configured instance of the blob store, or null if none is configured.
+     */
+    public SqsBlobStore getBlobStore(AWSCredentialsProvider credentialsProvider) {
+        final Class<?> blobStoreClass = getClass(SqsConnectorConfigKeys.SQS_BLOB_STORE_CLASS.getValue());
+        if (blobStoreClass == null) {
+            return null;
+        }
+        final SqsBlobStore blobStore = Utils.newInstance(blobStoreClass, SqsBlobStore.class);
+        blobStore.configure(this, credentialsProvider);
+        return blobStore;
+    }
+
+    public String getBlobStorePath() {
+        return getString(SqsConnectorConfigKeys.SQS_BLOB_STORE_PATH.getValue());
+    }
+
+    public String getBlobStoreS3Bucket() {
+        return getString(SqsConnectorConfigKeys.SQS_BLOB_STORE_S3_BUCKET.getValue());
+    }
+
+    public String getBlobStoreS3EndpointUrl() {
+        return getString(SqsConnectorConfigKeys.SQS_BLOB_STORE_S3_ENDPOINT_URL.getValue());
     }
 
     public String getQueueUrl() {
@@ -40,6 +130,42 @@ abstract public class SqsConnectorConfig extends AbstractConfig {
         return endpointUrl;
     }
 
+    public String getConnectorName() {
+        return connectorName;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public SqsTransportSettings getControlTransport() {
+        return controlTransport;
+    }
+
+    public SqsTransportSettings getReceiveTransport() {
+        return receiveTransport;
+    }
+
+    protected static class BlobStoreValidator implements ConfigDef.Validator {
+        @Override
+        public void ensureValid(String name, Object store) {
+            if (store == null
+                    || (store instanceof Class && SqsBlobStore.class.isAssignableFrom((Class<?>) store))) {
+                return;
+            }
+            throw new ConfigException(
+                    name,
+                    store,
+                    "Class must implement: " + SqsBlobStore.class
+            );
+        }
+
+        @Override
+        public String toString() {
+            return "Any class implementing: " + SqsBlobStore.class;
+        }
+    }
+
     protected static class CredentialsProviderValidator implements ConfigDef.Validator {
         @Override
         public void ensureValid(String name, Object provider) {
@@ -22,13 +22,69 @@ package com.nordstrom.kafka.connect.sqs;
 public enum SqsConnectorConfigKeys {
   SQS_MAX_MESSAGES("sqs.max.messages"),
   SQS_QUEUE_URL("sqs.queue.url"),
+  SQS_QUEUE_URLS("sqs.queue.urls"),
+  SQS_QUEUE_NAME_PREFIX("sqs.queue.name.prefix"),
+  SQS_QUEUE_MAP("sqs.queue.map"),
+  SQS_QUEUE_HEADER("sqs.queue.header"),
+  SQS_QUEUE_NAME_TEMPLATE("sqs.queue.name.template"),
+  SQS_QUEUE_URL_CACHE_SIZE("sqs.queue.url.cache.size"),
   SQS_WAIT_TIME_SECONDS("sqs.wait.time.seconds"),
+  SQS_RECEIVE_ADAPTIVE_ENABLED("sqs.receive.adaptive.enabled"),
+  SQS_RECEIVE_ADAPTIVE_MAX_MESSAGES("sqs.receive.adaptive.max.messages"),
+  SQS_RECEIVE_ADAPTIVE_MAX_WAIT_TIME_SECONDS("sqs.receive.adaptive.max.wait.time.seconds"),
+  SQS_COST_PER_MILLION_REQUESTS("sqs.cost.per.million.requests"),
+  SQS_POLL_MAX_MS("sqs.poll.max.ms"),
+  SQS_POLL_MAX_RECORDS("sqs.poll.max.records"),
+  SQS_POLL_MAX_BYTES("sqs.poll.max.bytes"),
+  SQS_BACKLOG_MONITOR_INTERVAL_MS("sqs.backlog.monitor.interval.ms"),
+  SQS_BACKLOG_MESSAGES_PER_RECEIVER("sqs.backlog.messages.per.receiver"),
+  SQS_BACKLOG_MAX_RECEIVER_THREADS("sqs.backlog.max.receiver.threads"),
+  SQS_BACKLOG_RECONFIGURE_MIN_INTERVAL_MS("sqs.backlog.reconfigure.min.interval.ms"),
   TOPICS("topics"),
+  TOPICS_REGEX("topics.regex"),
   SQS_REGION("sqs.region"),
   SQS_ENDPOINT_URL("sqs.endpoint.url"),
   SQS_MESSAGE_ATTRIBUTES_ENABLED("sqs.message.attributes.enabled"),
   SQS_MESSAGE_ATTRIBUTES_INCLUDE_LIST("sqs.message.attributes.include.list"),
   SQS_MESSAGE_ATTRIBUTE_PARTITION_KEY("sqs.message.attributes.partition.key"),
+  SQS_MESSAGE_BODY_FORMAT("sqs.message.body.format"),
+  SQS_JSON_SCHEMA_CACHE_SIZE("sqs.json.schema.cache.size"),
+  SQS_DELETE_BATCH_SIZE("sqs.delete.batch.size"),
+  SQS_DELETE_LINGER_MS("sqs.delete.linger.ms"),
+  SQS_DELETE_MAX_RETRIES("sqs.delete.max.retries"),
+  SQS_RECEIVER_THREADS("sqs.receiver.threads"),
+  SQS_PREFETCH_MAX_MESSAGES("sqs.prefetch.max.messages"),
+  SQS_PREFETCH_MAX_BYTES("sqs.prefetch.max.bytes"),
+  SQS_VISIBILITY_HEARTBEAT_ENABLED("sqs.visibility.heartbeat.enabled"),
+  SQS_VISIBILITY_TIMEOUT_SECONDS("sqs.visibility.timeout.seconds"),
+  SQS_VISIBILITY_MAX_HOLD_SECONDS("sqs.visibility.max.hold.seconds"),
+  SQS_EXACTLY_ONCE_ENABLED("sqs.exactly.once.enabled"),
+  SQS_EXACTLY_ONCE_REDELIVERY_WINDOW_SECONDS("sqs.exactly.once.redelivery.window.seconds"),
+  SQS_EXACTLY_ONCE_PENDING_MAX_MESSAGES("sqs.exactly.once.pending.max.messages"),
+  SQS_CONTROL_MAX_CONNECTIONS("sqs.control.max.connections"),
+  SQS_CONTROL_SOCKET_TIMEOUT_MS("sqs.control.socket.timeout.ms"),
+  SQS_CONTROL_DEADLINE_MS("sqs.control.deadline.ms"),
+  SQS_RECEIVE_MAX_CONNECTIONS("sqs.receive.max.connections"),
+  SQS_RECEIVE_SOCKET_TIMEOUT_MS("sqs.receive.socket.timeout.ms"),
+  SQS_RECEIVE_DEADLINE_MS("sqs.receive.deadline.ms"),
+  SQS_SEND_BATCH_ENABLED("sqs.send.batch.enabled"),
+  SQS_SEND_MAX_RETRIES("sqs.send.max.retries"),
+  SQS_SEND_RETRY_BACKOFF_MS("sqs.send.retry.backoff.ms"),
+  SQS_SEND_RETRY_BACKOFF_MAX_MS("sqs.send.retry.backoff.max.ms"),
+  SQS_SEND_ASYNC_ENABLED("sqs.send.async.enabled"),
+  SQS_SEND_MAX_IN_FLIGHT("sqs.send.max.in.flight"),
+  SQS_SEND_FIFO_LANES("sqs.send.fifo.lanes"),
+  SQS_SEND_FIFO_GROUP_BUCKETS("sqs.send.fifo.group.buckets"),
+  SQS_COMPRESSION_TYPE("sqs.compression.type"),
+  SQS_COMPRESSION_THRESHOLD_BYTES("sqs.compression.threshold.bytes"),
+  SQS_COMPRESSION_MAX_DECODED_BYTES("sqs.compression.max.decoded.bytes"),
+  SQS_BLOB_STORE_CLASS("sqs.blob.store.class"),
+  SQS_BLOB_STORE_PATH("sqs.blob.store.path"),
+  SQS_BLOB_STORE_S3_BUCKET("sqs.blob.store.s3.bucket"),
+  SQS_BLOB_STORE_S3_ENDPOINT_URL("sqs.blob.store.s3.endpoint.url"),
+  SQS_BLOB_STORE_PREFIX("sqs.blob.store.prefix"),
+  SQS_BLOB_STORE_THRESHOLD_BYTES("sqs.blob.store.threshold.bytes"),
+  SQS_BLOB_CACHE_MAX_BYTES("sqs.blob.cache.max.bytes"),
 
   // These are not part of the connector configuration proper, but just a convenient
   // place to define the constants.
@@ -38,6 +94,9 @@ public enum SqsConnectorConfigKeys {
   CREDENTIALS_PROVIDER_CLASS_DEFAULT("com.amazonaws.auth.DefaultAWSCredentialsProviderChain"),
   CREDENTIALS_PROVIDER_CONFIG_PREFIX("sqs.credentials.provider."),  //NB: trailing '.'
   SQS_MESSAGE_ID("sqs.message.id"),
+  SQS_MESSAGE_PENDING("sqs.message.pending"),
+  CONNECTOR_NAME("name"),
+  TASK_ID("sqs.task.id"),
   SQS_MESSAGE_RECEIPT_HANDLE("sqs.message.receipt-handle");
 
   private final String value;
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+
+/**
+ * Collects receipt handles of committed messages and deletes them from their
+ * queues with {@code DeleteMessageBatch}. One background thread serves every
+ * queue of a task: a queue's batch is sent as soon as it is full or once its
+ * oldest handle has waited for the linger time, and queues with ready batches
+ * take turns. Entries that fail are retried on their own after a jittered
+ * backoff, up to a maximum number of attempts; their queue waits behind them.
+ * The receipt handles that could not be deleted are kept for
+ * {@link #takeFailed()}, as their messages will be redelivered.
+ */
+public class SqsDeleteBatcher implements AutoCloseable {
+  private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+  public static final int MAX_BATCH_SIZE = 10;
+
+  private static final long RETRY_BACKOFF_MS = 100L;
+  private static final long RETRY_BACKOFF_MAX_MS = 10000L;
+  private static final long CLOSE_TIMEOUT_MS = 30000L;
+
+  private final SqsClient client;
+  private final int batchSize;
+  private final long lingerNanos;
+  private final int maxRetries;
+
+  private final Sensor fillRatioSensor;
+  private final Sensor latencySensor;
+  private final Sensor failureSensor;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition work = lock.newCondition();
+  private final Condition drained = lock.newCondition();
+  // Pending receipt handles per queue url, in the order the queues take turns.
+  private final Map<String, Deque<Pending>> pending = new LinkedHashMap<>();
+  // Receipt handles given up on since the last takeFailed().
+  private Set<String> failed = new HashSet<>();
+  private final Thread sender;
+  private int pendingCount = 0;
+  private int inFlight = 0;
+  private int flushRequests = 0;
+  private volatile boolean running = true;
+
+  /**
+   * @param client     SQS client.
+   * @param batchSize  Number of receipt handles per request (1 - 10).
+   * @param lingerMs   Maximum time a receipt handle waits for its batch to fill.
+   * @param maxRetries Number of times a failed entry is retried.
+   * @param metrics    Registry for the batch fill ratio and latency metrics.
+   * @param threadName Name of the background sender thread.
+   */
+  public SqsDeleteBatcher(final SqsClient client, final int batchSize, final long lingerMs, final int maxRetries,
+      final SqsMetrics metrics, final String threadName) {
+    Guard.verifyNotNull(client, "client");
+    Guard.verifyInRange(batchSize, 1, MAX_BATCH_SIZE, SqsConnectorConfigKeys.SQS_DELETE_BATCH_SIZE.getValue());
+    Guard.verifyNonNegative(maxRetries, SqsConnectorConfigKeys.SQS_DELETE_MAX_RETRIES.getValue());
+
+    this.client = client;
+    this.batchSize = batchSize;
+    this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+    this.maxRetries = maxRetries;
+
+    fillRatioSensor = metrics.avgMaxSensor("delete-batch-fill-ratio",
+        "fraction of the 10 entry DeleteMessageBatch limit used per request.");
+    latencySensor = metrics.avgMaxSensor("delete-batch-latency-ms",
+        "DeleteMessageBatch request latency in milliseconds.");
+    failureSensor = metrics.avgMaxSensor("delete-batch-failed-entries",
+        "number of failed entries per DeleteMessageBatch request.");
+
+    sender = new Thread(this::run, threadName);
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  /**
+   * Queue a receipt handle for deletion. Handles added after {@link #close()}
+   * are dropped, and their messages redelivered once their visibility
+   * timeout expires.
+   *
+   * @param url           SQS queue url the message was received from.
+   * @param receiptHandle Receipt handle of a committed message.
+   */
+  public void add(final String url, final String receiptHandle) {
+    Guard.verifyNotNullOrEmpty(receiptHandle, "receiptHandle");
+    lock.lock();
+    try {
+      if (running) {
+        final Deque<Pending> queued = pending.computeIfAbsent(url, key -> new ArrayDeque<>());
+        queued.addLast(new Pending(receiptHandle, System.nanoTime()));
+        pendingCount++;
+        // Wake the sender to start the linger timer, or because the batch is full.
+        if (queued.size() == 1 || queued.size() >= batchSize) {
+          work.signal();
+        }
+        return;
+      }
+    } finally {
+      lock.unlock();
+    }
+    // Late acknowledgements can still arrive while the task shuts down, when the client may be shut down too.
+    log.info(".add:closed, dropping receipt-handle={}, queue={}", receiptHandle, url);
+  }
+
+  /**
+   * Send every queued receipt handle, including retries once their backoff
+   * ends, and wait until all of them have been deleted or have failed for
+   * good. {@link #takeFailed()} tells which failed.
+   *
+   * @param timeoutMs Maximum time to wait.
+   * @return true if nothing is left to delete, false if the wait timed out.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean flush(final long timeoutMs) throws InterruptedException {
+    lock.lock();
+    try {
+      flushRequests++;
+      work.signal();
+      long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+      while (pendingCount > 0 || inFlight > 0) {
+        if (nanos <= 0) {
+          log.warn(".flush:timed out after {} ms, pending={}, in-flight={}", timeoutMs, pendingCount, inFlight);
+          return false;
+        }
+        nanos = drained.awaitNanos(nanos);
+      }
+      return true;
+    } finally {
+      flushRequests--;
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Take the receipt handles that could not be deleted so far: those that
+   * failed with a sender fault or exhausted their retries.
+   *
+   * @return The receipt handles.
+   */
+  public Set<String> takeFailed() {
+    lock.lock();
+    try {
+      if (failed.isEmpty()) {
+        return Collections.emptySet();
+      }
+      final Set<String> taken = failed;
+      failed = new HashSet<>();
+      return taken;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Flush outstanding receipt handles and stop the background sender.
+   */
+  @Override
+  public void close() {
+    try {
+      flush(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      lock.lock();
+      try {
+        running = false;
+        work.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void run() {
+    while (true) {
+      final String url;
+      final List<Pending> batch;
+      lock.lock();
+      try {
+        long waitNanos;
+        while ((waitNanos = nanosUntilReady()) > 0) {
+          if (!running) {
+            return;
+          }
+          work.awaitNanos(waitNanos);
+        }
+        if (pendingCount == 0) {
+          if (!running) {
+            return;
+          }
+          drained.signalAll();
+          work.await();
+          continue;
+        }
+        url = readyUrl();
+        final Deque<Pending> queued = pending.remove(url);
+        batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && !queued.isEmpty()) {
+          batch.add(queued.pollFirst());
+        }
+        // The queue goes to the back of the line if it still has handles.
+        if (!queued.isEmpty()) {
+          pending.put(url, queued);
+        }
+        pendingCount -= batch.size();
+        inFlight += batch.size();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        lock.unlock();
+      }
+
+      final List<String> givenUp = new ArrayList<>(0);
+      final List<Pending> retries = send(url, batch, givenUp);
+
+      lock.lock();
+      try {
+        // Retries go to the front of their queue, which waits until their backoff ends.
+        if (!retries.isEmpty()) {
+          final Deque<Pending> queued = pending.computeIfAbsent(url, key -> new ArrayDeque<>());
+          for (int i = retries.size() - 1; i >= 0; i--) {
+            queued.addFirst(retries.get(i));
+          }
+          pendingCount += retries.size();
+        }
+        failed.addAll(givenUp);
+        inFlight -= batch.size();
+        drained.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Must be called with the lock held.
+   *
+   * @return Zero when a batch should be sent now, otherwise the time to wait.
+   */
+  private long nanosUntilReady() {
+    if (pendingCount == 0) {
+      return 0;
+    }
+    final long now = System.nanoTime();
+    long waitNanos = Long.MAX_VALUE;
+    for (final Deque<Pending> queued : pending.values()) {
+      final Pending first = queued.peekFirst();
+      if (first.notBeforeNanos - now > 0) {
+        waitNanos = Math.min(waitNanos, first.notBeforeNanos - now);
+      } else if (queued.size() >= batchSize || flushRequests > 0 || !running) {
+        return 0;
+      } else {
+        waitNanos = Math.min(waitNanos, lingerNanos - (now - first.queuedNanos));
+      }
+    }
+    return Math.max(0, waitNanos);
+  }
+
+  /**
+   * Must be called with the lock held, once {@link #nanosUntilReady()} is zero.
+   *
+   * @return The first queue, in turn order, whose batch should be sent now.
+   */
+  private String readyUrl() {
+    final long now = System.nanoTime();
+    String backingOff = null;
+    for (final Map.Entry<String, Deque<Pending>> queued : pending.entrySet()) {
+      final Pending first = queued.getValue().peekFirst();
+      if (first.notBeforeNanos - now > 0) {
+        backingOff = backingOff == null ? queued.getKey() : backingOff;
+      } else if (queued.getValue().size() >= batchSize || flushRequests > 0 || !running
+          || now - first.queuedNanos >= lingerNanos) {
+        return queued.getKey();
+      }
+    }
+    // Only reached as the linger or backoff of every queue ran out between the two calls.
+    return backingOff == null ? pending.keySet().iterator().next() : backingOff;
+  }
+
+  /**
+   * Send one batch.
+   *
+   * @param url   SQS queue url.
+   * @param batch   Receipt handles to delete.
+   * @param givenUp Receives the receipt handles that failed for good.
+   * @return Entries that failed and should be retried.
+   */
+  private List<Pending> send(final String url, final List<Pending> batch, final List<String> givenUp) {
+    final List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      entries.add(new DeleteMessageBatchRequestEntry(Integer.toString(i), batch.get(i).receiptHandle));
+    }
+
+    final List<Pending> retries = new ArrayList<>(0);
+    final long start = System.nanoTime();
+    try {
+      final DeleteMessageBatchResult result = client.deleteBatch(url, entries);
+      latencySensor.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      fillRatioSensor.record((double) batch.size() / MAX_BATCH_SIZE);
+      failureSensor.record(result.getFailed().size());
+
+      for (final BatchResultErrorEntry error : result.getFailed()) {
+        final Pending entry = batch.get(Integer.parseInt(error.getId()));
+        if (Boolean.TRUE.equals(error.getSenderFault())) {
+          log.error(".delete-batch:dropping queue={}, receipt-handle={}, code={}, message={}", url,
+              entry.receiptHandle, error.getCode(), error.getMessage());
+          givenUp.add(entry.receiptHandle);
+        } else {
+          retry(entry, error.getCode(), retries, givenUp);
+        }
+      }
+    } catch (final RuntimeException e) {
+      // Any failure, not only a client one: the sender thread must outlive it, or flush() waits in vain.
+      log.warn(".delete-batch:request failed, queue={}, entries={}", url, batch.size(), e);
+      for (final Pending entry : batch) {
+        retry(entry, e.getMessage(), retries, givenUp);
+      }
+    }
+    return retries;
+  }
+
+  private void retry(final Pending entry, final String reason, final List<Pending> retries,
+      final List<String> givenUp) {
+    if (entry.attempts++ < maxRetries) {
+      entry.notBeforeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+          SqsSendRetry.backoffMs(RETRY_BACKOFF_MS, RETRY_BACKOFF_MAX_MS, entry.attempts));
+      retries.add(entry);
+    } else {
+      log.error(".delete-batch:giving up after {} attempts, receipt-handle={}, reason={}", entry.attempts,
+          entry.receiptHandle, reason);
+      givenUp.add(entry.receiptHandle);
+    }
+  }
+
+  private static final class Pending {
+    private final String receiptHandle;
+    private final long queuedNanos;
+    private long notBeforeNanos;
+    private int attempts = 0;
+
+    private Pending(final String receiptHandle, final long queuedNanos) {
+      this.receiptHandle = receiptHandle;
+      this.queuedNanos = queuedNanos;
+      this.notBeforeNanos = queuedNanos;
+    }
+  }
+}
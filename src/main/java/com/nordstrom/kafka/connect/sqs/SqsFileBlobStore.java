@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.kafka.common.config.ConfigException;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.nordstrom.kafka.connect.utils.StringUtils;
+
+/**
+ * Keeps blobs as files under the directory {@code sqs.blob.store.path}, one
+ * file per key. The sink and source connectors must share the directory, e.g.
+ * on a network file system; with a single worker it also serves for testing
+ * without S3.
+ */
+public class SqsFileBlobStore implements SqsBlobStore {
+  private Path root;
+
+  @Override
+  public void configure(final SqsConnectorConfig config, final AWSCredentialsProvider credentialsProvider) {
+    final String path = config.getBlobStorePath();
+    if (StringUtils.isBlank(path)) {
+      throw new ConfigException(SqsConnectorConfigKeys.SQS_BLOB_STORE_PATH.getValue(), path,
+          "Required by " + getClass().getName());
+    }
+    root = Paths.get(path).toAbsolutePath().normalize();
+  }
+
+  /**
+   * Write the blob to a temporary file first, so that a reader never sees it half written.
+   */
+  @Override
+  public void put(final String key, final byte[] payload) throws IOException {
+    final Path file = resolve(key);
+    final Path directory = file.getParent();
+    Files.createDirectories(directory);
+    final Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      Files.write(temporary, payload);
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  @Override
+  public InputStream get(final String key) throws IOException {
+    return Files.newInputStream(resolve(key));
+  }
+
+  /**
+   * @param key Blob key.
+   * @return The file of the blob.
+   * @throws IOException If the key would resolve outside the store directory.
+   */
+  private Path resolve(final String key) throws IOException {
+    final Path file = root.resolve(key).normalize();
+    if (!file.startsWith(root) || file.equals(root)) {
+      throw new IOException("Blob key is outside " + root + ": " + key);
+    }
+    return file;
+  }
+}
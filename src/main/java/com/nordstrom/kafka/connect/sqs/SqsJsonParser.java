@@ -0,0 +1,430 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Parses JSON message bodies into {@link Struct} values for
+ * {@code sqs.message.body.format=json}. A body is read once with a streaming
+ * parser, which also writes a fingerprint of its shape: its field names and
+ * value types, with repeated array elements of the same shape written once.
+ * Schemas are cached by fingerprint, so a body of a known shape costs one
+ * lookup; on a miss the schema is inferred and interned by shape, so messages
+ * of equivalent shapes share one {@link Schema} instance and downstream
+ * converters see a stable schema. Both caches hold up to
+ * {@code sqs.json.schema.cache.size} entries and evict the least recently
+ * used. Thread-safe.
+ *
+ * <p>
+ * Every field is optional. Strings, booleans, integers ({@code int64}) and
+ * other numbers ({@code float64}) map to the matching types, objects to
+ * structs and arrays to arrays. The elements of an array share one schema: an
+ * integer and a float widen to {@code float64}, and object elements get the
+ * union of their fields. A field that is only ever null is a string. A body
+ * that is not a JSON object, or whose arrays mix other types, is passed
+ * through as a string value.
+ */
+public final class SqsJsonParser {
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private final Map<String, Schema> schemas;
+  private final Map<Shape, Schema> shapes;
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong fallbacks = new AtomicLong();
+
+  /**
+   * @param cacheSize Maximum number of cached schemas.
+   */
+  public SqsJsonParser(final int cacheSize) {
+    this.schemas = lruMap(cacheSize);
+    this.shapes = lruMap(cacheSize);
+  }
+
+  private static <K> Map<K, Schema> lruMap(final int maxSize) {
+    return new LinkedHashMap<K, Schema>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<K, Schema> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @param body Message body.
+   * @return A struct with the cached schema of its shape, or the body itself
+   *         with a string schema if it is not a JSON object of a consistent shape.
+   */
+  public SchemaAndValue parse(final String body) {
+    final Map<String, Object> object;
+    final StringBuilder fingerprint = new StringBuilder(64);
+    try (JsonParser parser = FACTORY.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return fallback(body);
+      }
+      object = readObject(parser, fingerprint);
+      if (parser.nextToken() != null) {
+        return fallback(body);
+      }
+    } catch (final IOException e) {
+      return fallback(body);
+    }
+    final Schema schema;
+    try {
+      schema = schemaFor(fingerprint.toString(), object);
+    } catch (final ShapeConflict e) {
+      return fallback(body);
+    }
+    return new SchemaAndValue(schema, toStruct(schema, object));
+  }
+
+  /**
+   * @return The number of schemas in the cache.
+   */
+  public int cachedSchemas() {
+    synchronized (schemas) {
+      return shapes.size();
+    }
+  }
+
+  /**
+   * @return The number of fingerprints the cache had no schema for since the parser was created.
+   */
+  public long schemaMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return The number of bodies passed through as strings.
+   */
+  public long fallbacks() {
+    return fallbacks.get();
+  }
+
+  /**
+   * Estimate the size of a parsed value for the prefetch buffer, which only
+   * needs a bound: string lengths plus 8 bytes per other value.
+   *
+   * @param value A value this parser returned.
+   * @return Its approximate size in bytes.
+   */
+  public static int estimateSize(final Object value) {
+    if (value instanceof String) {
+      return ((String) value).length();
+    } else if (value instanceof Struct) {
+      final Struct struct = (Struct) value;
+      int size = 0;
+      for (final Field field : struct.schema().fields()) {
+        size += estimateSize(struct.get(field));
+      }
+      return size;
+    } else if (value instanceof List) {
+      int size = 0;
+      for (final Object element : (List<?>) value) {
+        size += estimateSize(element);
+      }
+      return size;
+    }
+    return 8;
+  }
+
+  private SchemaAndValue fallback(final String body) {
+    fallbacks.incrementAndGet();
+    return new SchemaAndValue(Schema.STRING_SCHEMA, body);
+  }
+
+  /**
+   * @throws ShapeConflict If the object has no schema.
+   */
+  private Schema schemaFor(final String fingerprint, final Map<String, Object> object) {
+    synchronized (schemas) {
+      final Schema schema = schemas.get(fingerprint);
+      if (schema != null) {
+        return schema;
+      }
+    }
+    misses.incrementAndGet();
+    final Shape shape = shapeOf(object);
+    synchronized (schemas) {
+      final Schema schema = shapes.computeIfAbsent(shape, key -> key.toSchema(false));
+      schemas.put(fingerprint, schema);
+      return schema;
+    }
+  }
+
+  /**
+   * Read the fields of an object whose START_OBJECT the parser is on, into
+   * maps, lists, strings, booleans, longs and doubles, and write its fingerprint.
+   */
+  private static Map<String, Object> readObject(final JsonParser parser, final StringBuilder fingerprint)
+      throws IOException {
+    final Map<String, Object> object = new LinkedHashMap<>();
+    fingerprint.append('{');
+    String name;
+    while ((name = parser.nextFieldName()) != null) {
+      // Length prefixed, so that no name can read as the fingerprint of another field.
+      fingerprint.append(name.length()).append(':').append(name);
+      object.put(name, readValue(parser, parser.nextToken(), fingerprint));
+    }
+    fingerprint.append('}');
+    return object;
+  }
+
+  private static Object readValue(final JsonParser parser, final JsonToken token, final StringBuilder fingerprint)
+      throws IOException {
+    if (token == null) {
+      throw new IOException("Unexpected end of input");
+    }
+    switch (token) {
+      case START_OBJECT:
+        return readObject(parser, fingerprint);
+      case START_ARRAY:
+        return readArray(parser, fingerprint);
+      case VALUE_STRING:
+        fingerprint.append('s');
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+        // Integers beyond int64 are read as floats rather than failing the body.
+        if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+          fingerprint.append('f');
+          return parser.getDoubleValue();
+        }
+        fingerprint.append('i');
+        return parser.getLongValue();
+      case VALUE_NUMBER_FLOAT:
+        fingerprint.append('f');
+        return parser.getDoubleValue();
+      case VALUE_TRUE:
+        fingerprint.append('b');
+        return Boolean.TRUE;
+      case VALUE_FALSE:
+        fingerprint.append('b');
+        return Boolean.FALSE;
+      case VALUE_NULL:
+        fingerprint.append('n');
+        return null;
+      default:
+        throw new IOException("Unexpected token " + token);
+    }
+  }
+
+  /**
+   * Read an array whose START_ARRAY the parser is on. An element of the same
+   * fingerprint as the one before it is not written again, so that arrays of
+   * any length of the same elements have the same fingerprint.
+   */
+  private static List<Object> readArray(final JsonParser parser, final StringBuilder fingerprint)
+      throws IOException {
+    final List<Object> array = new ArrayList<>();
+    fingerprint.append('[');
+    int previous = -1;
+    int previousLength = 0;
+    JsonToken element;
+    while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+      final int start = fingerprint.length();
+      array.add(readValue(parser, element, fingerprint));
+      final int length = fingerprint.length() - start;
+      if (length == previousLength && regionEquals(fingerprint, previous, start, length)) {
+        fingerprint.setLength(start);
+      } else {
+        previous = start;
+        previousLength = length;
+      }
+    }
+    fingerprint.append(']');
+    return array;
+  }
+
+  private static boolean regionEquals(final StringBuilder chars, final int a, final int b, final int length) {
+    for (int i = 0; i < length; i++) {
+      if (chars.charAt(a + i) != chars.charAt(b + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Shape shapeOf(final Object value) {
+    if (value == null) {
+      return Shape.NULL;
+    } else if (value instanceof String) {
+      return Shape.STRING;
+    } else if (value instanceof Long) {
+      return Shape.INT64;
+    } else if (value instanceof Double) {
+      return Shape.FLOAT64;
+    } else if (value instanceof Boolean) {
+      return Shape.BOOLEAN;
+    } else if (value instanceof Map) {
+      final Map<String, Object> object = (Map<String, Object>) value;
+      final Map<String, Shape> fields = new LinkedHashMap<>();
+      for (final Map.Entry<String, Object> field : object.entrySet()) {
+        fields.put(field.getKey(), shapeOf(field.getValue()));
+      }
+      return new Shape(Schema.Type.STRUCT, fields, null);
+    }
+    Shape items = Shape.NULL;
+    for (final Object element : (List<?>) value) {
+      items = Shape.merge(items, shapeOf(element));
+    }
+    return new Shape(Schema.Type.ARRAY, null, items);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object convert(final Object value, final Schema schema) {
+    if (value == null) {
+      return null;
+    }
+    switch (schema.type()) {
+      case STRUCT:
+        return toStruct(schema, (Map<String, Object>) value);
+      case ARRAY:
+        final List<?> array = (List<?>) value;
+        final List<Object> converted = new ArrayList<>(array.size());
+        for (final Object element : array) {
+          converted.add(convert(element, schema.valueSchema()));
+        }
+        return converted;
+      case FLOAT64:
+        // An integer in a field or an array that also holds floats.
+        return ((Number) value).doubleValue();
+      default:
+        return value;
+    }
+  }
+
+  private static Struct toStruct(final Schema schema, final Map<String, Object> object) {
+    final Struct struct = new Struct(schema);
+    for (final Map.Entry<String, Object> field : object.entrySet()) {
+      final Field schemaField = schema.field(field.getKey());
+      struct.put(schemaField, convert(field.getValue(), schemaField.schema()));
+    }
+    return struct;
+  }
+
+  /**
+   * Thrown when the elements of an array have no common schema.
+   */
+  private static final class ShapeConflict extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    ShapeConflict() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * The type of a JSON value with the names and shapes of its fields, or of
+   * its array elements. Compared by value, regardless of field order, so that
+   * it serves as the schema cache key.
+   */
+  private static final class Shape {
+    static final Shape NULL = new Shape(null, null, null);
+    static final Shape STRING = new Shape(Schema.Type.STRING, null, null);
+    static final Shape INT64 = new Shape(Schema.Type.INT64, null, null);
+    static final Shape FLOAT64 = new Shape(Schema.Type.FLOAT64, null, null);
+    static final Shape BOOLEAN = new Shape(Schema.Type.BOOLEAN, null, null);
+
+    // Null for a value that is only ever null.
+    final Schema.Type type;
+    final Map<String, Shape> fields;
+    final Shape items;
+    final int hash;
+
+    Shape(final Schema.Type type, final Map<String, Shape> fields, final Shape items) {
+      this.type = type;
+      this.fields = fields;
+      this.items = items;
+      this.hash = Objects.hash(type, fields, items);
+    }
+
+    static Shape merge(final Shape a, final Shape b) {
+      if (a.equals(b) || b == NULL) {
+        return a;
+      } else if (a == NULL) {
+        return b;
+      } else if (a.type == Schema.Type.INT64 && b.type == Schema.Type.FLOAT64
+          || a.type == Schema.Type.FLOAT64 && b.type == Schema.Type.INT64) {
+        return FLOAT64;
+      } else if (a.type == Schema.Type.ARRAY && b.type == Schema.Type.ARRAY) {
+        return new Shape(Schema.Type.ARRAY, null, merge(a.items, b.items));
+      } else if (a.type == Schema.Type.STRUCT && b.type == Schema.Type.STRUCT) {
+        final Map<String, Shape> fields = new LinkedHashMap<>(a.fields);
+        for (final Map.Entry<String, Shape> field : b.fields.entrySet()) {
+          fields.merge(field.getKey(), field.getValue(), Shape::merge);
+        }
+        return new Shape(Schema.Type.STRUCT, Collections.unmodifiableMap(fields), null);
+      }
+      throw new ShapeConflict();
+    }
+
+    Schema toSchema(final boolean optional) {
+      final SchemaBuilder builder;
+      if (type == null) {
+        builder = SchemaBuilder.string();
+      } else if (type == Schema.Type.STRUCT) {
+        builder = SchemaBuilder.struct();
+        for (final Map.Entry<String, Shape> field : fields.entrySet()) {
+          builder.field(field.getKey(), field.getValue().toSchema(true));
+        }
+      } else if (type == Schema.Type.ARRAY) {
+        builder = SchemaBuilder.array(items.toSchema(true));
+      } else {
+        builder = SchemaBuilder.type(type);
+      }
+      return optional ? builder.optional().build() : builder.build();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Shape)) {
+        return false;
+      }
+      final Shape other = (Shape) o;
+      return hash == other.hash && type == other.type && Objects.equals(fields, other.fields)
+          && Objects.equals(items, other.items);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Gauge;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.KafkaMetricsContext;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.MetricsReporter;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.CumulativeCount;
+import org.apache.kafka.common.metrics.stats.CumulativeSum;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Percentile;
+import org.apache.kafka.common.metrics.stats.Percentiles;
+import org.apache.kafka.common.metrics.stats.Percentiles.BucketSizing;
+import org.apache.kafka.common.metrics.stats.Rate;
+import org.apache.kafka.common.metrics.stats.WindowedCount;
+import org.apache.kafka.common.utils.Time;
+
+/**
+ * Thin wrapper around a Kafka {@link Metrics} registry that publishes the
+ * connector metrics over JMX under the {@value #JMX_PREFIX} domain.
+ *
+ * Every instance owns its registry, so the group and tags given to the
+ * constructor must be unique within the worker JVM (e.g. connector name and
+ * task id). {@link #tagged(String, String)} derives views that share the
+ * registry with additional tags, e.g. one per queue.
+ */
+public class SqsMetrics implements AutoCloseable {
+  public static final String JMX_PREFIX = "kafka.connect.sqs";
+
+  // Latency histograms cover up to the longest long-poll plus SDK retries.
+  private static final int LATENCY_HISTOGRAM_BYTES = 4000;
+  private static final double LATENCY_HISTOGRAM_MAX_MS = 60000.0;
+
+  private final Metrics metrics;
+  private final String group;
+  private final Map<String, String> tags;
+  private final String sensorPrefix;
+  private final boolean owner;
+  private final ConcurrentMap<String, SqsQueueMetrics> queues;
+
+  /**
+   * @param group Metric group, which becomes the JMX {@code type} key.
+   * @param tags  Tags that identify this instance, e.g. connector and task.
+   */
+  public SqsMetrics(final String group, final Map<String, String> tags) {
+    final MetricConfig metricConfig = new MetricConfig().tags(tags);
+    this.metrics = new Metrics(metricConfig, Collections.<MetricsReporter>singletonList(new JmxReporter()),
+        Time.SYSTEM, new KafkaMetricsContext(JMX_PREFIX));
+    this.group = group;
+    this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+    this.sensorPrefix = "";
+    this.owner = true;
+    this.queues = new ConcurrentHashMap<>();
+  }
+
+  private SqsMetrics(final SqsMetrics parent, final String key, final String value) {
+    final Map<String, String> merged = new LinkedHashMap<>(parent.tags);
+    merged.put(key, value);
+    this.metrics = parent.metrics;
+    this.group = parent.group;
+    this.tags = Collections.unmodifiableMap(merged);
+    this.sensorPrefix = parent.sensorPrefix + key + "=" + value + ":";
+    this.owner = false;
+    this.queues = parent.queues;
+  }
+
+  /**
+   * Build the tags for a task-level registry.
+   *
+   * @param connector Connector name.
+   * @param taskId    Task identifier, unique within the connector.
+   * @return Ordered tag map.
+   */
+  public static Map<String, String> taskTags(final String connector, final String taskId) {
+    final Map<String, String> tags = new LinkedHashMap<>();
+    tags.put("connector", connector);
+    tags.put("task", taskId);
+    return tags;
+  }
+
+  /**
+   * Build the tags for a connector-level registry.
+   *
+   * @param connector Connector name.
+   * @return Ordered tag map.
+   */
+  public static Map<String, String> connectorTags(final String connector) {
+    final Map<String, String> tags = new LinkedHashMap<>();
+    tags.put("connector", connector);
+    return tags;
+  }
+
+  /**
+   * Derive a view that registers its metrics with an additional tag in the
+   * same registry. Closing the view has no effect.
+   *
+   * @param key   Tag name.
+   * @param value Tag value.
+   * @return The view.
+   */
+  public SqsMetrics tagged(final String key, final String value) {
+    return new SqsMetrics(this, key, value);
+  }
+
+  /**
+   * Get or create the API call metrics of a queue, tagged with its name.
+   *
+   * @param queueUrl SQS queue url.
+   * @return The queue's metrics.
+   */
+  public SqsQueueMetrics queue(final String queueUrl) {
+    return queues.computeIfAbsent(queueUrl, url -> new SqsQueueMetrics(tagged("queue", queueName(url))));
+  }
+
+  /**
+   * @param queueUrl SQS queue url.
+   * @return The last path segment of the url, which is the queue name.
+   */
+  public static String queueName(final String queueUrl) {
+    final int slash = queueUrl.lastIndexOf('/');
+    return slash < 0 ? queueUrl : queueUrl.substring(slash + 1);
+  }
+
+  public MetricName metricName(final String name, final String description) {
+    return metrics.metricName(name, group, description, tags);
+  }
+
+  /**
+   * Get or create a sensor that is scoped to this registry.
+   *
+   * @param name Sensor name.
+   * @return The sensor.
+   */
+  public Sensor sensor(final String name) {
+    return metrics.sensor(sensorPrefix + name);
+  }
+
+  /**
+   * Get or create a sensor that publishes a {@code <name>-avg} metric.
+   *
+   * @param name        Sensor and metric base name.
+   * @param description Human-readable description of the recorded value.
+   * @return The sensor.
+   */
+  public synchronized Sensor avgSensor(final String name, final String description) {
+    Sensor sensor = metrics.getSensor(sensorPrefix + name);
+    if (sensor == null) {
+      sensor = metrics.sensor(sensorPrefix + name);
+      sensor.add(metricName(name + "-avg", "The average " + description), new Avg());
+    }
+    return sensor;
+  }
+
+  /**
+   * Get or create a sensor that publishes {@code <name>-avg} and
+   * {@code <name>-max} metrics.
+   *
+   * @param name        Sensor and metric base name.
+   * @param description Human-readable description of the recorded value.
+   * @return The sensor.
+   */
+  public synchronized Sensor avgMaxSensor(final String name, final String description) {
+    Sensor sensor = metrics.getSensor(sensorPrefix + name);
+    if (sensor == null) {
+      sensor = metrics.sensor(sensorPrefix + name);
+      sensor.add(metricName(name + "-avg", "The average " + description), new Avg());
+      sensor.add(metricName(name + "-max", "The maximum " + description), new Max());
+    }
+    return sensor;
+  }
+
+  /**
+   * Get or create a sensor that publishes {@code <name>-avg}, {@code -max},
+   * {@code -p50}, {@code -p95} and {@code -p99} metrics of a latency in
+   * milliseconds.
+   *
+   * @param name        Sensor and metric base name.
+   * @param description Human-readable description of the recorded latency.
+   * @return The sensor.
+   */
+  public synchronized Sensor latencySensor(final String name, final String description) {
+    Sensor sensor = metrics.getSensor(sensorPrefix + name);
+    if (sensor == null) {
+      sensor = metrics.sensor(sensorPrefix + name);
+      sensor.add(metricName(name + "-avg", "The average " + description), new Avg());
+      sensor.add(metricName(name + "-max", "The maximum " + description), new Max());
+      sensor.add(new Percentiles(LATENCY_HISTOGRAM_BYTES, LATENCY_HISTOGRAM_MAX_MS, BucketSizing.LINEAR,
+          new Percentile(metricName(name + "-p50", "The median " + description), 50),
+          new Percentile(metricName(name + "-p95", "The 95th percentile " + description), 95),
+          new Percentile(metricName(name + "-p99", "The 99th percentile " + description), 99)));
+    }
+    return sensor;
+  }
+
+  /**
+   * Get or create a sensor that counts events, publishing {@code <name>-total}
+   * and {@code <name>-rate} metrics.
+   *
+   * @param name        Sensor and metric base name.
+   * @param description Human-readable description of the counted events.
+   * @return The sensor.
+   */
+  public synchronized Sensor countSensor(final String name, final String description) {
+    Sensor sensor = metrics.getSensor(sensorPrefix + name);
+    if (sensor == null) {
+      sensor = metrics.sensor(sensorPrefix + name);
+      sensor.add(metricName(name + "-total", "The total number of " + description), new CumulativeCount());
+      sensor.add(metricName(name + "-rate", "The number per second of " + description), new Rate(new WindowedCount()));
+    }
+    return sensor;
+  }
+
+  /**
+   * Get or create a sensor that sums the recorded values, publishing
+   * {@code <name>-total} and {@code <name>-rate} metrics.
+   *
+   * @param name        Sensor and metric base name.
+   * @param description Human-readable description of the recorded quantity.
+   * @return The sensor.
+   */
+  public synchronized Sensor sumSensor(final String name, final String description) {
+    Sensor sensor = metrics.getSensor(sensorPrefix + name);
+    if (sensor == null) {
+      sensor = metrics.sensor(sensorPrefix + name);
+      sensor.add(metricName(name + "-total", "The total " + description), new CumulativeSum());
+      sensor.add(metricName(name + "-rate", "The per second " + description), new Rate());
+    }
+    return sensor;
+  }
+
+  public <T> void gauge(final String name, final String description, final Gauge<T> gauge) {
+    metrics.addMetric(metricName(name, description), gauge);
+  }
+
+  @Override
+  public void close() {
+    if (owner) {
+      metrics.close();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+/**
+ * Tracks, per topic partition, which sink records have been sent to SQS so
+ * that only offsets whose records (and every record before them) have been
+ * acknowledged are committed.
+ */
+public class SqsOffsetTracker {
+  private final Map<TopicPartition, PartitionState> partitions = new HashMap<>();
+
+  /**
+   * Register a record that is about to be sent.
+   *
+   * @param record The record.
+   */
+  public synchronized void pending(final SinkRecord record) {
+    state(record).inFlight.put(record.kafkaOffset(), Boolean.FALSE);
+  }
+
+  /**
+   * Mark a previously registered record as acknowledged by SQS.
+   *
+   * @param record The record.
+   */
+  public synchronized void acknowledged(final SinkRecord record) {
+    final PartitionState state = state(record);
+    final TreeMap<Long, Boolean> inFlight = state.inFlight;
+    if (inFlight.containsKey(record.kafkaOffset())) {
+      inFlight.put(record.kafkaOffset(), Boolean.TRUE);
+    }
+    while (!inFlight.isEmpty() && inFlight.firstEntry().getValue()) {
+      state.nextOffset = inFlight.pollFirstEntry().getKey() + 1;
+    }
+  }
+
+  /**
+   * Compute the offsets that are safe to commit.
+   *
+   * @param currentOffsets The offsets the framework would commit on its own.
+   * @return For every partition in {@code currentOffsets} with acknowledged
+   *         records, the offset following the last record acknowledged in order.
+   */
+  public synchronized Map<TopicPartition, OffsetAndMetadata> committable(
+      final Map<TopicPartition, OffsetAndMetadata> currentOffsets) {
+    final Map<TopicPartition, OffsetAndMetadata> result = new HashMap<>(currentOffsets.size());
+    for (final TopicPartition tp : currentOffsets.keySet()) {
+      final PartitionState state = partitions.get(tp);
+      if (state != null && state.nextOffset >= 0) {
+        result.put(tp, new OffsetAndMetadata(state.nextOffset));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of records sent but not yet acknowledged.
+   */
+  public synchronized int inFlight() {
+    int count = 0;
+    for (final PartitionState state : partitions.values()) {
+      for (final Boolean acked : state.inFlight.values()) {
+        if (!acked) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Drop the records that are not acknowledged, so that they can be consumed
+   * and registered again. Committable offsets are kept.
+   *
+   * @return For every partition with records that are not acknowledged, the
+   *         offset of the first of them.
+   */
+  public synchronized Map<TopicPartition, Long> rewind() {
+    final Map<TopicPartition, Long> offsets = new HashMap<>();
+    for (final Map.Entry<TopicPartition, PartitionState> partition : partitions.entrySet()) {
+      final TreeMap<Long, Boolean> inFlight = partition.getValue().inFlight;
+      if (!inFlight.isEmpty()) {
+        // Acknowledged records at the head are drained, so the first one is not acknowledged.
+        offsets.put(partition.getKey(), inFlight.firstKey());
+        inFlight.clear();
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * Forget the partitions that are no longer assigned to the task.
+   *
+   * @param topicPartitions The revoked partitions.
+   */
+  public synchronized void remove(final Collection<TopicPartition> topicPartitions) {
+    for (final TopicPartition tp : topicPartitions) {
+      partitions.remove(tp);
+    }
+  }
+
+  private PartitionState state(final SinkRecord record) {
+    final TopicPartition tp = new TopicPartition(record.topic(), record.kafkaPartition());
+    PartitionState state = partitions.get(tp);
+    if (state == null) {
+      state = new PartitionState();
+      partitions.put(tp, state);
+    }
+    return state;
+  }
+
+  private static final class PartitionState {
+    private final TreeMap<Long, Boolean> inFlight = new TreeMap<>();
+    private long nextOffset = -1;
+  }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.kafka.connect.errors.DataException;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+
+/**
+ * Compression of message bodies between the sink and the source. A compressed
+ * body is base64 encoded, since SQS bodies are text, and the codec is named in
+ * the {@link #ATTRIBUTE} message attribute so that the source can reverse it.
+ * Binary bodies are base64 encoded whether they are compressed or not.
+ * Decoding stops at a maximum size, so that a small frame cannot claim or
+ * inflate to more memory than the worker can spare.
+ * <p>
+ * The zstd and lz4 libraries are optional dependencies, which the Connect
+ * worker provides with kafka-clients. Only the nested {@code Zstd} and
+ * {@code Lz4} classes refer to them, so they are loaded when such a codec is
+ * first used, and {@link #isAvailable()} tells beforehand whether they can be.
+ */
+public enum SqsPayloadCodec {
+  NONE(null, null) {
+    @Override
+    byte[] compress(final byte[] bytes) {
+      return bytes;
+    }
+
+    @Override
+    byte[] decompress(final byte[] bytes, final int maxBytes) {
+      return bytes;
+    }
+  },
+  GZIP(null, null) {
+    @Override
+    byte[] compress(final byte[] bytes) throws IOException {
+      final ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, bytes.length / 2));
+      try (OutputStream out = new GZIPOutputStream(buffer, BUFFER_SIZE)) {
+        out.write(bytes);
+      }
+      return buffer.toByteArray();
+    }
+
+    @Override
+    byte[] decompress(final byte[] bytes, final int maxBytes) throws IOException {
+      return readFully(new GZIPInputStream(new ByteArrayInputStream(bytes), BUFFER_SIZE), bytes.length, maxBytes);
+    }
+  },
+  ZSTD("com.github.luben.zstd.Zstd", "com.github.luben:zstd-jni") {
+    @Override
+    byte[] compress(final byte[] bytes) {
+      return Zstd.compress(bytes);
+    }
+
+    @Override
+    byte[] decompress(final byte[] bytes, final int maxBytes) throws IOException {
+      return Zstd.decompress(bytes, maxBytes);
+    }
+  },
+  LZ4("net.jpountz.lz4.LZ4FrameOutputStream", "org.lz4:lz4-java") {
+    @Override
+    byte[] compress(final byte[] bytes) throws IOException {
+      return Lz4.compress(bytes);
+    }
+
+    @Override
+    byte[] decompress(final byte[] bytes, final int maxBytes) throws IOException {
+      return Lz4.decompress(bytes, maxBytes);
+    }
+  };
+
+  /**
+   * Message attribute naming the codec of a compressed body.
+   */
+  public static final String ATTRIBUTE = "sqs-payload-codec";
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final String value = name().toLowerCase(Locale.ROOT);
+  private final MessageAttributeValue attributeValue = new MessageAttributeValue().withDataType("String")
+      .withStringValue(value);
+  private final String libraryClass;
+  private final String library;
+  private volatile Boolean available;
+
+  SqsPayloadCodec(final String libraryClass, final String library) {
+    this.libraryClass = libraryClass;
+    this.library = library;
+  }
+
+  abstract byte[] compress(byte[] bytes) throws IOException;
+
+  abstract byte[] decompress(byte[] bytes, int maxBytes) throws IOException;
+
+  /**
+   * @return The codec name, as configured and as sent in {@link #ATTRIBUTE}.
+   */
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * @return The {@link #ATTRIBUTE} value of this codec; shared, do not modify.
+   */
+  public MessageAttributeValue getAttributeValue() {
+    return attributeValue;
+  }
+
+  /**
+   * @return Whether the library of this codec can be loaded.
+   */
+  public boolean isAvailable() {
+    Boolean result = available;
+    if (result == null) {
+      result = libraryClass == null;
+      if (!result) {
+        try {
+          Class.forName(libraryClass, false, SqsPayloadCodec.class.getClassLoader());
+          result = true;
+        } catch (final ClassNotFoundException | LinkageError e) {
+          result = false;
+        }
+      }
+      available = result;
+    }
+    return result;
+  }
+
+  /**
+   * @return Why the codec is not available, naming its library.
+   */
+  public String unavailableReason() {
+    return "Codec " + value + " needs " + library + " on the worker or plugin classpath";
+  }
+
+  /**
+   * @param value Codec name, case insensitive.
+   * @return The codec.
+   * @throws IllegalArgumentException If there is no such codec.
+   */
+  public static SqsPayloadCodec forValue(final String value) {
+    return valueOf(value.trim().toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * Compress and base64 encode a body, if that makes it smaller.
+   *
+   * @param body          The message body.
+   * @param minimumLength Bodies shorter than this, in UTF-8 bytes, are not compressed.
+   * @return The encoded body, or null if the body is left as it is.
+   */
+  public String encode(final String body, final int minimumLength) {
+    // A char is at most three UTF-8 bytes, which spares short bodies the encoding.
+    if (this == NONE || body.length() * 3L < minimumLength) {
+      return null;
+    }
+    final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length < minimumLength) {
+      return null;
+    }
+    final byte[] compressed;
+    try {
+      compressed = compress(bytes);
+    } catch (final IOException e) {
+      throw new DataException("Failed to compress message body with " + value, e);
+    }
+    // Base64 grows the compressed body by a third.
+    if ((compressed.length + 2L) / 3 * 4 >= bytes.length) {
+      return null;
+    }
+    return Base64.getEncoder().encodeToString(compressed);
+  }
+
+  /**
+   * Compress a binary body, if that makes it smaller. Binary bodies are base64 encoded either way.
+   *
+   * @param bytes         The binary body.
+   * @param minimumLength Bodies shorter than this are not compressed.
+   * @return The compressed body, or null if the body is left as it is.
+   */
+  public byte[] encodeBinary(final byte[] bytes, final int minimumLength) {
+    if (this == NONE || bytes.length < minimumLength) {
+      return null;
+    }
+    final byte[] compressed;
+    try {
+      compressed = compress(bytes);
+    } catch (final IOException e) {
+      throw new DataException("Failed to compress message body with " + value, e);
+    }
+    return compressed.length < bytes.length ? compressed : null;
+  }
+
+  /**
+   * Reverse {@link #encode(String, int)}.
+   *
+   * @param body     The encoded message body.
+   * @param maxBytes Maximum size of the original body in UTF-8 bytes.
+   * @return The original body.
+   * @throws DataException If the body cannot be decoded or is larger than {@code maxBytes}.
+   */
+  public String decode(final String body, final int maxBytes) {
+    if (this == NONE) {
+      return body;
+    }
+    return new String(decodeBinary(body, maxBytes), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Base64 decode a body and decompress it with this codec.
+   *
+   * @param body     The encoded message body.
+   * @param maxBytes Maximum size of the original body.
+   * @return The original body as bytes.
+   * @throws DataException If the body cannot be decoded or is larger than {@code maxBytes}.
+   */
+  public byte[] decodeBinary(final String body, final int maxBytes) {
+    final byte[] bytes;
+    try {
+      bytes = Base64.getDecoder().decode(body);
+    } catch (final IllegalArgumentException e) {
+      throw new DataException("Message body is not base64", e);
+    }
+    try {
+      return decompress(bytes, maxBytes);
+    } catch (final IOException | RuntimeException e) {
+      throw new DataException("Failed to decompress message body with " + value, e);
+    }
+  }
+
+  /**
+   * The only class that refers to zstd-jni.
+   */
+  private static final class Zstd {
+    // The zstd default, and the level Kafka uses.
+    private static final int LEVEL = 3;
+
+    static byte[] compress(final byte[] bytes) {
+      return com.github.luben.zstd.Zstd.compress(bytes, LEVEL);
+    }
+
+    static byte[] decompress(final byte[] bytes, final int maxBytes) throws IOException {
+      // The frame header carries the size, which the streaming API would not use.
+      final long size = com.github.luben.zstd.Zstd.decompressedSize(bytes);
+      if (size <= 0) {
+        throw new IOException("Unknown zstd content size " + size);
+      }
+      if (size > maxBytes) {
+        throw new IOException("zstd frame claims " + size + " bytes, more than the maximum of " + maxBytes);
+      }
+      return com.github.luben.zstd.Zstd.decompress(bytes, (int) size);
+    }
+  }
+
+  /**
+   * The only class that refers to lz4-java.
+   */
+  private static final class Lz4 {
+    static byte[] compress(final byte[] bytes) throws IOException {
+      final ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, bytes.length / 2));
+      // The default 4 MB blocks cost more to allocate than to compress a message.
+      try (OutputStream out = new net.jpountz.lz4.LZ4FrameOutputStream(buffer,
+          net.jpountz.lz4.LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB)) {
+        out.write(bytes);
+      }
+      return buffer.toByteArray();
+    }
+
+    static byte[] decompress(final byte[] bytes, final int maxBytes) throws IOException {
+      return readFully(new net.jpountz.lz4.LZ4FrameInputStream(new ByteArrayInputStream(bytes)), bytes.length,
+          maxBytes);
+    }
+  }
+
+  private static byte[] readFully(final InputStream in, final int compressedLength, final int maxBytes)
+      throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) Math.min(compressedLength * 4L, maxBytes));
+    final byte[] chunk = new byte[BUFFER_SIZE];
+    try (InputStream input = in) {
+      int n;
+      while ((n = input.read(chunk)) != -1) {
+        if (n > maxBytes - buffer.size()) {
+          throw new IOException("Decompressed body exceeds the maximum of " + maxBytes + " bytes");
+        }
+        buffer.write(chunk, 0, n);
+      }
+    }
+    return buffer.toByteArray();
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Hand-off between receiver threads and the task's poll loop, bounded both by
+ * the number of elements and by their total size in bytes.
+ *
+ * @param <T> Element type.
+ */
+public class SqsPrefetchBuffer<T> {
+  private final int maxElements;
+  private final long maxBytes;
+  private final ToIntFunction<T> sizer;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final Deque<Sized<T>> elements = new ArrayDeque<>();
+  private long bytes = 0;
+  private boolean closed = false;
+
+  /**
+   * @param maxElements Maximum number of buffered elements.
+   * @param maxBytes    Maximum total size of buffered elements. A single element
+   *                    larger than this is still accepted into an empty buffer.
+   * @param sizer       Size of an element in bytes.
+   */
+  public SqsPrefetchBuffer(final int maxElements, final long maxBytes, final ToIntFunction<T> sizer) {
+    Guard.verifyInRange(maxElements, 1, Integer.MAX_VALUE, SqsConnectorConfigKeys.SQS_PREFETCH_MAX_MESSAGES.getValue());
+    this.maxElements = maxElements;
+    this.maxBytes = maxBytes;
+    this.sizer = sizer;
+  }
+
+  /**
+   * Add an element, waiting while the buffer is full.
+   *
+   * @param element The element.
+   * @return false if the buffer was closed and the element was not added.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean put(final T element) throws InterruptedException {
+    final int size = sizer.applyAsInt(element);
+    lock.lockInterruptibly();
+    try {
+      while (!closed && !elements.isEmpty() && (elements.size() >= maxElements || bytes + size > maxBytes)) {
+        notFull.await();
+      }
+      if (closed) {
+        return false;
+      }
+      elements.addLast(new Sized<>(element, size));
+      bytes += size;
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Remove elements, oldest first, until {@code maxElements} are taken or
+   * their total size reaches {@code maxBytes}, waiting up to {@code timeoutNanos}
+   * only if the buffer is empty. The first element is taken even if it is
+   * larger than {@code maxBytes}.
+   *
+   * @param into         Receives the removed elements.
+   * @param maxElements  Maximum number of elements to remove.
+   * @param maxBytes     Total size after which no further element is removed.
+   * @param timeoutNanos Maximum time to wait for the first element.
+   * @return The total size of the removed elements, 0 if there were none.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public long drainTo(final List<T> into, final int maxElements, final long maxBytes, final long timeoutNanos)
+      throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      long nanos = timeoutNanos;
+      while (elements.isEmpty() && !closed && nanos > 0) {
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      int taken = 0;
+      long takenBytes = 0;
+      while (taken < maxElements && takenBytes < maxBytes && !elements.isEmpty()) {
+        final Sized<T> sized = elements.pollFirst();
+        bytes -= sized.size;
+        takenBytes += sized.size;
+        taken++;
+        into.add(sized.element);
+      }
+      if (taken > 0) {
+        notFull.signalAll();
+      }
+      return takenBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wake up every waiting thread and reject further elements.
+   */
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      notFull.signalAll();
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return elements.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long bytes() {
+    lock.lock();
+    try {
+      return bytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static final class Sized<T> {
+    private final T element;
+    private final int size;
+
+    private Sized(final T element, final int size) {
+      this.element = element;
+      this.size = size;
+    }
+  }
+}
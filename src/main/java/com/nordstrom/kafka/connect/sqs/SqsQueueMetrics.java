@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.metrics.Sensor;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+
+/**
+ * SQS API call metrics of one queue within a task: call latency, requests
+ * and errors per API, receive sizes, the age of received messages, bytes
+ * transferred, send failures and retries, and the requests SQS bills for,
+ * which counts every call plus one per further 64 KB chunk of the messages a
+ * call transfers.
+ */
+public class SqsQueueMetrics {
+  public static final String RECEIVE_MESSAGE = "receive-message";
+  public static final String SEND_MESSAGE = "send-message";
+  public static final String SEND_MESSAGE_BATCH = "send-message-batch";
+  public static final String DELETE_MESSAGE = "delete-message";
+  public static final String DELETE_MESSAGE_BATCH = "delete-message-batch";
+  public static final String GET_QUEUE_ATTRIBUTES = "get-queue-attributes";
+  public static final String CHANGE_MESSAGE_VISIBILITY_BATCH = "change-message-visibility-batch";
+
+  private static final long BILLED_CHUNK_BYTES = 64 * 1024;
+
+  private final SqsMetrics metrics;
+  private final ConcurrentMap<String, Sensor> requestSensors = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Sensor> latencySensors = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Sensor> errorSensors = new ConcurrentHashMap<>();
+  private final Sensor messagesPerReceive;
+  private final Sensor emptyReceives;
+  private final Sensor emptyReceiveRatio;
+  private final Sensor messageAge;
+  private final Sensor bytesIn;
+  private final Sensor bytesOut;
+  private final Sensor messagesSent;
+  private final Sensor sendFailures;
+  private final Sensor sendRetries;
+  private final Sensor sendThrottles;
+  private final AtomicLong billedRequests = new AtomicLong();
+  private final AtomicLong messages = new AtomicLong();
+
+  /**
+   * @param metrics Registry view tagged with the queue.
+   */
+  public SqsQueueMetrics(final SqsMetrics metrics) {
+    this.metrics = metrics;
+    messagesPerReceive = metrics.avgMaxSensor("messages-per-receive", "number of messages returned by a receive.");
+    emptyReceives = metrics.countSensor("empty-receives", "receives that returned no messages.");
+    emptyReceiveRatio = metrics.avgSensor("empty-receive-ratio", "fraction of receives that returned no messages.");
+    messageAge = metrics.avgMaxSensor("message-age-ms",
+        "time in milliseconds from sending a message to receiving it, from its SentTimestamp.");
+    bytesIn = metrics.sumSensor("bytes-in", "message body bytes received.");
+    bytesOut = metrics.sumSensor("bytes-out", "message payload bytes sent.");
+    messagesSent = metrics.sumSensor("messages-sent", "number of messages sent.");
+    sendFailures = metrics.countSensor("send-failures", "messages given up on after their last send attempt.");
+    sendRetries = metrics.countSensor("send-retries", "messages resent after a failed attempt.");
+    sendThrottles = metrics.countSensor("send-throttles", "send requests or messages throttled by SQS.");
+    metrics.gauge("billed-requests-total", "The total number of requests SQS bills for, counting 64 KB chunks.",
+        (config, now) -> billedRequests.get());
+    metrics.gauge("billed-requests-per-million-messages",
+        "The number of billed requests per million messages received or sent.",
+        (config, now) -> billedRequestsPerMillionMessages());
+  }
+
+  /**
+   * Record the completion of an SQS API call.
+   *
+   * @param api        API name, e.g. {@link #RECEIVE_MESSAGE}.
+   * @param startNanos {@link System#nanoTime()} when the call started.
+   * @param ok         Whether the call succeeded.
+   */
+  public void recordCall(final String api, final long startNanos, final boolean ok) {
+    final double ms = (System.nanoTime() - startNanos) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    requestSensors.computeIfAbsent(api, name -> metrics.countSensor(name + "-requests", name + " calls."))
+        .record();
+    billedRequests.incrementAndGet();
+    latencySensors.computeIfAbsent(api,
+        name -> metrics.latencySensor(name + "-latency-ms", "latency in milliseconds of " + name + " calls."))
+        .record(ms);
+    if (!ok) {
+      errorSensors.computeIfAbsent(api, name -> metrics.countSensor(name + "-errors", name + " calls that failed."))
+          .record();
+    }
+  }
+
+  /**
+   * @param messages The messages returned by one receive.
+   */
+  public void recordReceive(final List<Message> messages) {
+    messagesPerReceive.record(messages.size());
+    emptyReceiveRatio.record(messages.isEmpty() ? 1.0 : 0.0);
+    if (messages.isEmpty()) {
+      emptyReceives.record();
+      return;
+    }
+    final long now = System.currentTimeMillis();
+    long bytes = 0;
+    for (final Message message : messages) {
+      bytes += SqsSendEntry.utf8Length(message.getBody());
+      final String sent = message.getAttributes().get(MessageSystemAttributeName.SentTimestamp.toString());
+      if (sent != null) {
+        messageAge.record(Math.max(0, now - Long.parseLong(sent)));
+      }
+    }
+    bytesIn.record(bytes);
+    recordTransfer(messages.size(), bytes);
+  }
+
+  /**
+   * @param messages Number of messages accepted by SQS.
+   * @param bytes    Their total payload size.
+   */
+  public void recordSent(final int messages, final long bytes) {
+    messagesSent.record(messages);
+    bytesOut.record(bytes);
+    recordTransfer(messages, bytes);
+  }
+
+  /**
+   * The call itself is counted by {@link #recordCall}; a payload beyond the
+   * first 64 KB chunk is billed as further requests.
+   */
+  private void recordTransfer(final int count, final long bytes) {
+    messages.addAndGet(count);
+    if (bytes > BILLED_CHUNK_BYTES) {
+      billedRequests.addAndGet((bytes - 1) / BILLED_CHUNK_BYTES);
+    }
+  }
+
+  /**
+   * @return The number of requests SQS bills for since the task started.
+   */
+  public long getBilledRequests() {
+    return billedRequests.get();
+  }
+
+  /**
+   * @return The number of messages received and sent since the task started.
+   */
+  public long getMessages() {
+    return messages.get();
+  }
+
+  private double billedRequestsPerMillionMessages() {
+    final long count = messages.get();
+    return count == 0 ? Double.NaN : billedRequests.get() * 1e6 / count;
+  }
+
+  public void recordSendFailure() {
+    sendFailures.record();
+  }
+
+  public void recordSendRetry() {
+    sendRetries.record();
+  }
+
+  public void recordSendThrottle() {
+    sendThrottles.record();
+  }
+
+  /**
+   * Publish the current limit of a rate limiter as {@code send-rate-limit}.
+   *
+   * @param limiter The queue's send rate limiter.
+   */
+  public void registerRateLimit(final SqsSendRateLimiter limiter) {
+    metrics.gauge("send-rate-limit", "send requests per second allowed after SQS throttled, 0 while unlimited.",
+        (config, now) -> limiter.getRate());
+  }
+
+  /**
+   * Publish the settings of the queue's next receive as
+   * {@code receive-max-messages} and {@code receive-wait-time-seconds}.
+   *
+   * @param tuner The queue's receive tuner.
+   */
+  public void registerReceiveTuner(final SqsReceiveTuner tuner) {
+    metrics.gauge("receive-max-messages", "The number of messages the next receive asks for.",
+        (config, now) -> tuner.getMaxMessages());
+    metrics.gauge("receive-wait-time-seconds", "The wait in seconds of the next receive.",
+        (config, now) -> tuner.getWaitTimeSeconds());
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.header.Header;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import com.nordstrom.kafka.connect.utils.StringUtils;
+
+/**
+ * Picks the queue each sink record is sent to. The header route, if
+ * configured and present on the record, comes first, then the topic map,
+ * then the name template, and finally {@code sqs.queue.url}. Routes name a
+ * queue by url or by name; names are resolved with {@code GetQueueUrl} and
+ * the most recently used urls are cached. Not thread-safe: use one per task.
+ */
+public class SqsQueueRouter {
+  private static final String TOPIC_PLACEHOLDER = "${topic}";
+
+  private final SqsClient client;
+  private final String defaultUrl;
+  private final Map<String, String> queueMap;
+  private final String header;
+  private final String template;
+  private final Map<String, String> urls;
+
+  /**
+   * @param client SQS client, for looking up queue urls by name.
+   * @param config Sink configuration.
+   */
+  public SqsQueueRouter(final SqsClient client, final SqsSinkConnectorConfig config) {
+    this.client = client;
+    this.defaultUrl = StringUtils.isBlank(config.getQueueUrl()) ? null : config.getQueueUrl();
+    this.queueMap = config.getQueueMap();
+    this.header = StringUtils.isBlank(config.getQueueHeader()) ? null : config.getQueueHeader();
+    this.template = StringUtils.isBlank(config.getQueueNameTemplate()) ? null : config.getQueueNameTemplate();
+    final int cacheSize = config.getQueueUrlCacheSize();
+    this.urls = new LinkedHashMap<String, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * @return True when every record goes to {@code sqs.queue.url}.
+   */
+  public boolean isStatic() {
+    return queueMap.isEmpty() && header == null && template == null;
+  }
+
+  /**
+   * @param record The record.
+   * @return The url of the queue the record is sent to.
+   * @throws DataException if no route applies to the record, or its header names no queue.
+   */
+  public String route(final SinkRecord record) {
+    if (isStatic()) {
+      return defaultUrl;
+    }
+    String queue = null;
+    if (header != null) {
+      final Header value = record.headers().lastWithName(header);
+      if (value != null && value.value() != null) {
+        queue = value.value().toString();
+        if (StringUtils.isBlank(queue)) {
+          throw new DataException(String.format("Header %1$s of record %2$s-%3$s-%4$s names no SQS queue", header,
+              record.topic(), record.kafkaPartition(), record.kafkaOffset()));
+        }
+      }
+    }
+    if (queue == null) {
+      queue = queueMap.get(record.topic());
+    }
+    if (queue == null && template != null) {
+      queue = template.replace(TOPIC_PLACEHOLDER, record.topic());
+    }
+    if (queue == null) {
+      queue = defaultUrl;
+    }
+    if (queue == null) {
+      throw new DataException(String.format("No SQS queue for record %1$s-%2$s-%3$s", record.topic(),
+          record.kafkaPartition(), record.kafkaOffset()));
+    }
+    return toUrl(queue);
+  }
+
+  private String toUrl(final String queue) {
+    if (queue.startsWith("https://") || queue.startsWith("http://")) {
+      return queue;
+    }
+    String url = urls.get(queue);
+    if (url == null) {
+      url = client.getQueueUrl(queue);
+      urls.put(queue, url);
+    }
+    return url;
+  }
+}
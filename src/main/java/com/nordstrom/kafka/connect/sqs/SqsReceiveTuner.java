@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+/**
+ * The {@code MaxNumberOfMessages} and {@code WaitTimeSeconds} of the next
+ * receive from a queue. With {@code sqs.receive.adaptive.enabled}, a full
+ * receive doubles the number of messages and halves the wait, since the
+ * queue has a backlog, and an empty receive doubles the wait, since every
+ * empty receive is billed; each stays within its configured bounds. Otherwise
+ * both stay at {@code sqs.max.messages} and {@code sqs.wait.time.seconds}.
+ * Thread-safe, as receivers may share a queue.
+ */
+public class SqsReceiveTuner {
+  private final int minMessages;
+  private final int maxMessages;
+  private final int minWaitSeconds;
+  private final int maxWaitSeconds;
+  private int messages;
+  private int waitSeconds;
+
+  /**
+   * @param config Source configuration.
+   */
+  public SqsReceiveTuner(final SqsSourceConnectorConfig config) {
+    this.minMessages = config.getMaxMessages();
+    this.minWaitSeconds = config.getWaitTimeSeconds();
+    if (config.getReceiveAdaptiveEnabled()) {
+      this.maxMessages = Math.max(minMessages, config.getReceiveAdaptiveMaxMessages());
+      this.maxWaitSeconds = Math.max(minWaitSeconds, config.getReceiveAdaptiveMaxWaitTimeSeconds());
+    } else {
+      this.maxMessages = minMessages;
+      this.maxWaitSeconds = minWaitSeconds;
+    }
+    this.messages = minMessages;
+    this.waitSeconds = minWaitSeconds;
+  }
+
+  public synchronized int getMaxMessages() {
+    return messages;
+  }
+
+  public synchronized int getWaitTimeSeconds() {
+    return waitSeconds;
+  }
+
+  /**
+   * Adjust the settings to the outcome of a receive. A partial receive
+   * leaves them as they are: the queue was drained without waiting long.
+   *
+   * @param requested The number of messages the receive asked for.
+   * @param received  The number of messages it returned.
+   */
+  public synchronized void record(final int requested, final int received) {
+    if (received == 0) {
+      waitSeconds = Math.min(maxWaitSeconds, Math.max(1, waitSeconds * 2));
+    } else if (received >= requested) {
+      messages = Math.min(maxMessages, Math.max(1, messages * 2));
+      waitSeconds = Math.max(minWaitSeconds, waitSeconds / 2);
+    }
+  }
+}
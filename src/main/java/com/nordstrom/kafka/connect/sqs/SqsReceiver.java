@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.connect.errors.RetriableException;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Background loop that long-polls SQS queues, taking turns when it has more
+ * than one, and feeds the records of the received messages into a prefetch
+ * buffer. It records the fraction of its time spent receiving, as opposed to
+ * waiting for room in the buffer. A message whose blob cannot be read is left
+ * to be redelivered; one that can never be converted stops the loop with a
+ * failure, which the task raises on its next poll.
+ */
+public class SqsReceiver implements Runnable {
+  private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private static final long ERROR_BACKOFF_MS = 1000L;
+
+  private final SqsClient client;
+  private final SqsSourceConnectorConfig config;
+  private final List<SqsSourceQueue> queues;
+  private final SqsPrefetchBuffer<SourceRecord> buffer;
+  private final Sensor utilization;
+  private final SqsVisibilityExtender extender;
+  private volatile boolean running = true;
+  private volatile RuntimeException failure;
+  private int next = 0;
+
+  /**
+   * @param client      SQS client.
+   * @param config      Source configuration.
+   * @param queues      Queues to receive from, in turn.
+   * @param buffer      Receives the records.
+   * @param utilization Records the busy ratio of every receive cycle.
+   * @param extender    Extends the visibility of received messages, or null.
+   */
+  public SqsReceiver(final SqsClient client, final SqsSourceConnectorConfig config, final List<SqsSourceQueue> queues,
+      final SqsPrefetchBuffer<SourceRecord> buffer, final Sensor utilization, final SqsVisibilityExtender extender) {
+    Guard.verifyNotNull(queues, "queues");
+    this.client = client;
+    this.config = config;
+    this.queues = queues;
+    this.buffer = buffer;
+    this.utilization = utilization;
+    this.extender = extender;
+  }
+
+  @Override
+  public void run() {
+    log.debug(".run:queues={}", queues.size());
+    while (running && !Thread.currentThread().isInterrupted()) {
+      final SqsSourceQueue queue = queues.get(next);
+      next = (next + 1) % queues.size();
+      final long start = System.nanoTime();
+      final SqsReceiveTuner tuner = queue.getReceiveTuner();
+      final int maxMessages = tuner.getMaxMessages();
+      final List<Message> messages;
+      try {
+        messages = client.receive(queue.getUrl(), maxMessages, tuner.getWaitTimeSeconds(),
+            config.getMessageAttributesEnabled(), config.getMessageAttributesList(),
+            null == extender ? 0 : extender.getTimeoutSeconds());
+        tuner.record(maxMessages, messages.size());
+      } catch (final RuntimeException e) {
+        log.warn(".run:receive failed, queue={}", queue.getUrl(), e);
+        if (!pause(ERROR_BACKOFF_MS)) {
+          return;
+        }
+        continue;
+      }
+      final long received = System.nanoTime();
+      final List<Message> emitted = queue.dropRedelivered(messages);
+      final List<SourceRecord> records;
+      try {
+        records = queue.toRecords(emitted);
+      } catch (final RetriableException e) {
+        // The messages are left to be redelivered once their visibility times out.
+        log.warn(".run:conversion failed, queue={}", queue.getUrl(), e);
+        if (!pause(ERROR_BACKOFF_MS)) {
+          return;
+        }
+        continue;
+      } catch (final RuntimeException e) {
+        log.error(".run:conversion failed, stopping, queue={}", queue.getUrl(), e);
+        failure = e;
+        return;
+      }
+      // Track before buffering: messages may wait in a full buffer for longer than their timeout.
+      if (null != extender) {
+        extender.track(queue.getUrl(), emitted);
+      }
+
+      try {
+        for (final SourceRecord record : records) {
+          if (!buffer.put(record)) {
+            return;
+          }
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      final long total = System.nanoTime() - start;
+      if (total > 0) {
+        utilization.record((double) (received - start) / total);
+      }
+    }
+  }
+
+  /**
+   * @return Why the loop stopped on its own, or null.
+   */
+  public RuntimeException getFailure() {
+    return failure;
+  }
+
+  /**
+   * Ask the loop to exit after its current receive.
+   */
+  public void stop() {
+    running = false;
+  }
+
+  private boolean pause(final long millis) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(millis);
+      return running;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Drops the redeliveries of messages of one queue whose records are already
+ * in Kafka, for exactly-once delivery. A message is deleted only once the
+ * transaction of its record has committed, so a task that fails in between
+ * leaves it to be redelivered. To recognize it, the task lists in the source
+ * offset of the last record of the queue in each poll the ids of the messages
+ * emitted so far whose deletes have not been flushed; the offsets commit with
+ * the records, so the last committed offset names every message that may
+ * come back. A task restarted from that offset deletes those messages instead
+ * of emitting them again, and keeps listing the ones it has not seen yet, for
+ * the redelivery window. A message whose delete fails is handled the same
+ * way: it stays listed, and is dropped and deleted when it comes back.
+ * Messages are tracked by the task thread as it emits
+ * them, whichever thread received them. Thread-safe, as receivers, the task
+ * and the worker share it.
+ */
+public class SqsRedeliveryFilter {
+  private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private static final String SEPARATOR = ",";
+
+  private final String url;
+  private final SqsDeleteBatcher deleter;
+  private final Sensor dropped;
+  // Ids of the messages emitted since the start, in emit order, until their deletes are flushed.
+  private final Set<String> pending = new LinkedHashSet<>();
+  // Ids listed by the offset the task started from, or whose deletes failed, until they are redelivered and
+  // deleted, with the end of their redelivery window.
+  private final ConcurrentMap<String, Long> committed = new ConcurrentHashMap<>();
+  private final long windowNanos;
+  // Ids and receipt handles of the messages queued for deletion, by the time they were queued.
+  private Map<String, String> deleting = new LinkedHashMap<>();
+
+  /**
+   * @param url           SQS queue url.
+   * @param offset        The offset the task starts from, or null.
+   * @param windowSeconds Time for which the ids of that offset, or of a failed delete, are kept.
+   * @param deleter       Deletes the dropped messages.
+   * @param dropped       Counts the dropped messages.
+   */
+  public SqsRedeliveryFilter(final String url, final Map<String, ?> offset, final int windowSeconds,
+      final SqsDeleteBatcher deleter, final Sensor dropped) {
+    this.url = url;
+    this.deleter = deleter;
+    this.dropped = dropped;
+    this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+    final Object ids = offset == null ? null : offset.get(SqsConnectorConfigKeys.SQS_MESSAGE_PENDING.getValue());
+    if (ids != null && !ids.toString().isEmpty()) {
+      final Long windowEndNanos = System.nanoTime() + windowNanos;
+      for (final String id : ids.toString().split(SEPARATOR)) {
+        committed.put(id, windowEndNanos);
+      }
+    }
+    log.info(".ctor:queue={}, committed={}", url, committed.size());
+  }
+
+  /**
+   * Remove the messages whose records were committed before the task started,
+   * or whose deletes failed, and queue them for deletion. They stay listed until their deletes are
+   * flushed.
+   *
+   * @param messages Messages received from the queue.
+   * @return The other messages.
+   */
+  public List<Message> drop(final List<Message> messages) {
+    if (committed.isEmpty()) {
+      return messages;
+    }
+    List<Message> kept = null;
+    for (int i = 0; i < messages.size(); i++) {
+      final Message message = messages.get(i);
+      if (committed.containsKey(message.getMessageId())) {
+        if (kept == null) {
+          kept = new ArrayList<>(messages.subList(0, i));
+        }
+        dropped.record();
+        deleting(message.getMessageId(), message.getReceiptHandle());
+        deleter.add(url, message.getReceiptHandle());
+        log.debug(".drop:queue={}, message-id={}", url, message.getMessageId());
+      } else if (kept != null) {
+        kept.add(message);
+      }
+    }
+    return kept == null ? messages : kept;
+  }
+
+  /**
+   * Start listing a message in the offsets of the records emitted from now on.
+   *
+   * @param messageId Id of a message whose record is emitted.
+   */
+  public synchronized void track(final String messageId) {
+    pending.add(messageId);
+  }
+
+  /**
+   * @return The number of tracked messages whose deletes are pending. The ids
+   *         of the offset the task started from come on top, once.
+   */
+  public synchronized int size() {
+    return pending.size();
+  }
+
+  /**
+   * The ids to list in the offset of the record emitted last. A message
+   * listed by an earlier offset stays listed until it is redelivered or the
+   * window ends, as it may still be redelivered after another restart.
+   *
+   * @return The comma separated ids.
+   */
+  public synchronized String pending() {
+    if (!committed.isEmpty()) {
+      final long now = System.nanoTime();
+      committed.values().removeIf(windowEndNanos -> now - windowEndNanos > 0);
+    }
+    final StringBuilder ids = new StringBuilder();
+    for (final String id : committed.keySet()) {
+      append(ids, id);
+    }
+    for (final String id : pending) {
+      append(ids, id);
+    }
+    return ids.toString();
+  }
+
+  /**
+   * @param messageId     Id of a message whose record was committed, or that was dropped, and which was queued
+   *                      for deletion.
+   * @param receiptHandle The receipt handle it is deleted with.
+   */
+  public synchronized void deleting(final String messageId, final String receiptHandle) {
+    deleting.put(messageId, receiptHandle);
+  }
+
+  /**
+   * Take the messages queued for deletion so far, to be settled with
+   * {@link #deleted(Map, Set)} once the deletes are flushed.
+   *
+   * @return Their receipt handles by message id.
+   */
+  public synchronized Map<String, String> takeDeleting() {
+    if (deleting.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    final Map<String, String> taken = deleting;
+    deleting = new LinkedHashMap<>();
+    return taken;
+  }
+
+  /**
+   * Settle messages whose deletes were flushed. Those that were deleted stop
+   * being listed. Those that could not be, which SQS will redeliver, stay
+   * listed until they come back and are dropped, or their window ends.
+   *
+   * @param taken         Messages from {@link #takeDeleting()}.
+   * @param failedHandles Receipt handles the deleter gave up on, of any queue; those of this queue are removed.
+   */
+  public synchronized void deleted(final Map<String, String> taken, final Set<String> failedHandles) {
+    for (final Map.Entry<String, String> message : taken.entrySet()) {
+      if (failedHandles.remove(message.getValue())) {
+        undeleted(message.getKey());
+      } else {
+        committed.remove(message.getKey());
+        pending.remove(message.getKey());
+      }
+    }
+    // A delete queued after takeDeleting() may have failed in the same flush.
+    if (!failedHandles.isEmpty()) {
+      for (final Iterator<Map.Entry<String, String>> it = deleting.entrySet().iterator(); it.hasNext();) {
+        final Map.Entry<String, String> message = it.next();
+        if (failedHandles.remove(message.getValue())) {
+          it.remove();
+          undeleted(message.getKey());
+        }
+      }
+    }
+  }
+
+  private void undeleted(final String messageId) {
+    log.warn(".deleted:delete failed, dropping the message when it is redelivered, queue={}, message-id={}", url,
+        messageId);
+    pending.remove(messageId);
+    committed.put(messageId, System.nanoTime() + windowNanos);
+  }
+
+  private static void append(final StringBuilder ids, final String id) {
+    if (ids.length() > 0) {
+      ids.append(SEPARATOR);
+    }
+    ids.append(id);
+  }
+}
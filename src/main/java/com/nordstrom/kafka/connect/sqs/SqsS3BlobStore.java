@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.nordstrom.kafka.connect.utils.StringUtils;
+
+/**
+ * Keeps blobs as objects in the S3 bucket {@code sqs.blob.store.s3.bucket},
+ * with the region, credentials and control transport settings of the
+ * connector's SQS client. Needs {@code s3:PutObject} on the sink side and
+ * {@code s3:GetObject} on the source side.
+ * <p>
+ * aws-java-sdk-s3 is an optional dependency, to be added to the plugin path
+ * with this store. Only the nested {@code S3} class refers to it, so this
+ * class loads without it and {@link #configure} reports it missing.
+ */
+public class SqsS3BlobStore implements SqsBlobStore {
+  private static final Logger log = LoggerFactory.getLogger(SqsS3BlobStore.class);
+  private static final String CONTENT_TYPE = "text/plain; charset=utf-8";
+  private static final String S3_CLIENT_CLASS = "com.amazonaws.services.s3.AmazonS3ClientBuilder";
+
+  private String bucket;
+  private S3 s3;
+
+  @Override
+  public void configure(final SqsConnectorConfig config, final AWSCredentialsProvider credentialsProvider) {
+    bucket = config.getBlobStoreS3Bucket();
+    if (StringUtils.isBlank(bucket)) {
+      throw new ConfigException(SqsConnectorConfigKeys.SQS_BLOB_STORE_S3_BUCKET.getValue(), bucket,
+          "Required by " + getClass().getName());
+    }
+    try {
+      Class.forName(S3_CLIENT_CLASS, false, SqsS3BlobStore.class.getClassLoader());
+    } catch (final ClassNotFoundException | LinkageError e) {
+      throw new ConfigException(SqsConnectorConfigKeys.SQS_BLOB_STORE_CLASS.getValue(), getClass().getName(),
+          "Needs com.amazonaws:aws-java-sdk-s3 on the plugin path");
+    }
+    s3 = new S3(config, credentialsProvider);
+    log.info(".configure:bucket={}, endpoint={}", bucket, config.getBlobStoreS3EndpointUrl());
+  }
+
+  @Override
+  public void put(final String key, final byte[] payload) throws IOException {
+    try {
+      s3.put(bucket, key, payload);
+    } catch (final AmazonClientException e) {
+      throw new IOException("Failed to put s3://" + bucket + "/" + key, e);
+    }
+  }
+
+  @Override
+  public InputStream get(final String key) throws IOException {
+    try {
+      return s3.get(bucket, key);
+    } catch (final AmazonClientException e) {
+      throw new IOException("Failed to get s3://" + bucket + "/" + key, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (s3 != null) {
+      s3.shutdown();
+    }
+  }
+
+  /**
+   * The only class that refers to aws-java-sdk-s3.
+   */
+  private static final class S3 {
+    private final com.amazonaws.services.s3.AmazonS3 client;
+
+    private S3(final SqsConnectorConfig config, final AWSCredentialsProvider credentialsProvider) {
+      final com.amazonaws.services.s3.AmazonS3ClientBuilder builder =
+          com.amazonaws.services.s3.AmazonS3ClientBuilder.standard()
+              .withClientConfiguration(config.getControlTransport().toClientConfiguration())
+              .withCredentials(credentialsProvider);
+      final String endpointUrl = config.getBlobStoreS3EndpointUrl();
+      if (StringUtils.isBlank(endpointUrl)) {
+        builder.setRegion(config.getRegion());
+      } else {
+        // S3 compatible stores seldom resolve bucket subdomains.
+        builder.withEndpointConfiguration(new EndpointConfiguration(endpointUrl, config.getRegion()))
+            .withPathStyleAccessEnabled(true);
+      }
+      client = builder.build();
+    }
+
+    private void put(final String bucket, final String key, final byte[] payload) {
+      final com.amazonaws.services.s3.model.ObjectMetadata metadata =
+          new com.amazonaws.services.s3.model.ObjectMetadata();
+      metadata.setContentLength(payload.length);
+      metadata.setContentType(CONTENT_TYPE);
+      client.putObject(bucket, key, new ByteArrayInputStream(payload), metadata);
+    }
+
+    private InputStream get(final String bucket, final String key) {
+      return client.getObject(bucket, key).getObjectContent();
+    }
+
+    private void shutdown() {
+      client.shutdown();
+    }
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+
+/**
+ * Sends messages to a single SQS queue with {@code SendMessageBatch}. Messages
+ * are packed into requests that respect both the entry and the total payload
+ * limits, and entries that fail with a throttling or transient error are
+ * resent on their own after a backoff, at a rate the {@link SqsSendRateLimiter}
+ * allows. For a FIFO queue, a batch holds at most one entry per message
+ * group, so that an entry is never accepted ahead of an earlier entry of its
+ * group that failed in the same request. The later entries of a group with
+ * a failed entry are held back and resent after it, and once an entry of a
+ * group is given up on, the rest of the group is not sent at all.
+ */
+public class SqsSendBatcher {
+  private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+  public static final int MAX_BATCH_ENTRIES = 10;
+  public static final int MAX_BATCH_BYTES = 256 * 1024;
+
+  private final SqsClient client;
+  private final String url;
+  private final boolean fifo;
+  private final SqsSendRetry retry;
+  private final SqsSendRateLimiter limiter;
+  private final SqsQueueMetrics metrics;
+
+  /**
+   * @param client  SQS client.
+   * @param url     SQS queue url.
+   * @param fifo    Whether the queue is a FIFO queue.
+   * @param retry   Decides which failed entries are resent and when.
+   * @param limiter Paces the requests to the queue.
+   * @param metrics Records retried, throttled and failed messages.
+   */
+  public SqsSendBatcher(final SqsClient client, final String url, final boolean fifo, final SqsSendRetry retry,
+      final SqsSendRateLimiter limiter, final SqsQueueMetrics metrics) {
+    Guard.verifyNotNull(client, "client");
+    Guard.verifyValidUrl(url);
+    Guard.verifyNotNull(retry, "retry");
+    this.client = client;
+    this.url = url;
+    this.fifo = fifo;
+    this.retry = retry;
+    this.limiter = limiter;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Split messages, in order, into batches of at most {@value #MAX_BATCH_ENTRIES}
+   * entries and {@value #MAX_BATCH_BYTES} bytes. Messages that exceed the
+   * payload limit on their own are left out and added to {@code oversize}.
+   * For a FIFO queue, the n-th message of every group goes into the batches
+   * that follow those of the (n-1)-th messages, so a batch never holds two
+   * messages of a group. A queue with few groups then gets small batches.
+   *
+   * @param entries  Messages to pack.
+   * @param fifo     Whether the messages go to a FIFO queue.
+   * @param oversize Receives the messages that can never be sent.
+   * @return The batches.
+   */
+  public static List<List<SqsSendEntry>> pack(final List<SqsSendEntry> entries, final boolean fifo,
+      final List<SqsSendEntry> oversize) {
+    if (!fifo) {
+      return pack(entries, oversize);
+    }
+    final Map<String, Integer> seen = new HashMap<>();
+    final List<List<SqsSendEntry>> rounds = new ArrayList<>();
+    for (final SqsSendEntry entry : entries) {
+      final int round = seen.merge(entry.getGroupId(), 1, Integer::sum) - 1;
+      if (round == rounds.size()) {
+        rounds.add(new ArrayList<>());
+      }
+      rounds.get(round).add(entry);
+    }
+    final List<List<SqsSendEntry>> batches = new ArrayList<>(entries.size() / MAX_BATCH_ENTRIES + rounds.size());
+    for (final List<SqsSendEntry> round : rounds) {
+      batches.addAll(pack(round, oversize));
+    }
+    return batches;
+  }
+
+  private static List<List<SqsSendEntry>> pack(final List<SqsSendEntry> entries, final List<SqsSendEntry> oversize) {
+    final List<List<SqsSendEntry>> batches = new ArrayList<>(entries.size() / MAX_BATCH_ENTRIES + 1);
+    List<SqsSendEntry> batch = new ArrayList<>(MAX_BATCH_ENTRIES);
+    int batchBytes = 0;
+    for (final SqsSendEntry entry : entries) {
+      final int size = entry.getPayloadSize();
+      if (size > MAX_BATCH_BYTES) {
+        oversize.add(entry);
+        continue;
+      }
+      if (batch.size() == MAX_BATCH_ENTRIES || batchBytes + size > MAX_BATCH_BYTES) {
+        batches.add(batch);
+        batch = new ArrayList<>(MAX_BATCH_ENTRIES);
+        batchBytes = 0;
+      }
+      batch.add(entry);
+      batchBytes += size;
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /**
+   * Send the messages, resending failed entries until they succeed or run out
+   * of retries.
+   *
+   * @param entries Messages to send, in order.
+   * @return The messages that could not be sent, with the error of their last attempt.
+   * @throws InterruptedException if interrupted while backing off.
+   */
+  public List<SqsSendEntry> send(final List<SqsSendEntry> entries) throws InterruptedException {
+    final List<SqsSendEntry> failed = new ArrayList<>(0);
+    // For a FIFO queue, the groups with an entry to retry in this round (true)
+    // or that was given up on (false).
+    final Map<String, Boolean> failedGroups = fifo ? new HashMap<>() : null;
+    List<SqsSendEntry> remaining = entries;
+    while (!remaining.isEmpty()) {
+      final List<SqsSendEntry> retries = new ArrayList<>(0);
+      final List<SqsSendEntry> oversize = new ArrayList<>(0);
+      if (failedGroups != null) {
+        failedGroups.values().removeIf(Boolean::booleanValue);
+      }
+      for (final List<SqsSendEntry> batch : pack(remaining, fifo, oversize)) {
+        sendBatch(batch, retries, failed, failedGroups);
+      }
+      for (final SqsSendEntry entry : oversize) {
+        entry.failed(SqsSendRetry.ErrorKind.PERMANENT,
+            "message of " + entry.getPayloadSize() + " bytes exceeds the SQS limit");
+        failed.add(entry);
+      }
+      if (!retries.isEmpty()) {
+        final long backoffMs = retry.backoffMs(retries.get(0).getAttempts());
+        log.debug(".send-batch:resending {} entries in {} ms, queue={}", retries.size(), backoffMs, url);
+        Thread.sleep(backoffMs);
+      }
+      remaining = retries;
+    }
+    for (int i = 0; i < failed.size(); i++) {
+      metrics.recordSendFailure();
+    }
+    return failed;
+  }
+
+  /**
+   * Send one packed batch and sort its failed entries into those to retry and
+   * those that are given up on.
+   */
+  private void sendBatch(final List<SqsSendEntry> packed, final List<SqsSendEntry> retries,
+      final List<SqsSendEntry> failed, final Map<String, Boolean> failedGroups) throws InterruptedException {
+    final List<SqsSendEntry> batch = hold(packed, retries, failed, failedGroups);
+    if (batch.isEmpty()) {
+      return;
+    }
+    final List<SendMessageBatchRequestEntry> requestEntries = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      final SqsSendEntry entry = batch.get(i);
+      if (entry.attempt() > 1) {
+        metrics.recordSendRetry();
+      }
+      requestEntries.add(entry.getEntry().withId(Integer.toString(i)));
+    }
+
+    limiter.acquire();
+    try {
+      final SendMessageBatchResult result = client.sendBatch(url, requestEntries);
+      final BatchResultErrorEntry[] errors = new BatchResultErrorEntry[batch.size()];
+      boolean throttled = false;
+      for (final BatchResultErrorEntry error : result.getFailed()) {
+        errors[Integer.parseInt(error.getId())] = error;
+        throttled |= SqsSendRetry.classify(error) == SqsSendRetry.ErrorKind.THROTTLED;
+      }
+      if (throttled) {
+        throttled(batch);
+      } else {
+        limiter.onSuccess();
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        final SqsSendEntry entry = batch.get(i);
+        final BatchResultErrorEntry error = errors[i];
+        if (error == null) {
+          continue;
+        }
+        log.warn(".send-batch:entry failed, queue={}, attempt={}, code={}, sender-fault={}, message={}", url,
+            entry.getAttempts(), error.getCode(), error.getSenderFault(), error.getMessage());
+        settle(entry, SqsSendRetry.classify(error), error.getCode() + ": " + error.getMessage(), retries, failed,
+            failedGroups);
+      }
+    } catch (final AmazonClientException e) {
+      final SqsSendRetry.ErrorKind kind = SqsSendRetry.classify(e);
+      log.warn(".send-batch:request failed, queue={}, entries={}, kind={}", url, batch.size(), kind, e);
+      if (kind == SqsSendRetry.ErrorKind.THROTTLED) {
+        throttled(batch);
+      }
+      for (final SqsSendEntry entry : batch) {
+        settle(entry, kind, "request failed: " + e.getMessage(), retries, failed, failedGroups);
+      }
+    }
+  }
+
+  private void settle(final SqsSendEntry entry, final SqsSendRetry.ErrorKind kind, final String error,
+      final List<SqsSendEntry> retries, final List<SqsSendEntry> failed, final Map<String, Boolean> failedGroups) {
+    entry.failed(kind, error);
+    if (retry.canRetry(kind, entry)) {
+      retries.add(entry);
+      if (failedGroups != null) {
+        failedGroups.put(entry.getGroupId(), Boolean.TRUE);
+      }
+    } else {
+      failed.add(entry);
+      // A permanent failure is skipped, but a message that ran out of retries
+      // has the batch redelivered: the rest of its group must not go first.
+      if (failedGroups != null && kind != SqsSendRetry.ErrorKind.PERMANENT) {
+        failedGroups.put(entry.getGroupId(), Boolean.FALSE);
+      }
+    }
+  }
+
+  private void throttled(final List<SqsSendEntry> batch) {
+    metrics.recordSendThrottle();
+    limiter.onThrottle(retry.backoffMs(batch.get(0).getAttempts()));
+  }
+
+  /**
+   * @return The entries of {@code packed} to send now. Those of a group being
+   *         retried go to {@code retries} behind the failed entry, and those
+   *         of a group given up on go to {@code failed} unsent.
+   */
+  private static List<SqsSendEntry> hold(final List<SqsSendEntry> packed, final List<SqsSendEntry> retries,
+      final List<SqsSendEntry> failed, final Map<String, Boolean> failedGroups) {
+    if (failedGroups == null || failedGroups.isEmpty()) {
+      return packed;
+    }
+    final List<SqsSendEntry> batch = new ArrayList<>(packed.size());
+    for (final SqsSendEntry entry : packed) {
+      final Boolean retrying = failedGroups.get(entry.getGroupId());
+      if (retrying == null) {
+        batch.add(entry);
+      } else if (retrying) {
+        retries.add(entry);
+      } else {
+        entry.failed(SqsSendRetry.ErrorKind.TRANSIENT, "not sent behind a failed message of its group");
+        failed.add(entry);
+      }
+    }
+    return batch;
+  }
+}
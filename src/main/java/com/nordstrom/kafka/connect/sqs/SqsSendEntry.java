@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Map;
+
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+
+/**
+ * A message on its way from a sink record to an SQS queue, together with the
+ * size SQS charges against its payload limit.
+ */
+public class SqsSendEntry {
+  private final SinkRecord record;
+  private final String queueUrl;
+  private final SendMessageBatchRequestEntry entry;
+  private final int payloadSize;
+  private int attempts = 0;
+  private SqsSendRetry.ErrorKind errorKind;
+  private String error;
+
+  /**
+   * @param record            The originating sink record.
+   * @param queueUrl          SQS queue url the message is sent to.
+   * @param body              The message body.
+   * @param groupId           Group identifier (fifo queues only, otherwise null).
+   * @param messageId         Deduplication identifier (fifo queues only, otherwise null).
+   * @param messageAttributes The message attributes to send, or null.
+   */
+  public SqsSendEntry(final SinkRecord record, final String queueUrl, final String body, final String groupId,
+      final String messageId, final Map<String, MessageAttributeValue> messageAttributes) {
+    this.record = record;
+    this.queueUrl = queueUrl;
+    this.entry = new SendMessageBatchRequestEntry().withMessageBody(body).withMessageGroupId(groupId)
+        .withMessageDeduplicationId(messageId);
+    if (messageAttributes != null) {
+      entry.setMessageAttributes(messageAttributes);
+    }
+    this.payloadSize = payloadSize(body, messageAttributes);
+  }
+
+  /**
+   * Compute the size SQS counts against the 256 KB message limit: the UTF-8
+   * body plus, for every attribute, its name, data type and value.
+   *
+   * @param body              The message body.
+   * @param messageAttributes The message attributes, or null.
+   * @return Payload size in bytes.
+   */
+  public static int payloadSize(final String body, final Map<String, MessageAttributeValue> messageAttributes) {
+    int size = utf8Length(body);
+    if (messageAttributes != null) {
+      for (final Map.Entry<String, MessageAttributeValue> attribute : messageAttributes.entrySet()) {
+        final MessageAttributeValue value = attribute.getValue();
+        size += utf8Length(attribute.getKey()) + utf8Length(value.getDataType());
+        if (value.getStringValue() != null) {
+          size += utf8Length(value.getStringValue());
+        } else if (value.getBinaryValue() != null) {
+          size += value.getBinaryValue().remaining();
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Count UTF-8 bytes without encoding the string.
+   */
+  static int utf8Length(final String s) {
+    if (s == null) {
+      return 0;
+    }
+    int length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  public SinkRecord getRecord() {
+    return record;
+  }
+
+  public String getQueueUrl() {
+    return queueUrl;
+  }
+
+  public SendMessageBatchRequestEntry getEntry() {
+    return entry;
+  }
+
+  public String getBody() {
+    return entry.getMessageBody();
+  }
+
+  public String getGroupId() {
+    return entry.getMessageGroupId();
+  }
+
+  public String getMessageId() {
+    return entry.getMessageDeduplicationId();
+  }
+
+  public Map<String, MessageAttributeValue> getMessageAttributes() {
+    return entry.getMessageAttributes();
+  }
+
+  public int getPayloadSize() {
+    return payloadSize;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * @return The number of attempts made so far, including this one.
+   */
+  public int attempt() {
+    return ++attempts;
+  }
+
+  /**
+   * Record why the last attempt failed.
+   *
+   * @param kind  The kind of error.
+   * @param error Description of the error.
+   */
+  public void failed(final SqsSendRetry.ErrorKind kind, final String error) {
+    this.errorKind = kind;
+    this.error = error;
+  }
+
+  /**
+   * @return The kind of error of the last failed attempt, or null.
+   */
+  public SqsSendRetry.ErrorKind getErrorKind() {
+    return errorKind;
+  }
+
+  public String getError() {
+    return error;
+  }
+}
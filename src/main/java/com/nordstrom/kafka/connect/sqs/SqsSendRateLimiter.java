@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive-increase, multiplicative-decrease limit on the rate of send
+ * requests to one queue. The rate is unlimited until SQS first throttles a
+ * request; from then on every throttle halves it (at most once per
+ * {@value #DECREASE_INTERVAL_MS} ms, so a burst of throttled requests counts
+ * once) and every accepted request raises it by {@value #INCREASE_PER_REQUEST}
+ * requests per second.
+ */
+public class SqsSendRateLimiter {
+  private static final double MIN_RATE = 1.0;
+  private static final double DECREASE_FACTOR = 0.5;
+  private static final double INCREASE_PER_REQUEST = 0.1;
+  private static final long DECREASE_INTERVAL_MS = 100L;
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private double rate = Double.POSITIVE_INFINITY;
+  private long nextNanos = System.nanoTime();
+  private long lastDecreaseNanos = nextNanos;
+  private long throttledUntilNanos = nextNanos;
+  // Requests in the current one second window and the rate measured over the previous one.
+  private long windowStartNanos = System.nanoTime();
+  private int windowRequests;
+  private double measuredRate;
+
+  /**
+   * Take the next request slot.
+   *
+   * @return Nanoseconds to wait before sending the request, 0 to send it now.
+   */
+  public synchronized long reserve() {
+    final long now = System.nanoTime();
+    if (now - windowStartNanos >= WINDOW_NANOS) {
+      measuredRate = windowRequests * (double) WINDOW_NANOS / (now - windowStartNanos);
+      windowStartNanos = now;
+      windowRequests = 0;
+    }
+    windowRequests++;
+    if (Double.isInfinite(rate)) {
+      return 0;
+    }
+    final long slot = Math.max(now, nextNanos);
+    nextNanos = slot + (long) (WINDOW_NANOS / rate);
+    return slot - now;
+  }
+
+  /**
+   * Wait for the next request slot.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public void acquire() throws InterruptedException {
+    final long nanos = reserve();
+    if (nanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    }
+  }
+
+  /**
+   * Record a request SQS accepted.
+   */
+  public synchronized void onSuccess() {
+    if (!Double.isInfinite(rate)) {
+      rate += INCREASE_PER_REQUEST;
+    }
+  }
+
+  /**
+   * Record a throttled request.
+   *
+   * @param backoffMs How long the sender backs off.
+   */
+  public synchronized void onThrottle(final long backoffMs) {
+    final long now = System.nanoTime();
+    throttledUntilNanos = Math.max(throttledUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(backoffMs));
+    if (!Double.isInfinite(rate) && now - lastDecreaseNanos < TimeUnit.MILLISECONDS.toNanos(DECREASE_INTERVAL_MS)) {
+      return;
+    }
+    final double current = Math.max(measuredRate,
+        windowRequests * (double) WINDOW_NANOS / Math.max(now - windowStartNanos, 1L));
+    rate = Math.max(MIN_RATE, Math.min(rate, current) * DECREASE_FACTOR);
+    lastDecreaseNanos = now;
+  }
+
+  /**
+   * @return Milliseconds until the backoff of the last throttle ends, 0 if it has.
+   */
+  public synchronized long throttledForMs() {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(throttledUntilNanos - System.nanoTime()));
+  }
+
+  /**
+   * @return The current limit in requests per second, 0 while unlimited.
+   */
+  public synchronized double getRate() {
+    return Double.isInfinite(rate) ? 0 : rate;
+  }
+}
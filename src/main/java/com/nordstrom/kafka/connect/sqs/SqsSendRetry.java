@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.connect.sink.ErrantRecordReporter;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+
+/**
+ * How the sink retries messages that SQS did not accept. Errors are
+ * classified as throttling, transient or permanent; the first two are
+ * retried after a jittered exponential backoff until the retry budget of
+ * the message is spent, and records that can never be sent are handed to
+ * the Connect errant record reporter when one is configured.
+ */
+public class SqsSendRetry implements AutoCloseable {
+  /**
+   * Kinds of send errors.
+   */
+  public enum ErrorKind {
+    /** SQS refused the request because of its rate. */
+    THROTTLED,
+    /** Server side or network errors that may succeed on another attempt. */
+    TRANSIENT,
+    /** Errors caused by the message itself, which will fail every attempt. */
+    PERMANENT
+  }
+
+  // Codes SQS uses for throttled SendMessageBatch entries, which do not go through RetryUtils.
+  private static final Set<String> THROTTLING_CODES = new HashSet<>(
+      Arrays.asList("Throttling", "ThrottlingException", "ThrottledException", "RequestThrottled",
+          "RequestThrottledException", "TooManyRequestsException"));
+
+  private final int maxRetries;
+  private final long backoffMs;
+  private final long maxBackoffMs;
+  private final ErrantRecordReporter reporter;
+  private final String threadName;
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * @param maxRetries   Number of times a message is resent.
+   * @param backoffMs    Backoff before the first resend.
+   * @param maxBackoffMs Upper bound of the backoff.
+   * @param reporter     Receives the records that cannot be sent, or null.
+   * @param threadName   Name of the thread that runs the resends.
+   */
+  public SqsSendRetry(final int maxRetries, final long backoffMs, final long maxBackoffMs,
+      final ErrantRecordReporter reporter, final String threadName) {
+    Guard.verifyNonNegative(maxRetries, SqsConnectorConfigKeys.SQS_SEND_MAX_RETRIES.getValue());
+    this.maxRetries = maxRetries;
+    this.backoffMs = backoffMs;
+    this.maxBackoffMs = Math.max(backoffMs, maxBackoffMs);
+    this.reporter = reporter;
+    this.threadName = threadName;
+  }
+
+  /**
+   * @param e A failed request.
+   * @return The kind of error.
+   */
+  public static ErrorKind classify(final Exception e) {
+    if (e instanceof AmazonServiceException) {
+      final AmazonServiceException ase = (AmazonServiceException) e;
+      if (RetryUtils.isThrottlingException(ase) || THROTTLING_CODES.contains(ase.getErrorCode())) {
+        return ErrorKind.THROTTLED;
+      }
+      return RetryUtils.isRetryableServiceException(ase) || RetryUtils.isClockSkewError(ase) ? ErrorKind.TRANSIENT
+          : ErrorKind.PERMANENT;
+    }
+    if (e instanceof AmazonClientException) {
+      return ((AmazonClientException) e).isRetryable() ? ErrorKind.TRANSIENT : ErrorKind.PERMANENT;
+    }
+    return ErrorKind.PERMANENT;
+  }
+
+  /**
+   * @param error A failed entry of a SendMessageBatch response.
+   * @return The kind of error.
+   */
+  public static ErrorKind classify(final BatchResultErrorEntry error) {
+    if (THROTTLING_CODES.contains(error.getCode())) {
+      return ErrorKind.THROTTLED;
+    }
+    return Boolean.TRUE.equals(error.getSenderFault()) ? ErrorKind.PERMANENT : ErrorKind.TRANSIENT;
+  }
+
+  /**
+   * @param kind  The kind of error of the last attempt.
+   * @param entry The message.
+   * @return Whether the message is sent again.
+   */
+  public boolean canRetry(final ErrorKind kind, final SqsSendEntry entry) {
+    return kind != ErrorKind.PERMANENT && entry.getAttempts() <= maxRetries;
+  }
+
+  /**
+   * Full jitter: a random delay up to {@code backoff * 2^(attempts - 1)},
+   * capped at the maximum backoff.
+   *
+   * @param attempts Attempts made so far.
+   * @return The delay before the next attempt in milliseconds.
+   */
+  public long backoffMs(final int attempts) {
+    return backoffMs(backoffMs, maxBackoffMs, attempts);
+  }
+
+  /**
+   * Full jitter, for callers with their own backoff bounds.
+   *
+   * @param backoffMs    Backoff before the first retry.
+   * @param maxBackoffMs Upper bound of the backoff.
+   * @param attempts     Attempts made so far.
+   * @return The delay before the next attempt in milliseconds.
+   */
+  public static long backoffMs(final long backoffMs, final long maxBackoffMs, final int attempts) {
+    final int shift = Math.min(Math.max(attempts - 1, 0), 30);
+    final long ceiling = Math.min(maxBackoffMs, backoffMs << shift);
+    return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  /**
+   * @return The delay the worker waits before it redelivers records whose retries are spent.
+   */
+  public long redeliveryBackoffMs() {
+    return backoffMs(maxRetries + 1);
+  }
+
+  /**
+   * Run a resend later on a shared daemon thread.
+   *
+   * @param resend  The resend.
+   * @param delayMs Delay in milliseconds.
+   */
+  public synchronized void schedule(final Runnable resend, final long delayMs) {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, threadName);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    scheduler.schedule(resend, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Hand a record that cannot be sent to the errant record reporter.
+   *
+   * @param record The record.
+   * @param error  Why it cannot be sent.
+   * @return false if there is no reporter, in which case the caller deals with the record.
+   */
+  public boolean report(final SinkRecord record, final Throwable error) {
+    if (reporter == null) {
+      return false;
+    }
+    reporter.report(record, error);
+    return true;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+}
@@ -54,8 +54,9 @@ public class SqsSinkConnector extends SinkConnector {
   @Override
   public List<Map<String, String>> taskConfigs( int maxTasks ) {
     List<Map<String, String>> taskConfigs = new ArrayList<>( maxTasks ) ;
-    Map<String, String> taskProps = new HashMap<>( configProps ) ;
     for ( int i = 0 ; i < maxTasks ; i++ ) {
+      Map<String, String> taskProps = new HashMap<>( configProps ) ;
+      taskProps.put( SqsConnectorConfigKeys.TASK_ID.getValue(), Integer.toString( i ) ) ;
       taskConfigs.add( taskProps ) ;
     }
     return taskConfigs ;
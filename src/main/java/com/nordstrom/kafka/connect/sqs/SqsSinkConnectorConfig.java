@@ -17,6 +17,7 @@
 package com.nordstrom.kafka.connect.sqs;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,13 +29,44 @@ import org.apache.kafka.common.config.ConfigException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.nordstrom.kafka.connect.utils.StringUtils;
+
 public class SqsSinkConnectorConfig extends SqsConnectorConfig {
+  private final Map<String, String> queueMap;
+  private final String queueHeader;
+  private final String queueNameTemplate;
+  private final Integer queueUrlCacheSize;
   private final Boolean messageAttributesEnabled;
   private final List<String> messageAttributesList;
+  private final Boolean sendBatchEnabled;
+  private final Integer sendMaxRetries;
+  private final Long sendRetryBackoffMs;
+  private final Long sendRetryBackoffMaxMs;
+  private final Boolean sendAsyncEnabled;
+  private final Integer sendMaxInFlight;
+  private final Integer sendFifoLanes;
+  private final Integer sendFifoGroupBuckets;
+  private final SqsPayloadCodec compressionType;
+  private final Integer compressionThresholdBytes;
+  private final Integer blobStoreThresholdBytes;
+  private final String blobStorePrefix;
 
   private static final ConfigDef CONFIG_DEF = new ConfigDef()
-      .define(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), Type.STRING, Importance.HIGH, "URL of the SQS queue to be written to.")
-      .define(SqsConnectorConfigKeys.TOPICS.getValue(), Type.STRING, Importance.HIGH, "Kafka topic to be read from.")
+      .define(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), Type.STRING, "", Importance.HIGH,
+          "URL of the SQS queue to be written to, or the default queue when sqs.queue.map, sqs.queue.header or sqs.queue.name.template are used.")
+      .define(SqsConnectorConfigKeys.SQS_QUEUE_MAP.getValue(), Type.LIST, "", Importance.HIGH,
+          "Comma separated list of topic:queue pairs routing the records of a topic to a queue, given by URL or name.")
+      .define(SqsConnectorConfigKeys.SQS_QUEUE_HEADER.getValue(), Type.STRING, "", Importance.MEDIUM,
+          "Name of a record header whose value is the queue, by URL or name, that the record is sent to. Takes precedence over the other routes. Producers can then name any queue the connector's credentials can send to, so only use it with trusted producers.")
+      .define(SqsConnectorConfigKeys.SQS_QUEUE_NAME_TEMPLATE.getValue(), Type.STRING, "", Importance.MEDIUM,
+          "Name of the queue a record is sent to when no other route applies, where ${topic} stands for the record topic, e.g. ${topic}-events.")
+      .define(SqsConnectorConfigKeys.SQS_QUEUE_URL_CACHE_SIZE.getValue(), Type.INT, 1000, ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          "Maximum number of queue names whose URL, looked up with GetQueueUrl, is cached. Default is 1000.")
+      .define(SqsConnectorConfigKeys.TOPICS.getValue(), Type.STRING, "", Importance.HIGH,
+          "Comma separated list of Kafka topics to be read from.")
+      .define(SqsConnectorConfigKeys.TOPICS_REGEX.getValue(), Type.STRING, "", Importance.HIGH,
+          "Regular expression of the Kafka topics to be read from, instead of topics.")
       .define(SqsConnectorConfigKeys.SQS_REGION.getValue(), Type.STRING, System.getenv("AWS_REGION"), Importance.HIGH,
           "SQS queue AWS region.")
       .define(SqsConnectorConfigKeys.SQS_ENDPOINT_URL.getValue(), Type.STRING, "", Importance.LOW,
@@ -49,14 +81,52 @@ public class SqsSinkConnectorConfig extends SqsConnectorConfig {
           ConfigDef.Width.LONG,
           "AWS Credentials Provider Class")
       .define(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_ENABLED.getValue(), Type.BOOLEAN, false, Importance.LOW,
-          "If true, it gets the Kafka Headers and inserts them as SQS MessageAttributes (only string headers are currently supported). Default is false.")
+          "If true, it gets the Kafka Headers and inserts them as SQS MessageAttributes of the matching type (String, Number or Binary). Default is false.")
       .define(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_INCLUDE_LIST.getValue(), Type.LIST, "", Importance.LOW,
           "The comma separated list of Header names to be included, if empty it includes all the Headers. Default is the empty string.")
+      .define(SqsConnectorConfigKeys.SQS_SEND_BATCH_ENABLED.getValue(), Type.BOOLEAN, false, Importance.MEDIUM,
+          "If true, records are sent with SendMessageBatch requests of up to 10 messages and 256 KB each, instead of one SendMessage request per record. Default is false.")
+      .define(SqsConnectorConfigKeys.SQS_SEND_MAX_RETRIES.getValue(), Type.INT, 3, ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          "Number of times a message that failed with a throttling or transient error is resent. Default is 3.")
+      .define(SqsConnectorConfigKeys.SQS_SEND_RETRY_BACKOFF_MS.getValue(), Type.LONG, 100L, ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          "Backoff in milliseconds before the first resend of a message; it doubles with every further attempt, and the actual delay is a random value up to it. Default is 100.")
+      .define(SqsConnectorConfigKeys.SQS_SEND_RETRY_BACKOFF_MAX_MS.getValue(), Type.LONG, 10000L,
+          ConfigDef.Range.atLeast(0), Importance.LOW,
+          "Upper bound in milliseconds of the backoff between resends. Default is 10000.")
+      .define(SqsConnectorConfigKeys.SQS_SEND_ASYNC_ENABLED.getValue(), Type.BOOLEAN, false, Importance.MEDIUM,
+          "If true, put() only starts the sends and offsets are committed once SQS has acknowledged every record before them. Default is false.")
+      .define(SqsConnectorConfigKeys.SQS_SEND_MAX_IN_FLIGHT.getValue(), Type.INT, 10, ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          "Maximum number of asynchronous send requests awaiting a response. FIFO queues use sqs.send.fifo.lanes instead. Default is 10.")
+      .define(SqsConnectorConfigKeys.SQS_SEND_FIFO_LANES.getValue(), Type.INT, 1, ConfigDef.Range.between(1, 64),
+          Importance.LOW,
+          "Number of lanes asynchronous sends to a FIFO queue are spread over by message group. Each lane has one request in flight, so messages of a group stay in order. Default is 1.")
+      .define(SqsConnectorConfigKeys.SQS_SEND_FIFO_GROUP_BUCKETS.getValue(), Type.INT, 0, ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          "If positive, record keys are hashed into this many message groups for FIFO queues instead of using each key as its own group. Default is 0.")
+      .define(SqsConnectorConfigKeys.SQS_COMPRESSION_TYPE.getValue(), Type.STRING, "none",
+          ConfigDef.ValidString.in("none", "gzip", "zstd", "lz4"), Importance.LOW,
+          "Codec message bodies are compressed with before they are base64 encoded: none, gzip, zstd or lz4. The source connector decompresses them. Default is none.")
+      .define(SqsConnectorConfigKeys.SQS_COMPRESSION_THRESHOLD_BYTES.getValue(), Type.INT, 1024,
+          ConfigDef.Range.atLeast(0), Importance.LOW,
+          "Minimum size in bytes of a message body to compress. Bodies that do not get smaller are sent as they are. Default is 1024.")
+      .define(SqsConnectorConfigKeys.SQS_BLOB_STORE_THRESHOLD_BYTES.getValue(), Type.INT, 256 * 1024,
+          ConfigDef.Range.between(1, 256 * 1024), Importance.LOW,
+          "Messages whose payload (body and attributes) exceeds this size in bytes are offloaded to sqs.blob.store.class, if set. Default is 262144.")
+      .define(SqsConnectorConfigKeys.SQS_BLOB_STORE_PREFIX.getValue(), Type.STRING, "", Importance.LOW,
+          "Prefix of the keys of offloaded message bodies, which are <prefix><connector>/<topic>/<partition>/<offset>. Default is the empty string.")
       .define(SqsConnectorConfigKeys.CREDENTIALS_PROVIDER_ACCESS_KEY_ID.getValue(), Type.STRING, "", Importance.LOW,
           "AWS Secret Access Key to be used with Config credentials provider.")
       .define(SqsConnectorConfigKeys.CREDENTIALS_PROVIDER_SECRET_ACCESS_KEY.getValue(), Type.PASSWORD, "", Importance.LOW,
           "AWS Secret Access Key to be used with Config credentials provider");
 
+  static {
+    defineBlobStore(CONFIG_DEF);
+    defineControlTransport(CONFIG_DEF);
+  }
+
   public static ConfigDef config() {
     return CONFIG_DEF;
   }
@@ -64,12 +134,66 @@ public class SqsSinkConnectorConfig extends SqsConnectorConfig {
   public SqsSinkConnectorConfig(Map<?, ?> originals) {
     super(config(), originals);
 
+    queueMap = new HashMap<>();
+    for (final String route : getList(SqsConnectorConfigKeys.SQS_QUEUE_MAP.getValue())) {
+      final int colon = route.indexOf(':');
+      if (colon < 1 || colon == route.length() - 1) {
+        throw new ConfigException(SqsConnectorConfigKeys.SQS_QUEUE_MAP.getValue(), route,
+            "Expected topic:queue");
+      }
+      queueMap.put(route.substring(0, colon).trim(), route.substring(colon + 1).trim());
+    }
+    queueHeader = getString(SqsConnectorConfigKeys.SQS_QUEUE_HEADER.getValue());
+    queueNameTemplate = getString(SqsConnectorConfigKeys.SQS_QUEUE_NAME_TEMPLATE.getValue());
+    queueUrlCacheSize = getInt(SqsConnectorConfigKeys.SQS_QUEUE_URL_CACHE_SIZE.getValue());
+    if (StringUtils.isBlank(getQueueUrl()) && queueMap.isEmpty() && StringUtils.isBlank(queueHeader)
+        && StringUtils.isBlank(queueNameTemplate)) {
+      throw new ConfigException("One of " + SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue() + ", "
+          + SqsConnectorConfigKeys.SQS_QUEUE_MAP.getValue() + ", " + SqsConnectorConfigKeys.SQS_QUEUE_HEADER.getValue()
+          + " or " + SqsConnectorConfigKeys.SQS_QUEUE_NAME_TEMPLATE.getValue() + " must be set");
+    }
+
     messageAttributesEnabled = getBoolean(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_ENABLED.getValue());
     if (messageAttributesEnabled) {
       messageAttributesList = getList(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_INCLUDE_LIST.getValue());
     } else {
       messageAttributesList = Collections.emptyList();
     }
+    sendBatchEnabled = getBoolean(SqsConnectorConfigKeys.SQS_SEND_BATCH_ENABLED.getValue());
+    sendMaxRetries = getInt(SqsConnectorConfigKeys.SQS_SEND_MAX_RETRIES.getValue());
+    sendRetryBackoffMs = getLong(SqsConnectorConfigKeys.SQS_SEND_RETRY_BACKOFF_MS.getValue());
+    sendRetryBackoffMaxMs = getLong(SqsConnectorConfigKeys.SQS_SEND_RETRY_BACKOFF_MAX_MS.getValue());
+    sendAsyncEnabled = getBoolean(SqsConnectorConfigKeys.SQS_SEND_ASYNC_ENABLED.getValue());
+    sendMaxInFlight = getInt(SqsConnectorConfigKeys.SQS_SEND_MAX_IN_FLIGHT.getValue());
+    sendFifoLanes = getInt(SqsConnectorConfigKeys.SQS_SEND_FIFO_LANES.getValue());
+    sendFifoGroupBuckets = getInt(SqsConnectorConfigKeys.SQS_SEND_FIFO_GROUP_BUCKETS.getValue());
+    compressionType = SqsPayloadCodec.forValue(getString(SqsConnectorConfigKeys.SQS_COMPRESSION_TYPE.getValue()));
+    if (!compressionType.isAvailable()) {
+      throw new ConfigException(SqsConnectorConfigKeys.SQS_COMPRESSION_TYPE.getValue(), compressionType.getValue(),
+          compressionType.unavailableReason());
+    }
+    compressionThresholdBytes = getInt(SqsConnectorConfigKeys.SQS_COMPRESSION_THRESHOLD_BYTES.getValue());
+    blobStoreThresholdBytes = getInt(SqsConnectorConfigKeys.SQS_BLOB_STORE_THRESHOLD_BYTES.getValue());
+    blobStorePrefix = getString(SqsConnectorConfigKeys.SQS_BLOB_STORE_PREFIX.getValue());
+  }
+
+  /**
+   * @return Queue, by URL or name, per topic.
+   */
+  public Map<String, String> getQueueMap() {
+    return queueMap;
+  }
+
+  public String getQueueHeader() {
+    return queueHeader;
+  }
+
+  public String getQueueNameTemplate() {
+    return queueNameTemplate;
+  }
+
+  public Integer getQueueUrlCacheSize() {
+    return queueUrlCacheSize;
   }
 
   public Boolean getMessageAttributesEnabled() {
@@ -80,4 +204,52 @@ public class SqsSinkConnectorConfig extends SqsConnectorConfig {
     return messageAttributesList;
   }
 
+  public Boolean getSendBatchEnabled() {
+    return sendBatchEnabled;
+  }
+
+  public Integer getSendMaxRetries() {
+    return sendMaxRetries;
+  }
+
+  public Long getSendRetryBackoffMs() {
+    return sendRetryBackoffMs;
+  }
+
+  public Long getSendRetryBackoffMaxMs() {
+    return sendRetryBackoffMaxMs;
+  }
+
+  public Boolean getSendAsyncEnabled() {
+    return sendAsyncEnabled;
+  }
+
+  public Integer getSendMaxInFlight() {
+    return sendMaxInFlight;
+  }
+
+  public Integer getSendFifoLanes() {
+    return sendFifoLanes;
+  }
+
+  public Integer getSendFifoGroupBuckets() {
+    return sendFifoGroupBuckets;
+  }
+
+  public SqsPayloadCodec getCompressionType() {
+    return compressionType;
+  }
+
+  public Integer getCompressionThresholdBytes() {
+    return compressionThresholdBytes;
+  }
+
+  public Integer getBlobStoreThresholdBytes() {
+    return blobStoreThresholdBytes;
+  }
+
+  public String getBlobStorePrefix() {
+    return blobStorePrefix;
+  }
+
 }
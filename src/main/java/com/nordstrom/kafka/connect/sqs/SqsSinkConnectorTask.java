@@ -16,28 +16,54 @@
 
 package com.nordstrom.kafka.connect.sqs ;
 
-import java.text.MessageFormat ;
+import java.util.ArrayList ;
 import java.util.Collection ;
-import java.util.HashMap;
+import java.util.Collections ;
+import java.util.HashMap ;
+import java.util.HashSet ;
+import java.util.LinkedHashMap ;
 import java.util.List;
 import java.util.Map ;
+import java.util.Set ;
+import java.util.concurrent.TimeUnit ;
 
-import com.amazonaws.services.sqs.model.MessageAttributeValue;
-import org.apache.kafka.connect.data.Schema;
-import org.apache.kafka.connect.header.Header;
-import org.apache.kafka.connect.header.Headers;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata ;
+import org.apache.kafka.common.TopicPartition ;
+import org.apache.kafka.common.metrics.Sensor ;
+import org.apache.kafka.connect.errors.ConnectException ;
+import org.apache.kafka.connect.errors.DataException ;
+import org.apache.kafka.connect.errors.RetriableException ;
+import org.apache.kafka.connect.sink.ErrantRecordReporter ;
 import org.apache.kafka.connect.sink.SinkRecord ;
 import org.apache.kafka.connect.sink.SinkTask ;
 import org.slf4j.Logger ;
 import org.slf4j.LoggerFactory ;
 
+import com.amazonaws.AmazonServiceException ;
 import com.nordstrom.kafka.connect.sqs.SqsSinkConnector ;
+import com.nordstrom.kafka.connect.utils.StringUtils ;
 
 public class SqsSinkConnectorTask extends SinkTask {
   private final Logger log = LoggerFactory.getLogger( this.getClass() ) ;
 
+  private SqsClientPool.Lease lease ;
   private SqsClient client ;
   private SqsSinkConnectorConfig config ;
+  private SqsSinkConverter converter ;
+  private SqsBlobStore blobStore ;
+  private SqsQueueRouter router ;
+  private SqsSendRetry retry ;
+  private SqsMetrics metrics ;
+  private Sensor recordsPerPut ;
+  private final Map<String, Boolean> fifo = new HashMap<>() ;
+  private final Map<String, SqsSendBatcher> batchers = new HashMap<>() ;
+  private final Map<String, SqsAsyncSender> senders = new HashMap<>() ;
+  private final Map<String, SqsSendRateLimiter> limiters = new HashMap<>() ;
+  private SqsOffsetTracker tracker ;
+  private boolean paused ;
+  private long pausedUntilNanos ;
+
+  private static final long CLOSE_TIMEOUT_MS = 30000L ;
 
   /*
    * (non-Javadoc)
@@ -60,11 +86,61 @@ public class SqsSinkConnectorTask extends SinkTask {
     Guard.verifyNotNull( props, "Task properties" ) ;
 
     config = new SqsSinkConnectorConfig( props ) ;
-    client = new SqsClient(config) ;
+    lease = SqsClientPool.acquire( config ) ;
+    if ( !StringUtils.isBlank( config.getQueueUrl() ) ) {
+      lease.prewarm( Collections.singletonList( config.getQueueUrl() ), false ) ;
+    }
+    blobStore = config.getBlobStore( lease.getClient().getCredentialsProvider() ) ;
+    converter = new SqsSinkConverter( config, blobStore ) ;
+    metrics = new SqsMetrics( "sink-task", SqsMetrics.taskTags( config.getConnectorName(), config.getTaskId() ) ) ;
+    recordsPerPut = metrics.avgMaxSensor( "records-per-put", "number of records passed to a put." ) ;
+    client = lease.getClient().withMetrics( metrics ) ;
+    router = new SqsQueueRouter( client, config ) ;
+    retry = new SqsSendRetry( config.getSendMaxRetries(), config.getSendRetryBackoffMs(),
+        config.getSendRetryBackoffMaxMs(), errantRecordReporter(),
+        "sqs-send-retry-" + config.getConnectorName() + "-" + config.getTaskId() ) ;
+    if ( config.getSendAsyncEnabled() ) {
+      tracker = new SqsOffsetTracker() ;
+      metrics.gauge( "in-flight-records", "The number of records sent but not yet acknowledged by SQS.",
+          ( metricConfig, now ) -> tracker.inFlight() ) ;
+    }
 
     log.info( "task.start:OK, sqs.queue.url={}, topics={}", config.getQueueUrl(), config.getTopics() ) ;
   }
 
+  private ErrantRecordReporter errantRecordReporter() {
+    try {
+      return null == context ? null : context.errantRecordReporter() ;
+    } catch ( final NoSuchMethodError | NoClassDefFoundError e ) {
+      // Workers older than Kafka 2.6 have no errant record reporter.
+      log.warn( "task.start:errant record reporter not available", e ) ;
+      return null ;
+    }
+  }
+
+  private boolean isFifo( final String url ) {
+    return fifo.computeIfAbsent( url, client::isFifo ) ;
+  }
+
+  private SqsSendRateLimiter limiter( final String url ) {
+    return limiters.computeIfAbsent( url, u -> {
+      final SqsSendRateLimiter limiter = new SqsSendRateLimiter() ;
+      metrics.queue( u ).registerRateLimit( limiter ) ;
+      return limiter ;
+    } ) ;
+  }
+
+  private SqsSendBatcher batcher( final String url ) {
+    return batchers.computeIfAbsent( url,
+        u -> new SqsSendBatcher( client, u, isFifo( u ), retry, limiter( u ), metrics.queue( u ) ) ) ;
+  }
+
+  private SqsAsyncSender sender( final String url ) {
+    return senders.computeIfAbsent( url, u -> new SqsAsyncSender( client, u, isFifo( u ),
+        isFifo( u ) ? config.getSendFifoLanes() : config.getSendMaxInFlight(), config.getSendBatchEnabled(), retry,
+        limiter( u ), tracker, metrics.queue( u ) ) ) ;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -72,6 +148,11 @@ public class SqsSinkConnectorTask extends SinkTask {
    */
   @Override
   public void put( Collection<SinkRecord> records ) {
+    resumeIfDue() ;
+    // The worker also calls put() without records, which picks up failures of earlier puts.
+    if ( null != tracker && rewindOnFailure( records ) ) {
+      return ;
+    }
     if ( records.isEmpty() ) {
       return ;
     }
@@ -81,45 +162,339 @@ public class SqsSinkConnectorTask extends SinkTask {
     }
 
     log.debug( ".put:record_count={}", records.size() ) ;
+    recordsPerPut.record( records.size() ) ;
+    if ( null != tracker ) {
+      putAsync( records ) ;
+      return ;
+    }
+    if ( config.getSendBatchEnabled() ) {
+      putBatch( records ) ;
+      return ;
+    }
+
+    final List<SqsSendEntry> failed = new ArrayList<>( 0 ) ;
+    // FIFO groups, by queue, with a message that ran out of retries. The put is redelivered, so the rest of the
+    // group is not sent ahead of it.
+    final Set<String> stoppedGroups = new HashSet<>( 0 ) ;
     for ( final SinkRecord record : records ) {
-      final String mid = MessageFormat.format( "{0}-{1}-{2}", record.topic(), record.kafkaPartition().longValue(),
-          record.kafkaOffset() ) ;
-      final String key = Facility.isNotNull( record.key() ) ? record.key().toString() : null ;
-      final String gid = Facility.isNotNullNorEmpty( key ) ? key : record.topic() ;
-      final String body = Facility.isNotNull( record.value() ) ? record.value().toString() : "" ;
-
-      Map<String, MessageAttributeValue> messageAttributes = null;
-
-      if (config.getMessageAttributesEnabled()) {
-        final Headers headers = record.headers();
-        messageAttributes = new HashMap<>();
-        List<String> attributesList = config.getMessageAttributesList();
-        boolean allNamesEnabled = attributesList.isEmpty();
-        for(Header header: headers) {
-          if(allNamesEnabled || attributesList.contains(header.key())) {
-            if(header.schema().equals(Schema.STRING_SCHEMA)) {
-              messageAttributes.put(header.key(), new MessageAttributeValue()
-                .withDataType("String")
-                .withStringValue((String)header.value()));
-            }
-          }
+      final String url = route( record ) ;
+      if ( null == url ) {
+        continue ;
+      }
+      final SqsSendEntry entry = converter.toEntry( record, url, isFifo( url ) ) ;
+
+      if ( null != entry ) {
+        final String group = null == entry.getGroupId() ? null : url + " " + entry.getGroupId() ;
+        if ( null != group && stoppedGroups.contains( group ) ) {
+          entry.failed( SqsSendRetry.ErrorKind.TRANSIENT, "not sent behind a failed message of its group" ) ;
+          failed.add( entry ) ;
+        } else if ( !send( url, entry, failed ) && null != group
+            && entry.getErrorKind() != SqsSendRetry.ErrorKind.PERMANENT ) {
+          stoppedGroups.add( group ) ;
         }
+      } else {
+        log.warn( "Skipping empty message: key={}", record.key() ) ;
       }
 
-      if ( Facility.isNotNullNorEmpty( body ) ) {
+    }
+    handleFailures( failed ) ;
+  }
+
+  /**
+   * Send one message with SendMessage, resending it after a backoff while it
+   * fails with a throttling or transient error and has retries left.
+   *
+   * @param url    SQS queue url.
+   * @param entry  The message.
+   * @param failed Receives the message if it cannot be sent.
+   * @return true if the message was sent.
+   */
+  private boolean send( final String url, final SqsSendEntry entry, final List<SqsSendEntry> failed ) {
+    final SqsSendRateLimiter limiter = limiter( url ) ;
+    final SqsQueueMetrics queueMetrics = metrics.queue( url ) ;
+    try {
+      while ( true ) {
+        if ( entry.attempt() > 1 ) {
+          queueMetrics.recordSendRetry() ;
+        }
+        limiter.acquire() ;
         try {
-          final String sid = client.send( config.getQueueUrl(), body, gid, mid, messageAttributes ) ;
+          final String sid = client.send( url, entry.getBody(), entry.getGroupId(), entry.getMessageId(),
+              entry.getMessageAttributes() ) ;
+          limiter.onSuccess() ;
 
-          log.debug( ".put.OK:message-id={}, queue.url={}, sqs-group-id={}, sqs-message-id={}", gid, mid,
-              config.getQueueUrl(), sid ) ;
+          log.debug( ".put.OK:message-id={}, queue.url={}, sqs-group-id={}, sqs-message-id={}", entry.getGroupId(),
+              entry.getMessageId(), url, sid ) ;
+          return true ;
         } catch ( final RuntimeException e ) {
-          log.error( "An Exception occurred while sending message {} to target url {}:", mid, config.getQueueUrl(),
-              e ) ;
+          final SqsSendRetry.ErrorKind kind = SqsSendRetry.classify( e ) ;
+          entry.failed( kind, e.getMessage() ) ;
+          final long backoffMs = retry.backoffMs( entry.getAttempts() ) ;
+          if ( kind == SqsSendRetry.ErrorKind.THROTTLED ) {
+            queueMetrics.recordSendThrottle() ;
+            limiter.onThrottle( backoffMs ) ;
+          }
+          if ( !retry.canRetry( kind, entry ) ) {
+            queueMetrics.recordSendFailure() ;
+            failed.add( entry ) ;
+            return false ;
+          }
+          log.warn( "Resending message {} to target url {} in {} ms after {} error: {}", entry.getMessageId(), url,
+              backoffMs, kind, e.getMessage() ) ;
+          Thread.sleep( backoffMs ) ;
+        }
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt() ;
+      throw new ConnectException( "Interrupted while sending to " + url, e ) ;
+    }
+  }
+
+  /**
+   * Send the records with SendMessageBatch requests, packed by entry count and
+   * payload size. Entries that fail are resent on their own by the batcher.
+   *
+   * @param records The records to send.
+   */
+  private void putBatch( Collection<SinkRecord> records ) {
+    final List<SqsSendEntry> failed = new ArrayList<>( 0 ) ;
+    for ( final Map.Entry<String, List<SqsSendEntry>> queue : toEntries( records ).entrySet() ) {
+      try {
+        failed.addAll( batcher( queue.getKey() ).send( queue.getValue() ) ) ;
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread().interrupt() ;
+        throw new ConnectException( "Interrupted while sending to " + queue.getKey(), e ) ;
+      }
+      log.debug( ".put-batch.OK:queue.url={}, entries={}", queue.getKey(), queue.getValue().size() ) ;
+    }
+    handleFailures( failed ) ;
+  }
+
+  /**
+   * Deal with the messages of a synchronous put that could not be sent.
+   * Permanent failures are reported as errant records, or logged and skipped
+   * when there is no reporter. If any message only ran out of retries, the
+   * worker is asked to redeliver the whole batch after a backoff; messages
+   * that were sent are then sent again.
+   *
+   * @param failed The messages that could not be sent.
+   */
+  private void handleFailures( final List<SqsSendEntry> failed ) {
+    int retriable = 0 ;
+    for ( final SqsSendEntry entry : failed ) {
+      final String message = String.format( "Unable to send message %1$s-%2$s-%3$s to target url %4$s after %5$s attempts: %6$s",
+          entry.getRecord().topic(), entry.getRecord().kafkaPartition(), entry.getRecord().kafkaOffset(),
+          entry.getQueueUrl(), entry.getAttempts(), entry.getError() ) ;
+      if ( entry.getErrorKind() != SqsSendRetry.ErrorKind.PERMANENT ) {
+        log.warn( message ) ;
+        retriable++ ;
+      } else if ( retry.report( entry.getRecord(), new ConnectException( message ) ) ) {
+        log.warn( "{}, reported as errant record", message ) ;
+      } else {
+        log.error( message ) ;
+      }
+    }
+    if ( retriable > 0 ) {
+      final long backoffMs = retry.redeliveryBackoffMs() ;
+      context.timeout( backoffMs ) ;
+      throw new RetriableException( String.format( "%1$s messages ran out of retries, redelivering the batch in %2$s ms",
+          retriable, backoffMs ) ) ;
+    }
+  }
+
+  /**
+   * Start sending the records asynchronously. Only blocks while the maximum
+   * number of requests is in flight; acknowledgements are tracked for
+   * {@link #preCommit(Map)}. While SQS throttles, the partitions are paused
+   * instead of blocking the worker.
+   *
+   * @param records The records to send.
+   */
+  private void putAsync( Collection<SinkRecord> records ) {
+    for ( final Map.Entry<String, List<SqsSendEntry>> queue : toEntries( records ).entrySet() ) {
+      try {
+        sender( queue.getKey() ).send( queue.getValue() ) ;
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread().interrupt() ;
+        throw new ConnectException( "Interrupted while sending to " + queue.getKey(), e ) ;
+      }
+      log.debug( ".put-async.OK:queue.url={}, entries={}, in-flight={}", queue.getKey(), queue.getValue().size(),
+          tracker.inFlight() ) ;
+    }
+    long throttledForMs = 0 ;
+    for ( final SqsAsyncSender sender : senders.values() ) {
+      throttledForMs = Math.max( throttledForMs, sender.throttledForMs() ) ;
+    }
+    if ( throttledForMs > 0 ) {
+      pause( throttledForMs ) ;
+    }
+  }
+
+  /**
+   * When a message ran out of retries, its record and every record after it
+   * have to be sent again, but the worker has moved on. Wait for the requests
+   * in flight, then rewind each partition to its first record that SQS has
+   * not acknowledged, including the records of this put, which are not sent,
+   * and pause for a backoff.
+   *
+   * @param records The records of the current put.
+   * @return true if the partitions were rewound.
+   */
+  private boolean rewindOnFailure( Collection<SinkRecord> records ) {
+    if ( null == senderFailure() ) {
+      return false ;
+    }
+    awaitIdle() ;
+    final ConnectException failure = senderFailure() ;
+    for ( final SinkRecord record : records ) {
+      tracker.pending( record ) ;
+    }
+    final Map<TopicPartition, Long> offsets = tracker.rewind() ;
+    for ( final SqsAsyncSender sender : senders.values() ) {
+      sender.clearFailure() ;
+    }
+    log.warn( "Rewinding to offsets {} after: {}", offsets, failure.getMessage() ) ;
+    context.offset( offsets ) ;
+    pause( retry.redeliveryBackoffMs() ) ;
+    return true ;
+  }
+
+  /**
+   * @return The failure of a message that ran out of retries, or null.
+   * @throws ConnectException the failure of a message that can never be sent.
+   */
+  private ConnectException senderFailure() {
+    ConnectException retriable = null ;
+    for ( final SqsAsyncSender sender : senders.values() ) {
+      final ConnectException e = sender.getFailure() ;
+      if ( e instanceof RetriableException ) {
+        retriable = e ;
+      } else if ( null != e ) {
+        throw e ;
+      }
+    }
+    return retriable ;
+  }
+
+  private void pause( final long ms ) {
+    pausedUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( ms ) ;
+    // Have the worker call put() again once the pause is over.
+    context.timeout( ms ) ;
+    if ( !paused ) {
+      log.debug( ".pause:ms={}", ms ) ;
+      context.pause( context.assignment().toArray( new TopicPartition[0] ) ) ;
+      paused = true ;
+    }
+  }
+
+  private void resumeIfDue() {
+    if ( paused && System.nanoTime() - pausedUntilNanos >= 0 ) {
+      log.debug( ".resume" ) ;
+      context.resume( context.assignment().toArray( new TopicPartition[0] ) ) ;
+      paused = false ;
+    }
+  }
+
+  /**
+   * Route the records and convert them to SQS messages. Records with an empty
+   * value are skipped; when offsets are tracked they count as acknowledged
+   * right away.
+   *
+   * @param records The records to convert.
+   * @return The messages to send by queue url, in record order per queue.
+   */
+  private Map<String, List<SqsSendEntry>> toEntries( Collection<SinkRecord> records ) {
+    final Map<String, List<SqsSendEntry>> entries = new LinkedHashMap<>() ;
+    for ( final SinkRecord record : records ) {
+      if ( null != tracker ) {
+        tracker.pending( record ) ;
+      }
+      final String url = route( record ) ;
+      if ( null == url ) {
+        if ( null != tracker ) {
+          tracker.acknowledged( record ) ;
         }
+        continue ;
+      }
+      final SqsSendEntry entry = converter.toEntry( record, url, isFifo( url ) ) ;
+      if ( null != entry ) {
+        entries.computeIfAbsent( url, u -> new ArrayList<>( records.size() ) ).add( entry ) ;
       } else {
-        log.warn( "Skipping empty message: key={}", key ) ;
+        log.warn( "Skipping empty message: key={}", record.key() ) ;
+        if ( null != tracker ) {
+          tracker.acknowledged( record ) ;
+        }
+      }
+    }
+    return entries ;
+  }
+
+  /**
+   * Pick the queue of a record. A record without a queue, because no route
+   * applies, its header names a queue that does not exist or it is not a
+   * valid queue name, is reported as an errant record and skipped, so that
+   * {@code errors.tolerance} and the dead letter queue decide what happens to
+   * it. Without an errant record reporter the task fails.
+   *
+   * @param record The record.
+   * @return The queue url, or null if the record was reported.
+   */
+  private String route( final SinkRecord record ) {
+    try {
+      return router.route( record ) ;
+    } catch ( final DataException | AmazonServiceException e ) {
+      if ( e instanceof AmazonServiceException
+          && SqsSendRetry.classify( (AmazonServiceException) e ) != SqsSendRetry.ErrorKind.PERMANENT ) {
+        throw e ;
+      }
+      if ( !retry.report( record, e ) ) {
+        throw e ;
       }
+      log.warn( "No SQS queue for record {}-{}-{}, reported as errant record: {}", record.topic(),
+          record.kafkaPartition(), record.kafkaOffset(), e.getMessage() ) ;
+      return null ;
+    }
+  }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.kafka.connect.sink.SinkTask#preCommit(java.util.Map)
+   */
+  @Override
+  public Map<TopicPartition, OffsetAndMetadata> preCommit( Map<TopicPartition, OffsetAndMetadata> currentOffsets ) {
+    if ( null == tracker ) {
+      return super.preCommit( currentOffsets ) ;
+    }
+    // Never commit past a record that SQS has not acknowledged.
+    senderFailure() ;
+    final Map<TopicPartition, OffsetAndMetadata> offsets = tracker.committable( currentOffsets ) ;
+    log.debug( ".pre-commit:offsets={}, in-flight={}", offsets, tracker.inFlight() ) ;
+    return offsets ;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.kafka.connect.sink.SinkTask#close(java.util.Collection)
+   */
+  @Override
+  public void close( Collection<TopicPartition> partitions ) {
+    if ( null != tracker ) {
+      awaitIdle() ;
+      tracker.remove( partitions ) ;
+    }
+  }
+
+  private void awaitIdle() {
+    try {
+      for ( final Map.Entry<String, SqsAsyncSender> sender : senders.entrySet() ) {
+        if ( !sender.getValue().awaitIdle( CLOSE_TIMEOUT_MS ) ) {
+          log.warn( "Sends to {} still in flight after {} ms", sender.getKey(), CLOSE_TIMEOUT_MS ) ;
+        }
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt() ;
     }
   }
 
@@ -130,6 +505,21 @@ public class SqsSinkConnectorTask extends SinkTask {
    */
   @Override
   public void stop() {
+    if ( null != tracker ) {
+      awaitIdle() ;
+    }
+    if ( null != retry ) {
+      retry.close() ;
+    }
+    if ( null != blobStore ) {
+      blobStore.close() ;
+    }
+    if ( null != metrics ) {
+      metrics.close() ;
+    }
+    if ( null != lease ) {
+      SqsClientPool.release( lease ) ;
+    }
     log.info( "task.stop:OK" ) ;
   }
 
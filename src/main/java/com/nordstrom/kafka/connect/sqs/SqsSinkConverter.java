@@ -0,0 +1,291 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Values;
+import org.apache.kafka.connect.errors.RetriableException;
+import org.apache.kafka.connect.header.Header;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+
+/**
+ * Converts sink records to SQS messages. The header filter is compiled once
+ * from the configuration, and attribute values that repeat across records
+ * are shared rather than rebuilt. Not thread-safe: use one per task.
+ */
+public class SqsSinkConverter {
+  private static final String STRING_DATA_TYPE = "String";
+  private static final String NUMBER_DATA_TYPE = "Number";
+  private static final String BINARY_DATA_TYPE = "Binary";
+  // Bounds the attribute value cache; it is simply cleared when full.
+  private static final int MAX_CACHED_VALUES = 1024;
+
+  private final boolean attributesEnabled;
+  private final Set<String> includedHeaders;
+  private final Map<String, MessageAttributeValue> cachedValues = new HashMap<>();
+  private final StringBuilder idBuilder = new StringBuilder(64);
+  private final String[] groupBuckets;
+  private final SqsPayloadCodec codec;
+  private final int compressionThreshold;
+  private final SqsBlobStore blobStore;
+  private final int blobStoreThreshold;
+  private final String blobKeyPrefix;
+
+  /**
+   * @param config Sink configuration.
+   */
+  public SqsSinkConverter(final SqsSinkConnectorConfig config) {
+    this(config, null);
+  }
+
+  /**
+   * @param config    Sink configuration.
+   * @param blobStore Store that oversize bodies are offloaded to, or null.
+   */
+  public SqsSinkConverter(final SqsSinkConnectorConfig config, final SqsBlobStore blobStore) {
+    attributesEnabled = config.getMessageAttributesEnabled();
+    // An empty include list means every header is included.
+    includedHeaders = config.getMessageAttributesList().isEmpty() ? null
+        : new HashSet<>(config.getMessageAttributesList());
+    groupBuckets = new String[config.getSendFifoGroupBuckets()];
+    for (int i = 0; i < groupBuckets.length; i++) {
+      groupBuckets[i] = Integer.toString(i);
+    }
+    codec = config.getCompressionType();
+    compressionThreshold = config.getCompressionThresholdBytes();
+    this.blobStore = blobStore;
+    blobStoreThreshold = config.getBlobStoreThresholdBytes();
+    blobKeyPrefix = config.getBlobStorePrefix() + config.getConnectorName() + "/";
+  }
+
+  /**
+   * Convert a record to the message sent to a queue.
+   *
+   * @param record   The record.
+   * @param queueUrl SQS queue url the message is sent to.
+   * @param fifo     Whether the queue is a FIFO queue, which needs group and deduplication ids.
+   * @return The message, or null if the record has an empty value. {@code byte[]} and
+   *         {@link ByteBuffer} values are base64 encoded, others converted with {@code toString()}. Values of at least
+   *         {@code sqs.compression.threshold.bytes} are compressed with {@code sqs.compression.type},
+   *         and messages still over {@code sqs.blob.store.threshold.bytes} carry a blob key instead.
+   * @throws RetriableException If the body could not be offloaded.
+   */
+  public SqsSendEntry toEntry(final SinkRecord record, final String queueUrl, final boolean fifo) {
+    final Object value = record.value();
+    Map<String, MessageAttributeValue> messageAttributes;
+    String messageBody;
+    boolean compressed;
+    if (value instanceof byte[] || value instanceof ByteBuffer) {
+      // Binary values are base64 encoded straight from their bytes, compressed first if that pays.
+      final byte[] bytes = value instanceof byte[] ? (byte[]) value : bytes((ByteBuffer) value);
+      if (bytes.length == 0) {
+        return null;
+      }
+      messageAttributes = getMessageAttributes(record);
+      final byte[] encoded = codec.encodeBinary(bytes, compressionThreshold);
+      compressed = encoded != null;
+      messageBody = Base64.getEncoder().encodeToString(compressed ? encoded : bytes);
+    } else {
+      final String body = Facility.isNotNull(value) ? value.toString() : "";
+      if (body.isEmpty()) {
+        return null;
+      }
+      messageAttributes = getMessageAttributes(record);
+      final String encoded = codec.encode(body, compressionThreshold);
+      compressed = encoded != null;
+      messageBody = compressed ? encoded : body;
+    }
+    if (compressed) {
+      if (messageAttributes == null) {
+        messageAttributes = new HashMap<>(2);
+      }
+      messageAttributes.put(SqsPayloadCodec.ATTRIBUTE, codec.getAttributeValue());
+    }
+    if (blobStore != null && SqsSendEntry.payloadSize(messageBody, messageAttributes) > blobStoreThreshold) {
+      final String key = blobKey(record);
+      final byte[] blob = messageBody.getBytes(StandardCharsets.UTF_8);
+      try {
+        blobStore.put(key, blob);
+      } catch (final IOException | RuntimeException e) {
+        throw new RetriableException("Failed to offload message body to blob " + key, e);
+      }
+      if (messageAttributes == null) {
+        messageAttributes = new HashMap<>(2);
+      }
+      messageAttributes.put(SqsBlobStore.ATTRIBUTE,
+          new MessageAttributeValue().withDataType(STRING_DATA_TYPE).withStringValue(Integer.toString(blob.length)));
+      messageBody = key;
+    }
+    return new SqsSendEntry(record, queueUrl, messageBody, fifo ? groupId(record) : null,
+        fifo ? messageId(record) : null, messageAttributes);
+  }
+
+  /**
+   * The key only depends on the record, so a record that is sent again overwrites its blob.
+   *
+   * @param record The record.
+   * @return The key {@code <prefix><connector>/<topic>/<partition>/<offset>}.
+   */
+  private String blobKey(final SinkRecord record) {
+    idBuilder.setLength(0);
+    return idBuilder.append(blobKeyPrefix).append(record.topic()).append('/')
+        .append(record.kafkaPartition().intValue()).append('/').append(record.kafkaOffset()).toString();
+  }
+
+  /**
+   * @param record The record.
+   * @return The record key, or its topic if the key is empty. With
+   *         {@code sqs.send.fifo.group.buckets} set, the bucket that value hashes to.
+   */
+  public String groupId(final SinkRecord record) {
+    final String key = Facility.isNotNull(record.key()) ? record.key().toString() : null;
+    final String groupId = Facility.isNotNullNorEmpty(key) ? key : record.topic();
+    if (groupBuckets.length == 0) {
+      return groupId;
+    }
+    return groupBuckets[Math.floorMod(groupId.hashCode(), groupBuckets.length)];
+  }
+
+  /**
+   * @param record The record.
+   * @return The deduplication id {@code <topic>-<partition>-<offset>}.
+   */
+  public String messageId(final SinkRecord record) {
+    idBuilder.setLength(0);
+    return idBuilder.append(record.topic()).append('-').append(record.kafkaPartition().intValue()).append('-')
+        .append(record.kafkaOffset()).toString();
+  }
+
+  /**
+   * Map the included headers of a record to SQS message attributes: string
+   * headers to {@code String}, numeric headers to {@code Number} labelled with
+   * their type, e.g. {@code Number.int32}, and bytes headers to {@code Binary}.
+   *
+   * @param record The record.
+   * @return The message attributes, or null when attributes are disabled or no header is included.
+   */
+  public Map<String, MessageAttributeValue> getMessageAttributes(final SinkRecord record) {
+    if (!attributesEnabled) {
+      return null;
+    }
+    Map<String, MessageAttributeValue> messageAttributes = null;
+    for (final Header header : record.headers()) {
+      if (includedHeaders != null && !includedHeaders.contains(header.key())) {
+        continue;
+      }
+      final MessageAttributeValue attributeValue = attributeValue(header);
+      if (attributeValue == null) {
+        continue;
+      }
+      if (messageAttributes == null) {
+        messageAttributes = new HashMap<>();
+      }
+      messageAttributes.put(header.key(), attributeValue);
+    }
+    return messageAttributes;
+  }
+
+  /**
+   * @param header A record header.
+   * @return Its message attribute value, or null if it has no SQS equivalent.
+   */
+  private MessageAttributeValue attributeValue(final Header header) {
+    final Object value = header.value();
+    final Schema schema = header.schema() != null ? header.schema() : Values.inferSchema(value);
+    if (schema == null) {
+      return null;
+    }
+    if (Schema.Type.STRING == schema.type()) {
+      return stringValue((String) value);
+    }
+    if (value == null) {
+      return null;
+    }
+    switch (schema.type()) {
+      case INT8:
+      case INT16:
+      case INT32:
+      case INT64:
+        // Logical types such as Timestamp hold a java.util.Date instead.
+        if (!(value instanceof Number)) {
+          return null;
+        }
+        return new MessageAttributeValue().withDataType(NUMBER_DATA_TYPE + "." + schema.type().getName())
+            .withStringValue(value.toString());
+      case FLOAT32:
+      case FLOAT64:
+        final double number = ((Number) value).doubleValue();
+        // SQS numbers are decimals, which have no NaN or infinity.
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+          return null;
+        }
+        return new MessageAttributeValue().withDataType(NUMBER_DATA_TYPE + "." + schema.type().getName())
+            .withStringValue(new BigDecimal(value.toString()).toPlainString());
+      case BYTES:
+        if (value instanceof BigDecimal) {
+          return new MessageAttributeValue().withDataType(NUMBER_DATA_TYPE)
+              .withStringValue(((BigDecimal) value).toPlainString());
+        }
+        final ByteBuffer binary = value instanceof byte[] ? ByteBuffer.wrap((byte[]) value)
+            : ((ByteBuffer) value).duplicate();
+        return new MessageAttributeValue().withDataType(BINARY_DATA_TYPE).withBinaryValue(binary);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @param buffer A binary value.
+   * @return Its remaining bytes; the backing array itself when the buffer spans all of it.
+   */
+  private static byte[] bytes(final ByteBuffer buffer) {
+    if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+        && buffer.remaining() == buffer.array().length) {
+      return buffer.array();
+    }
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  private MessageAttributeValue stringValue(final String value) {
+    if (value == null) {
+      return new MessageAttributeValue().withDataType(STRING_DATA_TYPE);
+    }
+    MessageAttributeValue attributeValue = cachedValues.get(value);
+    if (attributeValue == null) {
+      if (cachedValues.size() >= MAX_CACHED_VALUES) {
+        cachedValues.clear();
+      }
+      attributeValue = new MessageAttributeValue().withDataType(STRING_DATA_TYPE).withStringValue(value);
+      cachedValues.put(value, attributeValue);
+    }
+    return attributeValue;
+  }
+}
@@ -17,13 +17,18 @@
 package com.nordstrom.kafka.connect.sqs ;
 
 import java.util.ArrayList ;
+import java.util.Collections ;
 import java.util.HashMap ;
 import java.util.List ;
 import java.util.Map ;
 
 import org.apache.kafka.common.config.ConfigDef ;
 import org.apache.kafka.connect.connector.Task ;
+import org.apache.kafka.connect.errors.ConnectException ;
+import org.apache.kafka.connect.source.ConnectorTransactionBoundaries ;
+import org.apache.kafka.connect.source.ExactlyOnceSupport ;
 import org.apache.kafka.connect.source.SourceConnector ;
+import org.apache.kafka.connect.util.ConnectorUtils ;
 import org.slf4j.Logger ;
 import org.slf4j.LoggerFactory ;
 
@@ -33,6 +38,11 @@ public class SqsSourceConnector extends SourceConnector {
   private final Logger log = LoggerFactory.getLogger( this.getClass() ) ;
 
   private Map<String, String> configProps ;
+  private List<String> queueUrls ;
+  private boolean exactlyOnce ;
+  private SqsClientPool.Lease lease ;
+  private SqsMetrics metrics ;
+  private SqsBacklogMonitor monitor ;
 
   /*
    * (non-Javadoc)
@@ -52,7 +62,41 @@ public class SqsSourceConnector extends SourceConnector {
   @Override
   public void start( Map<String, String> props ) {
     configProps = props ;
-    log.info( "connector.start:OK" ) ;
+    final SqsSourceConnectorConfig config = new SqsSourceConnectorConfig( props ) ;
+    queueUrls = resolveQueueUrls( config ) ;
+    exactlyOnce = config.getExactlyOnceEnabled() ;
+    if ( config.getBacklogMonitorIntervalMs() > 0 ) {
+      lease = SqsClientPool.acquire( config ) ;
+      metrics = new SqsMetrics( "source-connector", SqsMetrics.connectorTags( config.getConnectorName() ) ) ;
+      monitor = new SqsBacklogMonitor( lease.getClient().withMetrics( metrics ), queueUrls, config, metrics,
+          () -> context.requestTaskReconfiguration(), "sqs-backlog-" + config.getConnectorName() ) ;
+    }
+    log.info( "connector.start:OK, queues={}, backlog-monitor={}", queueUrls.size(), null != monitor ) ;
+  }
+
+  /**
+   * @param config Connector configuration.
+   * @return The configured queue urls, or those listed under the queue name prefix, sorted.
+   */
+  private List<String> resolveQueueUrls( SqsSourceConnectorConfig config ) {
+    final List<String> urls ;
+    if ( config.getQueueUrls().isEmpty() ) {
+      final SqsClientPool.Lease lease = SqsClientPool.acquire( config ) ;
+      try {
+        urls = new ArrayList<>( lease.getClient().listQueues( config.getQueueNamePrefix() ) ) ;
+      } finally {
+        SqsClientPool.release( lease ) ;
+      }
+      if ( urls.isEmpty() ) {
+        throw new ConnectException( "No SQS queue name starts with " + config.getQueueNamePrefix() ) ;
+      }
+      log.info( "connector.start:prefix={}, queues={}", config.getQueueNamePrefix(), urls ) ;
+    } else {
+      urls = new ArrayList<>( config.getQueueUrls() ) ;
+    }
+    // A stable order keeps the assignment of queues to tasks stable.
+    Collections.sort( urls ) ;
+    return urls ;
   }
 
   /*
@@ -72,14 +116,71 @@ public class SqsSourceConnector extends SourceConnector {
    */
   @Override
   public List<Map<String, String>> taskConfigs( int maxTasks ) {
+    // A task only filters the redeliveries of the messages it emitted itself, so with exactly-once delivery
+    // no queue is shared by several tasks.
+    if ( exactlyOnce && queueUrls.size() < maxTasks ) {
+      log.info( "connector.task-configs:exactly-once, tasks={} instead of {}", queueUrls.size(), maxTasks ) ;
+      maxTasks = queueUrls.size() ;
+    }
+    // Each task polls a contiguous share of the queues. With fewer queues than tasks, every task still gets a
+    // queue, and the tasks of a queue receive from it concurrently.
+    final List<List<String>> assignments ;
+    if ( queueUrls.size() >= maxTasks ) {
+      assignments = ConnectorUtils.groupPartitions( queueUrls, maxTasks ) ;
+    } else {
+      assignments = new ArrayList<>( maxTasks ) ;
+      for ( int i = 0 ; i < maxTasks ; i++ ) {
+        assignments.add( Collections.singletonList( queueUrls.get( i % queueUrls.size() ) ) ) ;
+      }
+    }
+
+    // With the backlog monitored, each task gets the receivers its share of the backlog calls for.
+    final int[] receivers = null == monitor ? null : monitor.assign( assignments ) ;
+
     List<Map<String, String>> taskConfigs = new ArrayList<>( maxTasks ) ;
-    Map<String, String> taskProps = new HashMap<>( configProps ) ;
     for ( int i = 0 ; i < maxTasks ; i++ ) {
+      Map<String, String> taskProps = new HashMap<>( configProps ) ;
+      taskProps.put( SqsConnectorConfigKeys.TASK_ID.getValue(), Integer.toString( i ) ) ;
+      taskProps.remove( SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue() ) ;
+      taskProps.remove( SqsConnectorConfigKeys.SQS_QUEUE_NAME_PREFIX.getValue() ) ;
+      taskProps.put( SqsConnectorConfigKeys.SQS_QUEUE_URLS.getValue(), String.join( ",", assignments.get( i ) ) ) ;
+      if ( null != receivers ) {
+        taskProps.put( SqsConnectorConfigKeys.SQS_RECEIVER_THREADS.getValue(), Integer.toString( receivers[i] ) ) ;
+      }
       taskConfigs.add( taskProps ) ;
     }
+    log.info( "connector.task-configs:tasks={}, queues={}", maxTasks, queueUrls.size() ) ;
     return taskConfigs ;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.kafka.connect.source.SourceConnector#exactlyOnceSupport(java.util.Map)
+   */
+  @Override
+  public ExactlyOnceSupport exactlyOnceSupport( Map<String, String> props ) {
+    return isExactlyOnceEnabled( props ) ? ExactlyOnceSupport.SUPPORTED : ExactlyOnceSupport.UNSUPPORTED ;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.kafka.connect.source.SourceConnector#canDefineTransactionBoundaries(java.util.Map)
+   */
+  @Override
+  public ConnectorTransactionBoundaries canDefineTransactionBoundaries( Map<String, String> props ) {
+    return isExactlyOnceEnabled( props ) ? ConnectorTransactionBoundaries.SUPPORTED
+        : ConnectorTransactionBoundaries.UNSUPPORTED ;
+  }
+
+  /**
+   * The worker asks before validating the configuration, so only the one property is read.
+   */
+  private static boolean isExactlyOnceEnabled( Map<String, String> props ) {
+    return Boolean.parseBoolean( props.get( SqsConnectorConfigKeys.SQS_EXACTLY_ONCE_ENABLED.getValue() ) ) ;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -87,6 +188,18 @@ public class SqsSourceConnector extends SourceConnector {
    */
   @Override
   public void stop() {
+    if ( null != monitor ) {
+      monitor.close() ;
+      monitor = null ;
+    }
+    if ( null != metrics ) {
+      metrics.close() ;
+      metrics = null ;
+    }
+    if ( null != lease ) {
+      SqsClientPool.release( lease ) ;
+      lease = null ;
+    }
     log.info( "connector.stop:OK" ) ;
   }
 
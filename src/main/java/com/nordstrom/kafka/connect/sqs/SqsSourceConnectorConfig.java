@@ -23,17 +23,53 @@ import java.util.Map;
 import org.apache.kafka.common.config.ConfigDef;
 import org.apache.kafka.common.config.ConfigDef.Importance;
 import org.apache.kafka.common.config.ConfigDef.Type;
+import org.apache.kafka.common.config.ConfigException;
+
+import com.nordstrom.kafka.connect.utils.StringUtils;
 
 public class SqsSourceConnectorConfig extends SqsConnectorConfig {
+  private final List<String> queueUrls;
+  private final String queueNamePrefix;
   private final Integer maxMessages;
   private final Integer waitTimeSeconds;
+  private final Boolean receiveAdaptiveEnabled;
+  private final Integer receiveAdaptiveMaxMessages;
+  private final Integer receiveAdaptiveMaxWaitTimeSeconds;
+  private final Double costPerMillionRequests;
+  private final Long pollMaxMs;
+  private final Integer pollMaxRecords;
+  private final Long pollMaxBytes;
+  private final Long backlogMonitorIntervalMs;
+  private final Long backlogMessagesPerReceiver;
+  private final Integer backlogMaxReceiverThreads;
+  private final Long backlogReconfigureMinIntervalMs;
   private final Boolean messageAttributesEnabled;
   private final List<String> messageAttributesList;
   private final String messageAttributePartitionKey;
+  private final Integer deleteBatchSize;
+  private final Long deleteLingerMs;
+  private final Integer deleteMaxRetries;
+  private final Integer receiverThreads;
+  private final Integer prefetchMaxMessages;
+  private final Long prefetchMaxBytes;
+  private final Long blobCacheMaxBytes;
+  private final Integer compressionMaxDecodedBytes;
+  private final String messageBodyFormat;
+  private final Integer jsonSchemaCacheSize;
+  private final Boolean visibilityHeartbeatEnabled;
+  private final Integer visibilityTimeoutSeconds;
+  private final Integer visibilityMaxHoldSeconds;
+  private final Boolean exactlyOnceEnabled;
+  private final Integer exactlyOnceRedeliveryWindowSeconds;
+  private final Integer exactlyOncePendingMaxMessages;
 
   private static final ConfigDef CONFIG_DEF = new ConfigDef()
-      .define(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), Type.STRING, Importance.HIGH,
-          "The URL of the SQS queue to be read from.")
+      .define(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), Type.STRING, "", Importance.HIGH,
+          "The URL of the SQS queue to be read from. One of sqs.queue.url, sqs.queue.urls or sqs.queue.name.prefix is required.")
+      .define(SqsConnectorConfigKeys.SQS_QUEUE_URLS.getValue(), Type.LIST, "", Importance.HIGH,
+          "The comma separated list of URLs of the SQS queues to be read from, spread across the tasks.")
+      .define(SqsConnectorConfigKeys.SQS_QUEUE_NAME_PREFIX.getValue(), Type.STRING, "", Importance.HIGH,
+          "Read from every SQS queue whose name starts with this prefix, as listed by ListQueues when the connector starts. Requires sqs:ListQueues.")
       .define(SqsConnectorConfigKeys.TOPICS.getValue(), Type.STRING, Importance.HIGH,
           "The Kafka topic to be written to.")
       .define(SqsConnectorConfigKeys.SQS_REGION.getValue(), Type.STRING, System.getenv("AWS_REGION"), Importance.HIGH,
@@ -53,12 +89,104 @@ public class SqsSourceConnectorConfig extends SqsConnectorConfig {
           "Maximum number of messages to read from SQS queue for each poll interval. Range is 0 - 10 with default of 1.")
       .define(SqsConnectorConfigKeys.SQS_WAIT_TIME_SECONDS.getValue(), Type.INT, 1, Importance.LOW,
           "Duration (in seconds) to wait for a message to arrive in the queue. Default is 1.")
+      .define(SqsConnectorConfigKeys.SQS_RECEIVE_ADAPTIVE_ENABLED.getValue(), Type.BOOLEAN, false, Importance.MEDIUM,
+          "If true, the number of messages and the wait of every receive adapt to the queue: full receives raise the number up to sqs.receive.adaptive.max.messages and shorten the wait down to sqs.wait.time.seconds, empty receives lengthen the wait up to sqs.receive.adaptive.max.wait.time.seconds. sqs.max.messages is the lower bound of the number. Default is false.")
+      .define(SqsConnectorConfigKeys.SQS_RECEIVE_ADAPTIVE_MAX_MESSAGES.getValue(), Type.INT, 10,
+          ConfigDef.Range.between(1, 10), Importance.LOW,
+          "Upper bound of the number of messages per receive when sqs.receive.adaptive.enabled is true. Range is 1 - 10 with default of 10.")
+      .define(SqsConnectorConfigKeys.SQS_RECEIVE_ADAPTIVE_MAX_WAIT_TIME_SECONDS.getValue(), Type.INT, 20,
+          ConfigDef.Range.between(0, 20), Importance.LOW,
+          "Upper bound of the wait (in seconds) of a receive when sqs.receive.adaptive.enabled is true. Range is 0 - 20 with default of 20.")
+      .define(SqsConnectorConfigKeys.SQS_POLL_MAX_MS.getValue(), Type.LONG, 0L, ConfigDef.Range.atLeast(0),
+          Importance.MEDIUM,
+          "Time budget (in milliseconds) of a poll that got records: without receiver threads, the poll keeps making receives that do not wait, from its queues in turn, until this time has passed, sqs.poll.max.records or sqs.poll.max.bytes is reached, or every queue comes back empty; with receiver threads, it keeps taking records from the prefetch buffer as they arrive until this time has passed or either limit is reached. If 0, a poll makes a single receive, or takes the records already buffered. Default is 0.")
+      .define(SqsConnectorConfigKeys.SQS_POLL_MAX_RECORDS.getValue(), Type.INT, 500, ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          "Maximum number of records a poll returns. Default is 500.")
+      .define(SqsConnectorConfigKeys.SQS_POLL_MAX_BYTES.getValue(), Type.LONG, 1024L * 1024, ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          "Total size (in bytes) of record values after which a poll returns. Default is 1048576 (1 MB).")
+      .define(SqsConnectorConfigKeys.SQS_BACKLOG_MONITOR_INTERVAL_MS.getValue(), Type.LONG, 0L,
+          ConfigDef.Range.atLeast(0), Importance.MEDIUM,
+          "Interval (in milliseconds) at which the connector samples the backlog of its queues with GetQueueAttributes, publishes it and sizes the receiver threads of every task to it, reconfiguring the tasks when their size changes. Requires sqs:GetQueueAttributes. If 0, the backlog is not monitored. Default is 0.")
+      .define(SqsConnectorConfigKeys.SQS_BACKLOG_MESSAGES_PER_RECEIVER.getValue(), Type.LONG, 1000L,
+          ConfigDef.Range.atLeast(1), Importance.LOW,
+          "Number of visible messages in the queues of a task per receiver thread, when the backlog is monitored. Default is 1000.")
+      .define(SqsConnectorConfigKeys.SQS_BACKLOG_MAX_RECEIVER_THREADS.getValue(), Type.INT, 8,
+          ConfigDef.Range.atLeast(1), Importance.LOW,
+          "Maximum number of receiver threads per task when the backlog is monitored; sqs.receiver.threads is the minimum. Default is 8.")
+      .define(SqsConnectorConfigKeys.SQS_BACKLOG_RECONFIGURE_MIN_INTERVAL_MS.getValue(), Type.LONG, 300000L,
+          ConfigDef.Range.atLeast(0), Importance.LOW,
+          "Minimum time (in milliseconds) between two task reconfigurations for the backlog, which restart the tasks. Default is 300000.")
+      .define(SqsConnectorConfigKeys.SQS_COST_PER_MILLION_REQUESTS.getValue(), Type.DOUBLE, 0.40,
+          ConfigDef.Range.atLeast(0), Importance.LOW,
+          "Price of a million SQS requests, used to estimate the cost per million messages in the task metrics. Default is 0.40, the US East price for standard queues.")
       .define(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_ENABLED.getValue(), Type.BOOLEAN, false, Importance.LOW,
-          "If true, it gets the SQS MessageAttributes and inserts them as Kafka Headers (only string headers are currently supported). Default is false.")
+          "If true, it gets the SQS MessageAttributes and inserts them as Kafka Headers of the matching type (String, Number or Binary). Default is false.")
       .define(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_INCLUDE_LIST.getValue(), Type.LIST, "", Importance.LOW,
           "The comma separated list of MessageAttribute names to be included, if empty it includes all the Message Attributes. Default is the empty string.")
       .define(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTE_PARTITION_KEY.getValue(), Type.STRING, "", Importance.LOW,
-          "The name of a single AWS SQS MessageAttribute to use as the partition key");
+          "The name of a single AWS SQS MessageAttribute to use as the partition key")
+      .define(SqsConnectorConfigKeys.SQS_MESSAGE_BODY_FORMAT.getValue(), Type.STRING, "string",
+          ConfigDef.ValidString.in("string", "bytes", "json"), Importance.LOW,
+          "Format of the record values: string, the message body as it is, bytes, the base64 decoded message body, as the sink connector sends binary values, or json, a struct parsed from a JSON object body with an inferred schema. Default is string.")
+      .define(SqsConnectorConfigKeys.SQS_JSON_SCHEMA_CACHE_SIZE.getValue(), Type.INT, 1000, ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          "Maximum number of schemas inferred from JSON bodies that are cached, least recently used first out, with sqs.message.body.format=json. Default is 1000.")
+      .define(SqsConnectorConfigKeys.SQS_DELETE_BATCH_SIZE.getValue(), Type.INT, 10, ConfigDef.Range.between(1, 10),
+          Importance.LOW,
+          "Maximum number of committed messages to delete with each DeleteMessageBatch request. Range is 1 - 10 with default of 10.")
+      .define(SqsConnectorConfigKeys.SQS_DELETE_LINGER_MS.getValue(), Type.LONG, 100L, ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          "Maximum time (in milliseconds) a committed message waits for its delete batch to fill before the batch is sent. Default is 100.")
+      .define(SqsConnectorConfigKeys.SQS_DELETE_MAX_RETRIES.getValue(), Type.INT, 3, ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          "Number of times a failed delete entry is retried, after a jittered exponential backoff from 100 ms up to 10 s, before it is given up on. Default is 3.")
+      .define(SqsConnectorConfigKeys.SQS_RECEIVER_THREADS.getValue(), Type.INT, 0, ConfigDef.Range.atLeast(0),
+          Importance.MEDIUM,
+          "Number of background threads per task that long-poll the queue in parallel and fill a prefetch buffer. If 0, each poll receives from the queue directly. Default is 0.")
+      .define(SqsConnectorConfigKeys.SQS_PREFETCH_MAX_MESSAGES.getValue(), Type.INT, 1000, ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          "Maximum number of messages held in the prefetch buffer when receiver threads are used. Default is 1000.")
+      .define(SqsConnectorConfigKeys.SQS_PREFETCH_MAX_BYTES.getValue(), Type.LONG, 16L * 1024 * 1024,
+          ConfigDef.Range.atLeast(1), Importance.LOW,
+          "Maximum total size (in bytes) of the message bodies held in the prefetch buffer when receiver threads are used. Default is 16777216 (16 MB).")
+      .define(SqsConnectorConfigKeys.SQS_VISIBILITY_HEARTBEAT_ENABLED.getValue(), Type.BOOLEAN, false, Importance.MEDIUM,
+          "If true, the visibility timeout of received messages is extended until their records are committed, so that they are not redelivered while Kafka is backed up. Requires sqs:ChangeMessageVisibility. Default is false.")
+      .define(SqsConnectorConfigKeys.SQS_VISIBILITY_TIMEOUT_SECONDS.getValue(), Type.INT, 30,
+          ConfigDef.Range.between(1, 43200), Importance.LOW,
+          "Visibility timeout (in seconds) of received messages; it is requested on every receive when the heartbeat is enabled, and every extension renews it. Default is 30.")
+      .define(SqsConnectorConfigKeys.SQS_VISIBILITY_MAX_HOLD_SECONDS.getValue(), Type.INT, 3600,
+          ConfigDef.Range.between(1, 43200), Importance.LOW,
+          "Maximum time (in seconds) since receipt that a message is kept invisible by the heartbeat; after that it is left to expire and be redelivered. Default is 3600.")
+      .define(SqsConnectorConfigKeys.SQS_EXACTLY_ONCE_ENABLED.getValue(), Type.BOOLEAN, false, Importance.MEDIUM,
+          "If true, the connector supports exactly-once delivery on workers with exactly.once.source.support=enabled: the source offsets list the messages whose deletes are pending, a restarted task drops and deletes their redeliveries, each queue is read by a single task, and with transaction.boundary=connector every receive is committed as a transaction. Default is false.")
+      .define(SqsConnectorConfigKeys.SQS_EXACTLY_ONCE_REDELIVERY_WINDOW_SECONDS.getValue(), Type.INT, 43200,
+          ConfigDef.Range.between(1, 1209600), Importance.LOW,
+          "Time (in seconds) after a restart during which a restarted task drops the redeliveries of messages already committed, and keeps listing the ones not yet redelivered in its offsets. Should exceed the visibility timeout of the queues. Default is 43200, the maximum visibility timeout.")
+      .define(SqsConnectorConfigKeys.SQS_EXACTLY_ONCE_PENDING_MAX_MESSAGES.getValue(), Type.INT, 1000,
+          ConfigDef.Range.atLeast(1), Importance.LOW,
+          "Maximum number of messages of a queue whose deletes may be pending with exactly-once delivery, each of which is listed in the source offsets. Polls return no records while a queue has more, until the worker commits and the deletes are flushed. Bounds the size of the offsets, which are rewritten with every transaction and must fit the offsets topic messages: a message id takes 37 bytes. Default is 1000, about 37 KB.")
+      .define(SqsConnectorConfigKeys.SQS_BLOB_CACHE_MAX_BYTES.getValue(), Type.LONG, 0L, ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          "Maximum total size in bytes of the message bodies read from sqs.blob.store.class that are cached, so that redelivered messages do not read them again. 0 disables the cache. Default is 0.")
+      .define(SqsConnectorConfigKeys.SQS_COMPRESSION_MAX_DECODED_BYTES.getValue(), Type.INT, 4 * 1024 * 1024,
+          ConfigDef.Range.atLeast(1), Importance.LOW,
+          "Maximum size (in bytes) of a message body compressed by the sink connector once it is decompressed. A larger body fails the task, before it is decompressed in full. Default is 4194304 (4 MB).");
+
+  static {
+    defineBlobStore(CONFIG_DEF);
+    defineControlTransport(CONFIG_DEF)
+        .define(SqsConnectorConfigKeys.SQS_RECEIVE_MAX_CONNECTIONS.getValue(), Type.INT, 50,
+            ConfigDef.Range.atLeast(1), Importance.LOW,
+            "Maximum number of pooled connections for ReceiveMessage long-polls. Default is 50.")
+        .define(SqsConnectorConfigKeys.SQS_RECEIVE_SOCKET_TIMEOUT_MS.getValue(), Type.INT, 30000,
+            ConfigDef.Range.atLeast(0), Importance.LOW,
+            "Socket timeout (in milliseconds) for ReceiveMessage calls; must exceed sqs.wait.time.seconds. Default is 30000.")
+        .define(SqsConnectorConfigKeys.SQS_RECEIVE_DEADLINE_MS.getValue(), Type.INT, 40000,
+            ConfigDef.Range.atLeast(0), Importance.LOW,
+            "Maximum total time (in milliseconds) for a ReceiveMessage call, including retries. 0 disables the deadline. Default is 40000.");
+  }
 
   public static ConfigDef config() {
     return CONFIG_DEF;
@@ -66,8 +194,30 @@ public class SqsSourceConnectorConfig extends SqsConnectorConfig {
 
   public SqsSourceConnectorConfig(Map<?, ?> originals) {
     super(config(), originals);
+    queueUrls = getList(SqsConnectorConfigKeys.SQS_QUEUE_URLS.getValue());
+    queueNamePrefix = getString(SqsConnectorConfigKeys.SQS_QUEUE_NAME_PREFIX.getValue());
+    final int queueOptions = (StringUtils.isBlank(getQueueUrl()) ? 0 : 1) + (queueUrls.isEmpty() ? 0 : 1)
+        + (StringUtils.isBlank(queueNamePrefix) ? 0 : 1);
+    if (queueOptions != 1) {
+      throw new ConfigException("Exactly one of " + SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue() + ", "
+          + SqsConnectorConfigKeys.SQS_QUEUE_URLS.getValue() + " and "
+          + SqsConnectorConfigKeys.SQS_QUEUE_NAME_PREFIX.getValue() + " must be set");
+    }
     maxMessages = getInt(SqsConnectorConfigKeys.SQS_MAX_MESSAGES.getValue());
     waitTimeSeconds = getInt(SqsConnectorConfigKeys.SQS_WAIT_TIME_SECONDS.getValue());
+    receiveAdaptiveEnabled = getBoolean(SqsConnectorConfigKeys.SQS_RECEIVE_ADAPTIVE_ENABLED.getValue());
+    receiveAdaptiveMaxMessages = getInt(SqsConnectorConfigKeys.SQS_RECEIVE_ADAPTIVE_MAX_MESSAGES.getValue());
+    receiveAdaptiveMaxWaitTimeSeconds = getInt(
+        SqsConnectorConfigKeys.SQS_RECEIVE_ADAPTIVE_MAX_WAIT_TIME_SECONDS.getValue());
+    costPerMillionRequests = getDouble(SqsConnectorConfigKeys.SQS_COST_PER_MILLION_REQUESTS.getValue());
+    pollMaxMs = getLong(SqsConnectorConfigKeys.SQS_POLL_MAX_MS.getValue());
+    pollMaxRecords = getInt(SqsConnectorConfigKeys.SQS_POLL_MAX_RECORDS.getValue());
+    pollMaxBytes = getLong(SqsConnectorConfigKeys.SQS_POLL_MAX_BYTES.getValue());
+    backlogMonitorIntervalMs = getLong(SqsConnectorConfigKeys.SQS_BACKLOG_MONITOR_INTERVAL_MS.getValue());
+    backlogMessagesPerReceiver = getLong(SqsConnectorConfigKeys.SQS_BACKLOG_MESSAGES_PER_RECEIVER.getValue());
+    backlogMaxReceiverThreads = getInt(SqsConnectorConfigKeys.SQS_BACKLOG_MAX_RECEIVER_THREADS.getValue());
+    backlogReconfigureMinIntervalMs = getLong(
+        SqsConnectorConfigKeys.SQS_BACKLOG_RECONFIGURE_MIN_INTERVAL_MS.getValue());
 
     messageAttributesEnabled = getBoolean(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTES_ENABLED.getValue());
     if (messageAttributesEnabled) {
@@ -76,6 +226,38 @@ public class SqsSourceConnectorConfig extends SqsConnectorConfig {
       messageAttributesList = Collections.emptyList();
     }
     messageAttributePartitionKey = getString(SqsConnectorConfigKeys.SQS_MESSAGE_ATTRIBUTE_PARTITION_KEY.getValue());
+    deleteBatchSize = getInt(SqsConnectorConfigKeys.SQS_DELETE_BATCH_SIZE.getValue());
+    deleteLingerMs = getLong(SqsConnectorConfigKeys.SQS_DELETE_LINGER_MS.getValue());
+    deleteMaxRetries = getInt(SqsConnectorConfigKeys.SQS_DELETE_MAX_RETRIES.getValue());
+    receiverThreads = getInt(SqsConnectorConfigKeys.SQS_RECEIVER_THREADS.getValue());
+    prefetchMaxMessages = getInt(SqsConnectorConfigKeys.SQS_PREFETCH_MAX_MESSAGES.getValue());
+    prefetchMaxBytes = getLong(SqsConnectorConfigKeys.SQS_PREFETCH_MAX_BYTES.getValue());
+    visibilityHeartbeatEnabled = getBoolean(SqsConnectorConfigKeys.SQS_VISIBILITY_HEARTBEAT_ENABLED.getValue());
+    visibilityTimeoutSeconds = getInt(SqsConnectorConfigKeys.SQS_VISIBILITY_TIMEOUT_SECONDS.getValue());
+    visibilityMaxHoldSeconds = getInt(SqsConnectorConfigKeys.SQS_VISIBILITY_MAX_HOLD_SECONDS.getValue());
+    exactlyOnceEnabled = getBoolean(SqsConnectorConfigKeys.SQS_EXACTLY_ONCE_ENABLED.getValue());
+    exactlyOnceRedeliveryWindowSeconds = getInt(
+        SqsConnectorConfigKeys.SQS_EXACTLY_ONCE_REDELIVERY_WINDOW_SECONDS.getValue());
+    exactlyOncePendingMaxMessages = getInt(SqsConnectorConfigKeys.SQS_EXACTLY_ONCE_PENDING_MAX_MESSAGES.getValue());
+    blobCacheMaxBytes = getLong(SqsConnectorConfigKeys.SQS_BLOB_CACHE_MAX_BYTES.getValue());
+    compressionMaxDecodedBytes = getInt(SqsConnectorConfigKeys.SQS_COMPRESSION_MAX_DECODED_BYTES.getValue());
+    messageBodyFormat = getString(SqsConnectorConfigKeys.SQS_MESSAGE_BODY_FORMAT.getValue());
+    jsonSchemaCacheSize = getInt(SqsConnectorConfigKeys.SQS_JSON_SCHEMA_CACHE_SIZE.getValue());
+  }
+
+  /**
+   * @return The configured queue urls: those of {@code sqs.queue.urls}, or
+   *         {@code sqs.queue.url} alone. Empty when queues are selected by name prefix.
+   */
+  public List<String> getQueueUrls() {
+    if (!queueUrls.isEmpty()) {
+      return queueUrls;
+    }
+    return StringUtils.isBlank(getQueueUrl()) ? Collections.<String>emptyList() : Collections.singletonList(getQueueUrl());
+  }
+
+  public String getQueueNamePrefix() {
+    return queueNamePrefix;
   }
 
   public Integer getMaxMessages() {
@@ -97,4 +279,112 @@ public class SqsSourceConnectorConfig extends SqsConnectorConfig {
   public String getMessageAttributePartitionKey() {
     return messageAttributePartitionKey;
   }
+
+  public Integer getDeleteBatchSize() {
+    return deleteBatchSize;
+  }
+
+  public Long getDeleteLingerMs() {
+    return deleteLingerMs;
+  }
+
+  public Integer getDeleteMaxRetries() {
+    return deleteMaxRetries;
+  }
+
+  public Integer getReceiverThreads() {
+    return receiverThreads;
+  }
+
+  public Integer getPrefetchMaxMessages() {
+    return prefetchMaxMessages;
+  }
+
+  public Long getPrefetchMaxBytes() {
+    return prefetchMaxBytes;
+  }
+
+  public Boolean getVisibilityHeartbeatEnabled() {
+    return visibilityHeartbeatEnabled;
+  }
+
+  public Integer getVisibilityTimeoutSeconds() {
+    return visibilityTimeoutSeconds;
+  }
+
+  public Integer getVisibilityMaxHoldSeconds() {
+    return visibilityMaxHoldSeconds;
+  }
+
+  public Boolean getExactlyOnceEnabled() {
+    return exactlyOnceEnabled;
+  }
+
+  public Integer getExactlyOnceRedeliveryWindowSeconds() {
+    return exactlyOnceRedeliveryWindowSeconds;
+  }
+
+  public Integer getExactlyOncePendingMaxMessages() {
+    return exactlyOncePendingMaxMessages;
+  }
+
+  public Long getBlobCacheMaxBytes() {
+    return blobCacheMaxBytes;
+  }
+
+  public Integer getCompressionMaxDecodedBytes() {
+    return compressionMaxDecodedBytes;
+  }
+
+  public String getMessageBodyFormat() {
+    return messageBodyFormat;
+  }
+
+  public Integer getJsonSchemaCacheSize() {
+    return jsonSchemaCacheSize;
+  }
+
+  public Boolean getReceiveAdaptiveEnabled() {
+    return receiveAdaptiveEnabled;
+  }
+
+  public Integer getReceiveAdaptiveMaxMessages() {
+    return receiveAdaptiveMaxMessages;
+  }
+
+  public Integer getReceiveAdaptiveMaxWaitTimeSeconds() {
+    return receiveAdaptiveMaxWaitTimeSeconds;
+  }
+
+  public Double getCostPerMillionRequests() {
+    return costPerMillionRequests;
+  }
+
+  public Long getPollMaxMs() {
+    return pollMaxMs;
+  }
+
+  public Integer getPollMaxRecords() {
+    return pollMaxRecords;
+  }
+
+  public Long getPollMaxBytes() {
+    return pollMaxBytes;
+  }
+
+  public Long getBacklogMonitorIntervalMs() {
+    return backlogMonitorIntervalMs;
+  }
+
+  public Long getBacklogMessagesPerReceiver() {
+    return backlogMessagesPerReceiver;
+  }
+
+  public Integer getBacklogMaxReceiverThreads() {
+    return backlogMaxReceiverThreads;
+  }
+
+  public Long getBacklogReconfigureMinIntervalMs() {
+    return backlogReconfigureMinIntervalMs;
+  }
 }
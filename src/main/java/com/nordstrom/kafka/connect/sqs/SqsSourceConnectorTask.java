@@ -16,27 +16,54 @@
 
 package com.nordstrom.kafka.connect.sqs ;
 
-import java.util.*;
-import java.util.stream.Collectors ;
-
-import com.amazonaws.services.sqs.model.MessageAttributeValue;
-import com.nordstrom.kafka.connect.utils.StringUtils;
-import org.apache.kafka.connect.data.Schema ;
-import org.apache.kafka.connect.data.SchemaAndValue;
-import org.apache.kafka.connect.header.ConnectHeaders;
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.HashMap ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.Set ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.TimeUnit ;
+import java.util.concurrent.atomic.AtomicInteger ;
+import java.util.concurrent.atomic.AtomicLong ;
+
+import org.apache.kafka.clients.producer.RecordMetadata ;
+import org.apache.kafka.common.metrics.Sensor ;
+import org.apache.kafka.connect.errors.ConnectException ;
+import org.apache.kafka.connect.errors.RetriableException ;
 import org.apache.kafka.connect.source.SourceRecord ;
 import org.apache.kafka.connect.source.SourceTask ;
+import org.apache.kafka.connect.source.TransactionContext ;
 import org.slf4j.Logger ;
 import org.slf4j.LoggerFactory ;
 
+import com.amazonaws.AmazonClientException ;
 import com.amazonaws.services.sqs.model.Message ;
 import com.nordstrom.kafka.connect.About ;
 
 public class SqsSourceConnectorTask extends SourceTask {
   private final Logger log = LoggerFactory.getLogger( this.getClass() ) ;
 
+  private SqsClientPool.Lease lease ;
   private SqsClient client ;
   private SqsSourceConnectorConfig config ;
+  private List<SqsSourceQueue> queues ;
+  private int nextQueue = 0 ;
+  private SqsMetrics metrics ;
+  private SqsDeleteBatcher deleter ;
+  private SqsVisibilityExtender extender ;
+  private SqsBlobStore blobStore ;
+  private SqsPrefetchBuffer<SourceRecord> buffer ;
+  private List<SqsReceiver> receivers ;
+  private ExecutorService receiverExecutor ;
+  private Sensor recordsPerPoll ;
+  private TransactionContext transactionContext ;
+  private final Map<String, SqsRedeliveryFilter> redeliveryFilters = new HashMap<>() ;
+  private final AtomicLong inFlight = new AtomicLong() ;
+
+  private static final long EMPTY_BUFFER_WAIT_MS = 100L ;
+  private static final long COMMIT_TIMEOUT_MS = 30000L ;
 
   /*
    * (non-Javadoc)
@@ -59,34 +86,135 @@ public class SqsSourceConnectorTask extends SourceTask {
     Guard.verifyNotNull( props, "Task properties" ) ;
 
     config = new SqsSourceConnectorConfig( props ) ;
-    client = new SqsClient(config) ;
+    // The connector resolves a queue name prefix, so a task always has its queues listed.
+    if ( config.getQueueUrls().isEmpty() ) {
+      throw new ConnectException( "No SQS queue assigned to the task" ) ;
+    }
+    lease = SqsClientPool.acquire( config ) ;
+    lease.prewarm( config.getQueueUrls(), true ) ;
+    blobStore = config.getBlobStore( lease.getClient().getCredentialsProvider() ) ;
+    final SqsBlobReader blobReader = null == blobStore ? null
+        : new SqsBlobReader( blobStore, config.getBlobCacheMaxBytes() ) ;
+    final SqsJsonParser jsonParser = "json".equals( config.getMessageBodyFormat() )
+        ? new SqsJsonParser( config.getJsonSchemaCacheSize() ) : null ;
+    metrics = new SqsMetrics( "source-task", SqsMetrics.taskTags( config.getConnectorName(), config.getTaskId() ) ) ;
+    if ( null != jsonParser ) {
+      metrics.gauge( "json-schemas-cached", "The number of schemas in the JSON schema cache.",
+          ( metricConfig, now ) -> jsonParser.cachedSchemas() ) ;
+      metrics.gauge( "json-schema-misses-total", "The number of schemas inferred because the cache had none for a body.",
+          ( metricConfig, now ) -> jsonParser.schemaMisses() ) ;
+      metrics.gauge( "json-fallbacks-total", "The number of bodies passed through as strings because they were not JSON objects.",
+          ( metricConfig, now ) -> jsonParser.fallbacks() ) ;
+    }
+    client = lease.getClient().withMetrics( metrics ) ;
+    deleter = new SqsDeleteBatcher( client, config.getDeleteBatchSize(), config.getDeleteLingerMs(),
+        config.getDeleteMaxRetries(), metrics,
+        "sqs-delete-" + config.getConnectorName() + "-" + config.getTaskId() ) ;
+    if ( config.getExactlyOnceEnabled() ) {
+      startRedeliveryFilters() ;
+    }
+    queues = new ArrayList<>( config.getQueueUrls().size() ) ;
+    for ( final String url : config.getQueueUrls() ) {
+      queues.add( new SqsSourceQueue( url, config.getTopics(), config, blobReader, jsonParser,
+          redeliveryFilters.get( url ) ) ) ;
+    }
+    for ( final SqsSourceQueue queue : queues ) {
+      metrics.queue( queue.getUrl() ).registerReceiveTuner( queue.getReceiveTuner() ) ;
+    }
+    metrics.gauge( "estimated-cost-per-million-messages",
+        "The estimated SQS cost of a million messages, from the billed requests of all queues and sqs.cost.per.million.requests.",
+        ( metricConfig, now ) -> estimatedCostPerMillionMessages() ) ;
+    metrics.gauge( "receiver-threads", "The number of receiver threads of the task.",
+        ( metricConfig, now ) -> config.getReceiverThreads() ) ;
+    recordsPerPoll = metrics.avgMaxSensor( "records-per-poll", "number of records returned by a poll." ) ;
+    metrics.gauge( "in-flight-records", "The number of records polled but not yet committed.",
+        ( metricConfig, now ) -> inFlight.get() ) ;
+    if ( config.getVisibilityHeartbeatEnabled() ) {
+      extender = new SqsVisibilityExtender( client, config.getVisibilityTimeoutSeconds(),
+          config.getVisibilityMaxHoldSeconds(), metrics,
+          "sqs-visibility-" + config.getConnectorName() + "-" + config.getTaskId() ) ;
+    }
+    if ( config.getReceiverThreads() > 0 ) {
+      startReceivers() ;
+    }
 
-    log.info( "task.start.OK, sqs.queue.url={}, topics={}", config.getQueueUrl(), config.getTopics() ) ;
+    log.info( "task.start.OK, sqs.queue.urls={}, topics={}", config.getQueueUrls(), config.getTopics() ) ;
   }
 
-  private String getPartitionKey(Message message) {
-    String messageId = message.getMessageId();
-    if (!config.getMessageAttributesEnabled()) {
-      return messageId;
+  /**
+   * Read the committed offset of every queue, which lists the messages that
+   * may be redelivered although their records are in Kafka, and filter their
+   * redeliveries. With connector-defined transaction boundaries, every receive
+   * is committed as a transaction.
+   */
+  private void startRedeliveryFilters() {
+    final List<Map<String, String>> partitions = new ArrayList<>( config.getQueueUrls().size() ) ;
+    for ( final String url : config.getQueueUrls() ) {
+      partitions.add( Collections.singletonMap( SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), url ) ) ;
     }
-    String messageAttributePartitionKey = config.getMessageAttributePartitionKey();
-    if (StringUtils.isBlank(messageAttributePartitionKey)) {
-      return messageId;
+    final Map<Map<String, String>, Map<String, Object>> offsets = context.offsetStorageReader().offsets( partitions ) ;
+    final Sensor dropped = metrics.countSensor( "redeliveries-dropped",
+        "redelivered messages dropped because their records were committed before the task started." ) ;
+    for ( final Map<String, String> partition : partitions ) {
+      final String url = partition.get( SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue() ) ;
+      redeliveryFilters.put( url, new SqsRedeliveryFilter( url, null == offsets ? null : offsets.get( partition ),
+          config.getExactlyOnceRedeliveryWindowSeconds(), deleter, dropped ) ) ;
     }
+    transactionContext = context.transactionContext() ;
+    log.info( "task.start:exactly-once, transaction-boundaries={}", null == transactionContext ? "worker" : "connector" ) ;
+  }
 
-    // search for the String message attribute with the same name as the configured partition key
-    Map<String, MessageAttributeValue> attributes = message.getMessageAttributes();
-    for(String attributeKey: attributes.keySet()) {
-      if (!Objects.equals(attributeKey, messageAttributePartitionKey)) {
-        continue;
-      }
-      MessageAttributeValue attrValue = attributes.get(attributeKey);
-      if (!attrValue.getDataType().equals("String")) {
-        continue;
-      }
-      return attrValue.getStringValue();
+  /**
+   * Start the background receivers that long-poll the queues in parallel and
+   * fill the prefetch buffer drained by {@link #poll()}.
+   */
+  private void startReceivers() {
+    final int threads = config.getReceiverThreads() ;
+    buffer = new SqsPrefetchBuffer<>( config.getPrefetchMaxMessages(), config.getPrefetchMaxBytes(),
+        SqsSourceQueue::valueSize ) ;
+    metrics.gauge( "prefetch-buffer-messages", "The number of messages in the prefetch buffer.",
+        ( metricConfig, now ) -> buffer.size() ) ;
+    metrics.gauge( "prefetch-buffer-bytes", "The total body size of the messages in the prefetch buffer.",
+        ( metricConfig, now ) -> buffer.bytes() ) ;
+    final Sensor utilization = metrics.avgMaxSensor( "receiver-utilization",
+        "fraction of a receive cycle spent receiving rather than waiting for room in the prefetch buffer." ) ;
+
+    final AtomicInteger threadId = new AtomicInteger() ;
+    receiverExecutor = Executors.newFixedThreadPool( threads, runnable -> {
+      final Thread thread = new Thread( runnable,
+          "sqs-receiver-" + config.getConnectorName() + "-" + config.getTaskId() + "-" + threadId.getAndIncrement() ) ;
+      thread.setDaemon( true ) ;
+      return thread ;
+    } ) ;
+    receivers = new ArrayList<>( threads ) ;
+    for ( int i = 0 ; i < threads ; i++ ) {
+      final SqsReceiver receiver = new SqsReceiver( client, config, receiverQueues( i, threads ), buffer,
+          utilization, extender ) ;
+      receivers.add( receiver ) ;
+      receiverExecutor.submit( receiver ) ;
+    }
+    log.info( "task.start:receivers={}, prefetch.max.messages={}, prefetch.max.bytes={}", threads,
+        config.getPrefetchMaxMessages(), config.getPrefetchMaxBytes() ) ;
+  }
+
+  /**
+   * Spread the queues over the receivers. With fewer queues than receivers,
+   * several receivers share a queue; otherwise each receiver takes turns on
+   * its own share of the queues.
+   *
+   * @param receiver  Index of the receiver.
+   * @param receivers Number of receivers.
+   * @return The queues of the receiver.
+   */
+  private List<SqsSourceQueue> receiverQueues( int receiver, int receivers ) {
+    if ( queues.size() <= receivers ) {
+      return Collections.singletonList( queues.get( receiver % queues.size() ) ) ;
     }
-    return messageId;
+    final List<SqsSourceQueue> assigned = new ArrayList<>( queues.size() / receivers + 1 ) ;
+    for ( int i = receiver ; i < queues.size() ; i += receivers ) {
+      assigned.add( queues.get( i ) ) ;
+    }
+    return assigned ;
   }
 
   /*
@@ -102,62 +230,257 @@ public class SqsSourceConnectorTask extends SourceTask {
       throw new IllegalStateException( "Task is not properly initialized" ) ;
     }
 
-    // Read messages from the queue.
-    List<Message> messages = client.receive(
-        config.getQueueUrl(),
-        config.getMaxMessages(),
-        config.getWaitTimeSeconds(),
-        config.getMessageAttributesEnabled(),
-        config.getMessageAttributesList());
-    log.debug( ".poll:url={}, max={}, wait={}, size={}", config.getQueueUrl(), config.getMaxMessages(),
-        config.getWaitTimeSeconds(), messages.size() ) ;
-
-    // Create a SourceRecord for each message in the queue.
-    return messages.stream().map( message -> {
-
-      Map<String, String> sourcePartition = Collections.singletonMap( SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(),
-          config.getQueueUrl() ) ;
-      Map<String, String> sourceOffset = new HashMap<>() ;
-      // Save the message id and receipt-handle. receipt-handle is needed to delete
-      // the message once the record is committed.
-      sourceOffset.put( SqsConnectorConfigKeys.SQS_MESSAGE_ID.getValue(), message.getMessageId() ) ;
-      sourceOffset.put( SqsConnectorConfigKeys.SQS_MESSAGE_RECEIPT_HANDLE.getValue(), message.getReceiptHandle() ) ;
-      log.trace( ".poll:source-partition={}", sourcePartition ) ;
-      log.trace( ".poll:source-offset={}", sourceOffset ) ;
-
-      final String body = message.getBody();
-      final String key = getPartitionKey(message);
-      final String topic = config.getTopics() ;
-
-      final ConnectHeaders headers = new ConnectHeaders();
-      if (config.getMessageAttributesEnabled()) {
-        Map<String, MessageAttributeValue> attributes = message.getMessageAttributes();
-        // sqs api should return only the fields specified in the list
-        for(String attributeKey: attributes.keySet()) {
-          MessageAttributeValue attrValue = attributes.get(attributeKey);
-          if (attrValue.getDataType().equals("String")) {
-            SchemaAndValue schemaAndValue = new SchemaAndValue(Schema.STRING_SCHEMA, attrValue.getStringValue());
-            headers.add(attributeKey, schemaAndValue);
-          }
+    if ( isPendingFull() ) {
+      Thread.sleep( EMPTY_BUFFER_WAIT_MS ) ;
+      return Collections.emptyList() ;
+    }
+
+    // Read records from the prefetch buffer when receivers are running, otherwise from the next queue in turn.
+    final List<SourceRecord> records ;
+    if ( null != buffer ) {
+      raiseReceiverFailure() ;
+      records = drain() ;
+      log.debug( ".poll:buffered, size={}", records.size() ) ;
+      listPending( records ) ;
+      // The buffer does not keep receives apart, so a transaction spans the drained records.
+      if ( null != transactionContext && !records.isEmpty() ) {
+        transactionContext.commitTransaction( records.get( records.size() - 1 ) ) ;
+      }
+    } else {
+      final long start = System.nanoTime() ;
+      records = receive( nextQueue(), config.getPollMaxRecords(), true ) ;
+      if ( config.getPollMaxMs() > 0 && !records.isEmpty() ) {
+        fill( records, start + TimeUnit.MILLISECONDS.toNanos( config.getPollMaxMs() ) ) ;
+      }
+    }
+
+    recordsPerPoll.record( records.size() ) ;
+    inFlight.addAndGet( records.size() ) ;
+    return records ;
+  }
+
+  /**
+   * Take records from the prefetch buffer, up to {@code sqs.poll.max.records}
+   * and {@code sqs.poll.max.bytes}. Waits a little for the first record; with
+   * {@code sqs.poll.max.ms} set, keeps taking records as the receivers buffer
+   * them until that time has passed since the poll started.
+   *
+   * @return The records, possibly none.
+   */
+  private List<SourceRecord> drain() throws InterruptedException {
+    final long start = System.nanoTime() ;
+    final int maxRecords = config.getPollMaxRecords() ;
+    final long maxBytes = config.getPollMaxBytes() ;
+    final List<SourceRecord> records = new ArrayList<>() ;
+    long bytes = buffer.drainTo( records, maxRecords, maxBytes,
+        TimeUnit.MILLISECONDS.toNanos( EMPTY_BUFFER_WAIT_MS ) ) ;
+    if ( config.getPollMaxMs() > 0 && !records.isEmpty() ) {
+      final long deadlineNanos = start + TimeUnit.MILLISECONDS.toNanos( config.getPollMaxMs() ) ;
+      while ( records.size() < maxRecords && bytes < maxBytes ) {
+        final long remainingNanos = deadlineNanos - System.nanoTime() ;
+        final int size = records.size() ;
+        if ( remainingNanos <= 0 ) {
+          break ;
+        }
+        bytes += buffer.drainTo( records, maxRecords - size, maxBytes - bytes, remainingNanos ) ;
+        if ( records.size() == size ) {
+          break ;
         }
       }
+    }
+    return records ;
+  }
 
-      return new SourceRecord(sourcePartition, sourceOffset, topic, null, Schema.STRING_SCHEMA, key, Schema.STRING_SCHEMA,
-          body, null, headers) ;
-    } ).collect( Collectors.toList() ) ;
+  /**
+   * With exactly-once delivery, track the messages of records about to be
+   * emitted, in emit order, and list the messages whose deletes are pending
+   * in the offset of the last record of each queue. Runs on the task thread
+   * whichever thread received the messages, so that an offset never lists a
+   * message whose record comes after it.
+   *
+   * @param records The records, whose last record of each queue is replaced.
+   */
+  private void listPending( List<SourceRecord> records ) {
+    if ( redeliveryFilters.isEmpty() || records.isEmpty() ) {
+      return ;
+    }
+    final Map<String, Integer> last = new HashMap<>() ;
+    for ( int i = 0 ; i < records.size() ; i++ ) {
+      final SourceRecord record = records.get( i ) ;
+      final String url = record.sourcePartition().get( SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue() ).toString() ;
+      redeliveryFilters.get( url ).track( ( (SqsSourceOffset) record.sourceOffset() ).getMessageId() ) ;
+      last.put( url, i ) ;
+    }
+    for ( final Map.Entry<String, Integer> entry : last.entrySet() ) {
+      final SourceRecord record = records.get( entry.getValue() ) ;
+      final SqsSourceOffset offset = (SqsSourceOffset) record.sourceOffset() ;
+      final SqsSourceOffset listed = new SqsSourceOffset( offset.getMessageId(), offset.getReceiptHandle(),
+          redeliveryFilters.get( entry.getKey() ).pending() ) ;
+      records.set( entry.getValue(), new SourceRecord( record.sourcePartition(), listed, record.topic(),
+          record.kafkaPartition(), record.keySchema(), record.key(), record.valueSchema(), record.value(),
+          record.timestamp(), record.headers() ) ) ;
+    }
+  }
+
+  /**
+   * @return Whether a queue has {@code sqs.exactly.once.pending.max.messages}
+   *         messages whose deletes are pending, which the offsets would list.
+   */
+  private boolean isPendingFull() {
+    for ( final SqsRedeliveryFilter redeliveryFilter : redeliveryFilters.values() ) {
+      if ( redeliveryFilter.size() >= config.getExactlyOncePendingMaxMessages() ) {
+        log.debug( ".poll:pending deletes at {}, waiting for a commit", redeliveryFilter.size() ) ;
+        return true ;
+      }
+    }
+    return false ;
+  }
+
+  /**
+   * Fail the task the way a poll without receivers fails, when a receiver
+   * stopped on a message it can never convert. The messages of the buffer are
+   * redelivered to the restarted task.
+   */
+  private void raiseReceiverFailure() {
+    for ( final SqsReceiver receiver : receivers ) {
+      final RuntimeException failure = receiver.getFailure() ;
+      if ( null != failure ) {
+        throw failure instanceof ConnectException ? (ConnectException) failure
+            : new ConnectException( "Failed to convert an SQS message", failure ) ;
+      }
+    }
+  }
+
+  private SqsSourceQueue nextQueue() {
+    final SqsSourceQueue queue = queues.get( nextQueue ) ;
+    nextQueue = ( nextQueue + 1 ) % queues.size() ;
+    return queue ;
+  }
+
+  /**
+   * Receive from a queue and convert the messages to records.
+   *
+   * @param queue      The queue.
+   * @param maxRecords Maximum number of messages to receive, below the tuned number.
+   * @param wait       Whether to wait the tuned time for messages, or return at once.
+   * @return The records, in a list the caller may add to.
+   */
+  private List<SourceRecord> receive( SqsSourceQueue queue, int maxRecords, boolean wait ) {
+    final SqsReceiveTuner tuner = queue.getReceiveTuner() ;
+    final int maxMessages = Math.min( tuner.getMaxMessages(), maxRecords ) ;
+    final int waitTimeSeconds = wait ? tuner.getWaitTimeSeconds() : 0 ;
+    final List<Message> messages = client.receive(
+        queue.getUrl(),
+        maxMessages,
+        waitTimeSeconds,
+        config.getMessageAttributesEnabled(),
+        config.getMessageAttributesList(),
+        null == extender ? 0 : extender.getTimeoutSeconds() ) ;
+    tuner.record( maxMessages, messages.size() ) ;
+    log.debug( ".receive:url={}, max={}, wait={}, size={}", queue.getUrl(), maxMessages, waitTimeSeconds,
+        messages.size() ) ;
+
+    // Create a SourceRecord for each message in the queue. If a blob cannot be read, the worker polls again
+    // and the untracked messages are redelivered once their visibility times out.
+    final List<Message> emitted = queue.dropRedelivered( messages ) ;
+    final List<SourceRecord> records = queue.toRecords( emitted ) ;
+    if ( null != extender ) {
+      extender.track( queue.getUrl(), emitted ) ;
+    }
+    listPending( records ) ;
+    if ( null != transactionContext && !records.isEmpty() ) {
+      transactionContext.commitTransaction( records.get( records.size() - 1 ) ) ;
+    }
+    return records ;
+  }
+
+  /**
+   * Add the records of further receives, which do not wait, from the queues in
+   * turn, until the poll budget is used up or every queue came back empty in a
+   * row. A receive that fails, or whose blob cannot be read, ends the poll with
+   * the records received so far, and its messages are redelivered. A message
+   * that can never be converted fails the poll, as it does on the first receive.
+   *
+   * @param records      The records of the poll so far.
+   * @param deadlineNanos {@link System#nanoTime()} by which the poll returns.
+   */
+  private void fill( List<SourceRecord> records, long deadlineNanos ) {
+    long bytes = 0 ;
+    for ( final SourceRecord record : records ) {
+      bytes += SqsSourceQueue.valueSize( record ) ;
+    }
+    int empty = 0 ;
+    while ( records.size() < config.getPollMaxRecords() && bytes < config.getPollMaxBytes()
+        && empty < queues.size() && System.nanoTime() - deadlineNanos < 0 ) {
+      final List<SourceRecord> more ;
+      try {
+        more = receive( nextQueue(), config.getPollMaxRecords() - records.size(), false ) ;
+      } catch ( final AmazonClientException | RetriableException e ) {
+        log.warn( ".poll:receive failed, returning {} records", records.size(), e ) ;
+        return ;
+      }
+      if ( more.isEmpty() ) {
+        empty++ ;
+        continue ;
+      }
+      empty = 0 ;
+      for ( final SourceRecord record : more ) {
+        bytes += SqsSourceQueue.valueSize( record ) ;
+      }
+      records.addAll( more ) ;
+    }
+    log.debug( ".poll:filled, size={}, bytes={}", records.size(), bytes ) ;
   }
 
   /* (non-Javadoc)
-   * @see org.apache.kafka.connect.source.SourceTask#commitRecord(org.apache.kafka.connect.source.SourceRecord)
+   * @see org.apache.kafka.connect.source.SourceTask#commitRecord(org.apache.kafka.connect.source.SourceRecord, org.apache.kafka.clients.producer.RecordMetadata)
    */
   @Override
-  public void commitRecord( SourceRecord record ) throws InterruptedException {
+  public void commitRecord( SourceRecord record, RecordMetadata metadata ) throws InterruptedException {
     Guard.verifyNotNull( record, "record" ) ;
+    final String url = record.sourcePartition().get( SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue() ).toString() ;
     final String receipt = record.sourceOffset().get( SqsConnectorConfigKeys.SQS_MESSAGE_RECEIPT_HANDLE.getValue() )
         .toString() ;
-    log.debug( ".commit-record:url={}, receipt-handle={}", config.getQueueUrl(), receipt ) ;
-    client.delete( config.getQueueUrl(), receipt ) ;
-    super.commitRecord( record ) ;
+    log.debug( ".commit-record:url={}, receipt-handle={}", url, receipt ) ;
+    if ( null != extender ) {
+      extender.untrack( receipt ) ;
+    }
+    final SqsRedeliveryFilter redeliveryFilter = redeliveryFilters.get( url ) ;
+    if ( null != redeliveryFilter ) {
+      redeliveryFilter.deleting(
+          record.sourceOffset().get( SqsConnectorConfigKeys.SQS_MESSAGE_ID.getValue() ).toString(), receipt ) ;
+    }
+    deleter.add( url, receipt ) ;
+    inFlight.decrementAndGet() ;
+  }
+
+  /* (non-Javadoc)
+   * @see org.apache.kafka.connect.source.SourceTask#commit()
+   */
+  @Override
+  public void commit() throws InterruptedException {
+    // Make sure every message acknowledged so far is deleted before its offsets are considered committed.
+    if ( null != deleter ) {
+      // Only messages whose deletes went through stop being listed as pending in later offsets.
+      final Map<SqsRedeliveryFilter, Map<String, String>> deleted = new HashMap<>() ;
+      for ( final SqsRedeliveryFilter redeliveryFilter : redeliveryFilters.values() ) {
+        deleted.put( redeliveryFilter, redeliveryFilter.takeDeleting() ) ;
+      }
+      if ( !deleter.flush( COMMIT_TIMEOUT_MS ) ) {
+        // Keep listing the messages until a later commit sees their deletes through.
+        for ( final Map.Entry<SqsRedeliveryFilter, Map<String, String>> entry : deleted.entrySet() ) {
+          for ( final Map.Entry<String, String> message : entry.getValue().entrySet() ) {
+            entry.getKey().deleting( message.getKey(), message.getValue() ) ;
+          }
+        }
+        return ;
+      }
+      // Messages whose deletes failed are redelivered, and stay listed to be dropped when they are.
+      final Set<String> failed = deleter.takeFailed() ;
+      for ( final Map.Entry<SqsRedeliveryFilter, Map<String, String>> entry : deleted.entrySet() ) {
+        entry.getKey().deleted( entry.getValue(), failed ) ;
+      }
+    }
   }
 
   /*
@@ -167,6 +490,28 @@ public class SqsSourceConnectorTask extends SourceTask {
    */
   @Override
   public void stop() {
+    if ( null != receivers ) {
+      for ( final SqsReceiver receiver : receivers ) {
+        receiver.stop() ;
+      }
+      buffer.close() ;
+      receiverExecutor.shutdownNow() ;
+    }
+    if ( null != extender ) {
+      extender.close() ;
+    }
+    if ( null != deleter ) {
+      deleter.close() ;
+    }
+    if ( null != blobStore ) {
+      blobStore.close() ;
+    }
+    if ( null != metrics ) {
+      metrics.close() ;
+    }
+    if ( null != lease ) {
+      SqsClientPool.release( lease ) ;
+    }
     log.info( "task.stop:OK" ) ;
   }
 
@@ -180,4 +525,19 @@ public class SqsSourceConnectorTask extends SourceTask {
     return null != config && null != client ;
   }
 
+  /**
+   * @return The price of a million messages at the rate the task's queues have
+   *         been billed so far, or NaN before the first message.
+   */
+  private double estimatedCostPerMillionMessages() {
+    long billed = 0 ;
+    long messages = 0 ;
+    for ( final SqsSourceQueue queue : queues ) {
+      final SqsQueueMetrics queueMetrics = metrics.queue( queue.getUrl() ) ;
+      billed += queueMetrics.getBilledRequests() ;
+      messages += queueMetrics.getMessages() ;
+    }
+    return 0 == messages ? Double.NaN : billed * config.getCostPerMillionRequests() / messages ;
+  }
+
 }
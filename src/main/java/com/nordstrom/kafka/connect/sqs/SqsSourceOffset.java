@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable source offset of one message: its message id and receipt handle,
+ * and with exactly-once delivery the ids of the messages whose deletes are
+ * pending, see {@link SqsRedeliveryFilter}. Behaves like a two or three entry
+ * map, as the worker expects, but is a single object rather than a hash table
+ * with its nodes.
+ */
+public final class SqsSourceOffset extends AbstractMap<String, String> {
+  private static final String MESSAGE_ID = SqsConnectorConfigKeys.SQS_MESSAGE_ID.getValue();
+  private static final String RECEIPT_HANDLE = SqsConnectorConfigKeys.SQS_MESSAGE_RECEIPT_HANDLE.getValue();
+  private static final String PENDING = SqsConnectorConfigKeys.SQS_MESSAGE_PENDING.getValue();
+
+  private final String messageId;
+  private final String receiptHandle;
+  private final String pending;
+  private final int size;
+
+  public SqsSourceOffset(final String messageId, final String receiptHandle) {
+    this(messageId, receiptHandle, null);
+  }
+
+  /**
+   * @param messageId     Message id.
+   * @param receiptHandle Receipt handle.
+   * @param pending       The comma separated ids of the messages whose deletes
+   *                      are pending, or null.
+   */
+  public SqsSourceOffset(final String messageId, final String receiptHandle, final String pending) {
+    this.messageId = messageId;
+    this.receiptHandle = receiptHandle;
+    this.pending = pending;
+    this.size = pending == null ? 2 : 3;
+  }
+
+  public String getMessageId() {
+    return messageId;
+  }
+
+  public String getReceiptHandle() {
+    return receiptHandle;
+  }
+
+  @Override
+  public String get(final Object key) {
+    if (MESSAGE_ID.equals(key)) {
+      return messageId;
+    }
+    if (RECEIPT_HANDLE.equals(key)) {
+      return receiptHandle;
+    }
+    if (pending != null && PENDING.equals(key)) {
+      return pending;
+    }
+    return null;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return MESSAGE_ID.equals(key) || RECEIPT_HANDLE.equals(key) || pending != null && PENDING.equals(key);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Map.Entry<String, String>> entrySet() {
+    return new AbstractSet<Map.Entry<String, String>>() {
+      @Override
+      public Iterator<Map.Entry<String, String>> iterator() {
+        return new Iterator<Map.Entry<String, String>>() {
+          private int next = 0;
+
+          @Override
+          public boolean hasNext() {
+            return next < size;
+          }
+
+          @Override
+          public Map.Entry<String, String> next() {
+            switch (next++) {
+            case 0:
+              return new SimpleImmutableEntry<>(MESSAGE_ID, messageId);
+            case 1:
+              return new SimpleImmutableEntry<>(RECEIPT_HANDLE, receiptHandle);
+            case 2:
+              if (pending != null) {
+                return new SimpleImmutableEntry<>(PENDING, pending);
+              }
+              throw new NoSuchElementException();
+            default:
+              throw new NoSuchElementException();
+            }
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+}
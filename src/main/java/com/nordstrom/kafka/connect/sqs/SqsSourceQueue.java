@@ -0,0 +1,289 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.header.ConnectHeaders;
+import org.apache.kafka.connect.source.SourceRecord;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.nordstrom.kafka.connect.utils.StringUtils;
+
+/**
+ * Per-queue state of a source task, resolved once at start: the validated
+ * queue url, its source partition, the target topic and the tuner of its
+ * receives. Converts received messages to source records with as few
+ * allocations as {@link SourceRecord} allows.
+ */
+public final class SqsSourceQueue {
+  private static final String STRING_DATA_TYPE = "String";
+  private static final String NUMBER_DATA_TYPE = "Number";
+  private static final String BINARY_DATA_TYPE = "Binary";
+  private static final String BYTES_FORMAT = "bytes";
+  private static final String JSON_FORMAT = "json";
+
+  private final String url;
+  private final String topic;
+  private final Map<String, String> sourcePartition;
+  private final boolean attributesEnabled;
+  private final String partitionKeyAttribute;
+  private final boolean binary;
+  private final int maxDecodedBytes;
+  private final SqsBlobReader blobReader;
+  private final SqsJsonParser jsonParser;
+  private final SqsReceiveTuner receiveTuner;
+  private final SqsRedeliveryFilter redeliveryFilter;
+
+  /**
+   * @param url              SQS queue url.
+   * @param topic            Kafka topic the messages are written to.
+   * @param config           Source configuration.
+   * @param blobReader       Reader of the bodies the sink connector offloaded, or null.
+   * @param jsonParser       Parser of JSON bodies, shared by the queues of a task, or null; used with
+   *                         {@code sqs.message.body.format=json}.
+   * @param redeliveryFilter Filter of this queue's redeliveries, with exactly-once delivery, or null.
+   */
+  public SqsSourceQueue(final String url, final String topic, final SqsSourceConnectorConfig config,
+      final SqsBlobReader blobReader, final SqsJsonParser jsonParser, final SqsRedeliveryFilter redeliveryFilter) {
+    Guard.verifyValidUrl(url);
+    this.url = url;
+    this.topic = topic;
+    this.sourcePartition = Collections.singletonMap(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), url);
+    this.attributesEnabled = config.getMessageAttributesEnabled();
+    this.partitionKeyAttribute = attributesEnabled && !StringUtils.isBlank(config.getMessageAttributePartitionKey())
+        ? config.getMessageAttributePartitionKey()
+        : null;
+    this.binary = BYTES_FORMAT.equals(config.getMessageBodyFormat());
+    this.maxDecodedBytes = config.getCompressionMaxDecodedBytes();
+    this.blobReader = blobReader;
+    this.jsonParser = JSON_FORMAT.equals(config.getMessageBodyFormat()) ? jsonParser : null;
+    this.receiveTuner = new SqsReceiveTuner(config);
+    this.redeliveryFilter = redeliveryFilter;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public Map<String, String> getSourcePartition() {
+    return sourcePartition;
+  }
+
+  public SqsReceiveTuner getReceiveTuner() {
+    return receiveTuner;
+  }
+
+  /**
+   * @return The filter of this queue's redeliveries, or null without exactly-once delivery.
+   */
+  public SqsRedeliveryFilter getRedeliveryFilter() {
+    return redeliveryFilter;
+  }
+
+  /**
+   * With exactly-once delivery, remove the messages whose records were
+   * committed before the task started, which are deleted instead.
+   *
+   * @param messages Messages received from this queue.
+   * @return The messages to convert to records.
+   */
+  public List<Message> dropRedelivered(final List<Message> messages) {
+    return redeliveryFilter == null ? messages : redeliveryFilter.drop(messages);
+  }
+
+  /**
+   * @param messages Messages received from this queue.
+   * @return One source record per message, in order.
+   */
+  public List<SourceRecord> toRecords(final List<Message> messages) {
+    final List<SourceRecord> records = new ArrayList<>(messages.size());
+    for (int i = 0; i < messages.size(); i++) {
+      records.add(toRecord(messages.get(i)));
+    }
+    return records;
+  }
+
+  /**
+   * Convert a message to a source record. The offset carries the message id
+   * and the receipt handle, which is needed to delete the message once the
+   * record is committed. Message attributes become typed headers, since the
+   * receive only returns the attributes that are configured. A body the sink
+   * connector offloaded is read from the blob store, and one it compressed is
+   * decompressed. With {@code sqs.message.body.format=bytes} the body is base64
+   * decoded into a {@code bytes} value, and with {@code json} it is parsed into a
+   * struct, unless it is not a JSON object.
+   *
+   * @param message Message received from this queue.
+   * @return The source record.
+   * @throws org.apache.kafka.connect.errors.RetriableException If an offloaded body could not be read.
+   */
+  public SourceRecord toRecord(final Message message) {
+    final Map<String, MessageAttributeValue> attributes = message.getMessageAttributes();
+    final MessageAttributeValue blob = attributes.isEmpty() ? null : attributes.get(SqsBlobStore.ATTRIBUTE);
+    final MessageAttributeValue codec = attributes.isEmpty() ? null : attributes.get(SqsPayloadCodec.ATTRIBUTE);
+    final String body = blob != null ? readBlob(message, blob.getStringValue()) : message.getBody();
+    final Schema valueSchema;
+    final Object value;
+    if (binary) {
+      valueSchema = Schema.BYTES_SCHEMA;
+      value = codec(message, codec).decodeBinary(body, maxDecodedBytes);
+    } else {
+      final String text = codec != null ? codec(message, codec).decode(body, maxDecodedBytes) : body;
+      if (jsonParser != null) {
+        final SchemaAndValue parsed = jsonParser.parse(text);
+        valueSchema = parsed.schema();
+        value = parsed.value();
+      } else {
+        valueSchema = Schema.STRING_SCHEMA;
+        value = text;
+      }
+    }
+
+    ConnectHeaders headers = null;
+    String key = message.getMessageId();
+    if (attributesEnabled) {
+      if (!attributes.isEmpty()) {
+        headers = new ConnectHeaders();
+        for (final Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet()) {
+          if (attribute.getValue() != codec && attribute.getValue() != blob) {
+            addHeader(headers, attribute.getKey(), attribute.getValue());
+          }
+        }
+        if (partitionKeyAttribute != null) {
+          final MessageAttributeValue keyValue = attributes.get(partitionKeyAttribute);
+          if (keyValue != null && STRING_DATA_TYPE.equals(keyValue.getDataType())) {
+            key = keyValue.getStringValue();
+          }
+        }
+      }
+    }
+
+    return new SourceRecord(sourcePartition, new SqsSourceOffset(message.getMessageId(), message.getReceiptHandle()),
+        topic, null, Schema.STRING_SCHEMA, key, valueSchema, value, null, headers);
+  }
+
+  /**
+   * @param record A record of this connector.
+   * @return The size of its value in bytes, estimated for a struct.
+   */
+  public static int valueSize(final SourceRecord record) {
+    if (record.value() instanceof byte[]) {
+      return ((byte[]) record.value()).length;
+    } else if (record.value() instanceof Struct) {
+      return SqsJsonParser.estimateSize(record.value());
+    }
+    return SqsSendEntry.utf8Length((String) record.value());
+  }
+
+  /**
+   * Map a message attribute to the header of the matching type. {@code Number}
+   * attributes labelled with a Connect type, as the sink connector sends them,
+   * get that type; others become {@code int64}, or a {@code Decimal} if they
+   * have a fraction or do not fit. Attributes of unknown types are skipped.
+   */
+  private static void addHeader(final ConnectHeaders headers, final String name, final MessageAttributeValue value) {
+    final String dataType = value.getDataType();
+    if (dataType.startsWith(STRING_DATA_TYPE)) {
+      headers.addString(name, value.getStringValue());
+    } else if (dataType.startsWith(BINARY_DATA_TYPE)) {
+      final ByteBuffer buffer = value.getBinaryValue().duplicate();
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      headers.addBytes(name, bytes);
+    } else if (dataType.startsWith(NUMBER_DATA_TYPE)) {
+      final String number = value.getStringValue();
+      try {
+        switch (dataType.substring(NUMBER_DATA_TYPE.length())) {
+          case ".int8":
+            headers.addByte(name, Byte.parseByte(number));
+            break;
+          case ".int16":
+            headers.addShort(name, Short.parseShort(number));
+            break;
+          case ".int32":
+            headers.addInt(name, Integer.parseInt(number));
+            break;
+          case ".int64":
+            headers.addLong(name, Long.parseLong(number));
+            break;
+          case ".float32":
+            headers.addFloat(name, Float.parseFloat(number));
+            break;
+          case ".float64":
+            headers.addDouble(name, Double.parseDouble(number));
+            break;
+          default:
+            final BigDecimal decimal = new BigDecimal(number);
+            if (decimal.scale() <= 0 && decimal.precision() - decimal.scale() < 19) {
+              headers.addLong(name, decimal.longValueExact());
+            } else {
+              headers.addDecimal(name, decimal);
+            }
+        }
+      } catch (final NumberFormatException | ArithmeticException e) {
+        // Another producer's label, or a value out of its range: keep the number as SQS sent it.
+        headers.addString(name, number);
+      }
+    }
+  }
+
+  private String readBlob(final Message message, final String size) {
+    if (blobReader == null) {
+      throw new DataException("Message " + message.getMessageId() + " carries a blob key, but "
+          + SqsConnectorConfigKeys.SQS_BLOB_STORE_CLASS.getValue() + " is not set");
+    }
+    int sizeHint = 0;
+    try {
+      sizeHint = Integer.parseInt(size);
+    } catch (final NumberFormatException e) {
+      // Only used to size the read buffer.
+    }
+    return blobReader.read(message.getBody(), sizeHint);
+  }
+
+  private static SqsPayloadCodec codec(final Message message, final MessageAttributeValue codec) {
+    if (codec == null) {
+      return SqsPayloadCodec.NONE;
+    }
+    final SqsPayloadCodec payloadCodec;
+    try {
+      payloadCodec = SqsPayloadCodec.forValue(codec.getStringValue());
+    } catch (final IllegalArgumentException e) {
+      throw new DataException("Unknown " + SqsPayloadCodec.ATTRIBUTE + " '" + codec.getStringValue()
+          + "' of message " + message.getMessageId());
+    }
+    if (!payloadCodec.isAvailable()) {
+      throw new DataException(payloadCodec.unavailableReason() + " to decode message " + message.getMessageId());
+    }
+    return payloadCodec;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Objects;
+
+import com.amazonaws.ClientConfiguration;
+
+/**
+ * Connection pool size and timeouts of one SQS transport, i.e. one
+ * underlying HTTP client.
+ */
+public final class SqsTransportSettings {
+  private final int maxConnections;
+  private final int socketTimeoutMs;
+  private final int deadlineMs;
+
+  /**
+   * @param maxConnections  Maximum number of pooled connections.
+   * @param socketTimeoutMs Maximum time to wait for data on an open connection.
+   * @param deadlineMs      Maximum total time for a call, including retries.
+   */
+  public SqsTransportSettings(final int maxConnections, final int socketTimeoutMs, final int deadlineMs) {
+    this.maxConnections = maxConnections;
+    this.socketTimeoutMs = socketTimeoutMs;
+    this.deadlineMs = deadlineMs;
+  }
+
+  /**
+   * @return A new AWS client configuration with these settings.
+   */
+  public ClientConfiguration toClientConfiguration() {
+    return new ClientConfiguration()
+        .withMaxConnections(maxConnections)
+        .withSocketTimeout(socketTimeoutMs)
+        .withClientExecutionTimeout(deadlineMs);
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public int getSocketTimeoutMs() {
+    return socketTimeoutMs;
+  }
+
+  public int getDeadlineMs() {
+    return deadlineMs;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof SqsTransportSettings)) {
+      return false;
+    }
+    final SqsTransportSettings that = (SqsTransportSettings) o;
+    return maxConnections == that.maxConnections && socketTimeoutMs == that.socketTimeoutMs
+        && deadlineMs == that.deadlineMs;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(maxConnections, socketTimeoutMs, deadlineMs);
+  }
+
+  @Override
+  public String toString() {
+    return "max.connections=" + maxConnections + ", socket.timeout.ms=" + socketTimeoutMs + ", deadline.ms="
+        + deadlineMs;
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Keeps received messages invisible until their records are committed. A
+ * background thread renews the visibility timeout of every tracked receipt
+ * handle with {@code ChangeMessageVisibilityBatch} once half of it has
+ * elapsed, and gives up on a message once it has been held for the maximum
+ * hold time, letting SQS redeliver it.
+ */
+public class SqsVisibilityExtender implements AutoCloseable {
+  private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private static final int MAX_BATCH_SIZE = 10;
+
+  private final SqsClient client;
+  private final int timeoutSeconds;
+  private final long timeoutNanos;
+  private final long maxHoldNanos;
+  private final ConcurrentMap<String, Held> held = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler;
+
+  private final Sensor extensionSensor;
+  private final Sensor avoidedSensor;
+  private final Sensor expiredSensor;
+
+  /**
+   * @param client         SQS client.
+   * @param timeoutSeconds Visibility timeout the messages were received with, and that every extension renews.
+   * @param maxHoldSeconds Maximum time since receipt a message is kept invisible.
+   * @param metrics        Registry for the extension metrics.
+   * @param threadName     Name of the heartbeat thread.
+   */
+  public SqsVisibilityExtender(final SqsClient client, final int timeoutSeconds, final int maxHoldSeconds,
+      final SqsMetrics metrics, final String threadName) {
+    Guard.verifyNotNull(client, "client");
+    Guard.verifyInRange(timeoutSeconds, 1, 43200, SqsConnectorConfigKeys.SQS_VISIBILITY_TIMEOUT_SECONDS.getValue());
+    Guard.verifyInRange(maxHoldSeconds, 1, 43200, SqsConnectorConfigKeys.SQS_VISIBILITY_MAX_HOLD_SECONDS.getValue());
+    this.client = client;
+    this.timeoutSeconds = timeoutSeconds;
+    this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    this.maxHoldNanos = TimeUnit.SECONDS.toNanos(maxHoldSeconds);
+
+    extensionSensor = metrics.countSensor("visibility-extensions",
+        "visibility timeout extensions of in-flight messages.");
+    avoidedSensor = metrics.countSensor("visibility-redeliveries-avoided",
+        "messages committed after their original visibility timeout had elapsed.");
+    expiredSensor = metrics.countSensor("visibility-hold-expired",
+        "messages released for redelivery after the maximum hold time.");
+    metrics.gauge("visibility-held-messages", "The number of messages whose visibility is being extended.",
+        (config, now) -> held.size());
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, threadName);
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Check four times per timeout, so every handle is renewed well before it expires, however short the timeout.
+    final long periodMs = TimeUnit.SECONDS.toMillis(timeoutSeconds) / 4;
+    scheduler.scheduleWithFixedDelay(this::extend, periodMs, periodMs, TimeUnit.MILLISECONDS);
+  }
+
+  public int getTimeoutSeconds() {
+    return timeoutSeconds;
+  }
+
+  /**
+   * Start extending the visibility of just received messages.
+   *
+   * @param url      SQS queue url the messages were received from.
+   * @param messages The received messages.
+   */
+  public void track(final String url, final List<Message> messages) {
+    final long now = System.nanoTime();
+    for (final Message message : messages) {
+      held.put(message.getReceiptHandle(), new Held(url, now, now + timeoutNanos));
+    }
+  }
+
+  /**
+   * Stop extending the visibility of a message, typically because its record was committed.
+   *
+   * @param receiptHandle Receipt handle of the message.
+   */
+  public void untrack(final String receiptHandle) {
+    final Held message = held.remove(receiptHandle);
+    if (message != null && message.extensions > 0) {
+      avoidedSensor.record();
+    }
+  }
+
+  /**
+   * Renew every handle that is past half of its visibility timeout.
+   */
+  private void extend() {
+    try {
+      final long now = System.nanoTime();
+      final Map<String, List<Map.Entry<String, Held>>> due = new HashMap<>();
+      for (final Map.Entry<String, Held> entry : held.entrySet()) {
+        final Held message = entry.getValue();
+        if (message.deadlineNanos - now > timeoutNanos / 2) {
+          continue;
+        }
+        if (now + timeoutNanos - message.receivedNanos > maxHoldNanos) {
+          if (held.remove(entry.getKey(), message)) {
+            expiredSensor.record();
+            log.warn(".extend:releasing message held for longer than the maximum, queue={}", message.url);
+          }
+          continue;
+        }
+        due.computeIfAbsent(message.url, url -> new ArrayList<>()).add(entry);
+      }
+
+      for (final Map.Entry<String, List<Map.Entry<String, Held>>> queue : due.entrySet()) {
+        final List<Map.Entry<String, Held>> entries = queue.getValue();
+        for (int from = 0; from < entries.size(); from += MAX_BATCH_SIZE) {
+          extendBatch(queue.getKey(), entries.subList(from, Math.min(from + MAX_BATCH_SIZE, entries.size())), now);
+        }
+      }
+    } catch (final RuntimeException e) {
+      // Never let an exception cancel the schedule.
+      log.warn(".extend:failed", e);
+    }
+  }
+
+  private void extendBatch(final String url, final List<Map.Entry<String, Held>> batch, final long now) {
+    final List<ChangeMessageVisibilityBatchRequestEntry> requestEntries = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      requestEntries.add(new ChangeMessageVisibilityBatchRequestEntry(Integer.toString(i), batch.get(i).getKey())
+          .withVisibilityTimeout(timeoutSeconds));
+    }
+
+    final ChangeMessageVisibilityBatchResult result;
+    try {
+      result = client.changeVisibilityBatch(url, requestEntries);
+    } catch (final RuntimeException e) {
+      // Left in place; retried on the next run while there is time left.
+      log.warn(".extend:request failed, queue={}, entries={}", url, batch.size(), e);
+      return;
+    }
+
+    final boolean[] failed = new boolean[batch.size()];
+    for (final BatchResultErrorEntry error : result.getFailed()) {
+      final int index = Integer.parseInt(error.getId());
+      failed[index] = true;
+      // Typically the message was deleted, or its handle expired, in the meantime.
+      held.remove(batch.get(index).getKey(), batch.get(index).getValue());
+      log.debug(".extend:entry failed, queue={}, code={}, message={}", url, error.getCode(), error.getMessage());
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      if (!failed[i]) {
+        final Held message = batch.get(i).getValue();
+        message.deadlineNanos = now + timeoutNanos;
+        message.extensions++;
+        extensionSensor.record();
+      }
+    }
+  }
+
+  /**
+   * Stop extending; messages still held become visible once their timeout elapses.
+   */
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    held.clear();
+  }
+
+  private static final class Held {
+    private final String url;
+    private final long receivedNanos;
+    private volatile long deadlineNanos;
+    private volatile int extensions = 0;
+
+    private Held(final String url, final long receivedNanos, final long deadlineNanos) {
+      this.url = url;
+      this.receivedNanos = receivedNanos;
+      this.deadlineNanos = deadlineNanos;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.auth;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.nordstrom.kafka.connect.sqs.SqsConnectorConfigKeys;
+
+public class AWSAssumeRoleCredentialsProviderTest {
+
+  @Test
+  public void sessionsAreSharedAndClosedWithTheirLastProvider() {
+    final int open = AWSAssumeRoleCredentialsProvider.openSessions();
+    final AWSAssumeRoleCredentialsProvider first = provider("shared");
+    final AWSAssumeRoleCredentialsProvider second = provider("shared");
+    final AWSAssumeRoleCredentialsProvider other = provider("other");
+    assertEquals(open + 2, AWSAssumeRoleCredentialsProvider.openSessions());
+
+    first.close();
+    // Closing twice must not release the session of the other user.
+    first.close();
+    assertEquals(open + 2, AWSAssumeRoleCredentialsProvider.openSessions());
+    second.close();
+    assertEquals(open + 1, AWSAssumeRoleCredentialsProvider.openSessions());
+    other.close();
+    assertEquals(open, AWSAssumeRoleCredentialsProvider.openSessions());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void aClosedProviderHasNoCredentials() {
+    final AWSAssumeRoleCredentialsProvider provider = provider("closed");
+    provider.close();
+    provider.getCredentials();
+  }
+
+  private static AWSAssumeRoleCredentialsProvider provider(final String sessionName) {
+    final Map<String, Object> configs = new HashMap<>();
+    configs.put(AWSAssumeRoleCredentialsProvider.ROLE_ARN_CONFIG, "arn:aws:iam::000000000000:role/test");
+    configs.put(AWSAssumeRoleCredentialsProvider.SESSION_NAME_CONFIG, sessionName);
+    configs.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+    final AWSAssumeRoleCredentialsProvider provider = new AWSAssumeRoleCredentialsProvider();
+    provider.configure(configs);
+    return provider;
+  }
+}
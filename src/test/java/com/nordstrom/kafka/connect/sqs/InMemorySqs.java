@@ -0,0 +1,759 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.AmazonWebServiceResult;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.http.SdkHttpMetadata;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AbstractAmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchRequestTooLongException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.ListQueuesRequest;
+import com.amazonaws.services.sqs.model.ListQueuesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiptHandleIsInvalidException;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.amazonaws.services.sqs.model.TooManyEntriesInBatchRequestException;
+
+/**
+ * An in-process stand-in for SQS, covering the calls {@link SqsClient} makes.
+ * Queues are created on first use; a queue whose name ends in {@code .fifo}
+ * delivers each message group in order, one batch in flight per group, and
+ * drops sends whose deduplication id was seen in the last five minutes.
+ * Receives long poll, received messages stay invisible for the visibility
+ * timeout of the request (30 seconds by default) and reappear unless deleted.
+ * Every call can be delayed by a fixed latency plus random jitter, and calls
+ * beyond a rate are rejected with a {@code ThrottlingException}.
+ * <p>
+ * One instance is shared by the process so that the tasks of a load test see
+ * the same queues; see {@link InMemorySqsClientFactory}.
+ */
+public class InMemorySqs extends AbstractAmazonSQSAsync {
+  public static final String URL_PREFIX = "https://sqs.us-west-2.amazonaws.com/000000000000/";
+
+  static final int MAX_BATCH_ENTRIES = 10;
+  static final int MAX_PAYLOAD_BYTES = 262144;
+  private static final int DEFAULT_VISIBILITY_SECONDS = 30;
+  private static final long DEDUPLICATION_NANOS = TimeUnit.MINUTES.toNanos(5);
+  // Long polls wake up at least this often to return messages whose visibility expired.
+  private static final long POLL_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  private static final InMemorySqs SHARED = new InMemorySqs();
+  private static final SdkHttpMetadata OK;
+
+  static {
+    final HttpResponse response = new HttpResponse(null, null);
+    response.setStatusCode(200);
+    OK = SdkHttpMetadata.from(response);
+  }
+
+  private final Map<String, Queue> queues = new ConcurrentHashMap<>();
+  private final AtomicLong receipts = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  private final ExecutorService asyncExecutor = Executors.newCachedThreadPool(runnable -> {
+    final Thread thread = new Thread(runnable, "in-memory-sqs-async");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private volatile long latencyNanos;
+  private volatile long jitterNanos;
+  private volatile long callsPerSecond;
+  private long tokens;
+  private long refilledNanos = System.nanoTime();
+
+  /**
+   * @return The instance shared by the process.
+   */
+  public static InMemorySqs shared() {
+    return SHARED;
+  }
+
+  /**
+   * @param latencyMs      Delay added to every call.
+   * @param jitterMs       Upper bound of a random delay added on top of the latency.
+   * @param callsPerSecond Calls accepted per second across all queues, 0 for no limit.
+   */
+  public void configure(final long latencyMs, final long jitterMs, final long callsPerSecond) {
+    this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMs);
+    this.jitterNanos = TimeUnit.MILLISECONDS.toNanos(jitterMs);
+    synchronized (this) {
+      this.callsPerSecond = callsPerSecond;
+      tokens = callsPerSecond;
+      refilledNanos = System.nanoTime();
+    }
+  }
+
+  /**
+   * Drop every queue and counter, and remove latency and throttling.
+   */
+  public void reset() {
+    queues.clear();
+    throttled.set(0);
+    configure(0, 0, 0);
+  }
+
+  /**
+   * @param name Queue name.
+   * @return The url of the queue with that name.
+   */
+  public static String queueUrl(final String name) {
+    return URL_PREFIX + name;
+  }
+
+  /**
+   * @return Calls rejected with a {@code ThrottlingException}.
+   */
+  public long getThrottled() {
+    return throttled.get();
+  }
+
+  /**
+   * @param url Queue url.
+   * @return Messages sent to the queue, not counting deduplicated sends.
+   */
+  public long getSent(final String url) {
+    return queue(url).sent;
+  }
+
+  /**
+   * @param url Queue url.
+   * @return Messages received more than once from the queue.
+   */
+  public long getRedelivered(final String url) {
+    return queue(url).redelivered;
+  }
+
+  /**
+   * @param url Queue url.
+   * @return Receives that returned, empty or not.
+   */
+  public long getReceives(final String url) {
+    return queue(url).receives;
+  }
+
+  /**
+   * @param url Queue url.
+   * @return Receives that returned no messages.
+   */
+  public long getEmptyReceives(final String url) {
+    return queue(url).emptyReceives;
+  }
+
+  /**
+   * @param url Queue url.
+   * @return Messages in the queue, visible or in flight.
+   */
+  public int getDepth(final String url) {
+    final Queue queue = queue(url);
+    queue.lock.lock();
+    try {
+      return queue.visible.size() + queue.inFlight.size();
+    } finally {
+      queue.lock.unlock();
+    }
+  }
+
+  @Override
+  public ReceiveMessageResult receiveMessage(final ReceiveMessageRequest request) {
+    enter();
+    final Queue queue = queue(request.getQueueUrl());
+    final int max = request.getMaxNumberOfMessages() == null ? 1 : request.getMaxNumberOfMessages();
+    final int waitSeconds = request.getWaitTimeSeconds() == null ? 0 : request.getWaitTimeSeconds();
+    final int visibilitySeconds = request.getVisibilityTimeout() == null ? DEFAULT_VISIBILITY_SECONDS
+        : request.getVisibilityTimeout();
+    try {
+      return ok(new ReceiveMessageResult().withMessages(
+          queue.receive(max, TimeUnit.SECONDS.toNanos(waitSeconds), TimeUnit.SECONDS.toNanos(visibilitySeconds),
+              request.getMessageAttributeNames(), request.getMessageSystemAttributeNames())));
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return ok(new ReceiveMessageResult());
+    }
+  }
+
+  @Override
+  public SendMessageResult sendMessage(final SendMessageRequest request) {
+    enter();
+    final Queue queue = queue(request.getQueueUrl());
+    verifySize(request.getMessageBody(), request.getMessageAttributes());
+    final String messageId = queue.send(request.getMessageBody(), request.getMessageAttributes(),
+        request.getMessageGroupId(), request.getMessageDeduplicationId());
+    return ok(new SendMessageResult().withMessageId(messageId));
+  }
+
+  @Override
+  public SendMessageBatchResult sendMessageBatch(final SendMessageBatchRequest request) {
+    enter();
+    final Queue queue = queue(request.getQueueUrl());
+    verifyBatchSize(request.getEntries());
+    int bytes = 0;
+    for (final SendMessageBatchRequestEntry entry : request.getEntries()) {
+      bytes += size(entry.getMessageBody(), entry.getMessageAttributes());
+    }
+    if (bytes > MAX_PAYLOAD_BYTES) {
+      throw new BatchRequestTooLongException("Batch requests cannot be longer than " + MAX_PAYLOAD_BYTES + " bytes");
+    }
+    final SendMessageBatchResult result = ok(new SendMessageBatchResult());
+    for (final SendMessageBatchRequestEntry entry : request.getEntries()) {
+      try {
+        final String messageId = queue.send(entry.getMessageBody(), entry.getMessageAttributes(),
+            entry.getMessageGroupId(), entry.getMessageDeduplicationId());
+        result.withSuccessful(new SendMessageBatchResultEntry().withId(entry.getId()).withMessageId(messageId));
+      } catch (final AmazonServiceException e) {
+        result.withFailed(failed(entry.getId(), e));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public DeleteMessageResult deleteMessage(final DeleteMessageRequest request) {
+    enter();
+    queue(request.getQueueUrl()).delete(request.getReceiptHandle());
+    return ok(new DeleteMessageResult());
+  }
+
+  @Override
+  public DeleteMessageBatchResult deleteMessageBatch(final DeleteMessageBatchRequest request) {
+    enter();
+    final Queue queue = queue(request.getQueueUrl());
+    verifyBatchSize(request.getEntries());
+    final DeleteMessageBatchResult result = ok(new DeleteMessageBatchResult());
+    for (final DeleteMessageBatchRequestEntry entry : request.getEntries()) {
+      try {
+        queue.delete(entry.getReceiptHandle());
+        result.withSuccessful(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+      } catch (final AmazonServiceException e) {
+        result.withFailed(failed(entry.getId(), e));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public ChangeMessageVisibilityResult changeMessageVisibility(final ChangeMessageVisibilityRequest request) {
+    enter();
+    queue(request.getQueueUrl()).changeVisibility(request.getReceiptHandle(), request.getVisibilityTimeout());
+    return ok(new ChangeMessageVisibilityResult());
+  }
+
+  @Override
+  public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(
+      final ChangeMessageVisibilityBatchRequest request) {
+    enter();
+    final Queue queue = queue(request.getQueueUrl());
+    verifyBatchSize(request.getEntries());
+    final ChangeMessageVisibilityBatchResult result = ok(new ChangeMessageVisibilityBatchResult());
+    for (final ChangeMessageVisibilityBatchRequestEntry entry : request.getEntries()) {
+      try {
+        queue.changeVisibility(entry.getReceiptHandle(), entry.getVisibilityTimeout());
+        result.withSuccessful(new ChangeMessageVisibilityBatchResultEntry().withId(entry.getId()));
+      } catch (final AmazonServiceException e) {
+        result.withFailed(failed(entry.getId(), e));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public GetQueueAttributesResult getQueueAttributes(final GetQueueAttributesRequest request) {
+    enter();
+    final Queue queue = queue(request.getQueueUrl());
+    final Map<String, String> attributes = new HashMap<>();
+    queue.lock.lock();
+    try {
+      attributes.put("ApproximateNumberOfMessages", Integer.toString(queue.visible.size()));
+      attributes.put("ApproximateNumberOfMessagesNotVisible", Integer.toString(queue.inFlight.size()));
+      attributes.put("ApproximateNumberOfMessagesDelayed", "0");
+    } finally {
+      queue.lock.unlock();
+    }
+    attributes.put("QueueArn", "arn:aws:sqs:us-west-2:000000000000:" + queue.name);
+    attributes.put("FifoQueue", Boolean.toString(queue.fifo));
+    attributes.put("VisibilityTimeout", Integer.toString(DEFAULT_VISIBILITY_SECONDS));
+    final List<String> names = request.getAttributeNames();
+    if (!names.isEmpty() && !names.contains("All")) {
+      attributes.keySet().retainAll(names);
+    }
+    return ok(new GetQueueAttributesResult().withAttributes(attributes));
+  }
+
+  @Override
+  public GetQueueUrlResult getQueueUrl(final GetQueueUrlRequest request) {
+    enter();
+    final String url = queueUrl(request.getQueueName());
+    queue(url);
+    return ok(new GetQueueUrlResult().withQueueUrl(url));
+  }
+
+  @Override
+  public CreateQueueResult createQueue(final CreateQueueRequest request) {
+    enter();
+    final String url = queueUrl(request.getQueueName());
+    queue(url);
+    return ok(new CreateQueueResult().withQueueUrl(url));
+  }
+
+  @Override
+  public ListQueuesResult listQueues(final ListQueuesRequest request) {
+    enter();
+    final String prefix = request.getQueueNamePrefix() == null ? "" : request.getQueueNamePrefix();
+    final List<String> urls = new ArrayList<>();
+    for (final Queue queue : queues.values()) {
+      if (queue.name.startsWith(prefix)) {
+        urls.add(queueUrl(queue.name));
+      }
+    }
+    return ok(new ListQueuesResult().withQueueUrls(urls));
+  }
+
+  @Override
+  public Future<SendMessageResult> sendMessageAsync(final SendMessageRequest request,
+      final AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler) {
+    return submit(request, asyncHandler, () -> sendMessage(request));
+  }
+
+  @Override
+  public Future<SendMessageBatchResult> sendMessageBatchAsync(final SendMessageBatchRequest request,
+      final AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> asyncHandler) {
+    return submit(request, asyncHandler, () -> sendMessageBatch(request));
+  }
+
+  /**
+   * Shared by every client handed out; queues outlive their clients.
+   */
+  @Override
+  public void shutdown() {
+  }
+
+  private static <R extends AmazonWebServiceResult<?>> R ok(final R result) {
+    result.setSdkHttpMetadata(OK);
+    return result;
+  }
+
+  private <Q extends AmazonWebServiceRequest, R> Future<R> submit(final Q request,
+      final AsyncHandler<Q, R> asyncHandler, final Callable<R> call) {
+    return asyncExecutor.submit(() -> {
+      final R result;
+      try {
+        result = call.call();
+      } catch (final Exception e) {
+        if (asyncHandler != null) {
+          asyncHandler.onError(e);
+        }
+        throw e;
+      }
+      if (asyncHandler != null) {
+        asyncHandler.onSuccess(request, result);
+      }
+      return result;
+    });
+  }
+
+  private Queue queue(final String url) {
+    if (url == null || !url.startsWith(URL_PREFIX)) {
+      throw serviceException("AWS.SimpleQueueService.NonExistentQueue", "The specified queue does not exist: " + url);
+    }
+    return queues.computeIfAbsent(url, key -> new Queue(key.substring(URL_PREFIX.length())));
+  }
+
+  /**
+   * Apply throttling and the injected latency to a call.
+   */
+  private void enter() {
+    if (callsPerSecond > 0 && !acquireToken()) {
+      throttled.incrementAndGet();
+      final AmazonServiceException e = serviceException("ThrottlingException", "Rate exceeded");
+      e.setStatusCode(400);
+      throw e;
+    }
+    long delay = latencyNanos;
+    if (jitterNanos > 0) {
+      delay += ThreadLocalRandom.current().nextLong(jitterNanos);
+    }
+    if (delay > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(delay);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private synchronized boolean acquireToken() {
+    final long now = System.nanoTime();
+    final long refill = (now - refilledNanos) * callsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    if (refill > 0) {
+      tokens = Math.min(callsPerSecond, tokens + refill);
+      refilledNanos = now;
+    }
+    if (tokens == 0) {
+      return false;
+    }
+    tokens--;
+    return true;
+  }
+
+  private static void verifyBatchSize(final Collection<?> entries) {
+    if (entries.size() > MAX_BATCH_ENTRIES) {
+      throw new TooManyEntriesInBatchRequestException(
+          "Maximum number of entries per request are " + MAX_BATCH_ENTRIES + ". You have sent " + entries.size());
+    }
+  }
+
+  private static void verifySize(final String body, final Map<String, MessageAttributeValue> attributes) {
+    if (size(body, attributes) > MAX_PAYLOAD_BYTES) {
+      throw serviceException("InvalidParameterValue",
+          "One or more parameters are invalid. Reason: Message must be shorter than " + MAX_PAYLOAD_BYTES + " bytes.");
+    }
+  }
+
+  private static int size(final String body, final Map<String, MessageAttributeValue> attributes) {
+    int bytes = body == null ? 0 : body.getBytes(StandardCharsets.UTF_8).length;
+    if (attributes != null) {
+      for (final Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet()) {
+        bytes += attribute.getKey().length() + attribute.getValue().getDataType().length();
+        if (attribute.getValue().getStringValue() != null) {
+          bytes += attribute.getValue().getStringValue().getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (attribute.getValue().getBinaryValue() != null) {
+          bytes += attribute.getValue().getBinaryValue().remaining();
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private static AmazonServiceException serviceException(final String code, final String message) {
+    final AmazonServiceException e = new AmazonServiceException(message);
+    e.setErrorCode(code);
+    e.setErrorType(AmazonServiceException.ErrorType.Client);
+    e.setServiceName("AmazonSQS");
+    e.setStatusCode(400);
+    return e;
+  }
+
+  private static BatchResultErrorEntry failed(final String id, final AmazonServiceException e) {
+    return new BatchResultErrorEntry().withId(id).withCode(e.getErrorCode()).withMessage(e.getErrorMessage())
+        .withSenderFault(true);
+  }
+
+  private static final class Stored {
+    final long sequence;
+    final String messageId;
+    final String body;
+    final Map<String, MessageAttributeValue> attributes;
+    final String groupId;
+    final long sentMillis;
+    int receiveCount;
+    // Current receipt handle, null while never received.
+    String receiptHandle;
+    long invisibleUntilNanos;
+
+    Stored(final long sequence, final String body, final Map<String, MessageAttributeValue> attributes,
+        final String groupId) {
+      this.sequence = sequence;
+      this.messageId = new UUID(ThreadLocalRandom.current().nextLong(), sequence).toString();
+      this.body = body;
+      this.attributes = attributes == null ? null : new HashMap<>(attributes);
+      this.groupId = groupId;
+      this.sentMillis = System.currentTimeMillis();
+    }
+  }
+
+  private static final class Expiry {
+    final long deadlineNanos;
+    final Stored message;
+    // The receipt handle, or deduplication id, that expires.
+    final String key;
+
+    Expiry(final long deadlineNanos, final Stored message, final String key) {
+      this.deadlineNanos = deadlineNanos;
+      this.message = message;
+      this.key = key;
+    }
+  }
+
+  private final class Queue {
+    final String name;
+    final boolean fifo;
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition available = lock.newCondition();
+    // Visible messages in send order, which is the delivery order of a FIFO queue.
+    final TreeMap<Long, Stored> visible = new TreeMap<>();
+    // In flight messages by their current receipt handle.
+    final Map<String, Stored> inFlight = new HashMap<>();
+    // In flight messages per group; a group is not delivered while any of its messages is in flight.
+    final Map<String, Integer> inFlightGroups = new HashMap<>();
+    // Visibility deadlines, possibly stale: a message may have been deleted, extended or received again since.
+    final PriorityQueue<Expiry> expiries = new PriorityQueue<>(
+        (a, b) -> Long.compare(a.deadlineNanos, b.deadlineNanos));
+    final Map<String, String> deduplicationIds = new HashMap<>();
+    final ArrayDeque<Expiry> deduplicationExpiries = new ArrayDeque<>();
+    long sequence;
+    volatile long sent;
+    volatile long redelivered;
+    volatile long receives;
+    volatile long emptyReceives;
+
+    Queue(final String name) {
+      this.name = name;
+      this.fifo = name.endsWith(".fifo");
+    }
+
+    String send(final String body, final Map<String, MessageAttributeValue> attributes, final String groupId,
+        final String deduplicationId) {
+      if (body == null || body.isEmpty()) {
+        throw serviceException("MissingParameter", "The request must contain the parameter MessageBody.");
+      }
+      if (fifo && (groupId == null || deduplicationId == null)) {
+        throw serviceException("MissingParameter",
+            "The request must contain the parameters MessageGroupId and MessageDeduplicationId.");
+      }
+      lock.lock();
+      try {
+        final long now = System.nanoTime();
+        if (fifo) {
+          expireDeduplicationIds(now);
+          final String original = deduplicationIds.get(deduplicationId);
+          if (original != null) {
+            return original;
+          }
+        }
+        final Stored message = new Stored(sequence++, body, attributes, fifo ? groupId : null);
+        if (fifo) {
+          deduplicationIds.put(deduplicationId, message.messageId);
+          deduplicationExpiries.add(new Expiry(now + DEDUPLICATION_NANOS, message, deduplicationId));
+        }
+        visible.put(message.sequence, message);
+        sent++;
+        available.signalAll();
+        return message.messageId;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    List<Message> receive(final int max, final long waitNanos, final long visibilityNanos,
+        final List<String> attributeNames, final List<String> systemAttributeNames) throws InterruptedException {
+      lock.lockInterruptibly();
+      try {
+        final long deadline = System.nanoTime() + waitNanos;
+        while (true) {
+          final long now = System.nanoTime();
+          expireVisibility(now);
+          final List<Message> messages = take(max, now, visibilityNanos, attributeNames, systemAttributeNames);
+          final long remaining = deadline - now;
+          if (!messages.isEmpty() || remaining <= 0) {
+            receives++;
+            if (messages.isEmpty()) {
+              emptyReceives++;
+            }
+            return messages;
+          }
+          available.awaitNanos(Math.min(remaining, POLL_SLICE_NANOS));
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void delete(final String receiptHandle) {
+      lock.lock();
+      try {
+        final Stored message = inFlight.remove(receiptHandle);
+        if (message != null) {
+          releaseGroup(message);
+          return;
+        }
+        // A handle whose visibility expired still deletes the message, as long as nobody received it since.
+        for (final Iterator<Stored> it = visible.values().iterator(); it.hasNext();) {
+          final Stored candidate = it.next();
+          if (receiptHandle != null && receiptHandle.equals(candidate.receiptHandle)) {
+            it.remove();
+            return;
+          }
+        }
+        final ReceiptHandleIsInvalidException e = new ReceiptHandleIsInvalidException(
+            "The receipt handle has expired: " + receiptHandle);
+        e.setErrorCode("ReceiptHandleIsInvalid");
+        throw e;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void changeVisibility(final String receiptHandle, final Integer visibilitySeconds) {
+      lock.lock();
+      try {
+        final Stored message = inFlight.get(receiptHandle);
+        if (message == null) {
+          throw serviceException("AWS.SimpleQueueService.MessageNotInflight", "Message is not in flight.");
+        }
+        final long now = System.nanoTime();
+        message.invisibleUntilNanos = now + TimeUnit.SECONDS.toNanos(visibilitySeconds == null ? 0 : visibilitySeconds);
+        if (visibilitySeconds == null || visibilitySeconds == 0) {
+          expireVisibility(now);
+          available.signalAll();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private List<Message> take(final int max, final long now, final long visibilityNanos,
+        final List<String> attributeNames, final List<String> systemAttributeNames) {
+      final List<Message> messages = new ArrayList<>(max);
+      final Set<String> taken = fifo ? new HashSet<>() : null;
+      for (final Iterator<Stored> it = visible.values().iterator(); it.hasNext() && messages.size() < max;) {
+        final Stored message = it.next();
+        if (fifo && inFlightGroups.containsKey(message.groupId) && !taken.contains(message.groupId)) {
+          continue;
+        }
+        it.remove();
+        if (fifo) {
+          taken.add(message.groupId);
+          inFlightGroups.merge(message.groupId, 1, Integer::sum);
+        }
+        if (++message.receiveCount > 1) {
+          redelivered++;
+        }
+        message.receiptHandle = message.messageId + "#" + receipts.incrementAndGet();
+        message.invisibleUntilNanos = now + visibilityNanos;
+        inFlight.put(message.receiptHandle, message);
+        expiries.add(new Expiry(message.invisibleUntilNanos, message, message.receiptHandle));
+        messages.add(toMessage(message, attributeNames, systemAttributeNames));
+      }
+      return messages;
+    }
+
+    private void expireVisibility(final long now) {
+      while (!expiries.isEmpty() && expiries.peek().deadlineNanos <= now) {
+        final Expiry expiry = expiries.poll();
+        final Stored message = expiry.message;
+        if (inFlight.get(expiry.key) != message) {
+          continue;
+        }
+        if (message.invisibleUntilNanos > now) {
+          expiries.add(new Expiry(message.invisibleUntilNanos, message, expiry.key));
+          continue;
+        }
+        inFlight.remove(expiry.key);
+        releaseGroup(message);
+        visible.put(message.sequence, message);
+      }
+    }
+
+    private void releaseGroup(final Stored message) {
+      if (fifo) {
+        inFlightGroups.computeIfPresent(message.groupId, (group, count) -> count == 1 ? null : count - 1);
+        available.signalAll();
+      }
+    }
+
+    private void expireDeduplicationIds(final long now) {
+      while (!deduplicationExpiries.isEmpty() && deduplicationExpiries.peek().deadlineNanos <= now) {
+        deduplicationIds.remove(deduplicationExpiries.poll().key);
+      }
+    }
+
+    private Message toMessage(final Stored stored, final List<String> attributeNames,
+        final List<String> systemAttributeNames) {
+      final Message message = new Message().withMessageId(stored.messageId).withReceiptHandle(stored.receiptHandle)
+          .withBody(stored.body);
+      if (stored.attributes != null && attributeNames != null && !attributeNames.isEmpty()) {
+        final boolean all = attributeNames.contains("All") || attributeNames.contains(".*");
+        for (final Map.Entry<String, MessageAttributeValue> attribute : stored.attributes.entrySet()) {
+          if (all || attributeNames.contains(attribute.getKey())) {
+            message.addMessageAttributesEntry(attribute.getKey(), attribute.getValue());
+          }
+        }
+      }
+      if (!systemAttributeNames.isEmpty()) {
+        final boolean all = systemAttributeNames.contains("All");
+        addAttribute(message, all, systemAttributeNames, "SentTimestamp", Long.toString(stored.sentMillis));
+        addAttribute(message, all, systemAttributeNames, "ApproximateReceiveCount",
+            Integer.toString(stored.receiveCount));
+        if (stored.groupId != null) {
+          addAttribute(message, all, systemAttributeNames, "MessageGroupId", stored.groupId);
+        }
+      }
+      return message;
+    }
+
+    private void addAttribute(final Message message, final boolean all, final List<String> names, final String name,
+        final String value) {
+      if (all || names.contains(name)) {
+        message.addAttributesEntry(name, value);
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.nordstrom.kafka.connect.sqs;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+
+/**
+ * Hands every connector the shared {@link InMemorySqs}, in place of AWS, once
+ * set with {@link SqsClientPool#setClientFactory(SqsClientFactory)}. Queue
+ * urls are under {@link InMemorySqs#URL_PREFIX}.
+ */
+public class InMemorySqsClientFactory implements SqsClientFactory {
+  @Override
+  public AmazonSQS createClient(final SqsConnectorConfig config, final SqsTransportSettings transport) {
+    return InMemorySqs.shared();
+  }
+
+  @Override
+  public AmazonSQSAsync createAsyncClient(final SqsConnectorConfig config, final SqsTransportSettings transport) {
+    return InMemorySqs.shared();
+  }
+}
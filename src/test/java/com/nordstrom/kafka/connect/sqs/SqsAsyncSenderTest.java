@@ -0,0 +1,368 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.RetriableException;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+public class SqsAsyncSenderTest {
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/000000000000/async";
+  private static final TopicPartition PARTITION = new TopicPartition("test-topic", 0);
+
+  private final AsyncClient client = new AsyncClient();
+  private final SqsOffsetTracker tracker = new SqsOffsetTracker();
+  private final SqsMetrics metrics = new SqsMetrics("test", SqsMetrics.taskTags("test-async", "0"));
+  private SqsSendRetry retry;
+
+  @After
+  public void stop() {
+    if (retry != null) {
+      retry.close();
+    }
+    client.stop();
+    metrics.close();
+  }
+
+  @Test
+  public void acknowledgedBatchesBecomeCommittable() throws InterruptedException {
+    final SqsAsyncSender sender = sender(false, 4, 0, true);
+    sender.send(entries(0, 25));
+    assertTrue(sender.awaitIdle(10000));
+    assertNull(sender.getFailure());
+    assertEquals(25L, committed());
+    assertEquals(3, client.requests.get());
+  }
+
+  @Test
+  public void requestsInFlightAreBounded() throws InterruptedException {
+    client.latencyMs = 20;
+    final SqsAsyncSender sender = sender(false, 2, 0, true);
+    sender.send(entries(0, 100));
+    assertTrue(sender.awaitIdle(10000));
+    assertEquals(2, client.maxOutstanding.get());
+    assertEquals(100L, committed());
+  }
+
+  @Test
+  public void failedEntriesAreResent() throws InterruptedException {
+    client.fail("body-3", 2, false);
+    final SqsAsyncSender sender = sender(false, 1, 2, true);
+    final List<SqsSendEntry> entries = entries(0, 5);
+    sender.send(entries);
+    assertTrue(sender.awaitIdle(10000));
+    assertNull(sender.getFailure());
+    assertEquals(3, entries.get(3).getAttempts());
+    assertEquals(5L, committed());
+  }
+
+  @Test
+  public void unsentMessagesFailTheSenderAndHoldTheOffset() throws InterruptedException {
+    client.fail("body-2", Integer.MAX_VALUE, true);
+    final SqsAsyncSender sender = sender(false, 1, 3, true);
+    final List<SqsSendEntry> entries = entries(0, 5);
+    sender.send(entries);
+    assertTrue(sender.awaitIdle(10000));
+    assertEquals(1, entries.get(2).getAttempts());
+    assertEquals(2L, committed());
+    final ConnectException failure = sender.getFailure();
+    assertFalse(failure instanceof RetriableException);
+    assertTrue(failure.getMessage(), failure.getMessage().contains("test-topic-0-2"));
+  }
+
+  @Test
+  public void exhaustedRetriesFailTheSenderRetriably() throws InterruptedException {
+    client.fail("body-1", Integer.MAX_VALUE, false);
+    final SqsAsyncSender sender = sender(false, 1, 2, true);
+    final List<SqsSendEntry> entries = entries(0, 3);
+    sender.send(entries);
+    assertTrue(sender.awaitIdle(10000));
+    assertEquals(3, entries.get(1).getAttempts());
+    assertEquals(1L, committed());
+    assertTrue(sender.getFailure() instanceof RetriableException);
+  }
+
+  @Test
+  public void singleMessagesAreResentOnRetryableErrors() throws InterruptedException {
+    client.failRequests(2);
+    final SqsAsyncSender sender = sender(false, 3, 2, false);
+    final List<SqsSendEntry> entries = entries(0, 6);
+    sender.send(entries);
+    assertTrue(sender.awaitIdle(10000));
+    assertNull(sender.getFailure());
+    assertEquals(6L, committed());
+    assertEquals(8, client.requests.get());
+  }
+
+  @Test
+  public void fifoGroupsAreSentInOrderOverParallelLanes() throws InterruptedException {
+    client.latencyMs = 5;
+    final SqsAsyncSender sender = sender(true, 4, 0, true);
+    final List<SqsSendEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      entries.add(entry(i, "group-" + i % 16));
+    }
+    sender.send(entries);
+    assertTrue(sender.awaitIdle(10000));
+    assertNull(sender.getFailure());
+    assertEquals(200L, committed());
+    assertTrue(client.maxOutstanding.get() > 1);
+    assertFalse("two requests of a group in flight", client.groupOverlap);
+    for (int group = 0; group < 16; group++) {
+      final List<String> sent = client.sent("group-" + group);
+      for (int i = 1; i < sent.size(); i++) {
+        assertTrue(sent.toString(), body(sent.get(i - 1)) < body(sent.get(i)));
+      }
+    }
+  }
+
+  @Test
+  public void fifoGroupsAreResentBehindFailedEntries() throws InterruptedException {
+    client.fail("body-0", 1, false);
+    final SqsAsyncSender sender = sender(true, 1, 2, true);
+    final List<SqsSendEntry> entries = new ArrayList<>();
+    for (final String group : new String[] {"a", "b", "a", "b", "a"}) {
+      entries.add(entry(entries.size(), group));
+    }
+    sender.send(entries);
+    assertTrue(sender.awaitIdle(10000));
+    assertNull(sender.getFailure());
+    assertEquals(5L, committed());
+    // A batch holds one message per group, and body-0 is resent before body-2 goes out.
+    assertEquals(Arrays.asList(Arrays.asList("body-0", "body-1"), Collections.singletonList("body-0"),
+        Arrays.asList("body-2", "body-3"), Collections.singletonList("body-4")), client.batches());
+    assertEquals(Arrays.asList("body-0", "body-2", "body-4"), client.sent("a"));
+    assertEquals(1, entries.get(1).getAttempts());
+  }
+
+  private List<SqsSendEntry> entries(final int from, final int count) {
+    final List<SqsSendEntry> entries = new ArrayList<>(count);
+    for (int i = from; i < from + count; i++) {
+      final String body = "body-" + i;
+      final SinkRecord record = new SinkRecord(PARTITION.topic(), PARTITION.partition(), null, null,
+          Schema.STRING_SCHEMA, body, i);
+      tracker.pending(record);
+      entries.add(new SqsSendEntry(record, URL, body, null, null, null));
+    }
+    return entries;
+  }
+
+  private SqsAsyncSender sender(final boolean fifo, final int maxInFlight, final int maxRetries, final boolean batch) {
+    retry = new SqsSendRetry(maxRetries, 1, 1, null, "test-send-retry");
+    return new SqsAsyncSender(client, URL, fifo, maxInFlight, batch, retry, new SqsSendRateLimiter(), tracker,
+        metrics.queue(URL));
+  }
+
+  private SqsSendEntry entry(final int offset, final String group) {
+    final String body = "body-" + offset;
+    final SinkRecord record = new SinkRecord(PARTITION.topic(), PARTITION.partition(), null, null,
+        Schema.STRING_SCHEMA, body, offset);
+    tracker.pending(record);
+    return new SqsSendEntry(record, URL, body, group, body, null);
+  }
+
+  private static int body(final String body) {
+    return Integer.parseInt(body.substring("body-".length()));
+  }
+
+  private long committed() {
+    final Map<TopicPartition, OffsetAndMetadata> current = new HashMap<>();
+    current.put(PARTITION, new OffsetAndMetadata(0));
+    final OffsetAndMetadata offset = tracker.committable(current).get(PARTITION);
+    return offset == null ? 0 : offset.offset();
+  }
+
+  /**
+   * Answers the asynchronous sends on another thread after a latency, failing
+   * the entries with the given bodies a number of times, and counts the
+   * requests that are outstanding at once.
+   */
+  static final class AsyncClient extends SqsClient {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Integer> failures = new HashMap<>();
+    private final Map<String, Boolean> senderFaults = new HashMap<>();
+    private final AtomicInteger requestFailures = new AtomicInteger();
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AtomicInteger maxOutstanding = new AtomicInteger();
+    private final Set<String> groupsInFlight = new HashSet<>();
+    private final Map<String, List<String>> sentByGroup = new HashMap<>();
+    private final List<List<String>> batches = new ArrayList<>();
+    volatile boolean groupOverlap;
+    volatile long latencyMs;
+
+    AsyncClient() {
+      super(new SqsSinkConnectorConfig(props()));
+    }
+
+    private static Map<String, String> props() {
+      final Map<String, String> props = new HashMap<>();
+      props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), URL);
+      props.put(SqsConnectorConfigKeys.TOPICS.getValue(), "test-topic");
+      props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+      return props;
+    }
+
+    synchronized void fail(final String body, final int times, final boolean senderFault) {
+      failures.put(body, times);
+      senderFaults.put(body, senderFault);
+    }
+
+    void failRequests(final int times) {
+      requestFailures.set(times);
+    }
+
+    synchronized List<String> sent(final String group) {
+      return new ArrayList<>(sentByGroup.getOrDefault(group, Collections.emptyList()));
+    }
+
+    synchronized List<List<String>> batches() {
+      return new ArrayList<>(batches);
+    }
+
+    void stop() {
+      executor.shutdownNow();
+    }
+
+    @Override
+    public void sendBatchAsync(final String url, final List<SendMessageBatchRequestEntry> entries,
+        final AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> handler) {
+      final SendMessageBatchRequest request = new SendMessageBatchRequest(url, new ArrayList<>(entries));
+      final Set<String> groups = begin(request.getEntries());
+      respond(() -> {
+        end(groups);
+        if (requestFailures.getAndDecrement() > 0) {
+          handler.onError(new AmazonClientException("injected"));
+          return;
+        }
+        final SendMessageBatchResult result = new SendMessageBatchResult();
+        for (final SendMessageBatchRequestEntry entry : request.getEntries()) {
+          final Boolean senderFault = failure(entry.getMessageBody());
+          if (senderFault == null) {
+            sent(entry);
+            result.withSuccessful(new SendMessageBatchResultEntry().withId(entry.getId()));
+          } else {
+            result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(senderFault)
+                .withCode(senderFault ? "InvalidParameterValue" : "InternalError"));
+          }
+        }
+        handler.onSuccess(request, result);
+      });
+    }
+
+    @Override
+    public void sendAsync(final String url, final SendMessageBatchRequestEntry entry,
+        final AsyncHandler<SendMessageRequest, SendMessageResult> handler) {
+      final SendMessageRequest request = new SendMessageRequest(url, entry.getMessageBody());
+      respond(() -> {
+        if (requestFailures.getAndDecrement() > 0) {
+          handler.onError(new AmazonClientException("injected"));
+        } else {
+          handler.onSuccess(request, new SendMessageResult());
+        }
+      });
+    }
+
+    /**
+     * Record a request, and whether a group in it already has one in flight.
+     */
+    private synchronized Set<String> begin(final List<SendMessageBatchRequestEntry> entries) {
+      final List<String> bodies = new ArrayList<>(entries.size());
+      final Set<String> groups = new HashSet<>();
+      for (final SendMessageBatchRequestEntry entry : entries) {
+        bodies.add(entry.getMessageBody());
+        if (entry.getMessageGroupId() != null) {
+          groups.add(entry.getMessageGroupId());
+        }
+      }
+      batches.add(bodies);
+      for (final String group : groups) {
+        if (!groupsInFlight.add(group)) {
+          groupOverlap = true;
+        }
+      }
+      return groups;
+    }
+
+    private synchronized void end(final Set<String> groups) {
+      groupsInFlight.removeAll(groups);
+    }
+
+    private synchronized void sent(final SendMessageBatchRequestEntry entry) {
+      if (entry.getMessageGroupId() != null) {
+        sentByGroup.computeIfAbsent(entry.getMessageGroupId(), group -> new ArrayList<>()).add(entry.getMessageBody());
+      }
+    }
+
+    private synchronized Boolean failure(final String body) {
+      final int times = failures.getOrDefault(body, 0);
+      if (times <= 0) {
+        return null;
+      }
+      failures.put(body, times - 1);
+      return senderFaults.get(body);
+    }
+
+    private void respond(final Runnable response) {
+      requests.incrementAndGet();
+      maxOutstanding.accumulateAndGet(outstanding.incrementAndGet(), Math::max);
+      executor.execute(() -> {
+        try {
+          if (latencyMs > 0) {
+            TimeUnit.MILLISECONDS.sleep(latencyMs);
+          }
+        } catch (final InterruptedException e) {
+          return;
+        }
+        outstanding.decrementAndGet();
+        response.run();
+      });
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.kafka.connect.errors.RetriableException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SqsBlobReaderTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private SqsFileBlobStore store;
+
+  @Before
+  public void configure() {
+    store = SqsFileBlobStoreTest.configured(folder.getRoot().getPath());
+  }
+
+  @Test
+  public void readsBodiesLongerThanAChunk() throws IOException {
+    final StringBuilder body = new StringBuilder();
+    while (body.length() < 40000) {
+      body.append("body é中 ");
+    }
+    put("long", body.toString());
+    assertEquals(body.toString(), new SqsBlobReader(store, 0).read("long", 0));
+    assertEquals(body.toString(), new SqsBlobReader(store, 0).read("long", 10));
+  }
+
+  @Test(expected = RetriableException.class)
+  public void missingBlobIsRetriable() {
+    new SqsBlobReader(store, 0).read("missing", 0);
+  }
+
+  @Test
+  public void cachedBodiesAreNotReadAgain() throws IOException {
+    final SqsBlobReader reader = new SqsBlobReader(store, 1024);
+    put("key", "body");
+    assertEquals("body", reader.read("key", 0));
+    delete("key");
+    assertEquals("body", reader.read("key", 0));
+  }
+
+  @Test(expected = RetriableException.class)
+  public void withoutCacheBodiesAreReadAgain() throws IOException {
+    final SqsBlobReader reader = new SqsBlobReader(store, 0);
+    put("key", "body");
+    assertEquals("body", reader.read("key", 0));
+    delete("key");
+    reader.read("key", 0);
+  }
+
+  @Test
+  public void leastRecentlyReadBodiesAreEvicted() throws IOException {
+    // Room for two of the three bodies.
+    final SqsBlobReader reader = new SqsBlobReader(store, 10);
+    put("a", "aaaa");
+    put("b", "bbbb");
+    put("c", "cccc");
+    reader.read("a", 0);
+    reader.read("b", 0);
+    reader.read("a", 0);
+    reader.read("c", 0);
+    delete("a");
+    delete("b");
+    delete("c");
+    assertEquals("aaaa", reader.read("a", 0));
+    assertEquals("cccc", reader.read("c", 0));
+    try {
+      reader.read("b", 0);
+      fail("b was not evicted");
+    } catch (final RetriableException expected) {
+      // Evicted.
+    }
+  }
+
+  @Test(expected = RetriableException.class)
+  public void bodiesLargerThanTheCacheAreNotCached() throws IOException {
+    final SqsBlobReader reader = new SqsBlobReader(store, 3);
+    put("key", "body");
+    reader.read("key", 0);
+    delete("key");
+    reader.read("key", 0);
+  }
+
+  private void put(final String key, final String body) throws IOException {
+    store.put(key, body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void delete(final String key) throws IOException {
+    Files.delete(folder.getRoot().toPath().resolve(key));
+  }
+}
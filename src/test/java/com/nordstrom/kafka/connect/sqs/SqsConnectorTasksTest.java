@@ -0,0 +1,359 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.errors.RetriableException;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+
+/**
+ * Runs the sink and source tasks against {@link InMemorySqs}.
+ */
+public class SqsConnectorTasksTest {
+  static final String TOPIC = "test-topic";
+  static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final List<SqsSinkConnectorTask> sinks = new ArrayList<>();
+  private final List<SqsSourceConnectorTask> sources = new ArrayList<>();
+
+  @BeforeClass
+  public static void useInMemorySqs() {
+    SqsClientPool.setClientFactory(new InMemorySqsClientFactory());
+  }
+
+  @AfterClass
+  public static void useAwsSdk() {
+    SqsClientPool.setClientFactory(null);
+  }
+
+  @Before
+  public void resetSqs() {
+    InMemorySqs.shared().reset();
+  }
+
+  @After
+  public void stopTasks() {
+    for (final SqsSinkConnectorTask sink : sinks) {
+      sink.stop();
+    }
+    for (final SqsSourceConnectorTask source : sources) {
+      source.stop();
+    }
+  }
+
+  @Test
+  public void syncSinkToSource() throws InterruptedException {
+    roundTrip(new HashMap<>(), new HashMap<>(), 25);
+  }
+
+  @Test
+  public void batchSinkToSource() throws InterruptedException {
+    final Map<String, String> sinkProps = new HashMap<>();
+    sinkProps.put(SqsConnectorConfigKeys.SQS_SEND_BATCH_ENABLED.getValue(), "true");
+    roundTrip(sinkProps, new HashMap<>(), 25);
+  }
+
+  @Test
+  public void asyncSinkToSourceWithReceivers() throws InterruptedException {
+    final Map<String, String> sinkProps = new HashMap<>();
+    sinkProps.put(SqsConnectorConfigKeys.SQS_SEND_BATCH_ENABLED.getValue(), "true");
+    sinkProps.put(SqsConnectorConfigKeys.SQS_SEND_ASYNC_ENABLED.getValue(), "true");
+    final Map<String, String> sourceProps = new HashMap<>();
+    sourceProps.put(SqsConnectorConfigKeys.SQS_RECEIVER_THREADS.getValue(), "2");
+    roundTrip(sinkProps, sourceProps, 25);
+  }
+
+  @Test
+  public void compressedSinkToSource() throws InterruptedException {
+    final Map<String, String> sinkProps = new HashMap<>();
+    sinkProps.put(SqsConnectorConfigKeys.SQS_COMPRESSION_TYPE.getValue(), "gzip");
+    sinkProps.put(SqsConnectorConfigKeys.SQS_COMPRESSION_THRESHOLD_BYTES.getValue(), "0");
+    roundTrip(sinkProps, new HashMap<>(), 5);
+  }
+
+  @Test
+  public void unroutableRecordsAreReported() throws InterruptedException {
+    putHeaderRouted(new HashMap<>());
+  }
+
+  @Test
+  public void unroutableRecordsAreReportedAsync() throws InterruptedException {
+    final Map<String, String> sinkProps = new HashMap<>();
+    sinkProps.put(SqsConnectorConfigKeys.SQS_SEND_BATCH_ENABLED.getValue(), "true");
+    sinkProps.put(SqsConnectorConfigKeys.SQS_SEND_ASYNC_ENABLED.getValue(), "true");
+    final TestSinkTaskContext context = putHeaderRouted(sinkProps);
+    // The reported records count as handled, so the offset moves past all three.
+    final TopicPartition partition = new TopicPartition(TOPIC, 0);
+    final Map<TopicPartition, OffsetAndMetadata> consumed = new HashMap<>();
+    consumed.put(partition, new OffsetAndMetadata(3));
+    // The message is in the queue before the sender's callback acknowledges it.
+    final long start = System.nanoTime();
+    Map<TopicPartition, OffsetAndMetadata> committable = sinks.get(0).preCommit(consumed);
+    while (!consumed.equals(committable) && System.nanoTime() - start < TIMEOUT_NANOS) {
+      Thread.sleep(10);
+      committable = sinks.get(0).preCommit(consumed);
+    }
+    assertEquals(3L, committable.get(partition).offset());
+    assertEquals(2, context.reported.size());
+  }
+
+  @Test(expected = DataException.class)
+  public void unroutableRecordFailsWithoutReporter() {
+    final SqsSinkConnectorTask sink = startSink(null, headerRoute(), new TestSinkTaskContext(TOPIC, false));
+    sink.put(Collections.singletonList(sinkRecord("value", 0)));
+  }
+
+  private TestSinkTaskContext putHeaderRouted(final Map<String, String> sinkProps) throws InterruptedException {
+    final TestSinkTaskContext context = new TestSinkTaskContext(TOPIC, true);
+    final Map<String, String> props = headerRoute();
+    props.putAll(sinkProps);
+    final SqsSinkConnectorTask sink = startSink(null, props, context);
+    final SinkRecord routed = sinkRecord("routed", 0);
+    routed.headers().addString("queue", "routed");
+    final SinkRecord blank = sinkRecord("blank", 1);
+    blank.headers().addString("queue", " ");
+    final SinkRecord none = sinkRecord("none", 2);
+    sink.put(Arrays.asList(routed, blank, none));
+    sink.flush(Collections.emptyMap());
+
+    awaitSent(InMemorySqs.queueUrl("routed"), 1);
+    assertEquals(Arrays.asList(blank, none), context.reported);
+    return context;
+  }
+
+  private static Map<String, String> headerRoute() {
+    final Map<String, String> props = new HashMap<>();
+    props.put(SqsConnectorConfigKeys.SQS_QUEUE_HEADER.getValue(), "queue");
+    return props;
+  }
+
+  @Test
+  public void pollBudgetBoundsBufferedPolls() throws InterruptedException {
+    final String url = InMemorySqs.queueUrl("budget");
+    for (int i = 0; i < 20; i++) {
+      InMemorySqs.shared().sendMessage(new SendMessageRequest(url, "value-" + i));
+    }
+    final Map<String, String> sourceProps = new HashMap<>();
+    sourceProps.put(SqsConnectorConfigKeys.SQS_RECEIVER_THREADS.getValue(), "1");
+    sourceProps.put(SqsConnectorConfigKeys.SQS_POLL_MAX_RECORDS.getValue(), "4");
+    sourceProps.put(SqsConnectorConfigKeys.SQS_POLL_MAX_MS.getValue(), "200");
+    final SqsSourceConnectorTask source = startSource(url, sourceProps, new TestSourceTaskContext());
+    int received = 0;
+    final long start = System.nanoTime();
+    while (received < 20 && System.nanoTime() - start < TIMEOUT_NANOS) {
+      final List<SourceRecord> records = source.poll();
+      assertTrue("polled " + records.size(), records.size() <= 4);
+      received += records.size();
+    }
+    assertEquals(20, received);
+  }
+
+  @Test
+  public void exactlyOnceListsEmittedMessagesWithReceivers() throws InterruptedException {
+    final String url = InMemorySqs.queueUrl("exactly-once");
+    for (int i = 0; i < 10; i++) {
+      InMemorySqs.shared().sendMessage(new SendMessageRequest(url, "value-" + i));
+    }
+    final Map<String, String> sourceProps = new HashMap<>();
+    sourceProps.put(SqsConnectorConfigKeys.SQS_EXACTLY_ONCE_ENABLED.getValue(), "true");
+    sourceProps.put(SqsConnectorConfigKeys.SQS_EXACTLY_ONCE_PENDING_MAX_MESSAGES.getValue(), "4");
+    sourceProps.put(SqsConnectorConfigKeys.SQS_RECEIVER_THREADS.getValue(), "2");
+    sourceProps.put(SqsConnectorConfigKeys.SQS_POLL_MAX_RECORDS.getValue(), "3");
+    final SqsSourceConnectorTask source = startSource(url, sourceProps, new TestSourceTaskContext());
+
+    // Polls stop once four deletes are pending, and every poll lists all the messages emitted so far.
+    final List<SourceRecord> emitted = new ArrayList<>();
+    final long start = System.nanoTime();
+    while (emitted.size() < 4 && System.nanoTime() - start < TIMEOUT_NANOS) {
+      final List<SourceRecord> records = source.poll();
+      emitted.addAll(records);
+      if (!records.isEmpty()) {
+        assertEquals(pendingIds(emitted), records.get(records.size() - 1).sourceOffset()
+            .get(SqsConnectorConfigKeys.SQS_MESSAGE_PENDING.getValue()));
+      }
+    }
+    assertTrue(source.poll().isEmpty());
+    assertTrue("emitted " + emitted.size(), emitted.size() >= 4 && emitted.size() <= 6);
+
+    // Flushing the deletes of the committed records frees the rest.
+    for (final SourceRecord record : emitted) {
+      source.commitRecord(record, null);
+    }
+    source.commit();
+    final List<SourceRecord> rest = pollUntil(source, 10 - emitted.size());
+    assertEquals(pendingIds(rest), rest.get(rest.size() - 1).sourceOffset()
+        .get(SqsConnectorConfigKeys.SQS_MESSAGE_PENDING.getValue()));
+  }
+
+  private static String pendingIds(final List<SourceRecord> records) {
+    final List<String> ids = new ArrayList<>();
+    for (final SourceRecord record : records) {
+      ids.add((String) record.sourceOffset().get(SqsConnectorConfigKeys.SQS_MESSAGE_ID.getValue()));
+    }
+    return String.join(",", ids);
+  }
+
+  @Test
+  public void undecodableMessageFailsThePoll() throws InterruptedException {
+    pollUndecodable(new HashMap<>());
+  }
+
+  @Test
+  public void undecodableMessageFailsThePollWithReceivers() throws InterruptedException {
+    final Map<String, String> sourceProps = new HashMap<>();
+    sourceProps.put(SqsConnectorConfigKeys.SQS_RECEIVER_THREADS.getValue(), "2");
+    pollUndecodable(sourceProps);
+  }
+
+  private void pollUndecodable(final Map<String, String> sourceProps) throws InterruptedException {
+    final String url = InMemorySqs.queueUrl("undecodable");
+    InMemorySqs.shared().sendMessage(new SendMessageRequest(url, "not gzip").withMessageAttributes(
+        Collections.singletonMap(SqsPayloadCodec.ATTRIBUTE, SqsPayloadCodec.GZIP.getAttributeValue())));
+    final SqsSourceConnectorTask source = startSource(url, sourceProps, new TestSourceTaskContext());
+    final long start = System.nanoTime();
+    while (System.nanoTime() - start < TIMEOUT_NANOS) {
+      try {
+        assertTrue(source.poll().isEmpty());
+      } catch (final ConnectException e) {
+        assertFalse(e instanceof RetriableException);
+        // Not deleted, so redelivered to the restarted task.
+        assertEquals(1, InMemorySqs.shared().getDepth(url));
+        return;
+      }
+    }
+    fail("poll did not fail");
+  }
+
+  private void roundTrip(final Map<String, String> sinkProps, final Map<String, String> sourceProps,
+      final int messages) throws InterruptedException {
+    final String url = InMemorySqs.queueUrl("round-trip");
+    final SqsSinkConnectorTask sink = startSink(url, sinkProps, new TestSinkTaskContext(TOPIC, false));
+    final List<SinkRecord> sent = new ArrayList<>();
+    for (int i = 0; i < messages; i++) {
+      sent.add(sinkRecord("value-" + i, i));
+    }
+    sink.put(sent);
+    sink.flush(Collections.emptyMap());
+    awaitSent(url, messages);
+
+    final SqsSourceConnectorTask source = startSource(url, sourceProps, new TestSourceTaskContext());
+    final List<String> received = new ArrayList<>();
+    for (final SourceRecord record : pollUntil(source, messages)) {
+      received.add((String) record.value());
+      assertEquals(TOPIC, record.topic());
+      source.commitRecord(record, null);
+    }
+    source.commit();
+
+    Collections.sort(received);
+    final List<String> expected = new ArrayList<>();
+    for (final SinkRecord record : sent) {
+      expected.add((String) record.value());
+    }
+    Collections.sort(expected);
+    assertEquals(expected, received);
+    assertEquals(0, InMemorySqs.shared().getDepth(url));
+  }
+
+  SqsSinkConnectorTask startSink(final String url, final Map<String, String> extra,
+      final TestSinkTaskContext context) {
+    final SqsSinkConnectorTask sink = new SqsSinkConnectorTask();
+    sink.initialize(context);
+    final Map<String, String> props = taskProps(url, "test-sink");
+    props.putAll(extra);
+    sink.start(props);
+    sinks.add(sink);
+    return sink;
+  }
+
+  SqsSourceConnectorTask startSource(final String url, final Map<String, String> extra,
+      final TestSourceTaskContext context) {
+    final SqsSourceConnectorTask source = new SqsSourceConnectorTask();
+    source.initialize(context);
+    final Map<String, String> props = taskProps(url, "test-source");
+    props.put(SqsConnectorConfigKeys.SQS_WAIT_TIME_SECONDS.getValue(), "1");
+    props.putAll(extra);
+    source.start(props);
+    sources.add(source);
+    return source;
+  }
+
+  static List<SourceRecord> pollUntil(final SqsSourceConnectorTask source, final int count)
+      throws InterruptedException {
+    final List<SourceRecord> records = new ArrayList<>();
+    final long start = System.nanoTime();
+    while (records.size() < count && System.nanoTime() - start < TIMEOUT_NANOS) {
+      final List<SourceRecord> polled = source.poll();
+      if (polled != null) {
+        records.addAll(polled);
+      }
+    }
+    assertTrue("polled " + records.size() + " of " + count, records.size() >= count);
+    return records;
+  }
+
+  /**
+   * Wait for the sends, which the async sink only completes in the background.
+   */
+  static void awaitSent(final String url, final long count) throws InterruptedException {
+    final long start = System.nanoTime();
+    while (InMemorySqs.shared().getSent(url) < count && System.nanoTime() - start < TIMEOUT_NANOS) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, InMemorySqs.shared().getSent(url));
+  }
+
+  static SinkRecord sinkRecord(final String value, final long offset) {
+    return new SinkRecord(TOPIC, 0, Schema.STRING_SCHEMA, "key-" + offset, Schema.STRING_SCHEMA, value, offset);
+  }
+
+  static Map<String, String> taskProps(final String url, final String name) {
+    final Map<String, String> props = new HashMap<>();
+    props.put(SqsConnectorConfigKeys.CONNECTOR_NAME.getValue(), name);
+    props.put(SqsConnectorConfigKeys.TASK_ID.getValue(), "0");
+    props.put(SqsConnectorConfigKeys.TOPICS.getValue(), TOPIC);
+    if (url != null) {
+      props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), url);
+    }
+    props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+    return props;
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+
+public class SqsDeleteBatcherTest {
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/000000000000/deletes";
+  private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final RecordingClient client = new RecordingClient();
+  private final SqsMetrics metrics = new SqsMetrics("test", SqsMetrics.taskTags("test-deletes", "0"));
+  private SqsDeleteBatcher deleter;
+
+  @After
+  public void close() {
+    if (deleter != null) {
+      deleter.close();
+    }
+    metrics.close();
+  }
+
+  @Test
+  public void fullBatchesDoNotWaitForTheLinger() throws InterruptedException {
+    deleter = new SqsDeleteBatcher(client, 3, TimeUnit.MINUTES.toMillis(1), 0, metrics, "test-deletes");
+    add("a", "b", "c", "d");
+    awaitRequests(1);
+    assertEquals(Collections.singletonList(Arrays.asList("a", "b", "c")), client.requests());
+  }
+
+  @Test
+  public void partialBatchesAreSentAfterTheLinger() throws InterruptedException {
+    deleter = new SqsDeleteBatcher(client, 10, 20, 0, metrics, "test-deletes");
+    add("a", "b");
+    awaitRequests(1);
+    assertEquals(Collections.singletonList(Arrays.asList("a", "b")), client.requests());
+  }
+
+  @Test
+  public void flushSendsEverything() throws InterruptedException {
+    deleter = new SqsDeleteBatcher(client, 10, TimeUnit.MINUTES.toMillis(1), 0, metrics, "test-deletes");
+    final List<String> handles = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      handles.add("h" + i);
+    }
+    add(handles.toArray(new String[0]));
+    assertTrue(deleter.flush(10000));
+    assertEquals(Arrays.asList(10, 10, 5), client.sizes());
+    assertEquals(handles, client.deleted());
+  }
+
+  @Test
+  public void failedEntriesAreRetriedOnTheirOwn() throws InterruptedException {
+    deleter = new SqsDeleteBatcher(client, 10, TimeUnit.MINUTES.toMillis(1), 3, metrics, "test-deletes");
+    client.fail("b", 2, false);
+    add("a", "b", "c");
+    assertTrue(deleter.flush(10000));
+    assertEquals(Arrays.asList(Arrays.asList("a", "b", "c"), Collections.singletonList("b"),
+        Collections.singletonList("b")), client.requests());
+    assertEquals(Arrays.asList("a", "c", "b"), client.deleted());
+    assertTrue(deleter.takeFailed().isEmpty());
+  }
+
+  @Test
+  public void senderFaultsAreNotRetried() throws InterruptedException {
+    deleter = new SqsDeleteBatcher(client, 10, TimeUnit.MINUTES.toMillis(1), 3, metrics, "test-deletes");
+    client.fail("b", Integer.MAX_VALUE, true);
+    add("a", "b");
+    assertTrue(deleter.flush(10000));
+    assertEquals(1, client.requests().size());
+    assertEquals(Collections.singletonList("a"), client.deleted());
+    assertEquals(Collections.singleton("b"), deleter.takeFailed());
+    assertTrue(deleter.takeFailed().isEmpty());
+  }
+
+  @Test
+  public void retriesAreBounded() throws InterruptedException {
+    deleter = new SqsDeleteBatcher(client, 10, TimeUnit.MINUTES.toMillis(1), 2, metrics, "test-deletes");
+    client.fail("a", Integer.MAX_VALUE, false);
+    add("a");
+    assertTrue(deleter.flush(10000));
+    assertEquals(3, client.requests().size());
+    assertTrue(client.deleted().isEmpty());
+    assertEquals(Collections.singleton("a"), deleter.takeFailed());
+  }
+
+  @Test
+  public void failedRequestsAreRetried() throws InterruptedException {
+    deleter = new SqsDeleteBatcher(client, 10, TimeUnit.MINUTES.toMillis(1), 1, metrics, "test-deletes");
+    client.failRequests(1);
+    add("a", "b");
+    assertTrue(deleter.flush(10000));
+    assertEquals(2, client.requests().size());
+    assertEquals(Arrays.asList("a", "b"), client.deleted());
+  }
+
+  @Test
+  public void closeDeletesWhatIsQueued() {
+    deleter = new SqsDeleteBatcher(client, 10, TimeUnit.MINUTES.toMillis(1), 0, metrics, "test-deletes");
+    add("a", "b");
+    deleter.close();
+    assertEquals(Arrays.asList("a", "b"), client.deleted());
+  }
+
+  @Test
+  public void handlesAddedAfterCloseAreDropped() {
+    deleter = new SqsDeleteBatcher(client, 10, 0, 0, metrics, "test-deletes");
+    deleter.close();
+    add("late");
+    assertTrue(client.requests().isEmpty());
+    assertTrue(client.deleted().isEmpty());
+  }
+
+  private void add(final String... handles) {
+    for (final String handle : handles) {
+      deleter.add(URL, handle);
+    }
+  }
+
+  private void awaitRequests(final int count) throws InterruptedException {
+    final long start = System.nanoTime();
+    while (client.requests().size() < count && System.nanoTime() - start < TIMEOUT_NANOS) {
+      Thread.sleep(5);
+    }
+  }
+
+  /**
+   * Records the delete requests instead of sending them, and fails the entries
+   * of the given receipt handles a number of times.
+   */
+  static final class RecordingClient extends SqsClient {
+    private final List<List<String>> requests = new ArrayList<>();
+    private final List<String> deleted = new ArrayList<>();
+    private final Map<String, Integer> failures = new HashMap<>();
+    private final Map<String, Boolean> senderFaults = new HashMap<>();
+    private int requestFailures;
+
+    RecordingClient() {
+      super(new SqsSourceConnectorConfig(props()));
+    }
+
+    private static Map<String, String> props() {
+      final Map<String, String> props = new HashMap<>();
+      props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), URL);
+      props.put(SqsConnectorConfigKeys.TOPICS.getValue(), "test-topic");
+      props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+      return props;
+    }
+
+    synchronized void fail(final String handle, final int times, final boolean senderFault) {
+      failures.put(handle, times);
+      senderFaults.put(handle, senderFault);
+    }
+
+    synchronized void failRequests(final int times) {
+      requestFailures = times;
+    }
+
+    synchronized List<List<String>> requests() {
+      return new ArrayList<>(requests);
+    }
+
+    synchronized List<Integer> sizes() {
+      final List<Integer> sizes = new ArrayList<>();
+      for (final List<String> request : requests) {
+        sizes.add(request.size());
+      }
+      return sizes;
+    }
+
+    synchronized List<String> deleted() {
+      return new ArrayList<>(deleted);
+    }
+
+    @Override
+    public synchronized DeleteMessageBatchResult deleteBatch(final String url,
+        final List<DeleteMessageBatchRequestEntry> entries) {
+      final List<String> handles = new ArrayList<>(entries.size());
+      for (final DeleteMessageBatchRequestEntry entry : entries) {
+        handles.add(entry.getReceiptHandle());
+      }
+      requests.add(handles);
+      if (requestFailures > 0) {
+        requestFailures--;
+        throw new AmazonClientException("injected");
+      }
+      final DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+      for (final DeleteMessageBatchRequestEntry entry : entries) {
+        final String handle = entry.getReceiptHandle();
+        final int times = failures.getOrDefault(handle, 0);
+        if (times > 0) {
+          failures.put(handle, times - 1);
+          result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withCode("InternalError")
+              .withSenderFault(senderFaults.get(handle)));
+        } else {
+          deleted.add(handle);
+          result.withSuccessful(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public synchronized void delete(final String url, final String receiptHandle) {
+      deleted.add(receiptHandle);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SqsFileBlobStoreTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private SqsFileBlobStore store;
+
+  @Before
+  public void configure() {
+    store = configured(folder.getRoot().getPath());
+  }
+
+  @Test
+  public void putThenGet() throws IOException {
+    final byte[] payload = "a body".getBytes(StandardCharsets.UTF_8);
+    store.put("prefix/key", payload);
+    assertArrayEquals(payload, get("prefix/key"));
+  }
+
+  @Test
+  public void putReplacesWithoutTemporaryFiles() throws IOException {
+    store.put("key", "first".getBytes(StandardCharsets.UTF_8));
+    store.put("key", "second".getBytes(StandardCharsets.UTF_8));
+    assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), get("key"));
+    try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+      assertFalse(files.anyMatch(file -> file.toString().endsWith(".tmp")));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void missingBlobFails() throws IOException {
+    store.get("missing");
+  }
+
+  @Test
+  public void keysOutsideTheDirectoryAreRejected() {
+    for (final String key : new String[] {"../outside", "a/../../outside", "", "."}) {
+      try {
+        store.put(key, new byte[1]);
+        fail("put " + key);
+      } catch (final IOException expected) {
+        // Rejected.
+      }
+    }
+  }
+
+  @Test(expected = ConfigException.class)
+  public void pathIsRequired() {
+    configured("");
+  }
+
+  private byte[] get(final String key) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = store.get(key)) {
+      final byte[] chunk = new byte[1024];
+      int n;
+      while ((n = in.read(chunk)) != -1) {
+        out.write(chunk, 0, n);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  static SqsFileBlobStore configured(final String path) {
+    final Map<String, String> props = new HashMap<>();
+    props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), "https://sqs.us-west-2.amazonaws.com/000000000000/blobs");
+    props.put(SqsConnectorConfigKeys.TOPICS.getValue(), "test-blobs");
+    props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+    props.put(SqsConnectorConfigKeys.SQS_BLOB_STORE_PATH.getValue(), path);
+    final SqsFileBlobStore store = new SqsFileBlobStore();
+    store.configure(new SqsSinkConnectorConfig(props), null);
+    return store;
+  }
+}
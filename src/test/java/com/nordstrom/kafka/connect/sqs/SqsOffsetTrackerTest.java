@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Test;
+
+public class SqsOffsetTrackerTest {
+  private static final TopicPartition P0 = new TopicPartition("topic", 0);
+  private static final TopicPartition P1 = new TopicPartition("topic", 1);
+
+  private final SqsOffsetTracker tracker = new SqsOffsetTracker();
+
+  @Test
+  public void nothingIsCommittableBeforeAnAcknowledgement() {
+    tracker.pending(record(P0, 0));
+    assertTrue(tracker.committable(current(P0)).isEmpty());
+    assertEquals(1, tracker.inFlight());
+  }
+
+  @Test
+  public void offsetsMoveOnlyPastRecordsAcknowledgedInOrder() {
+    for (long offset = 0; offset < 4; offset++) {
+      tracker.pending(record(P0, offset));
+    }
+    tracker.acknowledged(record(P0, 1));
+    tracker.acknowledged(record(P0, 3));
+    assertTrue(tracker.committable(current(P0)).isEmpty());
+    assertEquals(2, tracker.inFlight());
+
+    tracker.acknowledged(record(P0, 0));
+    assertEquals(2L, tracker.committable(current(P0)).get(P0).offset());
+    tracker.acknowledged(record(P0, 2));
+    assertEquals(4L, tracker.committable(current(P0)).get(P0).offset());
+    assertEquals(0, tracker.inFlight());
+  }
+
+  @Test
+  public void unregisteredRecordsAreIgnored() {
+    tracker.pending(record(P0, 5));
+    tracker.acknowledged(record(P0, 4));
+    assertTrue(tracker.committable(current(P0)).isEmpty());
+  }
+
+  @Test
+  public void onlyRequestedPartitionsAreCommittable() {
+    tracker.pending(record(P0, 0));
+    tracker.pending(record(P1, 0));
+    tracker.acknowledged(record(P0, 0));
+    tracker.acknowledged(record(P1, 0));
+    final Map<TopicPartition, OffsetAndMetadata> committable = tracker.committable(current(P1));
+    assertEquals(Collections.singleton(P1), committable.keySet());
+    assertEquals(1L, committable.get(P1).offset());
+  }
+
+  @Test
+  public void rewindReturnsTheFirstUnacknowledgedOffsets() {
+    for (long offset = 10; offset < 13; offset++) {
+      tracker.pending(record(P0, offset));
+    }
+    tracker.pending(record(P1, 7));
+    tracker.acknowledged(record(P0, 10));
+    tracker.acknowledged(record(P0, 12));
+    tracker.acknowledged(record(P1, 7));
+
+    assertEquals(Collections.singletonMap(P0, 11L), tracker.rewind());
+    assertEquals(0, tracker.inFlight());
+    // The committable offsets stay, and the rewound records can be registered again.
+    assertEquals(11L, tracker.committable(current(P0)).get(P0).offset());
+    tracker.pending(record(P0, 11));
+    tracker.acknowledged(record(P0, 11));
+    assertEquals(12L, tracker.committable(current(P0)).get(P0).offset());
+  }
+
+  @Test
+  public void removedPartitionsAreForgotten() {
+    tracker.pending(record(P0, 0));
+    tracker.pending(record(P1, 0));
+    tracker.acknowledged(record(P0, 0));
+    tracker.remove(Collections.singleton(P0));
+    assertTrue(tracker.committable(current(P0)).isEmpty());
+    assertEquals(1, tracker.inFlight());
+  }
+
+  private static SinkRecord record(final TopicPartition partition, final long offset) {
+    return new SinkRecord(partition.topic(), partition.partition(), null, null, Schema.STRING_SCHEMA, "value", offset);
+  }
+
+  private static Map<TopicPartition, OffsetAndMetadata> current(final TopicPartition partition) {
+    final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+    offsets.put(partition, new OffsetAndMetadata(0));
+    return offsets;
+  }
+}
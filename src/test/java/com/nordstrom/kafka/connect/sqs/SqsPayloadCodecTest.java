@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import org.apache.kafka.connect.errors.DataException;
+import org.junit.Test;
+
+public class SqsPayloadCodecTest {
+  private static final SqsPayloadCodec[] CODECS = {SqsPayloadCodec.GZIP, SqsPayloadCodec.ZSTD, SqsPayloadCodec.LZ4};
+  private static final int MAX_DECODED_BYTES = 1024 * 1024;
+
+  @Test
+  public void stringsRoundTrip() {
+    final String body = repeated("{\"name\":\"value é 中\",\"count\":42}", 4096);
+    for (final SqsPayloadCodec codec : CODECS) {
+      assertTrue(codec.getValue(), codec.isAvailable());
+      final String encoded = codec.encode(body, 1);
+      assertNotNull(codec.getValue(), encoded);
+      assertTrue(codec.getValue(), encoded.length() < body.length());
+      assertEquals(codec.getValue(), body, codec.decode(encoded, MAX_DECODED_BYTES));
+    }
+  }
+
+  @Test
+  public void binaryRoundTrips() {
+    final byte[] bytes = repeated("binary\u0000\u0001", 4096).getBytes(StandardCharsets.UTF_8);
+    for (final SqsPayloadCodec codec : CODECS) {
+      final byte[] compressed = codec.encodeBinary(bytes, 1);
+      assertNotNull(codec.getValue(), compressed);
+      assertArrayEquals(codec.getValue(), bytes, codec.decodeBinary(Base64.getEncoder().encodeToString(compressed),
+          MAX_DECODED_BYTES));
+    }
+  }
+
+  @Test
+  public void shortBodiesAreLeftAsTheyAre() {
+    final String body = repeated("a", 100);
+    for (final SqsPayloadCodec codec : CODECS) {
+      assertNull(codec.getValue(), codec.encode(body, 101));
+      assertNull(codec.getValue(), codec.encodeBinary(body.getBytes(StandardCharsets.UTF_8), 101));
+    }
+  }
+
+  @Test
+  public void incompressibleBodiesAreLeftAsTheyAre() {
+    final byte[] bytes = new byte[4096];
+    new Random(1).nextBytes(bytes);
+    final String body = Base64.getEncoder().encodeToString(bytes);
+    for (final SqsPayloadCodec codec : CODECS) {
+      assertNull(codec.getValue(), codec.encode(body, 1));
+      assertNull(codec.getValue(), codec.encodeBinary(bytes, 1));
+    }
+  }
+
+  @Test
+  public void noneLeavesBodiesAsTheyAre() {
+    final String body = repeated("a", 1000);
+    assertNull(SqsPayloadCodec.NONE.encode(body, 0));
+    assertNull(SqsPayloadCodec.NONE.encodeBinary(body.getBytes(StandardCharsets.UTF_8), 0));
+    assertEquals(body, SqsPayloadCodec.NONE.decode(body, MAX_DECODED_BYTES));
+  }
+
+  @Test
+  public void corruptBodiesFail() {
+    final String notCompressed = Base64.getEncoder().encodeToString("not compressed".getBytes(StandardCharsets.UTF_8));
+    for (final SqsPayloadCodec codec : CODECS) {
+      assertDecodeFails(codec, notCompressed, MAX_DECODED_BYTES);
+      assertDecodeFails(codec, "not base64!", MAX_DECODED_BYTES);
+    }
+  }
+
+  @Test
+  public void bodiesOverTheMaximumDecodedSizeFail() {
+    final String body = repeated("a", 64 * 1024);
+    for (final SqsPayloadCodec codec : CODECS) {
+      final String encoded = codec.encode(body, 1);
+      assertEquals(codec.getValue(), body, codec.decode(encoded, body.length()));
+      // zstd rejects the size its frame claims, gzip and lz4 stop as the output passes the limit.
+      assertDecodeFails(codec, encoded, body.length() - 1);
+      assertDecodeFails(codec, encoded, 1);
+    }
+  }
+
+  @Test
+  public void valuesAreCaseInsensitive() {
+    for (final SqsPayloadCodec codec : SqsPayloadCodec.values()) {
+      assertEquals(codec, SqsPayloadCodec.forValue(" " + codec.getValue().toUpperCase() + " "));
+      assertEquals(codec.getValue(), codec.getAttributeValue().getStringValue());
+    }
+  }
+
+  private static void assertDecodeFails(final SqsPayloadCodec codec, final String body, final int maxBytes) {
+    try {
+      codec.decode(body, maxBytes);
+    } catch (final DataException expected) {
+      return;
+    }
+    throw new AssertionError(codec.getValue() + " decoded " + body);
+  }
+
+  private static String repeated(final String s, final int length) {
+    final StringBuilder builder = new StringBuilder(length + s.length());
+    while (builder.length() < length) {
+      builder.append(s);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class SqsPrefetchBufferTest {
+
+  @Test
+  public void drainsInOrderUpToTheMaximum() throws InterruptedException {
+    final SqsPrefetchBuffer<String> buffer = new SqsPrefetchBuffer<>(10, 1000, String::length);
+    for (final String element : Arrays.asList("a", "bb", "ccc", "dddd")) {
+      assertTrue(buffer.put(element));
+    }
+    assertEquals(4, buffer.size());
+    assertEquals(10L, buffer.bytes());
+    assertEquals(Arrays.asList("a", "bb", "ccc"), drain(buffer, 3, 0));
+    assertEquals(1, buffer.size());
+    assertEquals(4L, buffer.bytes());
+    assertEquals(Collections.singletonList("dddd"), drain(buffer, 3, 0));
+  }
+
+  @Test
+  public void drainsUpToTheByteBudget() throws InterruptedException {
+    final SqsPrefetchBuffer<String> buffer = new SqsPrefetchBuffer<>(10, 1000, String::length);
+    for (final String element : Arrays.asList("aaaa", "bbbb", "cc", "dddddddd")) {
+      buffer.put(element);
+    }
+    final List<String> into = new ArrayList<>();
+    assertEquals(8L, buffer.drainTo(into, 10, 5, 0));
+    assertEquals(Arrays.asList("aaaa", "bbbb"), into);
+    // The first element is taken even if it alone is over the budget.
+    into.clear();
+    assertEquals(2L, buffer.drainTo(into, 1, 1, 0));
+    assertEquals(Collections.singletonList("cc"), into);
+    into.clear();
+    assertEquals(8L, buffer.drainTo(into, 10, 1, 0));
+    assertEquals(Collections.singletonList("dddddddd"), into);
+    assertEquals(0L, buffer.bytes());
+  }
+
+  @Test
+  public void drainWaitsOnlyWhileEmpty() throws InterruptedException {
+    final SqsPrefetchBuffer<String> buffer = new SqsPrefetchBuffer<>(10, 1000, String::length);
+    final long start = System.nanoTime();
+    assertTrue(drain(buffer, 5, 50).isEmpty());
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+    final Thread producer = new Thread(() -> {
+      try {
+        TimeUnit.MILLISECONDS.sleep(20);
+        buffer.put("late");
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    producer.start();
+    assertEquals(Collections.singletonList("late"), drain(buffer, 5, 10000));
+    producer.join();
+  }
+
+  @Test
+  public void putWaitsWhileFull() throws InterruptedException {
+    final SqsPrefetchBuffer<String> buffer = new SqsPrefetchBuffer<>(2, 1000, String::length);
+    buffer.put("a");
+    buffer.put("b");
+    final AtomicBoolean added = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch(1);
+    final Thread producer = new Thread(() -> {
+      try {
+        added.set(buffer.put("c"));
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    });
+    producer.start();
+    assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+    assertEquals(Collections.singletonList("a"), drain(buffer, 1, 0));
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(added.get());
+    assertEquals(Arrays.asList("b", "c"), drain(buffer, 5, 0));
+  }
+
+  @Test
+  public void putWaitsWhileOverTheByteLimit() throws InterruptedException {
+    final SqsPrefetchBuffer<String> buffer = new SqsPrefetchBuffer<>(10, 5, String::length);
+    buffer.put("aaaa");
+    final CountDownLatch done = new CountDownLatch(1);
+    final Thread producer = new Thread(() -> {
+      try {
+        buffer.put("bb");
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    });
+    producer.start();
+    assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+    drain(buffer, 1, 0);
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(2L, buffer.bytes());
+  }
+
+  @Test
+  public void acceptsAnOversizeElementWhenEmpty() throws InterruptedException {
+    final SqsPrefetchBuffer<String> buffer = new SqsPrefetchBuffer<>(10, 5, String::length);
+    assertTrue(buffer.put("larger than the limit"));
+    assertEquals(1, buffer.size());
+  }
+
+  @Test
+  public void closeReleasesWaitingProducers() throws InterruptedException {
+    final SqsPrefetchBuffer<String> buffer = new SqsPrefetchBuffer<>(1, 1000, String::length);
+    buffer.put("a");
+    final AtomicBoolean added = new AtomicBoolean(true);
+    final CountDownLatch done = new CountDownLatch(1);
+    final Thread producer = new Thread(() -> {
+      try {
+        added.set(buffer.put("b"));
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    });
+    producer.start();
+    assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+    buffer.close();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertFalse(added.get());
+    assertFalse(buffer.put("c"));
+    assertEquals(Collections.singletonList("a"), drain(buffer, 5, 10000));
+  }
+
+  static <T> List<T> drain(final SqsPrefetchBuffer<T> buffer, final int maxElements, final long timeoutMs)
+      throws InterruptedException {
+    final List<T> into = new ArrayList<>();
+    buffer.drainTo(into, maxElements, Long.MAX_VALUE, TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+    return into;
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.model.Message;
+
+public class SqsReceiverTest {
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/000000000000/receive";
+
+  private final Metrics metrics = new Metrics();
+  private final Sensor utilization = metrics.sensor("receiver-utilization");
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void stop() throws InterruptedException {
+    executor.shutdownNow();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    metrics.close();
+  }
+
+  @Test
+  public void concurrentReceiversFillTheBuffer() throws InterruptedException {
+    final QueueClient client = new QueueClient(200);
+    final SqsPrefetchBuffer<SourceRecord> buffer = new SqsPrefetchBuffer<>(1000, Long.MAX_VALUE, r -> ((String) r.value()).length());
+    final List<SqsReceiver> receivers = start(client, buffer, 4);
+
+    final Set<String> bodies = new HashSet<>();
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (bodies.size() < 200 && System.currentTimeMillis() < deadline) {
+      for (final SourceRecord record : SqsPrefetchBufferTest.drain(buffer, 50, 100)) {
+        assertTrue(record.value().toString(), bodies.add(record.value().toString()));
+      }
+    }
+    assertEquals(200, bodies.size());
+    assertTrue(client.maxConcurrent.get() > 1);
+    receivers.forEach(SqsReceiver::stop);
+  }
+
+  @Test
+  public void receiversStopWhenTheBufferIsClosed() throws InterruptedException {
+    final QueueClient client = new QueueClient(Integer.MAX_VALUE);
+    final SqsPrefetchBuffer<SourceRecord> buffer = new SqsPrefetchBuffer<>(5, Long.MAX_VALUE, r -> ((String) r.value()).length());
+    start(client, buffer, 2);
+
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (buffer.size() < 5 && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(5, buffer.size());
+    buffer.close();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(5, buffer.size());
+  }
+
+  @Test
+  public void receiveFailuresAreRetried() throws InterruptedException {
+    final QueueClient client = new QueueClient(10);
+    client.failures.set(1);
+    final SqsPrefetchBuffer<SourceRecord> buffer = new SqsPrefetchBuffer<>(100, Long.MAX_VALUE, r -> ((String) r.value()).length());
+    final List<SqsReceiver> receivers = start(client, buffer, 1);
+
+    final List<SourceRecord> records = new ArrayList<>();
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (records.size() < 10 && System.currentTimeMillis() < deadline) {
+      records.addAll(SqsPrefetchBufferTest.drain(buffer, 10, 100));
+    }
+    assertEquals(10, records.size());
+    assertEquals(0, client.failures.get());
+    receivers.forEach(SqsReceiver::stop);
+  }
+
+  @Test
+  public void queuesAreReceivedFromInTurn() throws InterruptedException {
+    final QueueClient client = new QueueClient(Integer.MAX_VALUE);
+    final SqsPrefetchBuffer<SourceRecord> buffer = new SqsPrefetchBuffer<>(100, Long.MAX_VALUE,
+        r -> ((String) r.value()).length());
+    final List<SqsReceiver> receivers = start(client, buffer, 1, Arrays.asList(URL, URL + "-other"));
+
+    final Set<String> topics = new HashSet<>();
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (topics.size() < 2 && System.currentTimeMillis() < deadline) {
+      for (final SourceRecord record : SqsPrefetchBufferTest.drain(buffer, 10, 100)) {
+        topics.add(record.topic());
+      }
+    }
+    assertEquals(new HashSet<>(Arrays.asList("topic-receive", "topic-receive-other")), topics);
+    receivers.forEach(SqsReceiver::stop);
+  }
+
+  private List<SqsReceiver> start(final SqsClient client, final SqsPrefetchBuffer<SourceRecord> buffer,
+      final int threads) {
+    return start(client, buffer, threads, Collections.singletonList(URL));
+  }
+
+  private List<SqsReceiver> start(final SqsClient client, final SqsPrefetchBuffer<SourceRecord> buffer,
+      final int threads, final List<String> urls) {
+    final SqsSourceConnectorConfig config = new SqsSourceConnectorConfig(QueueClient.props());
+    final List<SqsSourceQueue> queues = new ArrayList<>(urls.size());
+    for (final String url : urls) {
+      queues.add(new SqsSourceQueue(url, "topic-" + SqsMetrics.queueName(url), config, null, null, null));
+    }
+    final List<SqsReceiver> receivers = new ArrayList<>(threads);
+    for (int i = 0; i < threads; i++) {
+      final SqsReceiver receiver = new SqsReceiver(client, config, queues, buffer, utilization, null);
+      receivers.add(receiver);
+      executor.submit(receiver);
+    }
+    return receivers;
+  }
+
+  /**
+   * Hands out up to ten numbered messages per receive, after a short wait,
+   * until the given number of messages has been received.
+   */
+  static final class QueueClient extends SqsClient {
+    private final int total;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    final AtomicInteger maxConcurrent = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+
+    QueueClient(final int total) {
+      super(new SqsSourceConnectorConfig(props()));
+      this.total = total;
+    }
+
+    static Map<String, String> props() {
+      final Map<String, String> props = new HashMap<>();
+      props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), URL);
+      props.put(SqsConnectorConfigKeys.TOPICS.getValue(), "test-topic");
+      props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+      return props;
+    }
+
+    @Override
+    public List<Message> receive(final String url, final int maxMessages, final int waitTimeSeconds,
+        final Boolean messageAttributesEnabled, final List<String> messageAttributesList,
+        final int visibilityTimeoutSeconds) {
+      if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+        throw new AmazonClientException("injected");
+      }
+      maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+      try {
+        TimeUnit.MILLISECONDS.sleep(10);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        concurrent.decrementAndGet();
+      }
+      final List<Message> messages = new ArrayList<>(maxMessages);
+      while (messages.size() < maxMessages) {
+        final int id = next.getAndIncrement();
+        if (id >= total) {
+          break;
+        }
+        messages.add(new Message().withMessageId("id-" + id).withReceiptHandle("handle-" + id).withBody("body-" + id));
+      }
+      return messages;
+    }
+  }
+}
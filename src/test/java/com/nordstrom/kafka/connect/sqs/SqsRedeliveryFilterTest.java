@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.CumulativeCount;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+
+public class SqsRedeliveryFilterTest {
+  private static final String URL = InMemorySqs.queueUrl("redelivery");
+  private static final String PENDING = SqsConnectorConfigKeys.SQS_MESSAGE_PENDING.getValue();
+
+  private final SqsMetrics metrics = new SqsMetrics("test", SqsMetrics.taskTags("test-redelivery", "0"));
+  private final Metrics registry = new Metrics();
+  private final MetricName droppedTotal = registry.metricName("dropped-total", "test");
+  private Sensor dropped;
+  private SqsClient client;
+  private SqsDeleteBatcher deleter;
+
+  @Before
+  public void start() {
+    dropped = registry.sensor("dropped");
+    dropped.add(droppedTotal, new CumulativeCount());
+    InMemorySqs.shared().reset();
+    client = new SqsClient(new SqsSourceConnectorConfig(SqsConnectorTasksTest.taskProps(URL, "test-redelivery")),
+        new InMemorySqsClientFactory());
+    deleter = new SqsDeleteBatcher(client, 10, 0, 0, metrics, "test-redelivery-deleter");
+  }
+
+  @After
+  public void stop() {
+    deleter.close();
+    client.shutdown();
+    metrics.close();
+    registry.close();
+  }
+
+  @Test
+  public void listsTrackedMessagesInOrderUntilDeleted() {
+    final SqsRedeliveryFilter filter = filter(null, 60);
+    assertEquals("", filter.pending());
+    filter.track("c");
+    filter.track("a");
+    filter.track("b");
+    assertEquals("c,a,b", filter.pending());
+    assertEquals(3, filter.size());
+
+    filter.deleting("a", "handle-a");
+    filter.deleting("c", "handle-c");
+    final Map<String, String> deleting = filter.takeDeleting();
+    assertEquals(Arrays.asList("a", "c"), new ArrayList<>(deleting.keySet()));
+    assertTrue(filter.takeDeleting().isEmpty());
+    // Listed until the deletes are flushed.
+    assertEquals("c,a,b", filter.pending());
+    filter.deleted(deleting, new HashSet<>());
+    assertEquals("b", filter.pending());
+    assertEquals(1, filter.size());
+  }
+
+  @Test
+  public void keepsListingTheStartOffsetWithinTheWindow() {
+    final SqsRedeliveryFilter filter = filter(Collections.singletonMap(PENDING, "x"), 60);
+    filter.track("a");
+    assertEquals("x,a", filter.pending());
+    assertEquals(1, filter.size());
+    filter.deleted(Collections.singletonMap("x", "handle-x"), new HashSet<>());
+    assertEquals("a", filter.pending());
+  }
+
+  @Test
+  public void forgetsTheStartOffsetAfterTheWindow() {
+    final SqsRedeliveryFilter filter = filter(Collections.singletonMap(PENDING, "x"), 0);
+    filter.track("a");
+    assertEquals("a", filter.pending());
+  }
+
+  @Test
+  public void dropsAndDeletesRedeliveriesOfTheStartOffset() throws InterruptedException {
+    for (int i = 0; i < 4; i++) {
+      InMemorySqs.shared().sendMessage(new SendMessageRequest(URL, "value-" + i));
+    }
+    final List<Message> messages = receive(4);
+    final String committed = messages.get(1).getMessageId() + "," + messages.get(3).getMessageId();
+    final SqsRedeliveryFilter filter = filter(Collections.singletonMap(PENDING, committed), 60);
+
+    assertEquals(Arrays.asList(messages.get(0), messages.get(2)), filter.drop(messages));
+    assertEquals(2.0, (Double) registry.metric(droppedTotal).metricValue(), 0.0);
+    final Map<String, String> deleting = filter.takeDeleting();
+    assertEquals(Arrays.asList(messages.get(1).getMessageId(), messages.get(3).getMessageId()),
+        new ArrayList<>(deleting.keySet()));
+    assertTrue(deleter.flush(10000));
+    assertEquals(2, InMemorySqs.shared().getDepth(URL));
+    filter.deleted(deleting, deleter.takeFailed());
+    assertEquals("", filter.pending());
+
+    // Messages the offset does not list are kept as they are.
+    final List<Message> kept = messages.subList(0, 1);
+    assertSame(kept, filter.drop(kept));
+  }
+
+  @Test
+  public void keepsListingMessagesWhoseDeletesFailedUntilTheyAreRedelivered() {
+    final SqsRedeliveryFilter filter = filter(null, 60);
+    filter.track("a");
+    filter.track("b");
+    filter.track("c");
+    filter.deleting("a", "handle-a");
+    filter.deleting("b", "handle-b");
+    final Map<String, String> deleting = filter.takeDeleting();
+    // The delete of c is queued while the others are flushed, and fails with them.
+    filter.deleting("c", "handle-c");
+    final Set<String> failed = new HashSet<>(Arrays.asList("handle-b", "handle-c", "handle-of-another-queue"));
+    filter.deleted(deleting, failed);
+    assertEquals(Collections.singleton("handle-of-another-queue"), failed);
+    assertTrue(filter.takeDeleting().isEmpty());
+    assertEquals(0, filter.size());
+    assertEquals(new HashSet<>(Arrays.asList("b", "c")), new HashSet<>(Arrays.asList(filter.pending().split(","))));
+
+    // Redelivered, the message is dropped and deleted again with its new receipt handle.
+    final Message redelivered = new Message().withMessageId("b").withReceiptHandle("handle-b-2").withBody("value");
+    assertTrue(filter.drop(Collections.singletonList(redelivered)).isEmpty());
+    assertEquals(Collections.singletonMap("b", "handle-b-2"), filter.takeDeleting());
+    filter.deleted(Collections.singletonMap("b", "handle-b-2"), new HashSet<>());
+    assertEquals("c", filter.pending());
+  }
+
+  private SqsRedeliveryFilter filter(final Map<String, ?> offset, final int windowSeconds) {
+    return new SqsRedeliveryFilter(URL, offset, windowSeconds, deleter, dropped);
+  }
+
+  private static List<Message> receive(final int count) {
+    final List<Message> messages = new ArrayList<>();
+    while (messages.size() < count) {
+      messages.addAll(InMemorySqs.shared().receiveMessage(new ReceiveMessageRequest(URL)
+          .withMaxNumberOfMessages(count - messages.size())).getMessages());
+    }
+    return messages;
+  }
+}
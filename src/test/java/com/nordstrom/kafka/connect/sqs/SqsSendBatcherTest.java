@@ -0,0 +1,286 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+
+public class SqsSendBatcherTest {
+  private static final String URL = InMemorySqs.queueUrl("batcher");
+  private static final String FIFO_URL = InMemorySqs.queueUrl("batcher.fifo");
+
+  private final FailingSqs sqs = new FailingSqs();
+  private final SqsMetrics metrics = new SqsMetrics("test", SqsMetrics.taskTags("test-batcher", "0"));
+  private SqsClient client;
+  private SqsSendRetry retry;
+
+  @After
+  public void close() {
+    if (retry != null) {
+      retry.close();
+    }
+    if (client != null) {
+      client.shutdown();
+    }
+    metrics.close();
+  }
+
+  @Test
+  public void packsTenEntriesPerBatch() {
+    final List<SqsSendEntry> entries = entries(null, 25);
+    final List<SqsSendEntry> oversize = new ArrayList<>();
+    final List<List<SqsSendEntry>> batches = SqsSendBatcher.pack(entries, false, oversize);
+    assertEquals(Arrays.asList(10, 10, 5), sizes(batches));
+    assertEquals(entries, flatten(batches));
+    assertTrue(oversize.isEmpty());
+  }
+
+  @Test
+  public void packsWithinTheBatchPayloadLimit() {
+    final List<SqsSendEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      entries.add(entry(body(100 * 1024, i), null));
+    }
+    final List<List<SqsSendEntry>> batches = SqsSendBatcher.pack(entries, false, new ArrayList<>());
+    assertEquals(Arrays.asList(2, 2, 1), sizes(batches));
+    assertEquals(entries, flatten(batches));
+  }
+
+  @Test
+  public void leavesOutOversizeEntries() {
+    final SqsSendEntry small = entry("small", null);
+    final SqsSendEntry large = entry(body(SqsSendBatcher.MAX_BATCH_BYTES + 1, 0), null);
+    final List<SqsSendEntry> oversize = new ArrayList<>();
+    final List<List<SqsSendEntry>> batches = SqsSendBatcher.pack(Arrays.asList(large, small), false, oversize);
+    assertEquals(Collections.singletonList(Collections.singletonList(small)), batches);
+    assertEquals(Collections.singletonList(large), oversize);
+  }
+
+  @Test
+  public void packsOneEntryPerFifoGroup() {
+    final List<SqsSendEntry> entries = new ArrayList<>();
+    for (final String group : new String[] {"a", "a", "b", "a", "c", "b"}) {
+      entries.add(entry(group + "-" + entries.size(), group));
+    }
+    final List<List<SqsSendEntry>> batches = SqsSendBatcher.pack(entries, true, new ArrayList<>());
+    assertEquals(Arrays.asList(3, 2, 1), sizes(batches));
+    for (final List<SqsSendEntry> batch : batches) {
+      final Set<String> groups = new HashSet<>();
+      for (final SqsSendEntry entry : batch) {
+        assertTrue("two entries of " + entry.getGroupId(), groups.add(entry.getGroupId()));
+      }
+    }
+    assertEquals(Arrays.asList("a-0", "a-1", "a-3"), bodies(flatten(batches), "a"));
+    assertEquals(Arrays.asList("b-2", "b-5"), bodies(flatten(batches), "b"));
+  }
+
+  @Test
+  public void resendsOnlyFailedEntries() throws InterruptedException {
+    final List<SqsSendEntry> entries = entries(null, 12);
+    sqs.fail("body-3", 2, false);
+    sqs.fail("body-11", 1, false);
+    assertTrue(batcher(URL, false, 3).send(entries).isEmpty());
+    assertEquals(12, sqs.sent.size());
+    assertEquals(12, new HashSet<>(sqs.sent).size());
+    assertEquals(3, entries.get(3).getAttempts());
+    assertEquals(1, entries.get(4).getAttempts());
+  }
+
+  @Test
+  public void returnsEntriesThatCannotBeSent() throws InterruptedException {
+    final List<SqsSendEntry> entries = entries(null, 5);
+    sqs.fail("body-1", Integer.MAX_VALUE, true);
+    sqs.fail("body-2", Integer.MAX_VALUE, false);
+    final List<SqsSendEntry> failed = batcher(URL, false, 2).send(entries);
+    assertEquals(Arrays.asList(entries.get(1), entries.get(2)), failed);
+    assertEquals(SqsSendRetry.ErrorKind.PERMANENT, entries.get(1).getErrorKind());
+    assertEquals(1, entries.get(1).getAttempts());
+    assertEquals(SqsSendRetry.ErrorKind.TRANSIENT, entries.get(2).getErrorKind());
+    assertEquals(3, entries.get(2).getAttempts());
+    assertEquals(Arrays.asList("body-0", "body-3", "body-4"), sqs.sent);
+  }
+
+  @Test
+  public void holdsFifoGroupsBehindRetriedEntries() throws InterruptedException {
+    final List<SqsSendEntry> entries = new ArrayList<>();
+    for (final String group : new String[] {"a", "b", "a", "b", "a"}) {
+      entries.add(entry(group + "-" + entries.size(), group));
+    }
+    sqs.fail("a-0", 1, false);
+    assertTrue(batcher(FIFO_URL, true, 3).send(entries).isEmpty());
+    assertEquals(Arrays.asList("a-0", "a-2", "a-4"), filter(sqs.sent, "a"));
+    assertEquals(Arrays.asList("b-1", "b-3"), filter(sqs.sent, "b"));
+    assertEquals(5, sqs.sent.size());
+  }
+
+  @Test
+  public void skipsTheRestOfAFifoGroupGivenUpOn() throws InterruptedException {
+    final List<SqsSendEntry> entries = new ArrayList<>();
+    for (final String group : new String[] {"a", "b", "a", "b", "a"}) {
+      entries.add(entry(group + "-" + entries.size(), group));
+    }
+    sqs.fail("a-2", Integer.MAX_VALUE, false);
+    final List<SqsSendEntry> failed = batcher(FIFO_URL, true, 1).send(entries);
+    assertEquals(Arrays.asList(entries.get(2), entries.get(4)), failed);
+    assertEquals(2, entries.get(2).getAttempts());
+    // Never sent, so that it does not overtake the failed entry when the batch is redelivered.
+    assertEquals(0, entries.get(4).getAttempts());
+    assertEquals(SqsSendRetry.ErrorKind.TRANSIENT, entries.get(4).getErrorKind());
+    assertEquals(Arrays.asList("a-0", "b-1", "b-3"), sqs.sent);
+  }
+
+  @Test
+  public void permanentFailuresDoNotHoldFifoGroups() throws InterruptedException {
+    final List<SqsSendEntry> entries = new ArrayList<>();
+    for (final String group : new String[] {"a", "a", "a"}) {
+      entries.add(entry(group + "-" + entries.size(), group));
+    }
+    sqs.fail("a-1", Integer.MAX_VALUE, true);
+    final List<SqsSendEntry> failed = batcher(FIFO_URL, true, 3).send(entries);
+    assertEquals(Collections.singletonList(entries.get(1)), failed);
+    assertEquals(Arrays.asList("a-0", "a-2"), sqs.sent);
+  }
+
+  private SqsSendBatcher batcher(final String url, final boolean fifo, final int maxRetries) {
+    final Map<String, String> props = SqsConnectorTasksTest.taskProps(url, "test-batcher");
+    client = new SqsClient(new SqsSinkConnectorConfig(props), new SqsClientFactory() {
+      @Override
+      public AmazonSQS createClient(final SqsConnectorConfig config, final SqsTransportSettings transport) {
+        return sqs;
+      }
+
+      @Override
+      public AmazonSQSAsync createAsyncClient(final SqsConnectorConfig config, final SqsTransportSettings transport) {
+        return sqs;
+      }
+    });
+    retry = new SqsSendRetry(maxRetries, 1, 1, null, "test-send-retry");
+    return new SqsSendBatcher(client, url, fifo, retry, new SqsSendRateLimiter(), metrics.queue(url));
+  }
+
+  private static List<SqsSendEntry> entries(final String group, final int count) {
+    final List<SqsSendEntry> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      entries.add(entry("body-" + i, group));
+    }
+    return entries;
+  }
+
+  private static SqsSendEntry entry(final String body, final String group) {
+    final SinkRecord record = new SinkRecord("topic", 0, null, null, Schema.STRING_SCHEMA, body, 0);
+    return new SqsSendEntry(record, URL, body, group, group == null ? null : body, null);
+  }
+
+  private static String body(final int length, final int i) {
+    final char[] chars = new char[length];
+    Arrays.fill(chars, (char) ('a' + i));
+    return new String(chars);
+  }
+
+  private static List<Integer> sizes(final List<List<SqsSendEntry>> batches) {
+    final List<Integer> sizes = new ArrayList<>(batches.size());
+    for (final List<SqsSendEntry> batch : batches) {
+      sizes.add(batch.size());
+    }
+    return sizes;
+  }
+
+  private static List<SqsSendEntry> flatten(final List<List<SqsSendEntry>> batches) {
+    final List<SqsSendEntry> entries = new ArrayList<>();
+    for (final List<SqsSendEntry> batch : batches) {
+      entries.addAll(batch);
+    }
+    return entries;
+  }
+
+  private static List<String> bodies(final List<SqsSendEntry> entries, final String group) {
+    final List<String> bodies = new ArrayList<>();
+    for (final SqsSendEntry entry : entries) {
+      bodies.add(entry.getBody());
+    }
+    return filter(bodies, group);
+  }
+
+  private static List<String> filter(final List<String> bodies, final String group) {
+    final List<String> filtered = new ArrayList<>();
+    for (final String body : bodies) {
+      if (body.startsWith(group + "-")) {
+        filtered.add(body);
+      }
+    }
+    return filtered;
+  }
+
+  /**
+   * Fails the entries with the given bodies a number of times, and records
+   * the bodies of the entries it accepts, in order.
+   */
+  private static final class FailingSqs extends InMemorySqs {
+    private final Map<String, Integer> failures = new HashMap<>();
+    private final Set<String> senderFaults = new HashSet<>();
+    private final List<String> sent = new ArrayList<>();
+
+    synchronized void fail(final String body, final int times, final boolean senderFault) {
+      failures.put(body, times);
+      if (senderFault) {
+        senderFaults.add(body);
+      }
+    }
+
+    @Override
+    public synchronized SendMessageBatchResult sendMessageBatch(final SendMessageBatchRequest request) {
+      final List<SendMessageBatchRequestEntry> accepted = new ArrayList<>();
+      final List<BatchResultErrorEntry> failed = new ArrayList<>();
+      for (final SendMessageBatchRequestEntry entry : request.getEntries()) {
+        final String body = entry.getMessageBody();
+        final int times = failures.getOrDefault(body, 0);
+        if (times > 0) {
+          failures.put(body, times - 1);
+          final boolean senderFault = senderFaults.contains(body);
+          failed.add(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(senderFault)
+              .withCode(senderFault ? "InvalidParameterValue" : "InternalError").withMessage("injected"));
+        } else {
+          accepted.add(entry);
+          sent.add(body);
+        }
+      }
+      final SendMessageBatchResult result = accepted.isEmpty() ? new SendMessageBatchResult()
+          : super.sendMessageBatch(request.clone().withEntries(accepted));
+      return result.withFailed(failed);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+
+public class SqsSendRetryTest {
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/000000000000/retry";
+
+  @Test
+  public void classifiesFailedRequests() {
+    assertEquals(SqsSendRetry.ErrorKind.THROTTLED, SqsSendRetry.classify(serviceException("ThrottlingException", 400)));
+    assertEquals(SqsSendRetry.ErrorKind.TRANSIENT, SqsSendRetry.classify(serviceException("InternalError", 500)));
+    assertEquals(SqsSendRetry.ErrorKind.PERMANENT,
+        SqsSendRetry.classify(serviceException("InvalidParameterValue", 400)));
+    assertEquals(SqsSendRetry.ErrorKind.TRANSIENT, SqsSendRetry.classify(new AmazonClientException("timeout")));
+    assertEquals(SqsSendRetry.ErrorKind.PERMANENT, SqsSendRetry.classify(new IllegalStateException()));
+  }
+
+  @Test
+  public void classifiesFailedEntries() {
+    assertEquals(SqsSendRetry.ErrorKind.THROTTLED,
+        SqsSendRetry.classify(new BatchResultErrorEntry().withCode("RequestThrottled").withSenderFault(false)));
+    assertEquals(SqsSendRetry.ErrorKind.TRANSIENT,
+        SqsSendRetry.classify(new BatchResultErrorEntry().withCode("InternalError").withSenderFault(false)));
+    assertEquals(SqsSendRetry.ErrorKind.PERMANENT,
+        SqsSendRetry.classify(new BatchResultErrorEntry().withCode("InvalidParameterValue").withSenderFault(true)));
+  }
+
+  @Test
+  public void retriesUntilTheBudgetIsSpent() {
+    try (SqsSendRetry retry = new SqsSendRetry(2, 10, 100, null, "test-send-retry")) {
+      final SinkRecord record = new SinkRecord("topic", 0, null, null, Schema.STRING_SCHEMA, "body", 0);
+      final SqsSendEntry entry = new SqsSendEntry(record, URL, "body", null, null, null);
+      entry.attempt();
+      assertTrue(retry.canRetry(SqsSendRetry.ErrorKind.TRANSIENT, entry));
+      assertTrue(retry.canRetry(SqsSendRetry.ErrorKind.THROTTLED, entry));
+      assertFalse(retry.canRetry(SqsSendRetry.ErrorKind.PERMANENT, entry));
+      entry.attempt();
+      entry.attempt();
+      assertFalse(retry.canRetry(SqsSendRetry.ErrorKind.TRANSIENT, entry));
+    }
+  }
+
+  @Test
+  public void backoffIsJitteredUpToTheCap() {
+    try (SqsSendRetry retry = new SqsSendRetry(5, 10, 100, null, "test-send-retry")) {
+      for (int i = 0; i < 100; i++) {
+        assertTrue(retry.backoffMs(1) <= 10);
+        assertTrue(retry.backoffMs(3) <= 40);
+        assertTrue(retry.backoffMs(30) <= 100);
+      }
+    }
+  }
+
+  @Test
+  public void throttlingLowersTheRequestRate() {
+    final SqsSendRateLimiter limiter = new SqsSendRateLimiter();
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0L, limiter.reserve());
+    }
+    assertEquals(0.0, limiter.getRate(), 0.0);
+    limiter.onThrottle(50);
+    assertTrue(limiter.getRate() > 0);
+    assertTrue(limiter.throttledForMs() > 0);
+    final double throttled = limiter.getRate();
+    limiter.onSuccess();
+    assertTrue(limiter.getRate() > throttled);
+  }
+
+  private static AmazonServiceException serviceException(final String code, final int status) {
+    final AmazonServiceException e = new AmazonServiceException("injected");
+    e.setErrorCode(code);
+    e.setStatusCode(status);
+    return e;
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import com.amazonaws.services.sqs.model.Message;
+
+public class SqsVisibilityExtenderTest {
+  private static final String URL = "https://sqs.us-west-2.amazonaws.com/000000000000/visibility";
+
+  private final RecordingClient client = new RecordingClient();
+  private final SqsMetrics metrics = new SqsMetrics("test", SqsMetrics.taskTags("test-visibility", "0"));
+  private SqsVisibilityExtender extender;
+
+  @After
+  public void close() {
+    if (extender != null) {
+      extender.close();
+    }
+    metrics.close();
+  }
+
+  @Test
+  public void heldMessagesAreExtendedBeforeTheyExpire() throws InterruptedException {
+    extender = new SqsVisibilityExtender(client, 2, 60, metrics, "test-visibility");
+    extender.track(URL, messages("a", "b"));
+    assertTrue(client.awaitRequests(1, 3500));
+    assertEquals(new HashSet<>(Arrays.asList("a", "b")), client.extended());
+    assertEquals(Collections.singleton(2), client.timeouts());
+  }
+
+  @Test
+  public void theShortestTimeoutIsExtendedBeforeItExpires() throws InterruptedException {
+    final long start = System.nanoTime();
+    extender = new SqsVisibilityExtender(client, 1, 60, metrics, "test-visibility");
+    extender.track(URL, messages("a"));
+    assertTrue(client.awaitRequests(1, 2000));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    assertEquals(Collections.singleton(1), client.timeouts());
+  }
+
+  @Test
+  public void committedMessagesAreNotExtended() throws InterruptedException {
+    extender = new SqsVisibilityExtender(client, 2, 60, metrics, "test-visibility");
+    extender.track(URL, messages("a", "b"));
+    extender.untrack("a");
+    assertTrue(client.awaitRequests(1, 3500));
+    extender.untrack("b");
+    TimeUnit.MILLISECONDS.sleep(1500);
+    assertEquals(Collections.singleton("b"), client.extended());
+    assertEquals(1, client.requests());
+  }
+
+  @Test
+  public void extensionsAreBatchedByTen() throws InterruptedException {
+    extender = new SqsVisibilityExtender(client, 2, 60, metrics, "test-visibility");
+    final String[] handles = new String[25];
+    for (int i = 0; i < handles.length; i++) {
+      handles[i] = "handle-" + i;
+    }
+    extender.track(URL, messages(handles));
+    assertTrue(client.awaitRequests(3, 3500));
+    assertEquals(25, client.extended().size());
+    final List<Integer> sizes = client.sizes();
+    Collections.sort(sizes);
+    assertEquals(Arrays.asList(5, 10, 10), sizes.subList(0, 3));
+  }
+
+  @Test
+  public void failedHandlesAreDropped() throws InterruptedException {
+    client.fail("gone");
+    extender = new SqsVisibilityExtender(client, 2, 60, metrics, "test-visibility");
+    extender.track(URL, messages("gone", "kept"));
+    assertTrue(client.awaitRequests(2, 5500));
+    assertEquals(1, client.count("gone"));
+    assertEquals(2, client.count("kept"));
+  }
+
+  @Test
+  public void messagesAreReleasedAfterTheMaximumHold() throws InterruptedException {
+    extender = new SqsVisibilityExtender(client, 2, 2, metrics, "test-visibility");
+    extender.track(URL, messages("a"));
+    TimeUnit.MILLISECONDS.sleep(2500);
+    assertEquals(0, client.requests());
+  }
+
+  private static List<Message> messages(final String... handles) {
+    final List<Message> messages = new ArrayList<>(handles.length);
+    for (final String handle : handles) {
+      messages.add(new Message().withReceiptHandle(handle).withBody(handle));
+    }
+    return messages;
+  }
+
+  /**
+   * Records the visibility changes, and fails those of the given handles.
+   */
+  static final class RecordingClient extends SqsClient {
+    private final Set<String> failing = new HashSet<>();
+    private final List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+
+    RecordingClient() {
+      super(new SqsSourceConnectorConfig(props()));
+    }
+
+    private static Map<String, String> props() {
+      final Map<String, String> props = new HashMap<>();
+      props.put(SqsConnectorConfigKeys.SQS_QUEUE_URL.getValue(), URL);
+      props.put(SqsConnectorConfigKeys.TOPICS.getValue(), "test-topic");
+      props.put(SqsConnectorConfigKeys.SQS_REGION.getValue(), "us-west-2");
+      return props;
+    }
+
+    synchronized void fail(final String handle) {
+      failing.add(handle);
+    }
+
+    synchronized boolean awaitRequests(final int count, final long timeoutMs) throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + timeoutMs;
+      while (sizes.size() < count) {
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          return false;
+        }
+        wait(remaining);
+      }
+      return true;
+    }
+
+    synchronized int requests() {
+      return sizes.size();
+    }
+
+    synchronized List<Integer> sizes() {
+      return new ArrayList<>(sizes);
+    }
+
+    synchronized Set<String> extended() {
+      final Set<String> handles = new HashSet<>();
+      for (final ChangeMessageVisibilityBatchRequestEntry entry : entries) {
+        handles.add(entry.getReceiptHandle());
+      }
+      return handles;
+    }
+
+    synchronized Set<Integer> timeouts() {
+      final Set<Integer> timeouts = new HashSet<>();
+      for (final ChangeMessageVisibilityBatchRequestEntry entry : entries) {
+        timeouts.add(entry.getVisibilityTimeout());
+      }
+      return timeouts;
+    }
+
+    synchronized int count(final String handle) {
+      int count = 0;
+      for (final ChangeMessageVisibilityBatchRequestEntry entry : entries) {
+        if (entry.getReceiptHandle().equals(handle)) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    public synchronized ChangeMessageVisibilityBatchResult changeVisibilityBatch(final String url,
+        final List<ChangeMessageVisibilityBatchRequestEntry> batch) {
+      final ChangeMessageVisibilityBatchResult result = new ChangeMessageVisibilityBatchResult();
+      for (final ChangeMessageVisibilityBatchRequestEntry entry : batch) {
+        entries.add(entry);
+        if (failing.contains(entry.getReceiptHandle())) {
+          result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(true)
+              .withCode("ReceiptHandleIsInvalid"));
+        } else {
+          result.withSuccessful(new ChangeMessageVisibilityBatchResultEntry().withId(entry.getId()));
+        }
+      }
+      sizes.add(batch.size());
+      notifyAll();
+      return result;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.ErrantRecordReporter;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.apache.kafka.connect.sink.SinkTaskContext;
+
+/**
+ * A sink task context that assigns one partition and, optionally, collects
+ * the records handed to the errant record reporter.
+ */
+class TestSinkTaskContext implements SinkTaskContext {
+  final List<SinkRecord> reported = Collections.synchronizedList(new ArrayList<>());
+  private final Set<TopicPartition> assignment = new HashSet<>();
+  private final boolean withReporter;
+
+  TestSinkTaskContext(final String topic, final boolean withReporter) {
+    assignment.add(new TopicPartition(topic, 0));
+    this.withReporter = withReporter;
+  }
+
+  @Override
+  public Map<String, String> configs() {
+    return new HashMap<>();
+  }
+
+  @Override
+  public void offset(final Map<TopicPartition, Long> offsets) {
+  }
+
+  @Override
+  public void offset(final TopicPartition tp, final long offset) {
+  }
+
+  @Override
+  public void timeout(final long timeoutMs) {
+  }
+
+  @Override
+  public Set<TopicPartition> assignment() {
+    return assignment;
+  }
+
+  @Override
+  public void pause(final TopicPartition... partitions) {
+  }
+
+  @Override
+  public void resume(final TopicPartition... partitions) {
+  }
+
+  @Override
+  public void requestCommit() {
+  }
+
+  @Override
+  public ErrantRecordReporter errantRecordReporter() {
+    if (!withReporter) {
+      return null;
+    }
+    return (record, error) -> {
+      reported.add(record);
+      final Future<Void> done = CompletableFuture.completedFuture(null);
+      return done;
+    };
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Nordstrom, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.nordstrom.kafka.connect.sqs;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.connect.source.SourceTaskContext;
+import org.apache.kafka.connect.storage.OffsetStorageReader;
+
+/**
+ * A source task context whose offset storage returns fixed offsets.
+ */
+class TestSourceTaskContext implements SourceTaskContext {
+  private final Map<Map<String, ?>, Map<String, Object>> offsets = new HashMap<>();
+
+  /**
+   * @param partition Source partition.
+   * @param offset    The offset the worker returns for it.
+   */
+  void offset(final Map<String, ?> partition, final Map<String, Object> offset) {
+    offsets.put(partition, offset);
+  }
+
+  @Override
+  public Map<String, String> configs() {
+    return new HashMap<>();
+  }
+
+  @Override
+  public OffsetStorageReader offsetStorageReader() {
+    return new OffsetStorageReader() {
+      @Override
+      public <T> Map<String, Object> offset(final Map<String, T> partition) {
+        return offsets.get(partition);
+      }
+
+      @Override
+      public <T> Map<Map<String, T>, Map<String, Object>> offsets(final Collection<Map<String, T>> partitions) {
+        final Map<Map<String, T>, Map<String, Object>> found = new HashMap<>();
+        for (final Map<String, T> partition : partitions) {
+          if (offsets.containsKey(partition)) {
+            found.put(partition, offsets.get(partition));
+          }
+        }
+        return found;
+      }
+    };
+  }
+}